@@ -109,6 +109,17 @@ public class DiagonalGaussianModel implements EMClusterModel<NumberVector, EMMod
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for an empty partial model.
+   *
+   * @param dim Dimensionality
+   */
+  private DiagonalGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+    this.variances = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -142,6 +153,37 @@ public class DiagonalGaussianModel implements EMClusterModel<NumberVector, EMMod
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public DiagonalGaussianModel newPartialE() {
+    return new DiagonalGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, EMModel> partial, double scale) {
+    final DiagonalGaussianModel other = (DiagonalGaussianModel) partial;
+    final double owsum = other.wsum * scale;
+    if(owsum < Double.MIN_NORMAL) {
+      return;
+    }
+    final int dim = mean.length;
+    if(wsum < Double.MIN_NORMAL) { // Trivial case: copy
+      for(int i = 0; i < dim; i++) {
+        mean[i] = other.mean[i];
+        variances[i] = other.variances[i] * scale;
+      }
+      wsum = owsum;
+      return;
+    }
+    final double nwsum = wsum + owsum;
+    final double f = owsum / nwsum, g = wsum * f;
+    for(int i = 0; i < dim; i++) {
+      final double delta = other.mean[i] - mean[i];
+      variances[i] += other.variances[i] * scale + delta * delta * g;
+      mean[i] += delta * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = variances.length;
@@ -20,22 +20,26 @@
  */
 package elki.clustering.em;
 
-import static elki.math.linearalgebra.VMath.argmax;
-
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import elki.clustering.ClusteringAlgorithm;
 import elki.clustering.kmeans.KMeans;
 import elki.data.Cluster;
 import elki.data.Clustering;
 import elki.data.model.MeanModel;
+import elki.data.model.Model;
 import elki.data.type.SimpleTypeInformation;
 import elki.data.type.TypeInformation;
 import elki.data.type.TypeUtil;
 import elki.database.datastore.DataStoreFactory;
 import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.WritableDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.ModifiableDBIDs;
@@ -44,11 +48,13 @@ import elki.database.relation.Relation;
 import elki.logging.Logging;
 import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
 import elki.result.Metadata;
 import elki.utilities.Priority;
 import elki.utilities.documentation.Description;
 import elki.utilities.documentation.Reference;
 import elki.utilities.documentation.Title;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -56,6 +62,8 @@ import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.DoubleParameter;
 import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
 
 import net.jafama.FastMath;
 
@@ -75,6 +83,16 @@ import net.jafama.FastMath;
  * Bayesian Regularization for Normal Mixture Estimation and Model-Based
  * Clustering<br>
  * J. Classification 24(2)
+ * <p>
+ * The E-step and M-step are executed in parallel, merging partial results
+ * (c.f. {@link EMClusterModel#newPartialE()}). Optionally, stepwise mini-batch
+ * EM can be used for large data sets, which updates the sufficient statistics
+ * with a decaying step size, and does not keep the posterior probabilities of
+ * all objects:
+ * <p>
+ * P. Liang, D. Klein<br>
+ * Online EM for Unsupervised Models<br>
+ * Proc. Human Language Technologies: NAACL 2009
  * 
  * @author Arthur Zimek
  * @author Erich Schubert
@@ -97,6 +115,11 @@ import net.jafama.FastMath;
     booktitle = "J. Classification 24(2)", //
     url = "https://doi.org/10.1007/s00357-007-0004-5", //
     bibkey = "DBLP:journals/classification/FraleyR07")
+@Reference(authors = "P. Liang, D. Klein", //
+    title = "Online EM for Unsupervised Models", //
+    booktitle = "Proc. Human Language Technologies: NAACL 2009", //
+    url = "https://www.aclweb.org/anthology/N09-1069/", //
+    bibkey = "DBLP:conf/naacl/LiangK09")
 @Priority(Priority.RECOMMENDED)
 public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clustering<M>> {
   /**
@@ -144,6 +167,42 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
    */
   private boolean soft;
 
+  /**
+   * Mini-batch size, 0 for full batch EM.
+   */
+  private int minibatch;
+
+  /**
+   * Random generator for mini-batch sampling.
+   */
+  private RandomFactory rnd;
+
+  /**
+   * Maximum array size.
+   */
+  private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  /**
+   * Minimum number of points per thread.
+   */
+  private static final int MIN_BLOCK = 256;
+
+  /**
+   * Minimum number of points per block of the M-step aggregation.
+   */
+  private static final int MIN_AGGREGATE_BLOCK = 1024;
+
+  /**
+   * Maximum number of blocks of the M-step aggregation, to bound the memory
+   * used by partial models.
+   */
+  private static final int MAX_AGGREGATE_BLOCKS = 64;
+
+  /**
+   * Exponent of the step size for mini-batch EM, in (0.5;1].
+   */
+  private static final double STEPWISE_ALPHA = 0.6;
+
   /**
    * Minimum loglikelihood to avoid -infinity.
    */
@@ -204,6 +263,23 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
    * @param soft Include soft assignments
    */
   public EM(int k, double delta, EMClusterModelFactory<O, M> mfactory, int miniter, int maxiter, double prior, boolean soft) {
+    this(k, delta, mfactory, miniter, maxiter, prior, soft, 0, RandomFactory.DEFAULT);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param mfactory EM cluster model factory
+   * @param miniter Minimum number of iterations
+   * @param maxiter Maximum number of iterations
+   * @param prior MAP prior
+   * @param soft Include soft assignments
+   * @param minibatch Mini-batch size, 0 for full batch EM
+   * @param rnd Random generator for mini-batch sampling
+   */
+  public EM(int k, double delta, EMClusterModelFactory<O, M> mfactory, int miniter, int maxiter, double prior, boolean soft, int minibatch, RandomFactory rnd) {
     super();
     this.k = k;
     this.delta = delta;
@@ -212,6 +288,8 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     this.maxiter = maxiter;
     this.prior = prior;
     this.soft = soft;
+    this.minibatch = minibatch;
+    this.rnd = rnd;
   }
 
   @Override
@@ -234,10 +312,77 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     if(relation.size() == 0) {
       throw new IllegalArgumentException("database empty: must contain elements");
     }
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int n = ids.size();
     // initial models
     List<? extends EMClusterModel<O, M>> models = mfactory.buildInitialModels(relation, k);
-    WritableDataStore<double[]> probClusterIGivenX = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class);
-    double loglikelihood = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+    boolean needsTwoPass = false;
+    for(EMClusterModel<O, M> m : models) {
+      needsTwoPass |= m.needsTwoPass();
+    }
+    final boolean useMiniBatch = minibatch > 0 && minibatch < n;
+    if(useMiniBatch && needsTwoPass) {
+      LOG.warning("Two-pass cluster models do not support mini-batch EM, using full batch EM.");
+    }
+    // Hard assignment, and soft assignments if requested
+    final int[] assignment = new int[n];
+    final double[][] softprobs = soft ? new double[n][] : null;
+    int it;
+    if(useMiniBatch && !needsTwoPass) {
+      it = miniBatchEM(relation, ids, models);
+      // Assign all points with the final models.
+      assignObjects(relation, ids, models, assignment, softprobs);
+    }
+    else {
+      it = fullBatchEM(relation, ids, models, assignment, softprobs);
+    }
+    LOG.statistics(new LongStatistic(KEY + ".iterations", it));
+
+    // fill result with clusters and models
+    List<ModifiableDBIDs> hardClusters = new ArrayList<>(k);
+    for(int i = 0; i < k; i++) {
+      hardClusters.add(DBIDUtil.newArray());
+    }
+
+    // provide a hard clustering
+    for(DBIDArrayIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+      hardClusters.get(assignment[iditer.getOffset()]).add(iditer);
+    }
+    Clustering<M> result = new Clustering<>();
+    Metadata.of(result).setLongName("EM Clustering");
+    // provide models within the result
+    for(int i = 0; i < k; i++) {
+      result.addToplevelCluster(new Cluster<>(hardClusters.get(i), models.get(i).finalizeCluster()));
+    }
+    if(soft) {
+      WritableDataStore<double[]> probClusterIGivenX = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class);
+      for(DBIDArrayIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+        probClusterIGivenX.put(iditer, softprobs[iditer.getOffset()]);
+      }
+      Metadata.hierarchyOf(result).addChild(new MaterializedRelation<>("EM Cluster Probabilities", SOFT_TYPE, ids, probClusterIGivenX));
+    }
+    return result;
+  }
+
+  /**
+   * Full batch EM, using the posterior probabilities of all objects in every
+   * iteration.
+   *
+   * @param relation Relation
+   * @param ids Object ids
+   * @param models Cluster models to update
+   * @param assignment Output hard assignment
+   * @param softprobs Output soft assignment, may be {@code null}
+   * @return Number of iterations
+   */
+  private int fullBatchEM(Relation<O> relation, ArrayDBIDs ids, List<? extends EMClusterModel<O, M>> models, int[] assignment, double[][] softprobs) {
+    final int n = ids.size();
+    if((long) n * k > MAX_ARRAY_SIZE) {
+      throw new AbortException("Full batch EM does not scale to " + n + " objects and " + k + " clusters. Use mini-batch EM instead.");
+    }
+    // Posterior probabilities, n x k, and log likelihoods
+    double[] probs = new double[n * k], logp = new double[n];
+    double loglikelihood = expectationStep(relation, ids, null, models, probs, logp);
     DoubleStatistic likestat = new DoubleStatistic(this.getClass().getName() + ".loglikelihood");
     LOG.statistics(likestat.setDouble(loglikelihood));
 
@@ -246,9 +391,9 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
     double bestloglikelihood = loglikelihood; // For detecting instabilities.
     for(++it; it < maxiter || maxiter < 0; it++) {
       final double oldloglikelihood = loglikelihood;
-      recomputeCovarianceMatrices(relation, probClusterIGivenX, models, prior);
+      maximizationStep(relation, ids, models, probs, prior);
       // reassign probabilities
-      loglikelihood = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+      loglikelihood = expectationStep(relation, ids, null, models, probs, logp);
 
       LOG.statistics(likestat.setDouble(loglikelihood));
       if(loglikelihood - bestloglikelihood > delta) {
@@ -259,31 +404,295 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
         break;
       }
     }
-    LOG.statistics(new LongStatistic(KEY + ".iterations", it));
+    for(int j = 0, off = 0; j < n; j++, off += k) {
+      int best = 0;
+      for(int i = 1; i < k; i++) {
+        best = probs[off + i] > probs[off + best] ? i : best;
+      }
+      assignment[j] = best;
+      if(softprobs != null) {
+        softprobs[j] = Arrays.copyOfRange(probs, off, off + k);
+      }
+    }
+    return it;
+  }
 
-    // fill result with clusters and models
-    List<ModifiableDBIDs> hardClusters = new ArrayList<>(k);
+  /**
+   * Stepwise mini-batch EM. Each iteration only processes a random sample of
+   * the data, and the sufficient statistics are updated with a decaying step
+   * size (t+2)^-alpha.
+   *
+   * @param relation Relation
+   * @param ids Object ids
+   * @param models Cluster models to update
+   * @return Number of iterations
+   */
+  private int miniBatchEM(Relation<O> relation, ArrayDBIDs ids, List<? extends EMClusterModel<O, M>> models) {
+    final int n = ids.size(), b = minibatch;
+    if((long) b * k > MAX_ARRAY_SIZE) {
+      throw new AbortException("The mini-batch size " + b + " is too large for " + k + " clusters.");
+    }
+    final Random random = rnd.getSingleThreadedRandom();
+    final int[] sample = new int[b];
+    final double[] probs = new double[b * k], logp = new double[b];
+    // Aggregated sufficient statistics
+    List<EMClusterModel<O, M>> history = new ArrayList<>(k);
+    for(EMClusterModel<O, M> m : models) {
+      history.add(m.newPartialE());
+    }
+    double[] hwsum = new double[k];
+    DoubleStatistic likestat = new DoubleStatistic(this.getClass().getName() + ".loglikelihood");
+    double loglikelihood = Double.NaN, bestloglikelihood = Double.NEGATIVE_INFINITY;
+    int it = 0, lastimprovement = 0;
+    for(++it; it < maxiter || maxiter < 0; it++) {
+      for(int j = 0; j < b; j++) {
+        sample[j] = random.nextInt(n);
+      }
+      final double eta = FastMath.pow(it + 1, -STEPWISE_ALPHA);
+      final double oldloglikelihood = loglikelihood;
+      final double batchloglikelihood = expectationStep(relation, ids, sample, models, probs, logp);
+      loglikelihood = it == 1 ? batchloglikelihood : (1 - eta) * loglikelihood + eta * batchloglikelihood;
+      // Statistics of the current batch
+      List<EMClusterModel<O, M>> partial = new ArrayList<>(k);
+      for(EMClusterModel<O, M> m : models) {
+        partial.add(m.newPartialE());
+      }
+      double[] wsum = aggregate(relation, ids, sample, probs, models, partial, false);
+      // Stepwise update, scaled to the full data set size
+      final double scale = eta * n / b;
+      double total = 0.;
+      for(int i = 0; i < k; i++) {
+        EMClusterModel<O, M> h = models.get(i).newPartialE();
+        h.mergeE(history.get(i), 1 - eta);
+        h.mergeE(partial.get(i), scale);
+        history.set(i, h);
+        total += hwsum[i] = (1 - eta) * hwsum[i] + scale * wsum[i];
+      }
+      for(int i = 0; i < k; i++) {
+        EMClusterModel<O, M> m = models.get(i);
+        m.beginEStep();
+        m.mergeE(history.get(i), 1.);
+        // MLE / MAP
+        final double weight = prior <= 0. ? hwsum[i] / total : (hwsum[i] + prior - 1) / (total + prior * k - k);
+        m.finalizeEStep(weight, prior);
+      }
+
+      LOG.statistics(likestat.setDouble(loglikelihood));
+      if(loglikelihood - bestloglikelihood > delta) {
+        lastimprovement = it;
+        bestloglikelihood = loglikelihood;
+      }
+      if(it >= miniter && (Math.abs(loglikelihood - oldloglikelihood) <= delta || lastimprovement < it >> 1)) {
+        break;
+      }
+    }
+    return it;
+  }
+
+  /**
+   * Compute the posterior probabilities of a single object.
+   *
+   * @param vec Object
+   * @param models Cluster models
+   * @param probs Output posterior probabilities
+   * @param off Offset in the output array
+   * @param <O> Object type
+   * @return Log likelihood of the object
+   */
+  private static <O> double posterior(O vec, List<? extends EMClusterModel<O, ?>> models, double[] probs, int off) {
+    final int k = models.size();
     for(int i = 0; i < k; i++) {
-      hardClusters.add(DBIDUtil.newArray());
+      double v = models.get(i).estimateLogDensity(vec);
+      probs[off + i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
+    }
+    final double logP = logSumExp(probs, off, off + k);
+    for(int i = 0; i < k; i++) {
+      probs[off + i] = FastMath.exp(probs[off + i] - logP);
     }
+    return logP;
+  }
 
-    // provide a hard clustering
-    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      hardClusters.get(argmax(probClusterIGivenX.get(iditer))).add(iditer);
+  /**
+   * Compute the posterior probabilities of all objects (or of a sample) in
+   * parallel.
+   *
+   * @param relation Relation
+   * @param ids Object ids
+   * @param sample Sample offsets, or {@code null} to process all objects
+   * @param models Cluster models
+   * @param probs Output posterior probabilities (n x k)
+   * @param logp Temporary storage for the log likelihoods
+   * @param <O> Object type
+   * @return Average log likelihood
+   */
+  private static <O> double expectationStep(Relation<? extends O> relation, ArrayDBIDs ids, int[] sample, List<? extends EMClusterModel<O, ?>> models, double[] probs, double[] logp) {
+    final int k = models.size(), size = sample != null ? sample.length : ids.size();
+    ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+      DBIDArrayIter iter = ids.iter();
+      for(int j = start, off = start * k; j < end; j++, off += k) {
+        logp[j] = posterior(relation.get(iter.seek(sample != null ? sample[j] : j)), models, probs, off);
+      }
+    });
+    // Sum sequentially, so the result does not depend on the threads.
+    double emSum = 0.;
+    for(int j = 0; j < size; j++) {
+      emSum += logp[j];
     }
-    Clustering<M> result = new Clustering<>();
-    Metadata.of(result).setLongName("EM Clustering");
-    // provide models within the result
+    return emSum / size;
+  }
+
+  /**
+   * Assign all objects to the most likely cluster in parallel, without
+   * keeping the posterior probabilities of all objects in memory.
+   *
+   * @param relation Relation
+   * @param ids Object ids
+   * @param models Cluster models
+   * @param assignment Output hard assignment
+   * @param softprobs Output soft assignment, may be {@code null}
+   * @param <O> Object type
+   */
+  private static <O> void assignObjects(Relation<? extends O> relation, ArrayDBIDs ids, List<? extends EMClusterModel<O, ?>> models, int[] assignment, double[][] softprobs) {
+    final int k = models.size();
+    ParallelExecutor.run(0, ids.size(), MIN_BLOCK, (start, end) -> {
+      DBIDArrayIter iter = ids.iter();
+      double[] probs = new double[k];
+      for(int j = start; j < end; j++) {
+        posterior(relation.get(iter.seek(j)), models, probs, 0);
+        int best = 0;
+        for(int i = 1; i < k; i++) {
+          best = probs[i] > probs[best] ? i : best;
+        }
+        assignment[j] = best;
+        if(softprobs != null) {
+          softprobs[j] = probs.clone();
+        }
+      }
+    });
+  }
+
+  /**
+   * Recompute the cluster models from the posterior probabilities.
+   *
+   * @param relation Relation
+   * @param ids Object ids
+   * @param models Cluster models to update
+   * @param probs Posterior probabilities (n x k)
+   * @param prior MAP prior (use 0 for MLE)
+   * @param <O> Object type
+   * @param <M> Model type
+   */
+  private static <O, M extends Model> void maximizationStep(Relation<? extends O> relation, ArrayDBIDs ids, List<? extends EMClusterModel<O, M>> models, double[] probs, double prior) {
+    final int k = models.size(), n = ids.size();
+    boolean needsTwoPass = false;
+    for(EMClusterModel<?, ?> m : models) {
+      m.beginEStep();
+      needsTwoPass |= m.needsTwoPass();
+    }
+    // First pass, only for two-pass models.
+    if(needsTwoPass) {
+      aggregate(relation, ids, null, probs, models, models, true);
+      for(EMClusterModel<?, ?> m : models) {
+        m.finalizeFirstPassE();
+      }
+    }
+    double[] wsum = aggregate(relation, ids, null, probs, models, models, false);
     for(int i = 0; i < k; i++) {
-      result.addToplevelCluster(new Cluster<>(hardClusters.get(i), models.get(i).finalizeCluster()));
+      // MLE / MAP
+      final double weight = prior <= 0. ? wsum[i] / n : (wsum[i] + prior - 1) / (n + prior * k - k);
+      models.get(i).finalizeEStep(weight, prior);
     }
-    if(soft) {
-      Metadata.hierarchyOf(result).addChild(new MaterializedRelation<>("EM Cluster Probabilities", SOFT_TYPE, relation.getDBIDs(), probClusterIGivenX));
+  }
+
+  /**
+   * Aggregate the statistics for the M-step in parallel, using partial models
+   * that are merged afterwards.
+   * <p>
+   * The block boundaries only depend on the number of objects, and the blocks
+   * are merged in index order, so the rounding (and thus the result) does not
+   * depend on the number of threads.
+   *
+   * @param relation Relation
+   * @param ids Object ids
+   * @param sample Sample offsets, or {@code null} to process all objects
+   * @param probs Posterior probabilities (n x k)
+   * @param models Cluster models
+   * @param output Models to merge the results into
+   * @param firstPass Aggregate the first pass of two-pass models
+   * @param <O> Object type
+   * @param <M> Model type
+   * @return Sum of weights of each cluster
+   */
+  private static <O, M extends Model> double[] aggregate(Relation<? extends O> relation, ArrayDBIDs ids, int[] sample, double[] probs, List<? extends EMClusterModel<O, M>> models, List<? extends EMClusterModel<O, M>> output, boolean firstPass) {
+    final int k = models.size(), size = sample != null ? sample.length : ids.size();
+    final int blocksize = Math.max(MIN_AGGREGATE_BLOCK, (size + MAX_AGGREGATE_BLOCKS - 1) / MAX_AGGREGATE_BLOCKS);
+    final int numblocks = (size + blocksize - 1) / blocksize;
+    final List<PartialE<O, M>> parts = new ArrayList<>(Collections.nCopies(numblocks, (PartialE<O, M>) null));
+    ParallelExecutor.run(0, numblocks, 1, (bstart, bend) -> {
+      DBIDArrayIter iter = ids.iter();
+      for(int b = bstart; b < bend; b++) {
+        final int start = b * blocksize, end = Math.min(start + blocksize, size);
+        PartialE<O, M> part = new PartialE<>(models);
+        for(int j = start, off = start * k; j < end; j++, off += k) {
+          O vec = relation.get(iter.seek(sample != null ? sample[j] : j));
+          for(int i = 0; i < k; i++) {
+            final double prob = probs[off + i];
+            if(prob > 1e-10) {
+              if(firstPass) {
+                part.models.get(i).firstPassE(vec, prob);
+              }
+              else {
+                part.models.get(i).updateE(vec, prob);
+              }
+            }
+            part.wsum[i] += prob;
+          }
+        }
+        parts.set(b, part);
+      }
+    });
+    // Merge in index order:
+    double[] wsum = new double[k];
+    for(PartialE<O, M> part : parts) {
+      for(int i = 0; i < k; i++) {
+        output.get(i).mergeE(part.models.get(i), 1.);
+        wsum[i] += part.wsum[i];
+      }
     }
-    else {
-      probClusterIGivenX.destroy();
+    return wsum;
+  }
+
+  /**
+   * Partial statistics of one block.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   * @param <M> Model type
+   */
+  private static class PartialE<O, M extends Model> {
+    /**
+     * Partial models.
+     */
+    List<EMClusterModel<O, M>> models;
+
+    /**
+     * Sum of weights.
+     */
+    double[] wsum;
+
+    /**
+     * Constructor.
+     *
+     * @param models Models to create partial models for
+     */
+    PartialE(List<? extends EMClusterModel<O, M>> models) {
+      this.models = new ArrayList<>(models.size());
+      for(EMClusterModel<O, M> m : models) {
+        this.models.add(m.newPartialE());
+      }
+      this.wsum = new double[models.size()];
     }
-    return result;
   }
 
   /**
@@ -378,14 +787,26 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
    * @return Result
    */
   private static double logSumExp(double[] x) {
-    double max = x[0];
-    for(int i = 1; i < x.length; i++) {
+    return logSumExp(x, 0, x.length);
+  }
+
+  /**
+   * Compute log(sum(exp(x_i)), with attention to numerical issues.
+   * 
+   * @param x Input
+   * @param start First index (inclusive)
+   * @param end Last index (exclusive)
+   * @return Result
+   */
+  private static double logSumExp(double[] x, int start, int end) {
+    double max = x[start];
+    for(int i = start + 1; i < end; i++) {
       final double v = x[i];
       max = v > max ? v : max;
     }
     final double cutoff = max - 35.350506209; // log_e(2**51)
     double acc = 0.;
-    for(int i = 0; i < x.length; i++) {
+    for(int i = start; i < end; i++) {
       final double v = x[i];
       if(v > cutoff) {
         acc += v < max ? FastMath.exp(v - max) : 1.;
@@ -438,6 +859,16 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
      */
     public static final OptionID PRIOR_ID = new OptionID("em.map.prior", "Regularization factor for MAP estimation.");
 
+    /**
+     * Parameter to enable mini-batch EM, with the given batch size.
+     */
+    public static final OptionID MINIBATCH_ID = new OptionID("em.minibatch", "Mini-batch size for stepwise EM on large data sets. If not set, full batch EM is used.");
+
+    /**
+     * Random seed for mini-batch sampling.
+     */
+    public static final OptionID SEED_ID = new OptionID("em.seed", "Random generator seed for mini-batch sampling.");
+
     /**
      * Number of clusters.
      */
@@ -468,6 +899,16 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
      */
     double prior = 0.;
 
+    /**
+     * Mini-batch size.
+     */
+    protected int minibatch = 0;
+
+    /**
+     * Random generator for mini-batch sampling.
+     */
+    protected RandomFactory rnd = RandomFactory.DEFAULT;
+
     @Override
     public void configure(Parameterization config) {
       new IntParameter(K_ID) //
@@ -490,11 +931,17 @@ public class EM<O, M extends MeanModel> implements ClusteringAlgorithm<Clusterin
           .setOptional(true) //
           .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
           .grab(config, x -> prior = x);
+      if(new IntParameter(MINIBATCH_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .setOptional(true) //
+          .grab(config, x -> minibatch = x)) {
+        new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+      }
     }
 
     @Override
     public EM<O, M> make() {
-      return new EM<>(k, delta, initializer, miniter, maxiter, prior, false);
+      return new EM<>(k, delta, initializer, miniter, maxiter, prior, false, minibatch, rnd);
     }
   }
 }
@@ -75,6 +75,28 @@ public interface EMClusterModel<O, M extends Model> {
    */
   void updateE(O vec, double weight);
 
+  /**
+   * Create a new, empty model of the same type, to aggregate a partial E step
+   * (e.g., in a separate thread). The results can then be combined using
+   * {@link #mergeE}.
+   * <p>
+   * For two-pass models, the partial model of the second pass uses the mean
+   * of the first pass.
+   *
+   * @return Empty partial model
+   */
+  EMClusterModel<O, M> newPartialE();
+
+  /**
+   * Merge the aggregated statistics of a partial model (c.f.
+   * {@link #newPartialE()}) into the current E step, or into the current pass
+   * for two-pass models.
+   *
+   * @param partial Partial model
+   * @param scale Scaling factor for the weights of the partial model
+   */
+  void mergeE(EMClusterModel<O, M> partial, double scale);
+
   /**
    * Finalize the E step.
    * 
@@ -99,6 +99,16 @@ public class SphericalGaussianModel implements EMClusterModel<NumberVector, EMMo
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for an empty partial model.
+   *
+   * @param dim Dimensionality
+   */
+  private SphericalGaussianModel(int dim) {
+    this.mean = new double[dim];
+    this.nmea = new double[dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -131,6 +141,37 @@ public class SphericalGaussianModel implements EMClusterModel<NumberVector, EMMo
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public SphericalGaussianModel newPartialE() {
+    return new SphericalGaussianModel(mean.length);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, EMModel> partial, double scale) {
+    final SphericalGaussianModel other = (SphericalGaussianModel) partial;
+    final double owsum = other.wsum * scale;
+    if(owsum < Double.MIN_NORMAL) {
+      return;
+    }
+    final int dim = mean.length;
+    if(wsum < Double.MIN_NORMAL) { // Trivial case: copy
+      System.arraycopy(other.mean, 0, mean, 0, dim);
+      variance = other.variance * scale;
+      wsum = owsum;
+      return;
+    }
+    final double nwsum = wsum + owsum;
+    final double f = owsum / nwsum, g = wsum * f;
+    double sqdelta = 0.;
+    for(int i = 0; i < dim; i++) {
+      final double delta = other.mean[i] - mean[i];
+      sqdelta += delta * delta;
+      mean[i] += delta * f;
+    }
+    variance += other.variance * scale + sqdelta * g;
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = mean.length;
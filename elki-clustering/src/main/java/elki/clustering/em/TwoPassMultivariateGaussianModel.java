@@ -104,6 +104,17 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
     this.logNormDet = FastMath.log(weight) - .5 * logNorm - MultivariateGaussianModel.getHalfLogDeterminant(this.chol);
   }
 
+  /**
+   * Constructor for an empty partial model.
+   *
+   * @param mean Mean of the first pass (cleared in the first pass)
+   */
+  private TwoPassMultivariateGaussianModel(double[] mean) {
+    this.mean = mean.clone();
+    this.tmp = new double[mean.length];
+    this.covariance = new double[mean.length][mean.length];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -169,6 +180,35 @@ public class TwoPassMultivariateGaussianModel implements EMClusterModel<NumberVe
     }
   }
 
+  /**
+   * Partial model, starting at the current mean. In the first pass, the mean
+   * is cleared by {@link #beginEStep()}, so the partial model aggregates the
+   * weighted sum; in the second pass, it is centered at the finished mean.
+   */
+  @Override
+  public TwoPassMultivariateGaussianModel newPartialE() {
+    return new TwoPassMultivariateGaussianModel(mean);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<NumberVector, EMModel> partial, double scale) {
+    final TwoPassMultivariateGaussianModel other = (TwoPassMultivariateGaussianModel) partial;
+    final int dim = mean.length;
+    // Only the first pass aggregates weights (and the weighted sum).
+    if(other.wsum > 0) {
+      for(int i = 0; i < dim; i++) {
+        mean[i] += other.mean[i] * scale;
+      }
+      wsum += other.wsum * scale;
+    }
+    for(int i = 0; i < dim; i++) {
+      final double[] cov_i = covariance[i], ocov_i = other.covariance[i];
+      for(int j = 0; j <= i; j++) {
+        cov_i[j] += ocov_i[j] * scale;
+      }
+    }
+  }
+
   @Override
   public void finalizeEStep(double weight, double prior) {
     final int dim = covariance.length;
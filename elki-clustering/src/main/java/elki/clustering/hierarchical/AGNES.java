@@ -38,11 +38,13 @@ import elki.distance.minkowski.EuclideanDistance;
 import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.Alias;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -113,6 +115,16 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    */
   private static final Logging LOG = Logging.getLogger(AGNES.class);
 
+  /**
+   * Minimum number of rows per thread when initializing the matrix.
+   */
+  protected static final int MIN_INIT_BLOCK = 64;
+
+  /**
+   * Minimum number of entries per thread when updating the matrix.
+   */
+  protected static final int MIN_UPDATE_BLOCK = 4096;
+
   /**
    * Distance function used.
    */
@@ -123,6 +135,11 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    */
   protected Linkage linkage = WardLinkage.STATIC;
 
+  /**
+   * Store the distance matrix with single precision.
+   */
+  protected boolean singlePrecision;
+
   /**
    * Constructor.
    *
@@ -130,9 +147,21 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    * @param linkage Linkage method
    */
   public AGNES(Distance<? super O> distance, Linkage linkage) {
+    this(distance, linkage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function to use
+   * @param linkage Linkage method
+   * @param singlePrecision Store the distance matrix with single precision
+   */
+  public AGNES(Distance<? super O> distance, Linkage linkage, boolean singlePrecision) {
     super();
     this.distance = distance;
     this.linkage = linkage;
+    this.singlePrecision = singlePrecision;
   }
 
   /**
@@ -150,7 +179,7 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
     DistanceQuery<O> dq = new QueryBuilder<>(relation, distance).distanceQuery();
 
     // Compute the initial (lower triangular) distance matrix.
-    MatrixParadigm mat = new MatrixParadigm(ids);
+    MatrixParadigm mat = new MatrixParadigm(ids, singlePrecision);
     initializeDistanceMatrix(mat, dq, linkage);
 
     // Initialize space for result:
@@ -197,25 +226,21 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    * @param linkage Linkage method
    */
   protected static void initializeDistanceMatrix(MatrixParadigm mat, DistanceQuery<?> dq, Linkage linkage) {
-    final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] matrix = mat.matrix;
+    final MatrixParadigm.Storage matrix = mat.matrix;
     final boolean issquare = dq.getDistance().isSquared();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Distance matrix computation", matrix.length, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      final int x = ix.getOffset();
-      assert (pos == MatrixParadigm.triangleSize(x));
-      for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = linkage.initial(dq.distance(ix, iy), issquare);
-      }
-      if(prog != null) {
-        prog.setProcessed(pos, LOG);
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Distance matrix computation", mat.size, LOG) : null;
+    ParallelExecutor.run(0, mat.size, MIN_INIT_BLOCK, (start, end) -> {
+      final DBIDArrayIter ix = mat.iter(), iy = mat.iter();
+      long pos = MatrixParadigm.triangleSize(start);
+      for(ix.seek(start); ix.getOffset() < end; ix.advance()) {
+        final int x = ix.getOffset();
+        assert (pos == MatrixParadigm.triangleSize(x));
+        for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
+          matrix.set(pos++, linkage.initial(dq.distance(ix, iy), issquare));
+        }
+        LOG.incrementProcessed(prog);
       }
-    }
-    // Avoid logging errors in case scratch space was too large:
-    if(prog != null) {
-      prog.setProcessed(matrix.length, LOG);
-    }
+    });
     LOG.ensureCompleted(prog);
   }
 
@@ -230,11 +255,12 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
   protected int findMerge(int end, MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder) {
     assert (end > 0);
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] matrix = mat.matrix;
+    final MatrixParadigm.Storage matrix = mat.matrix;
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
     // Find minimum:
-    for(int ox = 0, xbase = 0; ox < end; xbase += ox++) {
+    long xbase = 0;
+    for(int ox = 0; ox < end; xbase += ox++) {
       // Skip if object has already joined a cluster:
       if(builder.isLinked(ix.seek(ox))) {
         continue;
@@ -245,7 +271,7 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
         if(builder.isLinked(iy.seek(oy))) {
           continue;
         }
-        final double dist = matrix[xbase + oy];
+        final double dist = matrix.get(xbase + oy);
         if(dist <= mindist) { // Prefer later on ==, to truncate more often.
           mindist = dist;
           x = ox;
@@ -287,6 +313,9 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
 
   /**
    * Update the scratch distance matrix.
+   * <p>
+   * For large data sets, the Lance-Williams update is executed in parallel
+   * blocks, as every entry can be updated independently.
    *
    * @param end Active set size
    * @param mat Matrix view
@@ -298,40 +327,64 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
    * @param sizey Old size of second cluster
    */
   protected void updateMatrix(int end, MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+    ParallelExecutor.run(0, end, MIN_UPDATE_BLOCK, (start, stop) -> {
+      // Reuse the existing iterator if we are not running in parallel:
+      final DBIDArrayIter ij = start == 0 && stop == end ? mat.ix : mat.iter();
+      updateMatrix(start, stop, mat.matrix, ij, builder, mindist, x, y, sizex, sizey);
+    });
+  }
+
+  /**
+   * Update a block of the scratch distance matrix.
+   *
+   * @param start First entry to update
+   * @param stop End of block (exclusive)
+   * @param scratch Scratch matrix
+   * @param ij Iterator to reuse
+   * @param builder Hierarchy builder (to get cluster sizes)
+   * @param mindist Distance that was used for merging
+   * @param x First matrix position
+   * @param y Second matrix position
+   * @param sizex Old size of first cluster
+   * @param sizey Old size of second cluster
+   */
+  protected void updateMatrix(int start, int stop, MatrixParadigm.Storage scratch, DBIDArrayIter ij, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: y < x
-    final int xbase = MatrixParadigm.triangleSize(x);
-    final int ybase = MatrixParadigm.triangleSize(y);
-    double[] scratch = mat.matrix;
-    DBIDArrayIter ij = mat.ix;
+    final long xbase = MatrixParadigm.triangleSize(x);
+    final long ybase = MatrixParadigm.triangleSize(y);
 
     // Write to (y, j), with j < y
-    int j = 0;
-    for(; j < y; j++) {
+    int j = start;
+    for(; j < y && j < stop; j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       assert (j < y); // Otherwise, ybase + j is the wrong position!
-      final int yb = ybase + j;
-      scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], builder.getSize(ij), mindist);
+      final long yb = ybase + j;
+      scratch.set(yb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), builder.getSize(ij), mindist));
+    }
+    if(j == y) {
+      j++; // Skip y
     }
-    j++; // Skip y
     // Write to (j, y), with y < j < x
-    int jbase = MatrixParadigm.triangleSize(j);
-    for(; j < x; jbase += j++) {
+    long jbase = MatrixParadigm.triangleSize(j);
+    for(; j < x && j < stop; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
-      final int jb = jbase + y;
-      scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], builder.getSize(ij), mindist);
+      final long jb = jbase + y;
+      scratch.set(jb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), builder.getSize(ij), mindist));
+    }
+    if(j == x) {
+      jbase += j++; // Skip x
     }
-    jbase += j++; // Skip x
     // Write to (j, y), with y < x < j
-    for(; j < end; jbase += j++) {
+    for(; j < stop; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
-      final int jb = jbase + y;
-      scratch[jb] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jb], builder.getSize(ij), mindist);
+      final long jb = jbase + y;
+      scratch.set(jb, linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jb), builder.getSize(ij), mindist));
     }
   }
 
@@ -355,6 +408,11 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
      */
     public static final OptionID LINKAGE_ID = new OptionID("hierarchical.linkage", "Linkage method to use (e.g. Ward, Single-Link)");
 
+    /**
+     * Option ID for single precision matrix storage.
+     */
+    public static final OptionID FLOAT_ID = new OptionID("hierarchical.float", "Store the distance matrix with single precision, to halve the memory requirements.");
+
     /**
      * Current linkage in use.
      */
@@ -365,6 +423,11 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
      */
     protected Distance<? super O> distance;
 
+    /**
+     * Store the distance matrix with single precision.
+     */
+    protected boolean singlePrecision;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Linkage>(LINKAGE_ID, Linkage.class) //
@@ -374,11 +437,12 @@ public class AGNES<O> implements HierarchicalClusteringAlgorithm {
           ? SquaredEuclideanDistance.class : EuclideanDistance.class;
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, defaultD) //
           .grab(config, x -> distance = x);
+      new Flag(FLOAT_ID).grab(config, x -> singlePrecision = x);
     }
 
     @Override
     public AGNES<O> make() {
-      return new AGNES<>(distance, linkage);
+      return new AGNES<>(distance, linkage, singlePrecision);
     }
   }
 }
@@ -40,10 +40,12 @@ import elki.distance.minkowski.EuclideanDistance;
 import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.Priority;
 import elki.utilities.documentation.Reference;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -95,6 +97,11 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    */
   protected Linkage linkage = WardLinkage.STATIC;
 
+  /**
+   * Store the distance matrix with single precision.
+   */
+  protected boolean singlePrecision;
+
   /**
    * Constructor.
    *
@@ -102,9 +109,21 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * @param linkage Linkage method
    */
   public Anderberg(Distance<? super O> distance, Linkage linkage) {
+    this(distance, linkage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function to use
+   * @param linkage Linkage method
+   * @param singlePrecision Store the distance matrix with single precision
+   */
+  public Anderberg(Distance<? super O> distance, Linkage linkage, boolean singlePrecision) {
     super();
     this.distance = distance;
     this.linkage = linkage;
+    this.singlePrecision = singlePrecision;
   }
 
   /**
@@ -119,7 +138,7 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     }
     DistanceQuery<O> dq = new QueryBuilder<>(relation, distance).distanceQuery();
     final DBIDs ids = relation.getDBIDs();
-    MatrixParadigm mat = new MatrixParadigm(ids);
+    MatrixParadigm mat = new MatrixParadigm(ids, singlePrecision);
     final int size = ids.size();
 
     // Position counter - must agree with computeOffset!
@@ -153,17 +172,17 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * @param bestd Best distance
    * @param besti Best index
    */
-  protected static void initializeNNCache(double[] scratch, double[] bestd, int[] besti) {
+  protected static void initializeNNCache(MatrixParadigm.Storage scratch, double[] bestd, int[] besti) {
     final int size = bestd.length;
     Arrays.fill(bestd, Double.POSITIVE_INFINITY);
     Arrays.fill(besti, -1);
     besti[0] = Integer.MAX_VALUE; // invalid, but not deactivated
-    int p = 0;
+    long p = 0;
     for(int x = 1; x < size; x++) {
       double bestdx = Double.POSITIVE_INFINITY;
       int bestix = -1;
       for(int y = 0; y < x; y++) {
-        final double v = scratch[p++];
+        final double v = scratch.get(p++);
         if(v < bestdx) {
           bestdx = v;
           bestix = y;
@@ -236,7 +255,7 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
     final int sizex = builder.getSize(ix), sizey = builder.getSize(iy);
     builder.setSize(iy, sizex + sizey);
     besti[x] = -1; // Deactivate removed cluster.
-    updateMatrix(size, mat.matrix, iy, bestd, besti, builder, mindist, x, y, sizex, sizey);
+    updateMatrix(size, mat, bestd, besti, builder, mindist, x, y, sizex, sizey);
     if(y > 0) {
       findBest(mat.matrix, bestd, besti, y);
     }
@@ -244,8 +263,35 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
 
   /**
    * Update the scratch distance matrix.
+   * <p>
+   * For large data sets, the Lance-Williams update and the maintenance of the
+   * nearest neighbor cache are executed in parallel blocks; every row only
+   * modifies its own cache entry.
    *
    * @param size Data set size
+   * @param mat Matrix paradigm
+   * @param bestd Best distance
+   * @param besti Index of best distance
+   * @param builder Hierarchy builder
+   * @param mindist Distance that was used for merging
+   * @param x First matrix position
+   * @param y Second matrix position
+   * @param sizex Old size of first cluster, with {@code x > y}
+   * @param sizey Old size of second cluster, with {@code y > x}
+   */
+  protected void updateMatrix(int size, MatrixParadigm mat, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+    ParallelExecutor.run(0, size, AGNES.MIN_UPDATE_BLOCK, (start, stop) -> {
+      // Reuse the existing iterator if we are not running in parallel:
+      final DBIDArrayIter ij = start == 0 && stop == size ? mat.iy : mat.iter();
+      updateMatrix(start, stop, mat.matrix, ij, bestd, besti, builder, mindist, x, y, sizex, sizey);
+    });
+  }
+
+  /**
+   * Update a block of the scratch distance matrix.
+   *
+   * @param start First entry to update
+   * @param stop End of block (exclusive)
    * @param scratch Scratch matrix.
    * @param ij Iterator to reuse
    * @param bestd Best distance
@@ -257,44 +303,48 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * @param sizex Old size of first cluster, with {@code x > y}
    * @param sizey Old size of second cluster, with {@code y > x}
    */
-  protected void updateMatrix(int size, double[] scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+  protected void updateMatrix(int start, int stop, MatrixParadigm.Storage scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: miny < minx
-    final int xbase = MatrixParadigm.triangleSize(x);
-    final int ybase = MatrixParadigm.triangleSize(y);
+    final long xbase = MatrixParadigm.triangleSize(x);
+    final long ybase = MatrixParadigm.triangleSize(y);
 
     // Write to (y, j), with j < y
-    int j = 0;
-    for(; j < y; j++) {
+    int j = start;
+    for(; j < y && j < stop; j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int yb = ybase + j;
-      final double d = scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], sizej, mindist);
-      updateCache(scratch, bestd, besti, x, y, j, d);
+      final long yb = ybase + j;
+      scratch.set(yb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), sizej, mindist));
+      updateCache(scratch, bestd, besti, x, y, j, scratch.get(yb));
+    }
+    if(j == y) {
+      j++; // Skip y
     }
-    j++; // Skip y
     // Write to (j, y), with y < j < x
-    int jbase = MatrixParadigm.triangleSize(j);
-    for(; j < x; jbase += j++) {
+    long jbase = MatrixParadigm.triangleSize(j);
+    for(; j < x && j < stop; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], sizej, mindist);
-      updateCache(scratch, bestd, besti, x, y, j, d);
+      final long jb = jbase + y;
+      scratch.set(jb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), sizej, mindist));
+      updateCache(scratch, bestd, besti, x, y, j, scratch.get(jb));
+    }
+    if(j == x) {
+      jbase += j++; // Skip x
     }
-    jbase += j++; // Skip x
     // Write to (j, y), with y < x < j
-    for(; j < size; jbase += j++) {
+    for(; j < stop; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jb], sizej, mindist);
-      updateCache(scratch, bestd, besti, x, y, j, d);
+      final long jb = jbase + y;
+      scratch.set(jb, linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jb), sizej, mindist));
+      updateCache(scratch, bestd, besti, x, y, j, scratch.get(jb));
     }
   }
 
@@ -309,7 +359,7 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * @param j Updated value d(y, j)
    * @param d New distance
    */
-  protected static void updateCache(double[] scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
+  protected static void updateCache(MatrixParadigm.Storage scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
     assert y < x;
     // New best
     if(y < j && d <= bestd[j]) {
@@ -331,15 +381,16 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
    * @param besti Best indexes cache
    * @param j Row to update
    */
-  protected static void findBest(double[] scratch, double[] bestd, int[] besti, int j) {
+  protected static void findBest(MatrixParadigm.Storage scratch, double[] bestd, int[] besti, int j) {
     // The distance has increased, we may no longer be the best merge.
     double bestdj = Double.POSITIVE_INFINITY;
     int bestij = -1;
-    for(int i = 0, o = MatrixParadigm.triangleSize(j); i < j; i++, o++) {
+    long o = MatrixParadigm.triangleSize(j);
+    for(int i = 0; i < j; i++, o++) {
       if(besti[i] < 0) {
         continue;
       }
-      final double dist = scratch[o];
+      final double dist = scratch.get(o);
       if(dist <= bestdj) {
         bestdj = dist;
         bestij = i;
@@ -375,6 +426,11 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
      */
     protected Distance<? super O> distance;
 
+    /**
+     * Store the distance matrix with single precision.
+     */
+    protected boolean singlePrecision;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<Linkage>(AGNES.Par.LINKAGE_ID, Linkage.class) //
@@ -384,11 +440,12 @@ public class Anderberg<O> implements HierarchicalClusteringAlgorithm {
           ? SquaredEuclideanDistance.class : EuclideanDistance.class;
       new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, defaultD) //
           .grab(config, x -> distance = x);
+      new Flag(AGNES.Par.FLOAT_ID).grab(config, x -> singlePrecision = x);
     }
 
     @Override
     public Anderberg<O> make() {
-      return new Anderberg<>(distance, linkage);
+      return new Anderberg<>(distance, linkage, singlePrecision);
     }
   }
 }
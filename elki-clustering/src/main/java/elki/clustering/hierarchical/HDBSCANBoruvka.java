@@ -0,0 +1,794 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical;
+
+import java.util.Arrays;
+
+import elki.Algorithm;
+import elki.data.ModifiableHyperBoundingBox;
+import elki.data.NumberVector;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.*;
+import elki.database.ids.*;
+import elki.database.relation.Relation;
+import elki.distance.SpatialPrimitiveDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.Duration;
+import elki.logging.statistics.LongStatistic;
+import elki.math.MathUtil;
+import elki.parallel.Executor;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.Processor;
+import elki.utilities.datastructures.heap.DoubleLongHeap;
+import elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import elki.utilities.datastructures.heap.DoubleMaxHeap;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * HDBSCAN clustering using a k-d-tree accelerated variant of Borůvka's
+ * minimum spanning tree algorithm.
+ * <p>
+ * Instead of computing all pairwise distances as in
+ * {@link HDBSCANLinearMemory}, the data is organized in a k-d-tree, and in each
+ * Borůvka round we search for every point the nearest neighbor (with respect to
+ * the mutual reachability distance) that is in a different component. Subtrees
+ * are pruned if they belong entirely to the same component, if their bounding
+ * box is too far away, or if their minimum core distance is too large. Because
+ * the mutual reachability distance is bounded from below by the core distance
+ * of the query point, the search can stop as soon as a neighbor within the core
+ * distance was found. The searches of each round are independent, and are
+ * executed in parallel.
+ * <p>
+ * The core distances are also computed using the k-d-tree, in parallel.
+ * <p>
+ * With {@code minPts=1}, every core distance is zero, and this computes the
+ * Euclidean minimum spanning tree, i.e., single-linkage clustering as in
+ * {@link SLINK}.
+ * <p>
+ * This implementation does <em>not</em> include the cluster extraction
+ * discussed as Step 4, which is provided in a separate step. For this reason,
+ * we also do <em>not include self-edges</em>.
+ * <p>
+ * Reference:
+ * <p>
+ * W. B. March, P. Ram, A. G. Gray<br>
+ * Fast Euclidean Minimum Spanning Tree: Algorithm, Analysis, and
+ * Applications<br>
+ * Proc. 16th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining
+ * <p>
+ * L. McInnes, J. Healy<br>
+ * Accelerated Hierarchical Density Based Clustering<br>
+ * IEEE Int. Conf. Data Mining Workshops (ICDMW)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - PointerDensityHierarchyRepresentationResult
+ * @composed - - - KDNode
+ * @has - - - CoreDistanceProcessor
+ * @has - - - NearestComponentProcessor
+ *
+ * @param <O> Object type
+ */
+@Title("HDBSCAN with Borůvka's MST algorithm on a k-d-tree")
+@Reference(authors = "W. B. March, P. Ram, A. G. Gray", //
+    title = "Fast Euclidean Minimum Spanning Tree: Algorithm, Analysis, and Applications", //
+    booktitle = "Proc. 16th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining", //
+    url = "https://doi.org/10.1145/1835804.1835882", //
+    bibkey = "DBLP:conf/kdd/MarchRG10")
+@Reference(authors = "L. McInnes, J. Healy", //
+    title = "Accelerated Hierarchical Density Based Clustering", //
+    booktitle = "IEEE Int. Conf. Data Mining Workshops (ICDMW)", //
+    url = "https://doi.org/10.1109/ICDMW.2017.12", //
+    bibkey = "DBLP:conf/icdm/McInnesH17")
+public class HDBSCANBoruvka<O extends NumberVector> extends AbstractHDBSCAN<O> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(HDBSCANBoruvka.class);
+
+  /**
+   * Spatial distance function (for bounding box pruning).
+   */
+  protected SpatialPrimitiveDistance<? super O> spatialdistance;
+
+  /**
+   * Leaf size of the k-d-tree.
+   */
+  protected int leafsize;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param minPts Minimum number of points for density
+   * @param leafsize Leaf size of the k-d-tree
+   */
+  public HDBSCANBoruvka(SpatialPrimitiveDistance<? super O> distance, int minPts, int leafsize) {
+    super(distance, minPts);
+    this.spatialdistance = distance;
+    this.leafsize = leafsize;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerDensityHierarchyRepresentationResult run(Relation<O> relation) {
+    final String prefix = getClass().getName();
+    final int size = relation.size();
+    // 0. Build the k-d-tree, which also defines the array positions we use.
+    Duration construction = LOG.newDuration(prefix + ".k-d-tree-construction").begin();
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(relation.getDBIDs());
+    KDNode root = size > 0 ? buildTree(relation, ids, ids.iter(), 0, size) : null;
+    WritableIntegerDataStore pos = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      pos.putInt(iter, iter.getOffset());
+    }
+    LOG.statistics(construction.end());
+
+    // 1. Compute the core distances, in parallel.
+    double[] core = new double[size];
+    if(root != null) {
+      ParallelExecutor.run(ids, new CoreDistanceProcessor<>(relation, spatialdistance, ids, pos, root, minPts, core));
+      root.updateMinCore(core);
+    }
+    WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      coredists.putDouble(iter, core[iter.getOffset()]);
+    }
+
+    // 2. Build spanning tree with Borůvka's algorithm.
+    final int numedges = size > 0 ? size - 1 : 0;
+    DoubleLongHeap heap = new DoubleLongMinHeap(numedges);
+    FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges)", numedges, LOG) : null;
+    HeapMSTCollector collector = new HeapMSTCollector(heap, mprog, LOG);
+    int[] parent = MathUtil.sequence(0, size), comp = MathUtil.sequence(0, size);
+    int[] bestTarget = new int[size], compBest = new int[size];
+    double[] bestDist = new double[size];
+    NearestComponentProcessor<O> nproc = new NearestComponentProcessor<>(relation, spatialdistance, ids, pos, root, core, comp, bestDist, bestTarget);
+    int components = size, rounds = 0;
+    while(components > 1) {
+      ++rounds;
+      root.updateComponent(comp);
+      ParallelExecutor.run(ids, nproc);
+      // Choose the best outgoing edge of each component:
+      Arrays.fill(compBest, -1);
+      for(int i = 0; i < size; i++) {
+        if(bestTarget[i] < 0) {
+          continue;
+        }
+        final int c = comp[i], b = compBest[c];
+        if(b < 0 || compareEdges(bestDist[i], i, bestTarget[i], bestDist[b], b, bestTarget[b]) < 0) {
+          compBest[c] = i;
+        }
+      }
+      // Merge components:
+      for(int c = 0; c < size; c++) {
+        final int i = compBest[c];
+        if(i < 0) {
+          continue;
+        }
+        final int j = bestTarget[i], ri = find(parent, i), rj = find(parent, j);
+        if(ri == rj) {
+          continue; // Same edge chosen by both components.
+        }
+        parent[ri < rj ? rj : ri] = ri < rj ? ri : rj;
+        collector.addEdge(bestDist[i], i, j);
+        --components;
+      }
+      for(int i = 0; i < size; i++) {
+        comp[i] = find(parent, i);
+      }
+    }
+    LOG.ensureCompleted(mprog);
+    LOG.statistics(new LongStatistic(prefix + ".boruvka-rounds", rounds));
+
+    // Storage for pointer representation:
+    WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
+    convertToPointerRepresentation(ids, heap, pi, lambda);
+    return new PointerDensityHierarchyRepresentationResult(ids, pi, lambda, spatialdistance.isSquared(), coredists);
+  }
+
+  /**
+   * Find the component of an object, with path compression.
+   *
+   * @param parent Parent array
+   * @param i Object index
+   * @return Component root
+   */
+  private static int find(int[] parent, int i) {
+    int r = i;
+    while(parent[r] != r) {
+      r = parent[r];
+    }
+    while(parent[i] != r) {
+      final int n = parent[i];
+      parent[i] = r;
+      i = n;
+    }
+    return r;
+  }
+
+  /**
+   * Compare two edges by length, breaking ties by the indexes to make the
+   * choice of the outgoing edge of a component deterministic.
+   *
+   * @param d1 First edge length
+   * @param a1 First edge source
+   * @param b1 First edge target
+   * @param d2 Second edge length
+   * @param a2 Second edge source
+   * @param b2 Second edge target
+   * @return Comparison result
+   */
+  private static int compareEdges(double d1, int a1, int b1, double d2, int a2, int b2) {
+    int c = Double.compare(d1, d2);
+    if(c != 0) {
+      return c;
+    }
+    c = Integer.compare(a1 < b1 ? a1 : b1, a2 < b2 ? a2 : b2);
+    return c != 0 ? c : Integer.compare(a1 > b1 ? a1 : b1, a2 > b2 ? a2 : b2);
+  }
+
+  /**
+   * Build the k-d-tree using midpoint splitting.
+   *
+   * @param relation Data relation
+   * @param sorted Sorted ids
+   * @param iter Iterator on the sorted ids
+   * @param left Left subinterval
+   * @param right Right subinterval
+   * @return Root node
+   */
+  protected KDNode buildTree(Relation<? extends NumberVector> relation, ArrayModifiableDBIDs sorted, DBIDArrayIter iter, int left, int right) {
+    KDNode node = new KDNode(relation, iter, left, right);
+    if(right - left <= leafsize) {
+      return node;
+    }
+    final double[] min = node.box.getMinRef(), max = node.box.getMaxRef();
+    int dim = 0;
+    for(int d = 1; d < min.length; d++) {
+      if(max[d] - min[d] > max[dim] - min[dim]) {
+        dim = d;
+      }
+    }
+    final double mid = 0.5 * (min[dim] + max[dim]);
+    int l = left, r = right - 1;
+    while(true) {
+      while(l <= r && relation.get(iter.seek(l)).doubleValue(dim) <= mid) {
+        ++l;
+      }
+      while(l <= r && relation.get(iter.seek(r)).doubleValue(dim) >= mid) {
+        --r;
+      }
+      if(l >= r) {
+        break;
+      }
+      sorted.swap(l++, r--);
+    }
+    ++r;
+    if(r == right) { // Duplicate points!
+      return node;
+    }
+    node.leftChild = buildTree(relation, sorted, iter, left, r);
+    node.rightChild = buildTree(relation, sorted, iter, r, right);
+    return node;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Node of the k-d-tree used internally.
+   *
+   * @author Erich Schubert
+   */
+  protected static class KDNode {
+    /**
+     * Bounding box of the node.
+     */
+    ModifiableHyperBoundingBox box;
+
+    /**
+     * Left child node
+     */
+    KDNode leftChild;
+
+    /**
+     * Right child node
+     */
+    KDNode rightChild;
+
+    /**
+     * First index of child nodes.
+     */
+    int start;
+
+    /**
+     * End index of child nodes (exclusive).
+     */
+    int end;
+
+    /**
+     * Minimum core distance in this node.
+     */
+    double minCore;
+
+    /**
+     * Component of all points in this node, or -1 if mixed.
+     */
+    int component = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data
+     * @param iter Iterator on the sorted ids.
+     * @param start First index
+     * @param end Last index (exclusive)
+     */
+    public KDNode(Relation<? extends NumberVector> relation, DBIDArrayIter iter, int start, int end) {
+      this.start = start;
+      this.end = end;
+      this.box = new ModifiableHyperBoundingBox(relation.get(iter.seek(start)));
+      for(iter.advance(); iter.getOffset() < end; iter.advance()) {
+        box.extend(relation.get(iter));
+      }
+    }
+
+    /**
+     * Update the minimum core distances of the subtree.
+     *
+     * @param core Core distances
+     * @return Minimum core distance
+     */
+    protected double updateMinCore(double[] core) {
+      if(leftChild != null) {
+        return minCore = Math.min(leftChild.updateMinCore(core), rightChild.updateMinCore(core));
+      }
+      double m = Double.POSITIVE_INFINITY;
+      for(int i = start; i < end; i++) {
+        m = core[i] < m ? core[i] : m;
+      }
+      return minCore = m;
+    }
+
+    /**
+     * Update the component labels of the subtree.
+     *
+     * @param comp Component labels of the points
+     * @return Component of the node, or -1 if mixed
+     */
+    protected int updateComponent(int[] comp) {
+      if(leftChild != null) {
+        final int l = leftChild.updateComponent(comp);
+        final int r = rightChild.updateComponent(comp);
+        return component = (l == r) ? l : -1;
+      }
+      final int c = comp[start];
+      for(int i = start + 1; i < end; i++) {
+        if(comp[i] != c) {
+          return component = -1;
+        }
+      }
+      return component = c;
+    }
+  }
+
+  /**
+   * Processor to compute the core distances using the k-d-tree.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  protected static class CoreDistanceProcessor<O extends NumberVector> implements Processor {
+    /**
+     * Data relation.
+     */
+    private Relation<O> relation;
+
+    /**
+     * Distance function.
+     */
+    private SpatialPrimitiveDistance<? super O> distance;
+
+    /**
+     * Ids, in k-d-tree order.
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Position of each object in the k-d-tree order.
+     */
+    private IntegerDataStore pos;
+
+    /**
+     * Tree root.
+     */
+    private KDNode root;
+
+    /**
+     * Number of neighbors (including the query point).
+     */
+    private int minPts;
+
+    /**
+     * Output core distances.
+     */
+    private double[] core;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param distance Distance function
+     * @param ids Ids, in k-d-tree order
+     * @param pos Position of each object in the k-d-tree order
+     * @param root Tree root
+     * @param minPts Number of neighbors (including the query point)
+     * @param core Output core distances
+     */
+    public CoreDistanceProcessor(Relation<O> relation, SpatialPrimitiveDistance<? super O> distance, ArrayDBIDs ids, IntegerDataStore pos, KDNode root, int minPts, double[] core) {
+      super();
+      this.relation = relation;
+      this.distance = distance;
+      this.ids = ids;
+      this.pos = pos;
+      this.root = root;
+      this.minPts = minPts;
+      this.core = core;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      // Nothing to do.
+    }
+
+    /**
+     * Instance for a single thread.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Iterator into the sorted ids.
+       */
+      private DBIDArrayIter iter = ids.iter();
+
+      /**
+       * Heap of the nearest neighbor distances.
+       */
+      private DoubleMaxHeap heap = new DoubleMaxHeap(minPts);
+
+      /**
+       * Current query object.
+       */
+      private O obj;
+
+      @Override
+      public void map(DBIDRef id) {
+        obj = relation.get(id);
+        heap.clear();
+        search(root);
+        core[pos.intValue(id)] = heap.peek();
+      }
+
+      /**
+       * Recursive k-nearest neighbor search.
+       *
+       * @param node Current node
+       */
+      private void search(KDNode node) {
+        if(node.leftChild != null) {
+          final double ld = distance.minDist(obj, node.leftChild.box);
+          final double rd = distance.minDist(obj, node.rightChild.box);
+          final boolean leftfirst = ld <= rd;
+          final double d1 = leftfirst ? ld : rd, d2 = leftfirst ? rd : ld;
+          if(heap.size() < minPts || d1 <= heap.peek()) {
+            search(leftfirst ? node.leftChild : node.rightChild);
+          }
+          if(heap.size() < minPts || d2 <= heap.peek()) {
+            search(leftfirst ? node.rightChild : node.leftChild);
+          }
+          return;
+        }
+        for(iter.seek(node.start); iter.getOffset() < node.end; iter.advance()) {
+          final double d = distance.distance(obj, relation.get(iter));
+          if(heap.size() < minPts) {
+            heap.add(d);
+          }
+          else if(d < heap.peek()) {
+            heap.replaceTopElement(d);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Processor to find the nearest neighbor in a different component, with
+   * respect to the mutual reachability distance.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  protected static class NearestComponentProcessor<O extends NumberVector> implements Processor {
+    /**
+     * Data relation.
+     */
+    private Relation<O> relation;
+
+    /**
+     * Distance function.
+     */
+    private SpatialPrimitiveDistance<? super O> distance;
+
+    /**
+     * Ids, in k-d-tree order.
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Position of each object in the k-d-tree order.
+     */
+    private IntegerDataStore pos;
+
+    /**
+     * Tree root.
+     */
+    private KDNode root;
+
+    /**
+     * Core distances.
+     */
+    private double[] core;
+
+    /**
+     * Current component assignment.
+     */
+    private int[] comp;
+
+    /**
+     * Output: best distance.
+     */
+    private double[] bestDist;
+
+    /**
+     * Output: best target, or -1.
+     */
+    private int[] bestTarget;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param distance Distance function
+     * @param ids Ids, in k-d-tree order
+     * @param pos Position of each object in the k-d-tree order
+     * @param root Tree root
+     * @param core Core distances
+     * @param comp Component assignment
+     * @param bestDist Output: best distance
+     * @param bestTarget Output: best target
+     */
+    public NearestComponentProcessor(Relation<O> relation, SpatialPrimitiveDistance<? super O> distance, ArrayDBIDs ids, IntegerDataStore pos, KDNode root, double[] core, int[] comp, double[] bestDist, int[] bestTarget) {
+      super();
+      this.relation = relation;
+      this.distance = distance;
+      this.ids = ids;
+      this.pos = pos;
+      this.root = root;
+      this.core = core;
+      this.comp = comp;
+      this.bestDist = bestDist;
+      this.bestTarget = bestTarget;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      // Nothing to do.
+    }
+
+    /**
+     * Instance for a single thread.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Iterator into the sorted ids.
+       */
+      private DBIDArrayIter iter = ids.iter();
+
+      /**
+       * Current query object.
+       */
+      private O obj;
+
+      /**
+       * Current query component.
+       */
+      private int c;
+
+      /**
+       * Current query core distance.
+       */
+      private double coreq;
+
+      /**
+       * Current best distance.
+       */
+      private double best;
+
+      /**
+       * Current best target.
+       */
+      private int target;
+
+      @Override
+      public void map(DBIDRef id) {
+        final int i = pos.intValue(id);
+        obj = relation.get(id);
+        c = comp[i];
+        coreq = core[i];
+        best = Double.POSITIVE_INFINITY;
+        target = -1;
+        search(root);
+        bestDist[i] = best;
+        bestTarget[i] = target;
+      }
+
+      /**
+       * Recursive search for the nearest neighbor in a different component.
+       *
+       * @param node Current node
+       */
+      private void search(KDNode node) {
+        if(node.leftChild != null) {
+          final double ld = lowerBound(node.leftChild);
+          final double rd = lowerBound(node.rightChild);
+          final boolean leftfirst = ld <= rd;
+          final double d1 = leftfirst ? ld : rd, d2 = leftfirst ? rd : ld;
+          if(d1 < best) {
+            search(leftfirst ? node.leftChild : node.rightChild);
+          }
+          if(d2 < best) {
+            search(leftfirst ? node.rightChild : node.leftChild);
+          }
+          return;
+        }
+        for(int j = node.start; j < node.end; j++) {
+          if(comp[j] == c || core[j] >= best) {
+            continue;
+          }
+          final double d = MathUtil.max(coreq, core[j], distance.distance(obj, relation.get(iter.seek(j))));
+          if(d < best) {
+            best = d;
+            target = j;
+            // Core distance pruning: we cannot find anything better.
+            if(best <= coreq) {
+              return;
+            }
+          }
+        }
+      }
+
+      /**
+       * Lower bound for the mutual reachability distance to a node.
+       *
+       * @param node Node
+       * @return Lower bound, or infinity if in the same component
+       */
+      private double lowerBound(KDNode node) {
+        if(node.component == c || node.minCore >= best) {
+          return Double.POSITIVE_INFINITY;
+        }
+        return MathUtil.max(coreq, node.minCore, distance.minDist(obj, node.box));
+      }
+    }
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O extends NumberVector> implements Parameterizer {
+    /**
+     * Option ID for the minimum number of points.
+     */
+    public static final OptionID MIN_PTS_ID = AbstractHDBSCAN.Par.MIN_PTS_ID;
+
+    /**
+     * Option ID for the leaf size.
+     */
+    public static final OptionID LEAFSIZE_ID = new OptionID("hdbscan.kdtree.leafsize", "Leaf size of the k-d-tree.");
+
+    /**
+     * Minimum size of core.
+     */
+    protected int minPts;
+
+    /**
+     * Leaf size of the k-d-tree.
+     */
+    protected int leafsize;
+
+    /**
+     * The distance function to use.
+     */
+    protected SpatialPrimitiveDistance<? super O> distance;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<SpatialPrimitiveDistance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, SpatialPrimitiveDistance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(MIN_PTS_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> minPts = x);
+      new IntParameter(LEAFSIZE_ID, 20) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> leafsize = x);
+    }
+
+    @Override
+    public HDBSCANBoruvka<O> make() {
+      return new HDBSCANBoruvka<>(distance, minPts, leafsize);
+    }
+  }
+}
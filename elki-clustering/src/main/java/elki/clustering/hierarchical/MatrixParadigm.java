@@ -25,7 +25,7 @@ import elki.database.ids.DBIDArrayIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
 import elki.database.query.distance.DistanceQuery;
-import elki.utilities.exceptions.AbortException;
+import elki.parallel.ParallelExecutor;
 
 /**
  * Shared code for algorithms that work on a strict matrix paradigm.
@@ -37,11 +37,41 @@ import elki.utilities.exceptions.AbortException;
  * <p>
  * While this will usually store (merge-) distances when clustering, it can
  * store arbitrary doubles.
+ * <p>
+ * The lower triangular matrix is addressed with long offsets, and stored in a
+ * single array if possible, or in multiple segments otherwise, so that the
+ * size is not limited by the maximum array size of Java. To halve the memory
+ * requirements, the values can be stored with single precision.
+ * <p>
+ * The matrix is initialized in parallel, and algorithms can use
+ * {@link #iter()} to obtain additional iterators for parallel updates.
  *
  * @author Erich Schubert
  * @since 0.7.5
+ *
+ * @composed - - - Storage
  */
 public class MatrixParadigm {
+  /**
+   * Minimum number of rows per thread when initializing in parallel.
+   */
+  private static final int MIN_ROWS_PER_THREAD = 64;
+
+  /**
+   * Maximum length of a Java array.
+   */
+  private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  /**
+   * Number of bits of the segment size, if a single array is not sufficient.
+   */
+  private static final int SEGMENT_BITS = 26;
+
+  /**
+   * Object ids, in matrix order.
+   */
+  private final ArrayDBIDs ids;
+
   /**
    * Two iterators to reference to objects.
    */
@@ -50,7 +80,7 @@ public class MatrixParadigm {
   /**
    * Distance matrix (<b>modifiable</b>).
    */
-  public final double[] matrix;
+  public final Storage matrix;
 
   /**
    * Number of rows/columns.
@@ -63,16 +93,35 @@ public class MatrixParadigm {
    * @param ids Database ids.
    */
   public MatrixParadigm(DBIDs ids) {
+    this(ids, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param ids Database ids.
+   * @param singlePrecision Store values as float only
+   */
+  public MatrixParadigm(DBIDs ids, boolean singlePrecision) {
     size = ids.size();
-    if(size > 0x10000) {
-      throw new AbortException("This implementation does not scale to data sets larger than " + //
-          0x10000 // = 65535
-          + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
+    this.ids = DBIDUtil.ensureArray(ids);
+    ix = this.ids.iter();
+    iy = this.ids.iter();
+    matrix = newStorage(triangleSize(size), singlePrecision);
+  }
+
+  /**
+   * Allocate the matrix storage.
+   *
+   * @param len Number of entries
+   * @param singlePrecision Store values as float only
+   * @return Storage
+   */
+  private static Storage newStorage(long len, boolean singlePrecision) {
+    if(len <= MAX_ARRAY_SIZE) {
+      return singlePrecision ? new FloatStorage(len) : new DoubleStorage(len);
     }
-    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
-    ix = aids.iter();
-    iy = aids.iter();
-    matrix = new double[triangleSize(size)];
+    return singlePrecision ? new SegmentedFloatStorage(len, SEGMENT_BITS) : new SegmentedDoubleStorage(len, SEGMENT_BITS);
   }
 
   /**
@@ -81,8 +130,8 @@ public class MatrixParadigm {
    * @param x Offset
    * @return Size of complete triangle
    */
-  public static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+  public static long triangleSize(int x) {
+    return (x * (long) (x - 1)) >>> 1;
   }
 
   /**
@@ -96,26 +145,209 @@ public class MatrixParadigm {
    * @return Distance
    */
   public double get(int x, int y) {
-    return x == y ? 0 : x < y ? matrix[triangleSize(y) + x] : matrix[triangleSize(x) + y];
+    return x == y ? 0 : x < y ? matrix.get(triangleSize(y) + x) : matrix.get(triangleSize(x) + y);
   }
 
   /**
-   * Initialize a distance matrix.
+   * Get a new iterator, e.g., for use in a different thread.
+   *
+   * @return Iterator
+   */
+  public DBIDArrayIter iter() {
+    return ids.iter();
+  }
+
+  /**
+   * Initialize a distance matrix, in parallel.
    *
    * @param dq Distance query
    * @return this
    */
   public MatrixParadigm initializeWithDistances(DistanceQuery<?> dq) {
-    final DBIDArrayIter ix = this.ix, iy = this.iy;
-    final double[] matrix = this.matrix;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      final int x = ix.getOffset();
-      assert (pos == triangleSize(x));
-      for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = dq.distance(ix, iy);
+    final Storage matrix = this.matrix;
+    ParallelExecutor.run(0, size, MIN_ROWS_PER_THREAD, (start, end) -> {
+      final DBIDArrayIter ix = iter(), iy = iter();
+      long pos = triangleSize(start);
+      for(ix.seek(start); ix.getOffset() < end; ix.advance()) {
+        final int x = ix.getOffset();
+        assert (pos == triangleSize(x));
+        for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
+          matrix.set(pos++, dq.distance(ix, iy));
+        }
       }
-    }
+    });
     return this;
   }
+
+  /**
+   * Storage of the triangular matrix, addressed with long offsets.
+   * <p>
+   * Writes to different entries are independent, and can be performed by
+   * different threads.
+   *
+   * @author Erich Schubert
+   */
+  public interface Storage {
+    /**
+     * Get the value at the given offset.
+     *
+     * @param pos Offset
+     * @return Value
+     */
+    double get(long pos);
+
+    /**
+     * Set the value at the given offset.
+     *
+     * @param pos Offset
+     * @param value New value
+     */
+    void set(long pos, double value);
+  }
+
+  /**
+   * Storage in a single double array.
+   *
+   * @author Erich Schubert
+   */
+  static final class DoubleStorage implements Storage {
+    /**
+     * Data array.
+     */
+    private final double[] data;
+
+    /**
+     * Constructor.
+     *
+     * @param len Number of entries
+     */
+    DoubleStorage(long len) {
+      data = new double[(int) len];
+    }
+
+    @Override
+    public double get(long pos) {
+      return data[(int) pos];
+    }
+
+    @Override
+    public void set(long pos, double value) {
+      data[(int) pos] = value;
+    }
+  }
+
+  /**
+   * Storage in a single float array.
+   *
+   * @author Erich Schubert
+   */
+  static final class FloatStorage implements Storage {
+    /**
+     * Data array.
+     */
+    private final float[] data;
+
+    /**
+     * Constructor.
+     *
+     * @param len Number of entries
+     */
+    FloatStorage(long len) {
+      data = new float[(int) len];
+    }
+
+    @Override
+    public double get(long pos) {
+      return data[(int) pos];
+    }
+
+    @Override
+    public void set(long pos, double value) {
+      data[(int) pos] = (float) value;
+    }
+  }
+
+  /**
+   * Storage in segments of double arrays.
+   *
+   * @author Erich Schubert
+   */
+  static final class SegmentedDoubleStorage implements Storage {
+    /**
+     * Data segments.
+     */
+    private final double[][] data;
+
+    /**
+     * Segment size (bits) and mask.
+     */
+    private final int bits, mask;
+
+    /**
+     * Constructor.
+     *
+     * @param len Number of entries
+     * @param bits Segment size (bits)
+     */
+    SegmentedDoubleStorage(long len, int bits) {
+      this.bits = bits;
+      this.mask = (1 << bits) - 1;
+      data = new double[(int) ((len + mask) >>> bits)][];
+      for(int i = 0; i < data.length; i++) {
+        data[i] = new double[(int) Math.min(len - ((long) i << bits), 1 << bits)];
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return data[(int) (pos >>> bits)][(int) pos & mask];
+    }
+
+    @Override
+    public void set(long pos, double value) {
+      data[(int) (pos >>> bits)][(int) pos & mask] = value;
+    }
+  }
+
+  /**
+   * Storage in segments of float arrays.
+   *
+   * @author Erich Schubert
+   */
+  static final class SegmentedFloatStorage implements Storage {
+    /**
+     * Data segments.
+     */
+    private final float[][] data;
+
+    /**
+     * Segment size (bits) and mask.
+     */
+    private final int bits, mask;
+
+    /**
+     * Constructor.
+     *
+     * @param len Number of entries
+     * @param bits Segment size (bits)
+     */
+    SegmentedFloatStorage(long len, int bits) {
+      this.bits = bits;
+      this.mask = (1 << bits) - 1;
+      data = new float[(int) ((len + mask) >>> bits)][];
+      for(int i = 0; i < data.length; i++) {
+        data[i] = new float[(int) Math.min(len - ((long) i << bits), 1 << bits)];
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return data[(int) (pos >>> bits)][(int) pos & mask];
+    }
+
+    @Override
+    public void set(long pos, double value) {
+      data[(int) (pos >>> bits)][(int) pos & mask] = (float) value;
+    }
+  }
 }
@@ -32,6 +32,7 @@ import elki.distance.minkowski.EuclideanDistance;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
@@ -112,7 +113,7 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
 
     // Allocate working space:
     MatrixParadigm mat = new MatrixParadigm(ids);
-    ArrayModifiableDBIDs prots = DBIDUtil.newArray(MatrixParadigm.triangleSize(size));
+    ArrayModifiableDBIDs prots = newPrototypes(size);
     initializeMatrices(mat, prots, dq);
 
     DBIDArrayMIter protiter = prots.iter();
@@ -127,6 +128,22 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
     return (PointerPrototypeHierarchyRepresentationResult) builder.complete();
   }
 
+  /**
+   * Allocate the prototype array, with one entry for every matrix entry.
+   *
+   * @param size Data set size
+   * @return Prototype array
+   */
+  protected static ArrayModifiableDBIDs newPrototypes(int size) {
+    final long tsize = MatrixParadigm.triangleSize(size);
+    if(tsize > Integer.MAX_VALUE) {
+      throw new AbortException("This implementation does not scale to data sets larger than " + //
+          0x10000 // = 65535
+          + " instances, at which point the Java maximum array size is reached for the prototypes.");
+    }
+    return DBIDUtil.newArray((int) tsize);
+  }
+
   /**
    * Initializes the inter-cluster distance matrix of possible merges
    * 
@@ -135,11 +152,11 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
    */
   protected static <O> void initializeMatrices(MatrixParadigm mat, ArrayModifiableDBIDs prots, DistanceQuery<O> dq) {
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
-    int pos = 0;
+    final MatrixParadigm.Storage distances = mat.matrix;
+    long pos = 0;
     for(ix.seek(0); ix.valid(); ix.advance()) {
       for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        distances[pos++] = dq.distance(ix, iy);
+        distances.set(pos++, dq.distance(ix, iy));
         prots.add(iy);
       }
     }
@@ -158,7 +175,7 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
    */
   protected static int findMerge(int end, MatrixParadigm mat, DBIDArrayMIter prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq) {
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
+    final MatrixParadigm.Storage distances = mat.matrix;
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
 
@@ -167,7 +184,7 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
       if(builder.isLinked(ix.seek(dx))) {
         continue;
       }
-      final int xoffset = MatrixParadigm.triangleSize(dx);
+      final long xoffset = MatrixParadigm.triangleSize(dx);
 
       for(int dy = 0; dy < dx; dy++) {
         // Skip if object is already linked
@@ -175,7 +192,7 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
           continue;
         }
 
-        double dist = distances[xoffset + dy];
+        double dist = distances.get(xoffset + dy);
         if(dist < mindist) {
           mindist = dist;
           x = dx;
@@ -205,11 +222,11 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
   protected static void merge(int size, MatrixParadigm mat, DBIDArrayMIter prots, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq, int x, int y) {
     assert (y < x);
     final DBIDArrayIter ix = mat.ix.seek(x), iy = mat.iy.seek(y);
-    final double[] distances = mat.matrix;
-    int offset = MatrixParadigm.triangleSize(x) + y;
+    final MatrixParadigm.Storage distances = mat.matrix;
+    final long offset = MatrixParadigm.triangleSize(x) + y;
 
     if(LOG.isDebuggingFine()) {
-      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + distances[offset]);
+      LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + distances.get(offset));
     }
 
     ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
@@ -229,7 +246,7 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
     clusters.put(y, cy);
 
     // parent of x is set to y
-    builder.add(ix, distances[offset], iy, prots.seek(offset));
+    builder.add(ix, distances.get(offset), iy, prots.seek((int) offset));
 
     updateMatrices(size, mat, prots, builder, clusters, dq, y);
   }
@@ -285,7 +302,7 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
   protected static void updateEntry(MatrixParadigm mat, DBIDArrayMIter prots, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters, DistanceQuery<?> dq, int x, int y) {
     assert (y < x);
     final DBIDArrayIter ix = mat.ix, iy = mat.iy;
-    final double[] distances = mat.matrix;
+    final MatrixParadigm.Storage distances = mat.matrix;
     ModifiableDBIDs cx = clusters.get(x), cy = clusters.get(y);
 
     DBIDVar prototype = DBIDUtil.newVar(ix.seek(x)); // Default prototype
@@ -308,9 +325,9 @@ public class MiniMax<O> implements HierarchicalClusteringAlgorithm {
       prototype.set(ix);
     }
 
-    final int offset = MatrixParadigm.triangleSize(x) + y;
-    distances[offset] = minMaxDist;
-    prots.seek(offset).setDBID(prototype);
+    final long offset = MatrixParadigm.triangleSize(x) + y;
+    distances.set(offset, minMaxDist);
+    prots.seek((int) offset).setDBID(prototype);
   }
 
   /**
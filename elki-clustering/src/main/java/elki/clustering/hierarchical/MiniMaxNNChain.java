@@ -111,7 +111,7 @@ public class MiniMaxNNChain<O> implements HierarchicalClusteringAlgorithm {
     Int2ObjectOpenHashMap<ModifiableDBIDs> clusters = new Int2ObjectOpenHashMap<>(ids.size());
 
     MatrixParadigm mat = new MatrixParadigm(ids);
-    ArrayModifiableDBIDs prots = DBIDUtil.newArray(MatrixParadigm.triangleSize(ids.size()));
+    ArrayModifiableDBIDs prots = MiniMax.newPrototypes(ids.size());
 
     MiniMax.initializeMatrices(mat, prots, dq);
 
@@ -132,7 +132,7 @@ public class MiniMaxNNChain<O> implements HierarchicalClusteringAlgorithm {
    */
   private void nnChainCore(MatrixParadigm mat, DBIDArrayMIter prots, DistanceQuery<O> dq, PointerHierarchyRepresentationBuilder builder, Int2ObjectOpenHashMap<ModifiableDBIDs> clusters) {
     final DBIDArrayIter ix = mat.ix;
-    final double[] distances = mat.matrix;
+    final MatrixParadigm.Storage distances = mat.matrix;
     final int size = mat.size;
     // The maximum chain size = number of ids + 1
     IntegerArray chain = new IntegerArray(size + 1);
@@ -167,10 +167,10 @@ public class MiniMaxNNChain<O> implements HierarchicalClusteringAlgorithm {
       double minDist = mat.get(a, b);
       do {
         int c = b;
-        final int ta = MatrixParadigm.triangleSize(a);
+        final long ta = MatrixParadigm.triangleSize(a);
         for(int i = 0; i < a; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[ta + i];
+            double dist = distances.get(ta + i);
             if(dist < minDist) {
               minDist = dist;
               c = i;
@@ -179,7 +179,7 @@ public class MiniMaxNNChain<O> implements HierarchicalClusteringAlgorithm {
         }
         for(int i = a + 1; i < size; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[MatrixParadigm.triangleSize(i) + a];
+            double dist = distances.get(MatrixParadigm.triangleSize(i) + a);
             if(dist < minDist) {
               minDist = dist;
               c = i;
@@ -76,6 +76,17 @@ public class NNChain<O> extends AGNES<O> {
     super(distance, linkage);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param linkage Linkage method
+   * @param singlePrecision Store the distance matrix with single precision
+   */
+  public NNChain(Distance<? super O> distance, Linkage linkage, boolean singlePrecision) {
+    super(distance, linkage, singlePrecision);
+  }
+
   @Override
   public PointerHierarchyRepresentationResult run(Relation<O> relation) {
     if(SingleLinkage.class.isInstance(linkage)) {
@@ -83,7 +94,7 @@ public class NNChain<O> extends AGNES<O> {
     }
     DistanceQuery<O> dq = new QueryBuilder<>(relation, distance).distanceQuery();
     final DBIDs ids = relation.getDBIDs();
-    MatrixParadigm mat = new MatrixParadigm(ids);
+    MatrixParadigm mat = new MatrixParadigm(ids, singlePrecision);
 
     // Compute the initial (lower triangular) distance matrix.
     initializeDistanceMatrix(mat, dq, linkage);
@@ -104,7 +115,7 @@ public class NNChain<O> extends AGNES<O> {
    */
   private void nnChainCore(MatrixParadigm mat, PointerHierarchyRepresentationBuilder builder) {
     final DBIDArrayIter ix = mat.ix;
-    final double[] distances = mat.matrix;
+    final MatrixParadigm.Storage distances = mat.matrix;
     final int size = mat.size;
     // The maximum chain size = number of ids + 1
     IntegerArray chain = new IntegerArray(size + 1);
@@ -139,10 +150,10 @@ public class NNChain<O> extends AGNES<O> {
       double minDist = mat.get(a, b);
       do {
         int c = b;
-        final int ta = MatrixParadigm.triangleSize(a);
+        final long ta = MatrixParadigm.triangleSize(a);
         for(int i = 0; i < a; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[ta + i];
+            double dist = distances.get(ta + i);
             if(dist < minDist) {
               minDist = dist;
               c = i;
@@ -151,7 +162,7 @@ public class NNChain<O> extends AGNES<O> {
         }
         for(int i = a + 1; i < size; i++) {
           if(i != b && !builder.isLinked(ix.seek(i))) {
-            double dist = distances[MatrixParadigm.triangleSize(i) + a];
+            double dist = distances.get(MatrixParadigm.triangleSize(i) + a);
             if(dist < minDist) {
               minDist = dist;
               c = i;
@@ -212,7 +223,7 @@ public class NNChain<O> extends AGNES<O> {
   public static class Par<O> extends AGNES.Par<O> {
     @Override
     public NNChain<O> make() {
-      return new NNChain<>(distance, linkage);
+      return new NNChain<>(distance, linkage, singlePrecision);
     }
   }
 }
@@ -25,7 +25,6 @@ import static elki.math.linearalgebra.VMath.*;
 import java.util.Arrays;
 
 import elki.clustering.ClusteringAlgorithm;
-import elki.clustering.hierarchical.birch.CFTree.LeafIterator;
 import elki.clustering.kmeans.KMeans;
 import elki.data.Cluster;
 import elki.data.Clustering;
@@ -132,21 +131,8 @@ public class BIRCHLloydKMeans implements ClusteringAlgorithm<Clustering<MeanMode
    */
   public Clustering<KMeansModel> run(Relation<NumberVector> relation) {
     CFTree tree = cffactory.newTree(relation.getDBIDs(), relation);
-
-    // For efficiency, we also need the mean of each CF:
-    ClusteringFeature[] cfs = new ClusteringFeature[tree.leaves];
-    double[][] cfmeans = new double[tree.leaves][];
-
-    int z = 0;
-    for(LeafIterator iter = tree.leafIterator(); iter.valid(); iter.advance()) {
-      ClusteringFeature f = cfs[z] = iter.get();
-      cfmeans[z] = times(f.ls, 1. / f.n);
-      z++;
-    }
-
-    int[] assignment = new int[tree.leaves], weights = new int[k];
-    Arrays.fill(assignment, -1);
-    double[][] means = kmeans(cfmeans, cfs, assignment, weights);
+    int[] weights = new int[k];
+    double[][] means = kmeans(new ClusteringFeatureArray(tree), weights);
 
     // The CFTree does not store points. We have to reassign them; but rather
     // than assigning them to n > k cluster features, we just assign them to the
@@ -181,17 +167,33 @@ public class BIRCHLloydKMeans implements ClusteringAlgorithm<Clustering<MeanMode
     return result;
   }
 
+  /**
+   * Compute the k-means cluster centers only, e.g., of a tree built from a
+   * data stream with {@link CFTree.Factory#newTree(elki.datasource.bundle.BundleStreamSource)}.
+   *
+   * @param tree CF-tree
+   * @return Cluster means
+   */
+  public double[][] run(CFTree tree) {
+    return kmeans(new ClusteringFeatureArray(tree), new int[k]);
+  }
+
   /**
    * Perform k-means clustering.
    *
-   * @param cfmeans Cluster feature means
    * @param cfs Cluster features
-   * @param assignment Cluster assignment of each CF
    * @param weights Cluster weight output
    * @return Cluster means
    */
-  private double[][] kmeans(double[][] cfmeans, ClusteringFeature[] cfs, int[] assignment, int[] weights) {
+  private double[][] kmeans(ClusteringFeatureArray cfs, int[] weights) {
+    double[][] cfmeans = new double[cfs.size()][];
+    for(int i = 0; i < cfmeans.length; i++) {
+      cfmeans[i] = cfs.getCentroid(i);
+    }
     double[][] means = initialization.run(cfmeans, k);
+    cfmeans = null; // Only needed for initialization
+    int[] assignment = new int[cfs.size()];
+    Arrays.fill(assignment, -1);
     for(int i = 1; i <= maxiter || maxiter <= 0; i++) {
       means = i == 1 ? means : means(assignment, means, cfs, weights);
       if(i > 1 && LOG.isStatistics()) {
@@ -200,7 +202,7 @@ public class BIRCHLloydKMeans implements ClusteringAlgorithm<Clustering<MeanMode
         double varsum = sum(calculateVariances(assignment, means, cfs, weights));
         LOG.statistics(new DoubleStatistic(getClass().getName() + "." + (i - 1) + ".varsum", varsum));
       }
-      int changed = assignToNearestCluster(assignment, means, cfmeans, cfs, weights);
+      int changed = assignToNearestCluster(assignment, means, cfs, weights);
       if(LOG.isStatistics()) {
         LOG.statistics(new LongStatistic(getClass().getName() + "." + i + ".reassigned", changed));
       }
@@ -217,21 +219,16 @@ public class BIRCHLloydKMeans implements ClusteringAlgorithm<Clustering<MeanMode
    * @param assignment Cluster assignment
    * @param means Means of clusters
    * @param cfs Clustering features
+   * @param weights Cluster weights (output)
    * @return Means of clusters.
    */
-  private double[][] means(int[] assignment, double[][] means, ClusteringFeature[] cfs, int[] weights) {
+  private double[][] means(int[] assignment, double[][] means, ClusteringFeatureArray cfs, int[] weights) {
     Arrays.fill(weights, 0);
-    double[][] newMeans = new double[k][];
+    double[][] newMeans = new double[k][cfs.getDimensionality()];
     for(int i = 0; i < assignment.length; i++) {
       int c = assignment[i];
-      final ClusteringFeature cf = cfs[i];
-      if(newMeans[c] == null) {
-        newMeans[c] = cf.ls.clone();
-      }
-      else {
-        plusEquals(newMeans[c], cf.ls);
-      }
-      weights[c] += cf.n;
+      cfs.addLinearSum(i, newMeans[c]);
+      weights[c] += cfs.weight(i);
     }
     for(int i = 0; i < k; i++) {
       if(weights[i] == 0) {
@@ -248,19 +245,18 @@ public class BIRCHLloydKMeans implements ClusteringAlgorithm<Clustering<MeanMode
    * 
    * @param assignment Current cluster assignment
    * @param means k-means cluster means
-   * @param cfmeans Cluster feature means
    * @param cfs Cluster features
    * @param weights Cluster weights (output)
    * @return Number of reassigned elements
    */
-  private int assignToNearestCluster(int[] assignment, double[][] means, double[][] cfmeans, ClusteringFeature[] cfs, int[] weights) {
+  private int assignToNearestCluster(int[] assignment, double[][] means, ClusteringFeatureArray cfs, int[] weights) {
     Arrays.fill(weights, 0);
     int changed = 0;
-    for(int i = 0; i < cfmeans.length; i++) {
-      double mindist = distance(cfmeans[i], means[0]);
+    for(int i = 0; i < assignment.length; i++) {
+      double mindist = cfs.squaredDistance(i, means[0]);
       int minIndex = 0;
       for(int j = 1; j < k; j++) {
-        double dist = distance(cfmeans[i], means[j]);
+        double dist = cfs.squaredDistance(i, means[j]);
         if(dist < mindist) {
           minIndex = j;
           mindist = dist;
@@ -270,7 +266,7 @@ public class BIRCHLloydKMeans implements ClusteringAlgorithm<Clustering<MeanMode
         changed++;
         assignment[i] = minIndex;
       }
-      weights[minIndex] += cfs[i].n;
+      weights[minIndex] += cfs.weight(i);
     }
     return changed;
   }
@@ -291,22 +287,6 @@ public class BIRCHLloydKMeans implements ClusteringAlgorithm<Clustering<MeanMode
     return v;
   }
 
-  /**
-   * Compute a distance (and count the distance computations).
-   *
-   * @param x First object
-   * @param y Second object
-   * @return Distance
-   */
-  protected double distance(double[] x, double[] y) {
-    double v = 0;
-    for(int i = 0; i < x.length; i++) {
-      double d = x[i] - y[i];
-      v += d * d;
-    }
-    return v;
-  }
-
   /**
    * Calculate variance of clusters based on clustering features.
    * <p>
@@ -318,10 +298,10 @@ public class BIRCHLloydKMeans implements ClusteringAlgorithm<Clustering<MeanMode
    * @param weights Cluster weights
    * @return Per-cluster variances
    */
-  private double[] calculateVariances(int[] assignment, double[][] means, ClusteringFeature[] cfs, int[] weights) {
+  private double[] calculateVariances(int[] assignment, double[][] means, ClusteringFeatureArray cfs, int[] weights) {
     double[] ss = new double[k];
     for(int i = 0; i < assignment.length; i++) {
-      ss[assignment[i]] += cfs[i].ss;
+      ss[assignment[i]] += cfs.sumOfSumOfSquares(i);
     }
     for(int i = 0; i < k; i++) {
       ss[i] -= squareSum(means[i]) * weights[i];
@@ -24,13 +24,21 @@ import java.util.ArrayList;
 import java.util.Arrays;
 
 import elki.data.NumberVector;
-import elki.database.ids.DBIDIter;
+import elki.data.type.TypeUtil;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
 import elki.database.relation.Relation;
+import elki.datasource.bundle.BundleMeta;
+import elki.datasource.bundle.BundleStreamSource;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
+import elki.logging.progress.IndefiniteProgress;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.datastructures.iterator.Iter;
 import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.io.FormatUtil;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.OptionID;
@@ -47,15 +55,20 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
  * Important differences:
  * <ol>
  * <li>Leaf nodes and directory nodes have the same capacity</li>
- * <li>Condensing and memory limits are not implemented</li>
+ * <li>The memory limit is given as the maximum number of leaf entries</li>
  * <li>Merging refinement (merge-resplit) is not implemented</li>
  * </ol>
  * Because we want to be able to track the cluster assignments of all data
  * points easily, we need to store the point IDs, and it is not possible to
  * implement the originally proposed page size management at the same time.
  * <p>
- * Condensing and merging refinement are possible, and improvements to this code
- * are welcome - please send a pull request!
+ * When the number of leaves exceeds the limit, the threshold is increased and
+ * the tree is rebuilt from its leaf entries, as in the original BIRCH. Trees
+ * can also be built from a data stream without loading the data into a
+ * relation, and partial trees built in parallel can be merged.
+ * <p>
+ * Merging refinement is possible, and improvements to this code are welcome -
+ * please send a pull request!
  * <p>
  * References:
  * <p>
@@ -162,6 +175,53 @@ public class CFTree {
     }
   }
 
+  /**
+   * Merge another tree into this tree, e.g., a partial tree built by a
+   * different thread. The leaves of the other tree are reinserted into this
+   * tree, and the other tree must no longer be used afterwards.
+   *
+   * @param other Tree to merge
+   */
+  public void merge(CFTree other) {
+    if(other.root == null) {
+      return;
+    }
+    thresholdsq = other.thresholdsq > thresholdsq ? other.thresholdsq : thresholdsq;
+    if(root == null) {
+      root = other.root;
+      leaves = other.leaves;
+      return;
+    }
+    for(LeafIterator iter = other.leafIterator(); iter.valid(); iter.advance()) {
+      insert(iter.get());
+    }
+  }
+
+  /**
+   * Insert a leaf entry into the tree.
+   *
+   * @param leaf Leaf entry
+   */
+  private void insert(ClusteringFeature leaf) {
+    TreeNode other = insert(root, leaf);
+    // Handle root overflow:
+    if(other != null) {
+      TreeNode newnode = new TreeNode(root.getDimensionality(), capacity);
+      newnode.addToStatistics(newnode.children[0] = root);
+      newnode.addToStatistics(newnode.children[1] = other);
+      root = newnode;
+    }
+  }
+
+  /**
+   * Get the number of leaf entries.
+   *
+   * @return Number of leaves
+   */
+  public int numLeaves() {
+    return leaves;
+  }
+
   /**
    * Rebuild the CFTree to condense it to approximately half the size.
    */
@@ -184,14 +244,7 @@ public class CFTree {
     root.addToStatistics(first);
     ++leaves;
     for(iter.advance(); iter.valid(); iter.advance()) {
-      TreeNode other = insert(root, iter.get());
-      // Handle root overflow:
-      if(other != null) {
-        TreeNode newnode = new TreeNode(dim, capacity);
-        newnode.addToStatistics(newnode.children[0] = root);
-        newnode.addToStatistics(newnode.children[1] = other);
-        root = newnode;
-      }
+      insert(iter.get());
     }
   }
 
@@ -623,6 +676,17 @@ public class CFTree {
      */
     double maxleaves;
 
+    /**
+     * Minimum number of points per partial tree. Partial trees need to be
+     * merged, so this should not be too small.
+     */
+    private static final int MIN_BLOCK = 10000;
+
+    /**
+     * Maximum number of partial trees.
+     */
+    private static final int MAX_BLOCKS = 64;
+
     /**
      * Constructor.
      *
@@ -648,23 +712,96 @@ public class CFTree {
      * @return New tree
      */
     public CFTree newTree(DBIDs ids, Relation<? extends NumberVector> relation) {
-      CFTree tree = new CFTree(distance, absorption, threshold, branchingFactor);
+      final ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
       final double max = maxleaves <= 1 ? maxleaves * ids.size() : maxleaves;
-      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building tree", relation.size(), LOG) : null;
-      for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
-        tree.insert(relation.get(it));
-        if(tree.leaves > max) {
-          if(LOG.isVerbose()) {
-            LOG.verbose("Compacting CF-tree.");
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building tree", aids.size(), LOG) : null;
+      // Build partial trees in parallel, for large data sets. The block
+      // boundaries only depend on the data size, not on the number of threads.
+      final int size = aids.size();
+      final int numblocks = Math.max(1, Math.min(MAX_BLOCKS, size / MIN_BLOCK));
+      final CFTree[] parts = new CFTree[numblocks];
+      ParallelExecutor.run(0, numblocks, 1, (bstart, bend) -> {
+        DBIDArrayIter it = aids.iter();
+        for(int b = bstart; b < bend; b++) {
+          final int start = (int) ((long) b * size / numblocks), end = (int) ((long) (b + 1) * size / numblocks);
+          CFTree tree = new CFTree(distance, absorption, threshold, branchingFactor);
+          for(it.seek(start); it.getOffset() < end; it.advance()) {
+            tree.insert(relation.get(it));
+            checkLeaves(tree, max);
+            LOG.incrementProcessed(prog);
           }
-          tree.rebuildTree();
+          parts[b] = tree;
         }
-        LOG.incrementProcessed(prog);
-      }
+      });
       LOG.ensureCompleted(prog);
+      // Merge in index order:
+      CFTree tree = parts[0];
+      for(int b = 1; b < numblocks; b++) {
+        tree.merge(parts[b]);
+        checkLeaves(tree, max);
+      }
+      return tree;
+    }
+
+    /**
+     * Make a new tree from a data stream, without materializing the data.
+     * <p>
+     * Because the size of the stream is not known in advance, this requires
+     * an absolute limit on the number of leaves.
+     *
+     * @param source Data source
+     * @return New tree
+     */
+    public CFTree newTree(BundleStreamSource source) {
+      if(maxleaves <= 1) {
+        throw new AbortException("Building a CF-tree from a stream requires an absolute maximum number of leaves.");
+      }
+      CFTree tree = new CFTree(distance, absorption, threshold, branchingFactor);
+      IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Building tree", LOG) : null;
+      int dcol = -1;
+      loop: while(true) {
+        switch(source.nextEvent()){
+        case END_OF_STREAM:
+          break loop;
+        case META_CHANGED:
+          BundleMeta meta = source.getMeta();
+          dcol = -1;
+          for(int i = 0; i < meta.size(); i++) {
+            if(TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(meta.get(i))) {
+              dcol = i;
+              break;
+            }
+          }
+          break;
+        case NEXT_OBJECT:
+          if(dcol < 0) {
+            throw new AbortException("No vector column available.");
+          }
+          tree.insert((NumberVector) source.data(dcol));
+          checkLeaves(tree, maxleaves);
+          LOG.incrementProcessed(prog);
+          break;
+        }
+      }
+      LOG.setCompleted(prog);
       return tree;
     }
 
+    /**
+     * Rebuild the tree if it exceeds the maximum number of leaves.
+     *
+     * @param tree Tree
+     * @param max Maximum number of leaves
+     */
+    private static void checkLeaves(CFTree tree, double max) {
+      if(tree.leaves > max) {
+        if(LOG.isVerbose()) {
+          LOG.verbose("Compacting CF-tree.");
+        }
+        tree.rebuildTree();
+      }
+    }
+
     /**
      * Parameterization class for CFTrees.
      *
@@ -0,0 +1,179 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ * 
+ * Copyright (C) 2019
+ * ELKI Development Team
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical.birch;
+
+import elki.clustering.hierarchical.birch.CFTree.LeafIterator;
+
+/**
+ * Compact storage of the leaf clustering features of a CF-tree, in flat
+ * primitive arrays (the linear sums and centroids are stored row-wise). This is
+ * used for repeated passes over the leaves, such as in k-means, which benefit
+ * from the sequential memory layout.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ClusteringFeatureArray {
+  /**
+   * Number of clustering features.
+   */
+  final int size;
+
+  /**
+   * Dimensionality.
+   */
+  final int dim;
+
+  /**
+   * Number of objects of each clustering feature.
+   */
+  final int[] n;
+
+  /**
+   * Sum of squares of each clustering feature.
+   */
+  final double[] ss;
+
+  /**
+   * Linear sums, size x dim.
+   */
+  final double[] ls;
+
+  /**
+   * Centroids, size x dim.
+   */
+  final double[] centroids;
+
+  /**
+   * Constructor.
+   *
+   * @param tree CF-tree to copy the leaves from
+   */
+  public ClusteringFeatureArray(CFTree tree) {
+    this.size = tree.leaves;
+    LeafIterator iter = tree.leafIterator();
+    this.dim = iter.valid() ? iter.get().getDimensionality() : 0;
+    this.n = new int[size];
+    this.ss = new double[size];
+    this.ls = new double[size * dim];
+    this.centroids = new double[size * dim];
+    for(int i = 0, off = 0; iter.valid(); iter.advance(), i++, off += dim) {
+      ClusteringFeature f = iter.get();
+      n[i] = f.n;
+      ss[i] = f.ss;
+      System.arraycopy(f.ls, 0, ls, off, dim);
+      final double s = 1. / f.n;
+      for(int d = 0; d < dim; d++) {
+        centroids[off + d] = f.ls[d] * s;
+      }
+    }
+  }
+
+  /**
+   * Number of clustering features.
+   *
+   * @return Size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Dimensionality.
+   *
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  /**
+   * Get the number of objects of a clustering feature.
+   *
+   * @param i Clustering feature
+   * @return Number of objects
+   */
+  public int weight(int i) {
+    return n[i];
+  }
+
+  /**
+   * Get the sum of squares of a clustering feature.
+   *
+   * @param i Clustering feature
+   * @return Sum of squares
+   */
+  public double sumOfSumOfSquares(int i) {
+    return ss[i];
+  }
+
+  /**
+   * Get a centroid coordinate.
+   *
+   * @param i Clustering feature
+   * @param d Dimension
+   * @return Centroid coordinate
+   */
+  public double centroid(int i, int d) {
+    return centroids[i * dim + d];
+  }
+
+  /**
+   * Get a copy of the centroid of a clustering feature.
+   *
+   * @param i Clustering feature
+   * @return Centroid
+   */
+  public double[] getCentroid(int i) {
+    final int off = i * dim;
+    double[] c = new double[dim];
+    System.arraycopy(centroids, off, c, 0, dim);
+    return c;
+  }
+
+  /**
+   * Squared Euclidean distance of a centroid to a vector.
+   *
+   * @param i Clustering feature
+   * @param y Vector
+   * @return Squared distance
+   */
+  public double squaredDistance(int i, double[] y) {
+    double v = 0;
+    for(int d = 0, off = i * dim; d < dim; d++, off++) {
+      final double delta = centroids[off] - y[d];
+      v += delta * delta;
+    }
+    return v;
+  }
+
+  /**
+   * Add the linear sum of a clustering feature to a vector.
+   *
+   * @param i Clustering feature
+   * @param out Output vector
+   */
+  public void addLinearSum(int i, double[] out) {
+    for(int d = 0, off = i * dim; d < dim; d++, off++) {
+      out[d] += ls[off];
+    }
+  }
+}
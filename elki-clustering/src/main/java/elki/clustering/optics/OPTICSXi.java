@@ -158,7 +158,19 @@ public class OPTICSXi implements ClusteringAlgorithm<Clustering<OPTICSModel>> {
    * @return Clustering
    */
   public Clustering<OPTICSModel> run(ClusterOrder clusterOrder) {
-    return extractClusters(clusterOrder, 1.0 - xi, optics.getMinPts());
+    return run(clusterOrder, optics.getMinPts());
+  }
+
+  /**
+   * Process the cluster order of an OPTICS clustering, e.g., a cluster order
+   * computed with a different minPts than the configured OPTICS algorithm.
+   *
+   * @param clusterOrder cluster order result
+   * @param minpts Parameter minPts used to compute the cluster order
+   * @return Clustering
+   */
+  public Clustering<OPTICSModel> run(ClusterOrder clusterOrder, int minpts) {
+    return extractClusters(clusterOrder, 1.0 - xi, minpts);
   }
 
   /**
@@ -0,0 +1,252 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.optics.parallel;
+
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.IntegerDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.parallel.ParallelExecutor;
+import elki.utilities.exceptions.AbortException;
+
+/**
+ * Compact cache of all epsilon-neighborhoods of a data set.
+ * <p>
+ * The neighborhoods are stored in a compressed sparse row layout: for every
+ * object, the neighbors are stored in a contiguous range of two primitive
+ * arrays (the offsets of the neighbors, and their distances), sorted by
+ * ascending distance. The query object itself is included.
+ * <p>
+ * Because the neighborhoods are sorted, the core distance for any minPts can
+ * be read directly, so the cache can be reused to compute OPTICS cluster
+ * orders for different minPts values (and any radius up to epsilon) without
+ * repeating the range queries.
+ * <p>
+ * The range queries are executed in parallel.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class NeighborhoodCache {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(NeighborhoodCache.class);
+
+  /**
+   * Minimum number of range queries per thread.
+   */
+  private static final int MIN_BLOCK = 16;
+
+  /**
+   * Object ids, defining the offsets.
+   */
+  private final ArrayDBIDs ids;
+
+  /**
+   * Map from object ids to offsets.
+   */
+  private final IntegerDataStore offsets;
+
+  /**
+   * Query radius.
+   */
+  private final double epsilon;
+
+  /**
+   * Start of each neighborhood in the arrays below (size n+1).
+   */
+  final int[] start;
+
+  /**
+   * Neighbor offsets.
+   */
+  final int[] neighbors;
+
+  /**
+   * Neighbor distances, ascending within each neighborhood.
+   */
+  final double[] distances;
+
+  /**
+   * Constructor.
+   *
+   * @param ids Object ids, defining the offsets
+   * @param offsets Map from object ids to offsets
+   * @param epsilon Query radius
+   * @param start Start of each neighborhood
+   * @param neighbors Neighbor offsets
+   * @param distances Neighbor distances
+   */
+  protected NeighborhoodCache(ArrayDBIDs ids, IntegerDataStore offsets, double epsilon, int[] start, int[] neighbors, double[] distances) {
+    super();
+    this.ids = ids;
+    this.offsets = offsets;
+    this.epsilon = epsilon;
+    this.start = start;
+    this.neighbors = neighbors;
+    this.distances = distances;
+  }
+
+  /**
+   * Compute all epsilon-neighborhoods, in parallel.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param epsilon Query radius
+   * @param <O> Object type
+   * @return Neighborhood cache
+   */
+  public static <O> NeighborhoodCache build(Relation<O> relation, Distance<? super O> distance, double epsilon) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT, -1);
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      offsets.putInt(iter, iter.getOffset());
+    }
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    // Phase 1: run the range queries in parallel.
+    final int[][] tmpn = new int[size][];
+    final double[][] tmpd = new double[size][];
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Computing neighborhoods", size, LOG) : null;
+    ParallelExecutor.run(0, size, MIN_BLOCK, (bstart, bend) -> {
+      RangeSearcher<DBIDRef> rq = qb.rangeByDBID(epsilon);
+      ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList();
+      for(DBIDArrayIter iter = ids.iter().seek(bstart); iter.getOffset() < bend; iter.advance()) {
+        rq.getRange(iter, epsilon, neighbors.clear()).sort();
+        final int i = iter.getOffset(), n = neighbors.size();
+        int[] ni = tmpn[i] = new int[n];
+        double[] di = tmpd[i] = new double[n];
+        int k = 0;
+        for(DoubleDBIDListIter it = neighbors.iter(); it.valid(); it.advance(), k++) {
+          ni[k] = offsets.intValue(it);
+          di[k] = it.doubleValue();
+        }
+        LOG.incrementProcessed(prog);
+      }
+    });
+    LOG.ensureCompleted(prog);
+    // Phase 2: compact into the final arrays.
+    int[] start = new int[size + 1];
+    long total = 0;
+    for(int i = 0; i < size; i++) {
+      start[i] = (int) total;
+      total += tmpn[i].length;
+      if(total > Integer.MAX_VALUE - 8) {
+        throw new AbortException("Neighborhoods are too large for the cache. Use a smaller epsilon.");
+      }
+    }
+    start[size] = (int) total;
+    final int[] neighbors = new int[(int) total];
+    final double[] distances = new double[(int) total];
+    for(int i = 0; i < size; i++) {
+      System.arraycopy(tmpn[i], 0, neighbors, start[i], tmpn[i].length);
+      System.arraycopy(tmpd[i], 0, distances, start[i], tmpd[i].length);
+      tmpn[i] = null; // Allow early garbage collection
+      tmpd[i] = null;
+    }
+    return new NeighborhoodCache(ids, offsets, epsilon, start, neighbors, distances);
+  }
+
+  /**
+   * Get the object ids, in the order of the offsets used.
+   *
+   * @return Object ids
+   */
+  public ArrayDBIDs getDBIDs() {
+    return ids;
+  }
+
+  /**
+   * Get the number of objects.
+   *
+   * @return Size
+   */
+  public int size() {
+    return ids.size();
+  }
+
+  /**
+   * Get the query radius used.
+   *
+   * @return Epsilon
+   */
+  public double getEpsilon() {
+    return epsilon;
+  }
+
+  /**
+   * Get the offset of an object.
+   *
+   * @param id Object
+   * @return Offset
+   */
+  public int getOffset(DBIDRef id) {
+    return offsets.intValue(id);
+  }
+
+  /**
+   * Get the size of the epsilon-neighborhood of an object (including the
+   * object itself).
+   *
+   * @param i Object offset
+   * @return Neighborhood size
+   */
+  public int getNeighborhoodSize(int i) {
+    return start[i + 1] - start[i];
+  }
+
+  /**
+   * Get the core distance of an object, i.e., the distance to its minPts
+   * nearest neighbor (including the object itself).
+   *
+   * @param i Object offset
+   * @param minpts MinPts parameter
+   * @return Core distance, or infinity if the object is not a core point.
+   */
+  public double getCoreDistance(int i, int minpts) {
+    final int s = start[i];
+    return start[i + 1] - s >= minpts ? distances[s + minpts - 1] : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Get the neighbors of an object.
+   *
+   * @param i Object offset
+   * @return Neighbors, sorted by distance
+   */
+  public DoubleDBIDList getNeighbors(int i) {
+    final int s = start[i], e = start[i + 1];
+    ModifiableDoubleDBIDList list = DBIDUtil.newDistanceDBIDList(e - s);
+    DBIDArrayIter it = ids.iter();
+    for(int k = s; k < e; k++) {
+      list.add(distances[k], it.seek(neighbors[k]));
+    }
+    return list;
+  }
+}
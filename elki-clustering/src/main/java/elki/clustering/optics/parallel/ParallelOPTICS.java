@@ -0,0 +1,292 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.optics.parallel;
+
+import java.util.Arrays;
+
+import elki.clustering.optics.AbstractOPTICS;
+import elki.clustering.optics.ClusterOrder;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.result.Metadata;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+
+/**
+ * The OPTICS algorithm for density-based hierarchical clustering, with all
+ * epsilon-neighborhoods computed in parallel up front.
+ * <p>
+ * The range queries dominate the run time of OPTICS, but only the expansion of
+ * the cluster order is inherently sequential. This variant first computes all
+ * neighborhoods in parallel into a {@link NeighborhoodCache}, then expands the
+ * cluster order sequentially using only primitive arrays and a primitive heap
+ * (with lazy deletion of outdated entries). Ties are broken by object order,
+ * consistent with {@link elki.clustering.optics.OPTICSHeap}.
+ * <p>
+ * The cache can be reused via {@link #run(NeighborhoodCache, double, int)} to
+ * compute cluster orders for different minPts values, or smaller radii,
+ * without repeating any distance computations. The memory requirements are
+ * linear in the total neighborhood size, so a reasonable epsilon should be
+ * chosen.
+ * <p>
+ * Reference:
+ * <p>
+ * Mihael Ankerst, Markus M. Breunig, Hans-Peter Kriegel, Jörg Sander<br>
+ * OPTICS: Ordering Points to Identify the Clustering Structure<br>
+ * Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @navassoc - produces - ClusterOrder
+ * @composed - - - NeighborhoodCache
+ * @has - - - ReachabilityHeap
+ *
+ * @param <O> the type of objects handled by the algorithm
+ */
+@Title("OPTICS: Density-Based Hierarchical Clustering (parallel neighborhood computation)")
+@Reference(authors = "Mihael Ankerst, Markus M. Breunig, Hans-Peter Kriegel, Jörg Sander", //
+    title = "OPTICS: Ordering Points to Identify the Clustering Structure", //
+    booktitle = "Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD '99)", //
+    url = "https://doi.org/10.1145/304181.304187", //
+    bibkey = "DBLP:conf/sigmod/AnkerstBKS99")
+public class ParallelOPTICS<O> extends AbstractOPTICS<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelOPTICS.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   */
+  public ParallelOPTICS(Distance<? super O> distance, double epsilon, int minpts) {
+    super(distance, epsilon, minpts);
+  }
+
+  @Override
+  public ClusterOrder run(Relation<O> relation) {
+    NeighborhoodCache cache = NeighborhoodCache.build(relation, distance, epsilon);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(ParallelOPTICS.class.getName() + ".cached-neighbors", cache.neighbors.length));
+    }
+    return run(cache, epsilon, minpts);
+  }
+
+  /**
+   * Compute the cluster order from a precomputed neighborhood cache.
+   *
+   * @param cache Neighborhood cache
+   * @param epsilon Query radius, must not exceed the radius of the cache
+   * @param minpts MinPts parameter
+   * @return Cluster order
+   */
+  public static ClusterOrder run(NeighborhoodCache cache, double epsilon, int minpts) {
+    if(epsilon > cache.getEpsilon()) {
+      throw new IllegalArgumentException("Cannot use a larger radius than the neighborhood cache.");
+    }
+    final int size = cache.size();
+    final int[] start = cache.start, neighbors = cache.neighbors;
+    final double[] distances = cache.distances;
+    final DBIDArrayIter it = cache.getDBIDs().iter(), pre = cache.getDBIDs().iter();
+    ClusterOrder clusterOrder = new ClusterOrder(cache.getDBIDs());
+    Metadata.of(clusterOrder).setLongName("OPTICS Clusterorder");
+    FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", size, LOG) : null;
+    boolean[] processed = new boolean[size];
+    double[] reach = new double[size];
+    Arrays.fill(reach, Double.POSITIVE_INFINITY);
+    int[] predecessor = new int[size];
+    Arrays.fill(predecessor, -1);
+    ReachabilityHeap heap = new ReachabilityHeap();
+    for(int seed = 0; seed < size; seed++) {
+      if(processed[seed]) {
+        continue;
+      }
+      heap.add(Double.POSITIVE_INFINITY, seed);
+      while(!heap.isEmpty()) {
+        final double r = heap.peekKey();
+        final int cur = heap.peekValue();
+        heap.poll();
+        // Lazy deletion: skip outdated heap entries
+        if(processed[cur] || r > reach[cur]) {
+          continue;
+        }
+        processed[cur] = true;
+        final int p = predecessor[cur];
+        clusterOrder.add(it.seek(cur), r, p >= 0 ? pre.seek(p) : null);
+        // Neighborhoods are sorted, so we can truncate at the radius.
+        final int s = start[cur], e = start[cur + 1];
+        if(e - s >= minpts && distances[s + minpts - 1] <= epsilon) {
+          final double coreDistance = distances[s + minpts - 1];
+          for(int k = s; k < e; k++) {
+            final double d = distances[k];
+            if(d > epsilon) {
+              break;
+            }
+            final int nb = neighbors[k];
+            if(processed[nb]) {
+              continue;
+            }
+            final double reachability = d > coreDistance ? d : coreDistance;
+            if(reachability < reach[nb]) {
+              reach[nb] = reachability;
+              predecessor[nb] = cur;
+              heap.add(reachability, nb);
+            }
+          }
+        }
+        LOG.incrementProcessed(progress);
+      }
+    }
+    LOG.ensureCompleted(progress);
+    return clusterOrder;
+  }
+
+  /**
+   * Minimal binary heap of (reachability, offset) pairs, ordered by
+   * reachability and then by offset.
+   *
+   * @author Erich Schubert
+   */
+  private static class ReachabilityHeap {
+    /**
+     * Reachability keys.
+     */
+    private double[] keys = new double[16];
+
+    /**
+     * Object offsets.
+     */
+    private int[] vals = new int[16];
+
+    /**
+     * Current size.
+     */
+    private int size = 0;
+
+    /**
+     * Test whether the heap is empty.
+     *
+     * @return {@code true} when empty
+     */
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    /**
+     * Get the reachability of the top element.
+     *
+     * @return Reachability
+     */
+    double peekKey() {
+      return keys[0];
+    }
+
+    /**
+     * Get the offset of the top element.
+     *
+     * @return Offset
+     */
+    int peekValue() {
+      return vals[0];
+    }
+
+    /**
+     * Test whether (k1, v1) must be placed before (k2, v2).
+     */
+    private static boolean before(double k1, int v1, double k2, int v2) {
+      return k1 < k2 || (k1 == k2 && v1 < v2);
+    }
+
+    /**
+     * Add a new entry.
+     *
+     * @param key Reachability
+     * @param val Offset
+     */
+    void add(double key, int val) {
+      if(size == keys.length) {
+        final int newsize = keys.length + (keys.length >>> 1);
+        keys = Arrays.copyOf(keys, newsize);
+        vals = Arrays.copyOf(vals, newsize);
+      }
+      int pos = size++;
+      while(pos > 0) {
+        final int parent = (pos - 1) >>> 1;
+        if(!before(key, val, keys[parent], vals[parent])) {
+          break;
+        }
+        keys[pos] = keys[parent];
+        vals[pos] = vals[parent];
+        pos = parent;
+      }
+      keys[pos] = key;
+      vals[pos] = val;
+    }
+
+    /**
+     * Remove the top element.
+     */
+    void poll() {
+      if(--size == 0) {
+        return;
+      }
+      final double key = keys[size];
+      final int val = vals[size];
+      int pos = 0;
+      final int half = size >>> 1;
+      while(pos < half) {
+        int child = (pos << 1) + 1;
+        final int right = child + 1;
+        if(right < size && before(keys[right], vals[right], keys[child], vals[child])) {
+          child = right;
+        }
+        if(!before(keys[child], vals[child], key, val)) {
+          break;
+        }
+        keys[pos] = keys[child];
+        vals[pos] = vals[child];
+        pos = child;
+      }
+      keys[pos] = key;
+      vals[pos] = val;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<O> extends AbstractOPTICS.Par<O> {
+    @Override
+    public ParallelOPTICS<O> make() {
+      return new ParallelOPTICS<>(distance, epsilon, minpts);
+    }
+  }
+}
@@ -66,16 +66,15 @@ public class BCubed {
     double aggPrec = 0.0, aggRec = 0.0;
     final int selfpair = table.selfPairing ? 0 : 1;
     for(int i1 = 0; i1 < table.size1; i1++) {
-      final int[] sumrow = table.contingency[i1];
-      for(int i2 = 0; i2 < table.size2; i2++) {
-        final int c = sumrow[i2];
+      for(int k = table.rowstart[i1], e = table.rowstart[i1 + 1]; k < e; k++) {
+        final int c = table.cellcount[k];
         if(c > selfpair) {
-          aggPrec += c * (c - selfpair) / (double) (table.contingency[table.size1][i2] - selfpair);
-          aggRec += c * (c - selfpair) / (double) (sumrow[table.size2] - selfpair);
+          aggPrec += c * (c - selfpair) / (double) (table.colsum[table.cellcol[k]] - selfpair);
+          aggRec += c * (c - selfpair) / (double) (table.rowsum[i1] - selfpair);
         }
       }
     }
-    final int total = table.contingency[table.size1][table.size2];
+    final int total = table.total;
     this.bCubedPrecision = aggPrec / total;
     this.bCubedRecall = aggRec / total;
   }
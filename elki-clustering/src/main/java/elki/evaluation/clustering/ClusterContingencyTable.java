@@ -20,18 +20,36 @@
  */
 package elki.evaluation.clustering;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
 import elki.data.Cluster;
 import elki.data.Clustering;
-import elki.database.ids.DBIDUtil;
-import elki.database.ids.DBIDs;
+import elki.database.datastore.IntegerDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.datastore.memory.MapIntegerDBIDIntegerStore;
+import elki.database.ids.*;
 import elki.math.MeanVariance;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.datastructures.BitsUtil;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
 /**
  * Class storing the contingency table and related data on two clusterings.
+ * <p>
+ * The table is stored sparsely: only the nonzero cells are kept, in a
+ * compressed sparse row layout, together with the row and column marginals.
+ * When the second clustering does not overlap, the table is computed in a
+ * single (parallel) pass over the objects of the first clustering, using a
+ * cluster label map of the second clustering and hash-based cell counting.
+ * This needs memory and time linear in the number of objects and nonzero
+ * cells, rather than in the product of the numbers of clusters. Otherwise
+ * (e.g., for hierarchical clusterings), the cells are computed via the
+ * pairwise intersections of the clusters.
  * 
  * @author Erich Schubert
  * @since 0.5.0
@@ -46,6 +64,11 @@ import elki.utilities.datastructures.BitsUtil;
  * @composed - - - SetMatchingPurity
  */
 public class ClusterContingencyTable {
+  /**
+   * Minimum number of objects per thread when counting cells.
+   */
+  private static final int MIN_BLOCK = 10000;
+
   /**
    * Noise cluster handling
    */
@@ -62,9 +85,34 @@ public class ClusterContingencyTable {
   protected int size1 = -1, size2 = -1;
 
   /**
-   * Contingency matrix
+   * Cluster sizes.
+   */
+  protected int[] sizes1, sizes2;
+
+  /**
+   * Sums of the cells of each row and column. These are expected to be equal
+   * to the cluster sizes for strict partitionings, but may deviate if we have
+   * partial, hierarchical, or overlapping clusterings, in which case many
+   * measures will no longer work correctly!
+   */
+  protected int[] rowsum, colsum;
+
+  /**
+   * Sum of all cells, and sums of the cluster sizes.
+   */
+  protected int total, totalSize1, totalSize2;
+
+  /**
+   * Nonzero cells: the cells of row i are at positions
+   * {@code rowstart[i]} (inclusive) to {@code rowstart[i+1]} (exclusive),
+   * sorted by column.
+   */
+  protected int[] rowstart;
+
+  /**
+   * Column and count of each nonzero cell.
    */
-  protected int[][] contingency = null;
+  protected int[] cellcol, cellcount;
 
   /**
    * Noise flags
@@ -108,53 +156,266 @@ public class ClusterContingencyTable {
     super();
     this.selfPairing = selfPairing;
     this.breakNoiseClusters = breakNoiseClusters;
-    // Get the clusters
-    final List<? extends Cluster<?>> cs1 = result1.getAllClusters();
     final List<? extends Cluster<?>> cs2 = result2.getAllClusters();
+    WritableIntegerDataStore labels2 = labelMap(cs2);
+    process(result1.getAllClusters(), cs2, labels2);
+    if(labels2 != null) {
+      labels2.destroy();
+    }
+  }
+
+  /**
+   * Constructor, reusing the cluster labels of the second clustering.
+   * 
+   * @param selfPairing Build self-pairs
+   * @param breakNoiseClusters Break noise clusters into individual objects
+   * @param result1 First clustering
+   * @param result2 Second clustering
+   * @param labels2 Cluster labels of the second clustering, as computed by
+   *        {@link #labelMap}, or {@code null} if the clusters overlap
+   */
+  public ClusterContingencyTable(boolean selfPairing, boolean breakNoiseClusters, Clustering<?> result1, Clustering<?> result2, IntegerDataStore labels2) {
+    super();
+    this.selfPairing = selfPairing;
+    this.breakNoiseClusters = breakNoiseClusters;
+    process(result1.getAllClusters(), result2.getAllClusters(), labels2);
+  }
 
+  /**
+   * Compute the cluster sizes, the cells, and the marginals.
+   *
+   * @param cs1 Clusters of the first clustering
+   * @param cs2 Clusters of the second clustering
+   * @param labels2 Cluster labels of the second clustering, may be
+   *        {@code null}
+   */
+  private void process(List<? extends Cluster<?>> cs1, List<? extends Cluster<?>> cs2, IntegerDataStore labels2) {
     // Initialize
     size1 = cs1.size();
     size2 = cs2.size();
-    // +2: 1 for cluster sizes, 1 for intersection sums
-    // these rows are expected to be equal for strict partitionings but may
-    // deviate if we have partial, hierarchical, or overlapping clusterings, in
-    // which case many measures will no longer work correctly!
-    contingency = new int[size1 + 2][size2 + 2];
+    sizes1 = new int[size1];
+    sizes2 = new int[size2];
     noise1 = BitsUtil.zero(size1);
     noise2 = BitsUtil.zero(size2);
+    totalSize1 = clusterSizes(cs1, sizes1, noise1);
+    totalSize2 = clusterSizes(cs2, sizes2, noise2);
 
-    // Fill main part of matrix
-    {
-      final Iterator<? extends Cluster<?>> it2 = cs2.iterator();
-      for(int i2 = 0; it2.hasNext(); i2++) {
-        final Cluster<?> c2 = it2.next();
-        if(c2.isNoise()) {
-          BitsUtil.setI(noise2, i2);
+    if(labels2 != null) {
+      countCells(cs1, labels2);
+    }
+    else {
+      intersectCells(cs1, cs2);
+    }
+    // Marginals
+    rowsum = new int[size1];
+    colsum = new int[size2];
+    for(int i1 = 0; i1 < size1; i1++) {
+      int sum = 0;
+      for(int k = rowstart[i1], e = rowstart[i1 + 1]; k < e; k++) {
+        sum += cellcount[k];
+        colsum[cellcol[k]] += cellcount[k];
+      }
+      rowsum[i1] = sum;
+      total += sum;
+    }
+  }
+
+  /**
+   * Get the cluster sizes and noise flags.
+   *
+   * @param cs Clusters
+   * @param sizes Output array of cluster sizes
+   * @param noise Output noise flags
+   * @return Sum of the cluster sizes
+   */
+  private static int clusterSizes(List<? extends Cluster<?>> cs, int[] sizes, long[] noise) {
+    int sum = 0;
+    final Iterator<? extends Cluster<?>> it = cs.iterator();
+    for(int i = 0; it.hasNext(); i++) {
+      final Cluster<?> c = it.next();
+      if(c.isNoise()) {
+        BitsUtil.setI(noise, i);
+      }
+      sum += sizes[i] = c.size();
+    }
+    return sum;
+  }
+
+  /**
+   * Map each object to its cluster number (-1 for objects not clustered).
+   *
+   * @param cs Clusters
+   * @return Cluster label map, or {@code null} if the clusters overlap
+   */
+  public static WritableIntegerDataStore labelMap(List<? extends Cluster<?>> cs) {
+    // Clusters may be stored with different DBID ranges, so use a map store.
+    int total = 0;
+    for(Cluster<?> c : cs) {
+      total += c.size();
+    }
+    WritableIntegerDataStore labels = new MapIntegerDBIDIntegerStore(total, -1);
+    final Iterator<? extends Cluster<?>> it = cs.iterator();
+    for(int i = 0; it.hasNext(); i++) {
+      for(DBIDIter iter = it.next().getIDs().iter(); iter.valid(); iter.advance()) {
+        if(labels.putInt(iter, i) >= 0) {
+          labels.destroy();
+          return null; // Overlapping clusters
         }
-        contingency[size1 + 1][i2] = c2.size();
-        contingency[size1 + 1][size2] += c2.size();
       }
     }
+    return labels;
+  }
+
+  /**
+   * Count the cells by the cluster labels of the second clustering, in a
+   * single parallel pass over the objects of the first clustering.
+   *
+   * @param cs1 Clusters of the first clustering
+   * @param labels2 Cluster labels of the second clustering
+   */
+  private void countCells(List<? extends Cluster<?>> cs1, IntegerDataStore labels2) {
+    // Flatten the first clustering into an id array and a label array:
+    ArrayModifiableDBIDs ids1 = DBIDUtil.newArray(totalSize1);
+    final int[] labels1 = new int[totalSize1];
     final Iterator<? extends Cluster<?>> it1 = cs1.iterator();
-    for(int i1 = 0; it1.hasNext(); i1++) {
-      final Cluster<?> c1 = it1.next();
-      if(c1.isNoise()) {
-        BitsUtil.setI(noise1, i1);
+    for(int i1 = 0, o = 0; it1.hasNext(); i1++) {
+      final DBIDs ids = it1.next().getIDs();
+      ids1.addDBIDs(ids);
+      Arrays.fill(labels1, o, o += ids.size(), i1);
+    }
+    final Long2IntOpenHashMap cells = new Long2IntOpenHashMap();
+    ParallelExecutor.run(0, labels1.length, MIN_BLOCK, (s, e) -> {
+      Long2IntOpenHashMap local = new Long2IntOpenHashMap();
+      for(DBIDArrayIter iter = ids1.iter().seek(s); iter.getOffset() < e; iter.advance()) {
+        final int l2 = labels2.intValue(iter);
+        if(l2 >= 0) {
+          local.addTo(((long) labels1[iter.getOffset()] << 32) | l2, 1);
+        }
+      }
+      synchronized(cells) {
+        for(Long2IntMap.Entry ent : local.long2IntEntrySet()) {
+          cells.addTo(ent.getLongKey(), ent.getIntValue());
+        }
       }
-      final DBIDs ids = DBIDUtil.ensureSet(c1.getIDs());
-      contingency[i1][size2 + 1] = c1.size();
-      contingency[size1][size2 + 1] += c1.size();
+    });
+    // Sorting the keys yields row-major order:
+    final long[] keys = cells.keySet().toLongArray();
+    Arrays.sort(keys);
+    rowstart = new int[size1 + 1];
+    cellcol = new int[keys.length];
+    cellcount = new int[keys.length];
+    for(int k = 0; k < keys.length; k++) {
+      final long key = keys[k];
+      rowstart[(int) (key >>> 32) + 1]++;
+      cellcol[k] = (int) key;
+      cellcount[k] = cells.get(key);
+    }
+    for(int i1 = 0; i1 < size1; i1++) {
+      rowstart[i1 + 1] += rowstart[i1];
+    }
+  }
 
+  /**
+   * Compute the cells by intersecting all pairs of clusters, for overlapping
+   * clusterings.
+   *
+   * @param cs1 Clusters of the first clustering
+   * @param cs2 Clusters of the second clustering
+   */
+  private void intersectCells(List<? extends Cluster<?>> cs1, List<? extends Cluster<?>> cs2) {
+    IntArrayList cols = new IntArrayList(), counts = new IntArrayList();
+    rowstart = new int[size1 + 1];
+    final Iterator<? extends Cluster<?>> it1 = cs1.iterator();
+    for(int i1 = 0; it1.hasNext(); i1++) {
+      final DBIDs ids = DBIDUtil.ensureSet(it1.next().getIDs());
       final Iterator<? extends Cluster<?>> it2 = cs2.iterator();
       for(int i2 = 0; it2.hasNext(); i2++) {
-        final Cluster<?> c2 = it2.next();
-        int count = DBIDUtil.intersectionSize(ids, c2.getIDs());
-        contingency[i1][i2] = count;
-        contingency[i1][size2] += count;
-        contingency[size1][i2] += count;
-        contingency[size1][size2] += count;
+        int count = DBIDUtil.intersectionSize(ids, it2.next().getIDs());
+        if(count > 0) {
+          cols.add(i2);
+          counts.add(count);
+        }
       }
+      rowstart[i1 + 1] = cols.size();
     }
+    cellcol = cols.toIntArray();
+    cellcount = counts.toIntArray();
+  }
+
+  /**
+   * Get the size of a cluster of the first clustering.
+   *
+   * @param i1 Cluster number
+   * @return Cluster size
+   */
+  public int getClusterSize1(int i1) {
+    return sizes1[i1];
+  }
+
+  /**
+   * Get the size of a cluster of the second clustering.
+   *
+   * @param i2 Cluster number
+   * @return Cluster size
+   */
+  public int getClusterSize2(int i2) {
+    return sizes2[i2];
+  }
+
+  /**
+   * Get the start of the nonzero cells of a row. The cells of row {@code i1}
+   * end at {@code getRowStart(i1 + 1)}.
+   *
+   * @param i1 Row (cluster of the first clustering), up to the number of
+   *        clusters (inclusive)
+   * @return Position of the first nonzero cell
+   */
+  public int getRowStart(int i1) {
+    return rowstart[i1];
+  }
+
+  /**
+   * Get the column of a nonzero cell.
+   *
+   * @param k Cell position
+   * @return Column (cluster of the second clustering)
+   */
+  public int getCellColumn(int k) {
+    return cellcol[k];
+  }
+
+  /**
+   * Get the count of a nonzero cell.
+   *
+   * @param k Cell position
+   * @return Number of objects in both clusters
+   */
+  public int getCellCount(int k) {
+    return cellcount[k];
+  }
+
+  /**
+   * Find the position of a cell.
+   *
+   * @param i1 Row (cluster of the first clustering)
+   * @param i2 Column (cluster of the second clustering)
+   * @return Cell position, or -1 if the cell is zero
+   */
+  public int findCell(int i1, int i2) {
+    final int k = Arrays.binarySearch(cellcol, rowstart[i1], rowstart[i1 + 1], i2);
+    return k >= 0 ? k : -1;
+  }
+
+  /**
+   * Get the number of objects in both clusters.
+   *
+   * @param i1 Row (cluster of the first clustering)
+   * @param i2 Column (cluster of the second clustering)
+   * @return Cell count
+   */
+  public int getCount(int i1, int i2) {
+    final int k = findCell(i1, i2);
+    return k >= 0 ? cellcount[k] : 0;
   }
 
   /**
@@ -164,17 +425,19 @@ public class ClusterContingencyTable {
    *         partitioning of the data set
    */
   public boolean isStrictPartitioning() {
-    int expected = contingency[size1][size2];
-    return contingency[size1][size2 + 1] == expected && contingency[size1 + 1][size2] == expected;
+    return totalSize1 == total && totalSize2 == total;
   }
 
   @Override
   public String toString() {
     StringBuilder buf = new StringBuilder(size1 * size2 * 10 + 10);
-    if(contingency != null) {
+    if(rowstart != null) {
       for(int i1 = 0; i1 <= size1; i1++) {
-        for(int i2 = 0; i2 <= size2; i2++) {
-          buf.append(contingency[i1][i2]).append(i2 < size2 ? " " : "| ");
+        for(int i2 = 0, k = i1 < size1 ? rowstart[i1] : 0; i2 <= size2; i2++) {
+          final int v = i1 == size1 ? (i2 < size2 ? colsum[i2] : total) : //
+              i2 == size2 ? rowsum[i1] : //
+                  k < rowstart[i1 + 1] && cellcol[k] == i2 ? cellcount[k++] : 0;
+          buf.append(v).append(i2 < size2 ? " " : "| ");
         }
         buf.append(i1 < size1 ? "\n" : "------\n");
       }
@@ -237,24 +500,19 @@ public class ClusterContingencyTable {
     MeanVariance mv = new MeanVariance();
     for(int i1 = 0; i1 < size1; i1++) {
       double purity = 0.0;
-      if(contingency[i1][size2] > 0) {
-        final double cs = contingency[i1][size2]; // sum, as double.
-        for(int i2 = 0; i2 < size2; i2++) {
-          double rel = contingency[i1][i2] / cs;
+      if(rowsum[i1] > 0) {
+        final double cs = rowsum[i1]; // sum, as double.
+        for(int k = rowstart[i1], e = rowstart[i1 + 1]; k < e; k++) {
+          double rel = cellcount[k] / cs;
           purity += rel * rel;
         }
         mv.put(purity, cs);
       }
     }
+    final double[] purities = columnPurities();
     for(int i2 = 0; i2 < size2; i2++) {
-      double purity = 0.0;
-      if(contingency[size1][i2] > 0) {
-        final double cs = contingency[size1][i2]; // sum, as double.
-        for(int i1 = 0; i1 < size1; i1++) {
-          double rel = contingency[i1][i2] / cs;
-          purity += rel * rel;
-        }
-        mv.put(purity, cs);
+      if(colsum[i2] > 0) {
+        mv.put(purities[i2], colsum[i2]);
       }
     }
     return mv;
@@ -268,36 +526,52 @@ public class ClusterContingencyTable {
    */
   public MeanVariance adjustedSymmetricGini() {
     MeanVariance mv = new MeanVariance();
-    final double total = contingency[size1][size2];
+    final double total = this.total;
+    // The expected values do not depend on the cluster:
+    double exp1 = 0.0, exp2 = 0.0;
+    for(int i2 = 0; i2 < size2; i2++) {
+      double e = colsum[i2] / total;
+      exp1 += e * e;
+    }
     for(int i1 = 0; i1 < size1; i1++) {
-      double purity = 0.0, exp = 0.0;
-      if(contingency[i1][size2] > 0) {
-        final double cs = contingency[i1][size2]; // sum, as double.
-        for(int i2 = 0; i2 < size2; i2++) {
-          double rel = contingency[i1][i2] / cs;
+      double e = rowsum[i1] / total;
+      exp2 += e * e;
+    }
+    for(int i1 = 0; i1 < size1; i1++) {
+      double purity = 0.0;
+      if(rowsum[i1] > 0) {
+        final double cs = rowsum[i1]; // sum, as double.
+        for(int k = rowstart[i1], e = rowstart[i1 + 1]; k < e; k++) {
+          double rel = cellcount[k] / cs;
           purity += rel * rel;
-          double e = contingency[size1][i2] / total;
-          exp += e * e;
         }
-        mv.put((purity - exp) / (1 - exp), cs);
+        mv.put((purity - exp1) / (1 - exp1), cs);
       }
     }
+    final double[] purities = columnPurities();
     for(int i2 = 0; i2 < size2; i2++) {
-      double purity = 0.0, exp = 0.0;
-      if(contingency[size1][i2] > 0) {
-        final double cs = contingency[size1][i2]; // sum, as double.
-        for(int i1 = 0; i1 < size1; i1++) {
-          double rel = contingency[i1][i2] / cs;
-          purity += rel * rel;
-          double e = contingency[i1][size2] / total;
-          exp += e * e;
-        }
-        mv.put((purity - exp) / (1 - exp), cs);
+      if(colsum[i2] > 0) {
+        mv.put((purities[i2] - exp2) / (1 - exp2), colsum[i2]);
       }
     }
     return mv;
   }
 
+  /**
+   * Compute the Gini purity of each column, in a single pass over the cells.
+   *
+   * @return Purity of each column
+   */
+  private double[] columnPurities() {
+    final double[] purities = new double[size2];
+    for(int k = 0; k < cellcount.length; k++) {
+      final int i2 = cellcol[k];
+      double rel = cellcount[k] / (double) colsum[i2];
+      purities[i2] += rel * rel;
+    }
+    return purities;
+  }
+
   /**
    * Utility class.
    * 
@@ -57,39 +57,37 @@ public class EditDistance {
 
   protected EditDistance(ClusterContingencyTable table) {
     super();
-    final int[][] contingency = table.contingency;
     final int r = table.size1, c = table.size2;
+    // Largest cell in each row and column:
+    final int[] rowmax = new int[r], colmax = new int[c];
+    for(int i = 0; i < r; i++) {
+      for(int k = table.rowstart[i], e = table.rowstart[i + 1]; k < e; k++) {
+        final int v = table.cellcount[k], j = table.cellcol[k];
+        rowmax[i] = Math.max(rowmax[i], v);
+        colmax[j] = Math.max(colmax[j], v);
+      }
+    }
     int ed1 = 0, ed2 = 0;
     // We perform the editing the opposite way as in the original paper, hence
     // we switch the output variables. This is minimally simpler, as we do not
     // need to store the target label.
     for(int i = 0; i < c; i++) {
-      final int csize = contingency[r][i];
+      final int csize = table.colsum[i];
       if(csize > 0) {
-        // get largest cell in column
-        int largestLabelSet = 0;
-        for(int j = 0; j < r; j++) {
-          largestLabelSet = Math.max(largestLabelSet, contingency[j][i]);
-        }
         // Merge, move remaining objects
-        ed1 += 1 + csize - largestLabelSet;
+        ed1 += 1 + csize - colmax[i];
       }
     }
     for(int i = 0; i < r; i++) {
-      final int csize = contingency[i][c];
+      final int csize = table.rowsum[i];
       if(csize > 0) {
-        // get largest cell in row
-        int largestLabelSet = 0;
-        for(int j = 0; j < c; j++) {
-          largestLabelSet = Math.max(largestLabelSet, contingency[i][j]);
-        }
         // Merge, move remaining objects
-        ed2 += 1 + csize - largestLabelSet;
+        ed2 += 1 + csize - rowmax[i];
       }
     }
     this.editFirst = ed1;
     this.editSecond = ed2;
-    this.editOperationsBaseline = contingency[r][c];
+    this.editOperationsBaseline = table.total;
   }
 
   /**
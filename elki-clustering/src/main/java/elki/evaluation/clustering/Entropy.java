@@ -115,25 +115,23 @@ public class Entropy {
    */
   protected Entropy(ClusterContingencyTable table) {
     super();
-    final int r = table.size1, c = table.size2;
-    final int[][] contingency = table.contingency;
-    final int n = contingency[r][c];
-    if(table.contingency[table.size1][table.size2 + 1] != n || table.contingency[table.size1 + 1][table.size2] != n) {
-      LoggingUtil.warning("Entropy measure are not well defined for overlapping and incomplete clusterings. The number of elements are: " + table.contingency[table.size1][table.size2 + 1] + " != " + table.contingency[table.size1 + 1][table.size2] + " elements.");
+    final int n = table.total;
+    if(!table.isStrictPartitioning()) {
+      LoggingUtil.warning("Entropy measure are not well defined for overlapping and incomplete clusterings. The number of elements are: " + table.totalSize1 + " != " + table.totalSize2 + " elements.");
     }
     // 1/N and -log(N)
     final double byn = 1.0 / n, mlogn = -FastMath.log(n);
     // We compute EMI values only for small clusterings.
     if(n <= 10000) {
       // Maximum cluster size, and cluster sizes:
-      final int m = maxClusterSize(contingency, r, c);
+      final int m = maxClusterSize(table);
       final double[] logs = new double[m]; // Cache
-      this.entropyFirst = computeEntropyFirst(contingency, r, c, byn, mlogn, logs);
-      this.entropySecond = computeEntropySecond(contingency, r, c, byn, mlogn, logs);
-      computeMIFull(contingency, r, c, n, m, byn, mlogn, logs);
+      this.entropyFirst = computeEntropy(table.rowsum, byn, mlogn, logs);
+      this.entropySecond = computeEntropy(table.colsum, byn, mlogn, logs);
+      computeMIFull(table, n, m, byn, mlogn, logs);
     }
     else {
-      computeMILarge(contingency, r, c, byn, mlogn);
+      computeMILarge(table, byn, mlogn);
     }
   }
 
@@ -141,14 +139,13 @@ public class Entropy {
    * Compute mutual information measures, but skip expensive computation of
    * AMI/EMI for large data sets, where they do not differ much.
    * 
-   * @param contingency Contingency table
-   * @param r Rows
-   * @param c Columns
+   * @param table Contingency table
    * @param byn 1/N factor
    * @param mlogn -log(N)
    */
-  private void computeMILarge(int[][] contingency, int r, int c, double byn, double mlogn) {
-    final int[] lastrow = contingency[r];
+  private void computeMILarge(ClusterContingencyTable table, double byn, double mlogn) {
+    final int r = table.size1, c = table.size2;
+    final int[] lastrow = table.colsum;
     final double[] logs = new double[14]; // Small cache only.
     final double[] mlogbn = new double[c]; // Log cluster sizes
     double ent1 = 0.0, ent2 = 0.0, joint = 0.0, mi = 0.0, vi = 0.0;
@@ -160,23 +157,21 @@ public class Entropy {
     }
 
     for(int i = 0; i < r; i++) {
-      final int[] rowi = contingency[i];
-      final int an = rowi[c];
+      final int an = table.rowsum[i];
       if(an <= 0) {
         continue;
       }
       final double mlogain = -log(an, logs) - mlogn; // -log(ai/N)=log(N/ai)
       ent1 += an * byn * mlogain;
-      for(int j = 0; j < c; j++) {
-        final int vij = rowi[j];
-        final double mlogbjn = mlogbn[j]; // -log(bj/N)=log(N/bj)
+      // Zero cells do not contribute:
+      for(int k = table.rowstart[i], e = table.rowstart[i + 1]; k < e; k++) {
+        final int vij = table.cellcount[k];
+        final double mlogbjn = mlogbn[table.cellcol[k]]; // -log(bj/N)=log(N/bj)
         // Joint Entropy, Mutual Information, Variation of Information:
-        if(vij > 0) {
-          final double p = vij * byn, mlogp = -log(vij, logs) - mlogn;
-          joint += p * mlogp;
-          mi += p * (mlogain + mlogbjn - mlogp);
-          vi += p * (mlogp - mlogain + mlogp - mlogbjn);
-        }
+        final double p = vij * byn, mlogp = -log(vij, logs) - mlogn;
+        joint += p * mlogp;
+        mi += p * (mlogain + mlogbjn - mlogp);
+        vi += p * (mlogp - mlogain + mlogp - mlogbjn);
       }
     }
     // Store output in fields
@@ -192,32 +187,31 @@ public class Entropy {
   /**
    * Full computation of mutual information measures, including AMI/EMI.
    * 
-   * @param contingency Contingency table
-   * @param r Rows
-   * @param c Columns
+   * @param table Contingency table
    * @param n Total size
    * @param m Maximum cluster size
    * @param byn 1/N factor
    * @param mlogn -log(N)
    * @param logs Logarithm cache
    */
-  private void computeMIFull(int[][] contingency, int r, int c, int n, int m, double byn, double mlogn, double[] logs) {
+  private void computeMIFull(ClusterContingencyTable table, int n, int m, double byn, double mlogn, double[] logs) {
+    final int r = table.size1, c = table.size2;
     // Precompute log(factorial) table:
     double[] lfacs = new double[n];
     double tmp = 0.;
     for(int i = 2, e = n - m; i <= e; i++) {
       lfacs[i - 2] = tmp += log(i, logs);
     }
-    final int[] lastrow = contingency[r];
+    final int[] lastrow = table.colsum;
     double joint = 0.0, mi = 0.0, vi = 0.0, emi = 0.0;
     for(int i = 0; i < r; i++) {
-      final int[] rowi = contingency[i];
-      final int ai = rowi[c];
+      final int ai = table.rowsum[i];
       final double mlogain = -log(ai, logs) - mlogn; // -log(ai/N)=log(N/ai)
       final double lfacai = lfac(ai, lfacs), lfacNmai = lfac(n - ai, lfacs);
-      for(int j = 0; j < c; j++) {
+      // The expected mutual information needs all cells, including zeros:
+      for(int j = 0, k = table.rowstart[i], e = table.rowstart[i + 1]; j < c; j++) {
         final int bj = lastrow[j];
-        final int vij = rowi[j];
+        final int vij = k < e && table.cellcol[k] == j ? table.cellcount[k++] : 0;
         final double mlogbjn = -log(bj, logs) - mlogn; // -log(bj/N)=log(N/bj)
         // Joint Entropy, Mutual Information, Variation of Information:
         if(vij > 0) {
@@ -296,68 +290,37 @@ public class Entropy {
   /**
    * Get the maximum cluster size of a contingency table.
    *
-   * @param contingency Contingency table
-   * @param r Rows
-   * @param c Columns
+   * @param table Contingency table
    * @return Maximum
    */
-  private static int maxClusterSize(final int[][] contingency, final int r, final int c) {
+  private static int maxClusterSize(ClusterContingencyTable table) {
     int maxc = 0;
-    final int[] lastrow = contingency[r];
-    for(int j = 0; j < c; j++) {
-      final int v = lastrow[j];
+    for(int v : table.colsum) {
       maxc = maxc > v ? maxc : v;
     }
-    for(int i = 0; i < r; i++) {
-      final int v = contingency[i][c];
+    for(int v : table.rowsum) {
       maxc = maxc > v ? maxc : v;
     }
     return maxc;
   }
 
   /**
-   * Compute entropy of first clustering.
+   * Compute the entropy of a clustering.
    *
-   * @param contingency Contingency table
-   * @param r Rows
-   * @param c Columns
+   * @param sizes Cluster sizes (marginals of the contingency table)
    * @param byn 1 / N
    * @param mlogn -log(N)
    * @param logs log value cache
-   * @return entropy of first clustering
+   * @return entropy of the clustering
    */
-  private static double computeEntropyFirst(final int[][] contingency, final int r, final int c, final double byn, final double mlogn, double[] logs) {
-    double entropyFirst = 0.0;
-    for(int i = 0; i < r; i++) {
-      final int v = contingency[i][c];
+  private static double computeEntropy(final int[] sizes, final double byn, final double mlogn, double[] logs) {
+    double entropy = 0.0;
+    for(int v : sizes) {
       if(v > 0) {
-        entropyFirst += v * byn * (-log(v, logs) - mlogn);
+        entropy += v * byn * (-log(v, logs) - mlogn);
       }
     }
-    return entropyFirst;
-  }
-
-  /**
-   * Compute entropy of second clustering.
-   *
-   * @param contingency Contingency table
-   * @param r Rows
-   * @param c Columns
-   * @param byn 1 / N
-   * @param mlogn -log(N)
-   * @param logs log value cache
-   * @return entropy of second clustering
-   */
-  private static double computeEntropySecond(final int[][] contingency, final int r, final int c, final double byn, final double mlogn, double[] logs) {
-    double entropySecond = 0.0;
-    int[] lastrow = contingency[r];
-    for(int j = 0; j < c; j++) {
-      final int v = lastrow[j];
-      if(v > 0) {
-        entropySecond += v * byn * (-log(v, logs) - mlogn);
-      }
-    }
-    return entropySecond;
+    return entropy;
   }
 
   /**
@@ -66,17 +66,16 @@ public class PairCounting {
    */
   protected PairCounting(ClusterContingencyTable table) {
     super();
-    final int[][] contingency = table.contingency;
     final boolean breakNoise = table.breakNoiseClusters;
     final boolean selfPair = table.selfPairing;
     if(!table.isStrictPartitioning()) {
-      LoggingUtil.warning("PairCounting F-Measure is not well defined for overlapping and incomplete clusterings. The number of elements are: " + contingency[table.size1][table.size2 + 1] + " != " + contingency[table.size1 + 1][table.size2] + " elements.");
+      LoggingUtil.warning("PairCounting F-Measure is not well defined for overlapping and incomplete clusterings. The number of elements are: " + table.totalSize1 + " != " + table.totalSize2 + " elements.");
     }
     // Aggregations
     long inB = 0, in1 = 0, in2 = 0;
     // Process first clustering:
     for(int i = 0; i < table.size1; i++) {
-      final int size = contingency[i][table.size2 + 1];
+      final int size = table.sizes1[i];
       if(breakNoise && BitsUtil.get(table.noise1, i)) {
         if(selfPair) {
           in1 += size;
@@ -88,7 +87,7 @@ public class PairCounting {
     }
     // Process second clustering:
     for(int j = 0; j < table.size2; j++) {
-      final int size = contingency[table.size1 + 1][j];
+      final int size = table.sizes2[j];
       if(breakNoise && BitsUtil.get(table.noise2, j)) {
         if(selfPair) {
           in2 += size;
@@ -98,11 +97,12 @@ public class PairCounting {
         in2 += size * (long) (selfPair ? size : (size - 1));
       }
     }
-    // Process combinations
+    // Process combinations (zero cells do not contribute)
     for(int i1 = 0; i1 < table.size1; i1++) {
-      for(int i2 = 0; i2 < table.size2; i2++) {
-        final int size = contingency[i1][i2];
-        if(breakNoise && (BitsUtil.get(table.noise1, i1) || BitsUtil.get(table.noise2, i2))) {
+      final boolean noise1 = breakNoise && BitsUtil.get(table.noise1, i1);
+      for(int k = table.rowstart[i1], e = table.rowstart[i1 + 1]; k < e; k++) {
+        final int size = table.cellcount[k];
+        if(noise1 || (breakNoise && BitsUtil.get(table.noise2, table.cellcol[k]))) {
           if(selfPair) {
             inB += size;
           } // else: 0
@@ -112,7 +112,7 @@ public class PairCounting {
         }
       }
     }
-    final int tsize = contingency[table.size1][table.size2];
+    final int tsize = table.total;
     long total = tsize * (long) (selfPair ? tsize : (tsize - 1));
     this.inBoth = inB;
     this.inFirst = in1 - inB;
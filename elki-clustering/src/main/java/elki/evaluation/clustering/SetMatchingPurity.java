@@ -67,31 +67,31 @@ public class SetMatchingPurity {
    */
   protected SetMatchingPurity(ClusterContingencyTable table) {
     super();
-    final int[][] contingency = table.contingency;
     final int r = table.size1, c = table.size2;
+    final int[] rowsum = table.rowsum, colsum = table.colsum;
+    final double[] recallMax = new double[c], fMaxSecond = new double[c];
     double aggPurity = 0.0, aggFirst = 0.0;
-    // iterate first clustering
+    // iterate first clustering, zero cells do not contribute
     for(int i = 0; i < r; i++) {
       double precisionMax = 0.0, fMax = 0.0;
-      for(int j = 0; j < c; j++) {
-        precisionMax = Math.max(precisionMax, contingency[i][j]);
-        fMax = Math.max(fMax, (2.0 * contingency[i][j]) / (contingency[i][c] + contingency[r][j]));
+      for(int k = table.rowstart[i], e = table.rowstart[i + 1]; k < e; k++) {
+        final int v = table.cellcount[k], j = table.cellcol[k];
+        final double f = (2.0 * v) / (rowsum[i] + colsum[j]);
+        precisionMax = Math.max(precisionMax, v);
+        fMax = Math.max(fMax, f);
+        recallMax[j] = Math.max(recallMax[j], v);
+        fMaxSecond[j] = Math.max(fMaxSecond[j], f);
       }
       aggPurity += precisionMax;
-      aggFirst += contingency[i][c] * fMax;
+      aggFirst += rowsum[i] * fMax;
     }
     double aggInvP = 0.0, aggSecond = 0.0;
     // iterate second clustering
-    for(int i = 0; i < c; i++) {
-      double recallMax = 0.0, fMax = 0.0;
-      for(int j = 0; j < r; j++) {
-        recallMax = Math.max(recallMax, contingency[j][i]);
-        fMax = Math.max(fMax, (2.0 * contingency[j][i]) / (contingency[j][c] + contingency[r][i]));
-      }
-      aggInvP += recallMax;
-      aggSecond += contingency[r][i] * fMax;
+    for(int j = 0; j < c; j++) {
+      aggInvP += recallMax[j];
+      aggSecond += colsum[j] * fMaxSecond[j];
     }
-    final int numobj = contingency[r][c];
+    final int numobj = table.total;
     // Store and scale
     this.smPurity = aggPurity / numobj;
     this.smFFirst = aggFirst / numobj;
@@ -0,0 +1,101 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import java.util.List;
+
+import elki.data.Cluster;
+import elki.data.NumberVector;
+import elki.data.model.ModelUtil;
+import elki.database.ids.ArrayModifiableDBIDs;
+import elki.database.relation.Relation;
+import elki.evaluation.clustering.internal.NoiseHandling;
+import elki.evaluation.clustering.internal.SimplifiedSilhouette;
+import elki.parallel.ParallelExecutor;
+
+/**
+ * Utility functions for centroid-based internal clustering evaluation
+ * measures.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+final class ClusterCentroids {
+  /**
+   * Private constructor. Static methods only.
+   */
+  private ClusterCentroids() {
+    // Do not use.
+  }
+
+  /**
+   * Compute the centroids of all clusters in parallel, as
+   * {@link SimplifiedSilhouette#centroids}.
+   *
+   * @param rel Data relation
+   * @param clusters Clusters
+   * @param centroids Output array for the centroids, {@code null} for noise
+   * @param noiseOption Noise handling
+   * @return Number of ignored noise objects
+   */
+  static int centroids(Relation<? extends NumberVector> rel, List<? extends Cluster<?>> clusters, NumberVector[] centroids, NoiseHandling noiseOption) {
+    assert (centroids.length == clusters.size());
+    int ignorednoise = 0;
+    for(Cluster<?> cluster : clusters) {
+      if((cluster.size() <= 1 || cluster.isNoise()) && noiseOption == NoiseHandling.IGNORE_NOISE) {
+        ignorednoise += cluster.size();
+      }
+    }
+    ParallelExecutor.run(0, clusters.size(), 1, (s, e) -> {
+      for(int i = s; i < e; i++) {
+        Cluster<?> cluster = clusters.get(i);
+        centroids[i] = (cluster.size() <= 1 || cluster.isNoise()) && noiseOption != NoiseHandling.MERGE_NOISE ? null : //
+            ModelUtil.getPrototypeOrCentroid(cluster.getModel(), rel, cluster.getIDs());
+      }
+    });
+    return ignorednoise;
+  }
+
+  /**
+   * Collect the members of the selected clusters, in cluster order.
+   *
+   * @param clusters Clusters
+   * @param include Clusters to include
+   * @param ids Output for the members
+   * @return Cluster number of each member
+   */
+  static int[] flatten(List<? extends Cluster<?>> clusters, boolean[] include, ArrayModifiableDBIDs ids) {
+    for(int i = 0; i < include.length; i++) {
+      if(include[i]) {
+        ids.addDBIDs(clusters.get(i).getIDs());
+      }
+    }
+    final int[] assign = new int[ids.size()];
+    for(int i = 0, p = 0; i < include.length; i++) {
+      if(include[i]) {
+        for(int e = p + clusters.get(i).size(); p < e; p++) {
+          assign[p] = i;
+        }
+      }
+    }
+    return assign;
+  }
+}
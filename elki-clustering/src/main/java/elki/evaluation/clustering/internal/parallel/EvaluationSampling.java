@@ -0,0 +1,163 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+import elki.data.Cluster;
+import elki.database.ids.*;
+import elki.math.MathUtil;
+import elki.math.MeanVariance;
+import elki.math.statistics.distribution.NormalDistribution;
+import elki.result.EvaluationResult.MeasurementGroup;
+import elki.utilities.random.RandomFactory;
+
+import net.jafama.FastMath;
+
+/**
+ * Utility functions for sampling-based estimation of internal clustering
+ * evaluation measures.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+final class EvaluationSampling {
+  /**
+   * Quantile of the standard normal distribution for two-sided 95% confidence
+   * intervals.
+   */
+  static final double Z95 = NormalDistribution.standardNormalQuantile(.975);
+
+  /**
+   * Private constructor. Static methods only.
+   */
+  private EvaluationSampling() {
+    // Do not use.
+  }
+
+  /**
+   * Restrict a clustering to a random sample of its objects.
+   * <p>
+   * Clusters that become empty are removed; clusters keep their noise flag and
+   * model. The objects are sorted, so the sample does not depend on the
+   * iteration order of the clusters.
+   *
+   * @param clusters Clusters
+   * @param size Sample size
+   * @param rnd Random generator
+   * @return Clusters of the sample
+   */
+  static List<Cluster<?>> subsample(List<? extends Cluster<?>> clusters, int size, Random rnd) {
+    ArrayModifiableDBIDs all = DBIDUtil.newArray();
+    for(Cluster<?> cluster : clusters) {
+      all.addDBIDs(cluster.getIDs());
+    }
+    all.sort();
+    SetDBIDs sample = DBIDUtil.ensureSet(DBIDUtil.randomSample(all, size, rnd));
+    List<Cluster<?>> sub = new ArrayList<>(clusters.size());
+    for(Cluster<?> cluster : clusters) {
+      ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+      for(DBIDIter it = cluster.getIDs().iter(); it.valid(); it.advance()) {
+        if(sample.contains(it)) {
+          ids.add(it);
+        }
+      }
+      if(!ids.isEmpty()) {
+        ids.sort();
+        sub.add(new Cluster<>(ids, cluster.isNoise(), cluster.getModel()));
+      }
+    }
+    return sub;
+  }
+
+  /**
+   * Choose a random sample of positions, using a partial Fisher-Yates shuffle.
+   *
+   * @param size Number of positions
+   * @param sample Sample size
+   * @param rnd Random generator
+   * @return Sorted sample of positions
+   */
+  static int[] samplePositions(int size, int sample, Random rnd) {
+    final int[] all = MathUtil.sequence(0, size);
+    for(int i = 0; i < sample; i++) {
+      final int j = i + rnd.nextInt(size - i);
+      final int tmp = all[i];
+      all[i] = all[j];
+      all[j] = tmp;
+    }
+    final int[] which = Arrays.copyOf(all, sample);
+    Arrays.sort(which);
+    return which;
+  }
+
+  /**
+   * Evaluate a measure on repeated random subsamples.
+   *
+   * @param clusters Clusters
+   * @param size Sample size
+   * @param repeat Number of samples
+   * @param rnd Random generator factory
+   * @param measure Measure to evaluate
+   * @return Mean and variance of the measure over all samples
+   */
+  static MeanVariance repeat(List<? extends Cluster<?>> clusters, int size, int repeat, RandomFactory rnd, ToDoubleFunction<List<? extends Cluster<?>>> measure) {
+    Random r = rnd.getSingleThreadedRandom();
+    MeanVariance mv = new MeanVariance();
+    for(int i = 0; i < repeat; i++) {
+      mv.put(measure.applyAsDouble(subsample(clusters, size, r)));
+    }
+    return mv;
+  }
+
+  /**
+   * Half width of the 95% confidence interval of a mean, using the normal
+   * approximation.
+   *
+   * @param mv Sample statistics
+   * @param population Population size, for the finite population correction,
+   *        or 0 for none
+   * @return Half width of the confidence interval
+   */
+  static double confidence(MeanVariance mv, int population) {
+    final double n = mv.getCount();
+    if(!(n > 1)) {
+      return Double.POSITIVE_INFINITY;
+    }
+    final double fpc = population > 1 ? (population - n) / (population - 1.) : 1.;
+    return Z95 * mv.getSampleStddev() * FastMath.sqrt(fpc > 0 ? fpc / n : 0.);
+  }
+
+  /**
+   * Add the confidence interval of an estimate to the evaluation result.
+   *
+   * @param g Measurement group
+   * @param name Name of the measure
+   * @param ci Half width of the confidence interval
+   */
+  static void addConfidence(MeasurementGroup g, String name, double ci) {
+    g.addMeasure(name + " 95% CI", ci, 0., Double.POSITIVE_INFINITY, true);
+  }
+}
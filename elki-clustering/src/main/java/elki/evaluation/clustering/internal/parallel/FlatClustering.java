@@ -0,0 +1,136 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import java.util.List;
+
+import elki.data.Cluster;
+import elki.database.ids.ArrayModifiableDBIDs;
+import elki.database.ids.DBIDUtil;
+import elki.evaluation.clustering.internal.NoiseHandling;
+
+/**
+ * Flat representation of a clustering for pairwise evaluation measures: all
+ * objects that are not ignored, in cluster order, with an integer cluster
+ * label for each. Objects treated as singletons get the negative label
+ * {@code -1-c} of their cluster {@code c}, such that two objects are in the
+ * same cluster if and only if their labels are equal and not negative, while
+ * pairs of objects from the same noise cluster can still be recognized.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+final class FlatClustering {
+  /**
+   * Objects, in cluster order.
+   */
+  final ArrayModifiableDBIDs ids;
+
+  /**
+   * Cluster label of each object.
+   */
+  final int[] label;
+
+  /**
+   * Number of within-cluster pairs.
+   */
+  final long within;
+
+  /**
+   * Number of ignored noise objects.
+   */
+  final int ignored;
+
+  /**
+   * Constructor.
+   *
+   * @param clusters Clusters
+   * @param noiseOption Noise handling
+   */
+  FlatClustering(List<? extends Cluster<?>> clusters, NoiseHandling noiseOption) {
+    int size = 0, ignored = 0;
+    for(Cluster<?> cluster : clusters) {
+      if((cluster.size() <= 1 || cluster.isNoise()) && noiseOption == NoiseHandling.IGNORE_NOISE) {
+        ignored += cluster.size();
+        continue;
+      }
+      size += cluster.size();
+    }
+    this.ids = DBIDUtil.newArray(size);
+    this.label = new int[size];
+    this.ignored = ignored;
+    long within = 0;
+    int p = 0;
+    for(int i = 0; i < clusters.size(); i++) {
+      Cluster<?> cluster = clusters.get(i);
+      boolean single = false;
+      if(cluster.size() <= 1 || cluster.isNoise()) {
+        switch(noiseOption){
+        case IGNORE_NOISE:
+          continue; // Ignore
+        case TREAT_NOISE_AS_SINGLETONS:
+          single = true;
+          break;
+        case MERGE_NOISE:
+          break; // Treat like a cluster
+        }
+      }
+      ids.addDBIDs(cluster.getIDs());
+      for(int e = p + cluster.size(); p < e; p++) {
+        label[p] = single ? -1 - i : i;
+      }
+      if(!single) {
+        within += (cluster.size() * (long) (cluster.size() - 1)) >>> 1;
+      }
+    }
+    this.within = within;
+  }
+
+  /**
+   * Number of objects.
+   *
+   * @return Size
+   */
+  int size() {
+    return label.length;
+  }
+
+  /**
+   * Total number of pairs.
+   *
+   * @return Number of pairs
+   */
+  long pairs() {
+    return (label.length * (long) (label.length - 1)) >>> 1;
+  }
+
+  /**
+   * Fold a row number of the upper triangle, such that consecutive rows
+   * alternate between long and short rows, for better load balancing.
+   *
+   * @param i Index
+   * @param n Number of rows
+   * @return Row number
+   */
+  static int fold(int i, int n) {
+    return (i & 1) == 0 ? i >>> 1 : n - 1 - (i >>> 1);
+  }
+}
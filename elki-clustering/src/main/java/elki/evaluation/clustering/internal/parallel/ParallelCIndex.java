@@ -0,0 +1,626 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import java.util.Arrays;
+import java.util.List;
+
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.database.Database;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.evaluation.Evaluator;
+import elki.evaluation.clustering.internal.CIndex;
+import elki.evaluation.clustering.internal.NoiseHandling;
+import elki.logging.Logging;
+import elki.logging.statistics.DoubleStatistic;
+import elki.logging.statistics.LongStatistic;
+import elki.logging.statistics.StringStatistic;
+import elki.math.MeanVariance;
+import elki.parallel.ParallelExecutor;
+import elki.result.EvaluationResult;
+import elki.result.EvaluationResult.MeasurementGroup;
+import elki.result.Metadata;
+import elki.result.ResultUtil;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.EnumParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Compute the C-index of a data set in parallel, without materializing or
+ * sorting the pairwise distances.
+ * <p>
+ * The C-index needs the sum of the w smallest and of the w largest pairwise
+ * distances, where w is the number of within-cluster pairs. Instead of keeping
+ * w distances in heaps as {@link CIndex} does, this class finds these sums by
+ * repeatedly computing all pairwise distances in parallel, and refining
+ * histograms around the w-th smallest and largest distance, until the
+ * remaining candidates are few enough to be selected exactly. This needs only
+ * a few passes, with memory linear in the number of objects.
+ * <p>
+ * Every pair of objects is considered exactly once. Optionally, the C-index
+ * can be estimated as the mean over repeated random subsamples, with a 95%
+ * confidence interval.
+ * <p>
+ * Reference:
+ * <p>
+ * L. J. Hubert, J. R. Levin<br>
+ * A general statistical framework for assessing categorical clustering in free
+ * recall<br>
+ * Psychological Bulletin, Vol. 83(6)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @assoc - analyzes - Clustering
+ * @composed - - - NoiseHandling
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "L. J. Hubert, J. R. Levin", //
+    title = "A general statistical framework for assessing categorical clustering in free recall", //
+    booktitle = "Psychological Bulletin, Vol. 83(6)", //
+    url = "https://doi.org/10.1037/0033-2909.83.6.1072", //
+    bibkey = "doi:10.1037/0033-2909.83.6.1072")
+public class ParallelCIndex<O> implements Evaluator {
+  /**
+   * Logger for debug output.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelCIndex.class);
+
+  /**
+   * Minimum number of rows per thread.
+   */
+  private static final int MIN_BLOCK = 8;
+
+  /**
+   * Number of histogram bins.
+   */
+  private static final int BINS = 1024;
+
+  /**
+   * Maximum number of candidates to select from directly.
+   */
+  private static final int MAX_COLLECT = 1 << 20;
+
+  /**
+   * Option for noise handling.
+   */
+  private NoiseHandling noiseOption;
+
+  /**
+   * Distance function to use.
+   */
+  private Distance<? super O> distance;
+
+  /**
+   * Sample size, 0 for the exact C-index.
+   */
+  private int sample;
+
+  /**
+   * Number of samples.
+   */
+  private int repeat;
+
+  /**
+   * Random generator for sampling.
+   */
+  private RandomFactory rnd;
+
+  /**
+   * Key for logging statistics.
+   */
+  private String key = ParallelCIndex.class.getName();
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param noiseOpt Flag to control noise handling
+   * @param sample Sample size, 0 for the exact C-index
+   * @param repeat Number of samples
+   * @param rnd Random generator for sampling
+   */
+  public ParallelCIndex(Distance<? super O> distance, NoiseHandling noiseOpt, int sample, int repeat, RandomFactory rnd) {
+    super();
+    this.distance = distance;
+    this.noiseOption = noiseOpt;
+    this.sample = sample;
+    this.repeat = repeat;
+    this.rnd = rnd;
+  }
+
+  /**
+   * Evaluate a single clustering.
+   *
+   * @param rel Data relation
+   * @param dq Distance query
+   * @param c Clustering
+   * @return C-Index
+   */
+  public double evaluateClustering(Relation<? extends O> rel, DistanceQuery<O> dq, Clustering<?> c) {
+    List<? extends Cluster<?>> clusters = c.getAllClusters();
+    int ignorednoise = 0;
+    for(Cluster<?> cluster : clusters) {
+      if((cluster.size() <= 1 || cluster.isNoise()) && noiseOption == NoiseHandling.IGNORE_NOISE) {
+        ignorednoise += cluster.size();
+      }
+    }
+    final boolean sampled = sample > 0 && sample < rel.size() - ignorednoise;
+    double cIndex, ci = 0.;
+    if(sampled) {
+      MeanVariance mv = EvaluationSampling.repeat(clusters, sample, repeat, rnd, cl -> cIndex(dq, cl));
+      cIndex = mv.getMean();
+      ci = EvaluationSampling.confidence(mv, 0);
+    }
+    else {
+      cIndex = cIndex(dq, clusters);
+    }
+
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(key + ".c-index.noise-handling", noiseOption.toString()));
+      if(ignorednoise > 0) {
+        LOG.statistics(new LongStatistic(key + ".c-index.ignored", ignorednoise));
+      }
+      LOG.statistics(new DoubleStatistic(key + ".c-index", cIndex));
+      if(sampled) {
+        LOG.statistics(new DoubleStatistic(key + ".c-index.confidence", ci));
+      }
+    }
+
+    EvaluationResult ev = EvaluationResult.findOrCreate(c, "Internal Clustering Evaluation");
+    MeasurementGroup g = ev.findOrCreateGroup("Distance-based");
+    g.addMeasure("C-Index", cIndex, 0., 1., 0., true);
+    if(sampled) {
+      EvaluationSampling.addConfidence(g, "C-Index", ci);
+    }
+    if(!Metadata.hierarchyOf(c).addChild(ev)) {
+      Metadata.of(ev).notifyChanged();
+    }
+    return cIndex;
+  }
+
+  /**
+   * Compute the C-Index of a list of clusters.
+   *
+   * @param dq Distance query
+   * @param clusters Clusters
+   * @return C-Index
+   */
+  protected double cIndex(DistanceQuery<?> dq, List<? extends Cluster<?>> clusters) {
+    final FlatClustering flat = new FlatClustering(clusters, noiseOption);
+    final ArrayDBIDs ids = flat.ids;
+    final int[] label = flat.label;
+    final int n = flat.size();
+    final long w = flat.within, total = flat.pairs();
+    if(w == 0) {
+      return 1.;
+    }
+    // First pass: within-cluster sum, and the range of distances.
+    final double[] rowsum = new double[n];
+    final double[] minmax = { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+    pairs(n, (s, e) -> {
+      DBIDArrayIter i1 = ids.iter(), i2 = ids.iter();
+      double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+      for(int i = s; i < e; i++) {
+        final int row = FlatClustering.fold(i, n), li = label[row];
+        double theta = 0.;
+        i1.seek(row);
+        for(i2.seek(row + 1); i2.valid(); i2.advance()) {
+          final double d = dq.distance(i1, i2);
+          min = d < min ? d : min;
+          max = d > max ? d : max;
+          theta += li >= 0 && li == label[i2.getOffset()] ? d : 0.;
+        }
+        rowsum[row] = theta;
+      }
+      synchronized(minmax) {
+        minmax[0] = min < minmax[0] ? min : minmax[0];
+        minmax[1] = max > minmax[1] ? max : minmax[1];
+      }
+    });
+    double theta = 0.;
+    for(double v : rowsum) {
+      theta += v;
+    }
+    // Select the sums of the w smallest and the w largest distances:
+    Selection[] sel = { new Selection(w, minmax[0], minmax[1], total), //
+        new Selection(w, -minmax[1], -minmax[0], total) };
+    while(!sel[0].done || !sel[1].done) {
+      refine(dq, ids, sel);
+    }
+    final double min = sel[0].result, max = -sel[1].result;
+    return (max > min) ? (theta - min) / (max - min) : 1.;
+  }
+
+  /**
+   * Run one refinement pass over all pairs.
+   *
+   * @param dq Distance query
+   * @param ids Object ids
+   * @param sel Selections, for ascending and descending order
+   */
+  private void refine(DistanceQuery<?> dq, ArrayDBIDs ids, Selection[] sel) {
+    final int n = ids.size();
+    final double[][] rowsum = new double[2][n];
+    pairs(n, (s, e) -> {
+      DBIDArrayIter i1 = ids.iter(), i2 = ids.iter();
+      Selection[] local = { sel[0].newPartial(), sel[1].newPartial() };
+      for(int i = s; i < e; i++) {
+        final int row = FlatClustering.fold(i, n);
+        double sum0 = 0., sum1 = 0.;
+        i1.seek(row);
+        for(i2.seek(row + 1); i2.valid(); i2.advance()) {
+          final double d = dq.distance(i1, i2);
+          sum0 += local[0].add(d);
+          sum1 += local[1].add(-d);
+        }
+        rowsum[0][row] = sum0;
+        rowsum[1][row] = sum1;
+      }
+      synchronized(sel) {
+        sel[0].merge(local[0]);
+        sel[1].merge(local[1]);
+      }
+    });
+    for(int t = 0; t < 2; t++) {
+      double below = 0.;
+      for(double v : rowsum[t]) {
+        below += v;
+      }
+      sel[t].finish(below);
+    }
+  }
+
+  /**
+   * Run a task over all rows of the upper triangle, in parallel.
+   * <p>
+   * To balance the load, the rows are folded, see
+   * {@link FlatClustering#fold(int, int)}.
+   *
+   * @param n Number of rows
+   * @param task Task
+   */
+  private static void pairs(int n, ParallelExecutor.BlockTask task) {
+    ParallelExecutor.run(0, n, MIN_BLOCK, task);
+  }
+
+  /**
+   * Selection of the sum of the k smallest values, by histogram refinement.
+   *
+   * @author Erich Schubert
+   */
+  private static class Selection {
+    /**
+     * Number of values to sum.
+     */
+    final long k;
+
+    /**
+     * Current value range containing the k-th smallest value.
+     */
+    double lo, hi;
+
+    /**
+     * Mode: collect all candidates, or all candidates are equal.
+     */
+    boolean collect, constant;
+
+    /**
+     * Number of values below the range.
+     */
+    long countBelow;
+
+    /**
+     * Histogram of the candidates.
+     */
+    long[] count;
+
+    /**
+     * Minimum and maximum of each bin.
+     */
+    double[] bmin, bmax;
+
+    /**
+     * Collected candidates.
+     */
+    double[] values;
+
+    /**
+     * Number of collected candidates.
+     */
+    int size;
+
+    /**
+     * Scaling factor for bins.
+     */
+    double scale;
+
+    /**
+     * Result, once done.
+     */
+    double result;
+
+    /**
+     * Flag when done.
+     */
+    boolean done;
+
+    /**
+     * Constructor.
+     *
+     * @param k Number of values to sum
+     * @param lo Minimum value
+     * @param hi Maximum value
+     * @param total Total number of values
+     */
+    Selection(long k, double lo, double hi, long total) {
+      this.k = k;
+      setRange(lo, hi, total);
+    }
+
+    /**
+     * Constructor for partial selections.
+     *
+     * @param other Selection to copy the range from
+     */
+    private Selection(Selection other) {
+      this.k = other.k;
+      this.lo = other.lo;
+      this.hi = other.hi;
+      this.collect = other.collect;
+      this.constant = other.constant;
+      this.scale = other.scale;
+      this.done = other.done;
+      allocate();
+    }
+
+    /**
+     * Set the range of candidates.
+     *
+     * @param lo Minimum candidate
+     * @param hi Maximum candidate
+     * @param candidates Number of candidates
+     */
+    private void setRange(double lo, double hi, long candidates) {
+      this.lo = lo;
+      this.hi = hi;
+      this.constant = !(lo < hi);
+      this.collect = !constant && candidates <= MAX_COLLECT;
+      this.scale = BINS / (hi - lo);
+      allocate();
+    }
+
+    /**
+     * Allocate the buffers for the next pass.
+     */
+    private void allocate() {
+      countBelow = 0;
+      size = 0;
+      count = done || constant || collect ? null : new long[BINS];
+      bmin = count != null ? new double[BINS] : null;
+      bmax = count != null ? new double[BINS] : null;
+      if(bmin != null) {
+        Arrays.fill(bmin, Double.POSITIVE_INFINITY);
+        Arrays.fill(bmax, Double.NEGATIVE_INFINITY);
+      }
+      values = collect && !done ? new double[16] : null;
+    }
+
+    /**
+     * Get a new partial selection, for one thread.
+     *
+     * @return Partial selection
+     */
+    Selection newPartial() {
+      return new Selection(this);
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param v Value
+     * @return Value, if below the current range, 0 otherwise.
+     */
+    double add(double v) {
+      if(done || v > hi) {
+        return 0.;
+      }
+      if(v < lo) {
+        ++countBelow;
+        return v;
+      }
+      if(collect) {
+        if(size == values.length) {
+          values = Arrays.copyOf(values, values.length << 1);
+        }
+        values[size++] = v;
+      }
+      else if(!constant) {
+        int b = (int) ((v - lo) * scale);
+        b = b < BINS ? b : BINS - 1;
+        count[b]++;
+        bmin[b] = v < bmin[b] ? v : bmin[b];
+        bmax[b] = v > bmax[b] ? v : bmax[b];
+      }
+      return 0.;
+    }
+
+    /**
+     * Merge a partial selection.
+     *
+     * @param other Partial selection
+     */
+    void merge(Selection other) {
+      if(done) {
+        return;
+      }
+      countBelow += other.countBelow;
+      if(collect) {
+        if(size + other.size > values.length) {
+          values = Arrays.copyOf(values, Math.max(values.length << 1, size + other.size));
+        }
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+      }
+      else if(!constant) {
+        for(int b = 0; b < BINS; b++) {
+          count[b] += other.count[b];
+          bmin[b] = other.bmin[b] < bmin[b] ? other.bmin[b] : bmin[b];
+          bmax[b] = other.bmax[b] > bmax[b] ? other.bmax[b] : bmax[b];
+        }
+      }
+    }
+
+    /**
+     * Finish a pass.
+     *
+     * @param below Sum of all values below the current range
+     */
+    void finish(double below) {
+      if(done) {
+        return;
+      }
+      final long need = k - countBelow;
+      if(constant) {
+        result = below + need * lo;
+        done = true;
+        return;
+      }
+      if(collect) {
+        Arrays.sort(values, 0, size);
+        double sum = below;
+        for(int i = 0; i < need; i++) {
+          sum += values[i];
+        }
+        result = sum;
+        done = true;
+        values = null;
+        return;
+      }
+      long cum = 0;
+      for(int b = 0; b < BINS; b++) {
+        if(cum + count[b] >= need) {
+          setRange(bmin[b], bmax[b], count[b]);
+          return;
+        }
+        cum += count[b];
+      }
+      throw new IllegalStateException("Selection failed, inconsistent distances?");
+    }
+  }
+
+  @Override
+  public void processNewResult(Object result) {
+    List<Clustering<?>> crs = Clustering.getClusteringResults(result);
+    if(crs.isEmpty()) {
+      return;
+    }
+    Database db = ResultUtil.findDatabase(result);
+    Relation<O> relation = db.getRelation(distance.getInputTypeRestriction());
+    DistanceQuery<O> dq = new QueryBuilder<>(relation, distance).distanceQuery();
+    for(Clustering<?> c : crs) {
+      evaluateClustering(relation, dq, c);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * Sample size.
+     */
+    public static final OptionID SAMPLE_ID = new OptionID("c-index.sample", "Size of the random subsamples to estimate the c-index from, 0 to compute the exact c-index.");
+
+    /**
+     * Number of samples.
+     */
+    public static final OptionID REPEAT_ID = new OptionID("c-index.repeat", "Number of random subsamples.");
+
+    /**
+     * Random generator seed.
+     */
+    public static final OptionID SEED_ID = new OptionID("c-index.seed", "Random generator seed for sampling.");
+
+    /**
+     * Distance function to use.
+     */
+    private Distance<? super O> distance;
+
+    /**
+     * Option, how noise should be treated.
+     */
+    private NoiseHandling noiseOption;
+
+    /**
+     * Sample size, 0 for the exact C-index.
+     */
+    private int sample;
+
+    /**
+     * Number of samples.
+     */
+    private int repeat = 10;
+
+    /**
+     * Random generator for sampling.
+     */
+    private RandomFactory rnd;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(CIndex.Par.DISTANCE_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new EnumParameter<NoiseHandling>(CIndex.Par.NOISE_ID, NoiseHandling.class, NoiseHandling.TREAT_NOISE_AS_SINGLETONS) //
+          .grab(config, x -> noiseOption = x);
+      new IntParameter(SAMPLE_ID, 0) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+          .grab(config, x -> sample = x);
+      if(sample > 0) {
+        new IntParameter(REPEAT_ID, 10) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+            .grab(config, x -> repeat = x);
+        new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+      }
+    }
+
+    @Override
+    public ParallelCIndex<O> make() {
+      return new ParallelCIndex<>(distance, noiseOption, sample, repeat, rnd);
+    }
+  }
+}
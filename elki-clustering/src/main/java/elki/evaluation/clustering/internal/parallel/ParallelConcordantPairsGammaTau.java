@@ -0,0 +1,446 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.database.Database;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.relation.Relation;
+import elki.distance.PrimitiveDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.evaluation.Evaluator;
+import elki.evaluation.clustering.internal.ConcordantPairsGammaTau;
+import elki.evaluation.clustering.internal.NoiseHandling;
+import elki.logging.Logging;
+import elki.logging.statistics.DoubleStatistic;
+import elki.logging.statistics.LongStatistic;
+import elki.logging.statistics.StringStatistic;
+import elki.math.MeanVariance;
+import elki.parallel.ParallelExecutor;
+import elki.result.EvaluationResult;
+import elki.result.EvaluationResult.MeasurementGroup;
+import elki.result.Metadata;
+import elki.result.ResultUtil;
+import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.EnumParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+import net.jafama.FastMath;
+
+/**
+ * Compute the Gamma and Tau criteria of a data set in parallel.
+ * <p>
+ * The within-cluster distances are computed in parallel and sorted with
+ * {@link Arrays#parallelSort(double[])}; then the between-cluster distances are
+ * computed in parallel, and compared to the within-cluster distances by binary
+ * search. As in {@link ConcordantPairsGammaTau}, pairs of objects within the
+ * same noise cluster are neither within- nor between-cluster pairs when noise
+ * is treated as singletons.
+ * <p>
+ * Optionally, both measures can be estimated as the mean over repeated random
+ * subsamples, with 95% confidence intervals. This reduces the memory needed for
+ * the within-cluster distances, which is quadratic in the cluster sizes.
+ * <p>
+ * References:
+ * <p>
+ * F. B. Baker, L. J. Hubert<br>
+ * Measuring the Power of Hierarchical Cluster Analysis<br>
+ * Journal of the American Statistical Association, 70(349)
+ * <p>
+ * Tau measures:
+ * <p>
+ * F. J. Rohlf<br>
+ * Methods of comparing classifications<br>
+ * Annual Review of Ecology and Systematics
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @assoc - analyzes - Clustering
+ * @composed - - - NoiseHandling
+ */
+@Reference(authors = "F. B. Baker, L. J. Hubert", //
+    title = "Measuring the Power of Hierarchical Cluster Analysis", //
+    booktitle = "Journal of the American Statistical Association, 70(349)", //
+    url = "https://doi.org/10.1080/01621459.1975.10480256", //
+    bibkey = "doi:10.1080/01621459.1975.10480256")
+public class ParallelConcordantPairsGammaTau implements Evaluator {
+  /**
+   * Logger for debug output.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelConcordantPairsGammaTau.class);
+
+  /**
+   * Minimum number of rows per thread.
+   */
+  private static final int MIN_BLOCK = 8;
+
+  /**
+   * Option for noise handling.
+   */
+  private NoiseHandling noiseHandling;
+
+  /**
+   * Distance function to use.
+   */
+  private PrimitiveDistance<? super NumberVector> distance;
+
+  /**
+   * Sample size, 0 for the exact measures.
+   */
+  private int sample;
+
+  /**
+   * Number of samples.
+   */
+  private int repeat;
+
+  /**
+   * Random generator for sampling.
+   */
+  private RandomFactory rnd;
+
+  /**
+   * Key for logging statistics.
+   */
+  private String key = ParallelConcordantPairsGammaTau.class.getName();
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param noiseHandling Control noise handling
+   * @param sample Sample size, 0 for the exact measures
+   * @param repeat Number of samples
+   * @param rnd Random generator for sampling
+   */
+  public ParallelConcordantPairsGammaTau(PrimitiveDistance<? super NumberVector> distance, NoiseHandling noiseHandling, int sample, int repeat, RandomFactory rnd) {
+    super();
+    this.distance = distance;
+    this.noiseHandling = noiseHandling;
+    this.sample = sample;
+    this.repeat = repeat;
+    this.rnd = rnd;
+  }
+
+  /**
+   * Evaluate a single clustering.
+   *
+   * @param rel Data relation
+   * @param c Clustering
+   * @return Gamma index
+   */
+  public double evaluateClustering(Relation<? extends NumberVector> rel, Clustering<?> c) {
+    List<? extends Cluster<?>> clusters = c.getAllClusters();
+    int ignorednoise = 0;
+    for(Cluster<?> cluster : clusters) {
+      if((cluster.size() <= 1 || cluster.isNoise()) && noiseHandling == NoiseHandling.IGNORE_NOISE) {
+        ignorednoise += cluster.size();
+      }
+    }
+    final boolean sampled = sample > 0 && sample < rel.size() - ignorednoise;
+    double gamma, tau, gci = 0., tci = 0.;
+    if(sampled) {
+      Random r = rnd.getSingleThreadedRandom();
+      MeanVariance mvg = new MeanVariance(), mvt = new MeanVariance();
+      double[] gt = new double[2];
+      for(int i = 0; i < repeat; i++) {
+        gammaTau(rel, EvaluationSampling.subsample(clusters, sample, r), gt);
+        mvg.put(gt[0]);
+        mvt.put(gt[1]);
+      }
+      gamma = mvg.getMean();
+      tau = mvt.getMean();
+      gci = EvaluationSampling.confidence(mvg, 0);
+      tci = EvaluationSampling.confidence(mvt, 0);
+    }
+    else {
+      double[] gt = gammaTau(rel, clusters, new double[2]);
+      gamma = gt[0];
+      tau = gt[1];
+    }
+
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(key + ".noise-handling", noiseHandling.toString()));
+      if(ignorednoise > 0) {
+        LOG.statistics(new LongStatistic(key + ".ignored", ignorednoise));
+      }
+      LOG.statistics(new DoubleStatistic(key + ".gamma", gamma));
+      LOG.statistics(new DoubleStatistic(key + ".tau", tau));
+      if(sampled) {
+        LOG.statistics(new DoubleStatistic(key + ".gamma.confidence", gci));
+        LOG.statistics(new DoubleStatistic(key + ".tau.confidence", tci));
+      }
+    }
+
+    EvaluationResult ev = EvaluationResult.findOrCreate(c, "Internal Clustering Evaluation");
+    MeasurementGroup g = ev.findOrCreateGroup("Concordance");
+    g.addMeasure("Gamma", gamma, -1., 1., 0., false);
+    g.addMeasure("Tau", tau, -1., +1., 0., false);
+    if(sampled) {
+      EvaluationSampling.addConfidence(g, "Gamma", gci);
+      EvaluationSampling.addConfidence(g, "Tau", tci);
+    }
+    if(!Metadata.hierarchyOf(c).addChild(ev)) {
+      Metadata.of(ev).notifyChanged();
+    }
+    return gamma;
+  }
+
+  /**
+   * Compute Gamma and Tau of a list of clusters.
+   *
+   * @param rel Data relation
+   * @param clusters Clusters
+   * @param out Output array for Gamma and Tau
+   * @return Output array
+   */
+  protected double[] gammaTau(Relation<? extends NumberVector> rel, List<? extends Cluster<?>> clusters, double[] out) {
+    final FlatClustering flat = new FlatClustering(clusters, noiseHandling);
+    final int n = flat.size();
+    if(flat.within > Integer.MAX_VALUE - 8) {
+      throw new AbortException("Integer overflow - clusters too large to compute pairwise distances.");
+    }
+    // Load the vectors once, and find the end of each cluster (including
+    // noise clusters, whose pairs are skipped):
+    final NumberVector[] vecs = new NumberVector[n];
+    final int[] label = flat.label, end = new int[n], offset = new int[n];
+    loadVectors(rel, flat.ids, vecs);
+    for(int i = n - 1; i >= 0; i--) {
+      end[i] = i + 1 < n && label[i + 1] == label[i] ? end[i + 1] : i + 1;
+    }
+    long betweenPairs = 0;
+    for(int i = 0, o = 0; i < n; i++) {
+      offset[i] = o;
+      o += label[i] >= 0 ? end[i] - i - 1 : 0;
+      betweenPairs += n - end[i];
+    }
+    // Materialize within-cluster distances (sorted):
+    final double[] within = new double[(int) flat.within];
+    ParallelExecutor.run(0, n, MIN_BLOCK, (s, e) -> {
+      for(int i = s; i < e; i++) {
+        final int row = FlatClustering.fold(i, n);
+        if(label[row] < 0) {
+          continue; // Noise, no within-cluster pairs
+        }
+        final NumberVector vi = vecs[row];
+        for(int j = row + 1, o = offset[row]; j < end[row]; j++) {
+          within[o++] = distance.distance(vi, vecs[j]);
+        }
+      }
+    });
+    Arrays.parallelSort(within);
+    // Compare the between-cluster distances:
+    final long[] counts = new long[2];
+    ParallelExecutor.run(0, n, MIN_BLOCK, (s, e) -> {
+      long concordant = 0, discordant = 0;
+      for(int i = s; i < e; i++) {
+        final int row = FlatClustering.fold(i, n);
+        final NumberVector vi = vecs[row];
+        for(int j = end[row]; j < n; j++) {
+          final double d = distance.distance(vi, vecs[j]);
+          concordant += lowerBound(within, d);
+          discordant += within.length - upperBound(within, d);
+        }
+      }
+      synchronized(counts) {
+        counts[0] += concordant;
+        counts[1] += discordant;
+      }
+    });
+    final long concordantPairs = counts[0], discordantPairs = counts[1];
+    final long t = flat.pairs(), tt = (t * (t - 1)) >>> 1;
+    double gamma = (concordantPairs - discordantPairs) / (double) (concordantPairs + discordantPairs);
+    double tau = computeTau(concordantPairs, discordantPairs, tt, within.length, betweenPairs);
+    // Avoid NaN when everything is in a single cluster:
+    out[0] = gamma > 0. ? gamma : 0.;
+    out[1] = tau > 0. ? tau : 0.;
+    return out;
+  }
+
+  /**
+   * Load the vectors of the given objects.
+   *
+   * @param rel Data relation
+   * @param ids Object ids
+   * @param vecs Output array
+   */
+  private static void loadVectors(Relation<? extends NumberVector> rel, ArrayDBIDs ids, NumberVector[] vecs) {
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      vecs[it.getOffset()] = rel.get(it);
+    }
+  }
+
+  /**
+   * Number of values strictly less than the query.
+   *
+   * @param sorted Sorted values
+   * @param v Query value
+   * @return Number of smaller values
+   */
+  private static int lowerBound(double[] sorted, double v) {
+    int lo = 0, hi = sorted.length;
+    while(lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if(sorted[mid] < v) {
+        lo = mid + 1;
+      }
+      else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Number of values less than or equal to the query.
+   *
+   * @param sorted Sorted values
+   * @param v Query value
+   * @return Number of values not larger
+   */
+  private static int upperBound(double[] sorted, double v) {
+    int lo = 0, hi = sorted.length;
+    while(lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if(sorted[mid] <= v) {
+        lo = mid + 1;
+      }
+      else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Compute the Tau correlation measure, as in
+   * {@link ConcordantPairsGammaTau#computeTau}.
+   *
+   * @param c Concordant pairs
+   * @param d Discordant pairs
+   * @param m Total number of pairs
+   * @param wd Number of within distances
+   * @param bd Number of between distances
+   * @return Gamma plus statistic
+   */
+  private static double computeTau(long c, long d, double m, long wd, long bd) {
+    double tie = (wd * (wd - 1) + bd * (bd - 1)) >>> 1;
+    return (c - d) / FastMath.sqrt((m - tie) * m);
+  }
+
+  @Override
+  public void processNewResult(Object result) {
+    List<Clustering<?>> crs = Clustering.getClusteringResults(result);
+    if(crs.isEmpty()) {
+      return;
+    }
+    Database db = ResultUtil.findDatabase(result);
+    Relation<? extends NumberVector> rel = db.getRelation(this.distance.getInputTypeRestriction());
+    for(Clustering<?> c : crs) {
+      evaluateClustering(rel, c);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par implements Parameterizer {
+    /**
+     * Sample size.
+     */
+    public static final OptionID SAMPLE_ID = new OptionID("concordant-pairs.sample", "Size of the random subsamples to estimate gamma and tau from, 0 to compute the exact values.");
+
+    /**
+     * Number of samples.
+     */
+    public static final OptionID REPEAT_ID = new OptionID("concordant-pairs.repeat", "Number of random subsamples.");
+
+    /**
+     * Random generator seed.
+     */
+    public static final OptionID SEED_ID = new OptionID("concordant-pairs.seed", "Random generator seed for sampling.");
+
+    /**
+     * Distance function to use.
+     */
+    private PrimitiveDistance<NumberVector> distance;
+
+    /**
+     * Option, how noise should be treated.
+     */
+    private NoiseHandling noiseHandling;
+
+    /**
+     * Sample size, 0 for the exact measures.
+     */
+    private int sample;
+
+    /**
+     * Number of samples.
+     */
+    private int repeat = 10;
+
+    /**
+     * Random generator for sampling.
+     */
+    private RandomFactory rnd;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<PrimitiveDistance<NumberVector>>(ConcordantPairsGammaTau.Par.DISTANCE_ID, PrimitiveDistance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new EnumParameter<NoiseHandling>(ConcordantPairsGammaTau.Par.NOISE_ID, NoiseHandling.class, NoiseHandling.TREAT_NOISE_AS_SINGLETONS) //
+          .grab(config, x -> noiseHandling = x);
+      new IntParameter(SAMPLE_ID, 0) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+          .grab(config, x -> sample = x);
+      if(sample > 0) {
+        new IntParameter(REPEAT_ID, 10) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+            .grab(config, x -> repeat = x);
+        new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+      }
+    }
+
+    @Override
+    public ParallelConcordantPairsGammaTau make() {
+      return new ParallelConcordantPairsGammaTau(distance, noiseHandling, sample, repeat, rnd);
+    }
+  }
+}
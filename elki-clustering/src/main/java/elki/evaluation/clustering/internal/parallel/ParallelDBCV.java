@@ -0,0 +1,505 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import java.util.Arrays;
+import java.util.List;
+
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.spatial.SpatialComparable;
+import elki.data.type.CombinedTypeInformation;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.evaluation.Evaluator;
+import elki.evaluation.clustering.internal.DBCV;
+import elki.logging.Logging;
+import elki.logging.statistics.DoubleStatistic;
+import elki.math.MathUtil;
+import elki.math.MeanVariance;
+import elki.parallel.ParallelExecutor;
+import elki.result.EvaluationResult;
+import elki.result.EvaluationResult.MeasurementGroup;
+import elki.result.Metadata;
+import elki.result.ResultUtil;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+import net.jafama.FastMath;
+
+/**
+ * Compute the Density-Based Clustering Validation Index in parallel.
+ * <p>
+ * This computes the same index as {@link DBCV}, but the core distances and the
+ * density separation are computed for all objects in parallel, and the minimum
+ * spanning trees are computed with Prim's algorithm without materializing the
+ * distance matrix of each cluster, updating the candidate edges in parallel.
+ * Ties are resolved as in {@link elki.math.geometry.PrimsMinimumSpanningTree},
+ * so the result is identical to the sequential version.
+ * <p>
+ * Optionally, the index can be estimated as the mean over repeated random
+ * subsamples, with a 95% confidence interval. Because the core distances
+ * depend on the density, this estimate is not unbiased, but usually
+ * sufficient to compare clusterings.
+ * <p>
+ * Reference:
+ * <p>
+ * Davoud Moulavi, Pablo A. Jaskowiak, Ricardo J. G. B. Campello, Arthur Zimek,
+ * Jörg Sander<br>
+ * Density-Based Clustering Validation<br>
+ * In: Proc. 14th SIAM International Conference on Data Mining (SDM).
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ *
+ * @assoc - analyzes - Clustering
+ */
+@Reference(authors = "Davoud Moulavi, Pablo A. Jaskowiak, Ricardo J. G. B. Campello, Arthur Zimek, Jörg Sander", //
+    title = "Density-Based Clustering Validation", //
+    booktitle = "Proc. 14th SIAM International Conference on Data Mining (SDM)", //
+    url = "https://doi.org/10.1137/1.9781611973440.96", //
+    bibkey = "DBLP:conf/sdm/MoulaviJCZS14")
+public class ParallelDBCV<O> implements Evaluator {
+  /**
+   * Logger for debug output.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelDBCV.class);
+
+  /**
+   * Minimum number of objects per thread.
+   */
+  private static final int MIN_BLOCK = 16;
+
+  /**
+   * Minimum number of candidate edges per thread in Prim's algorithm.
+   */
+  private static final int PRIM_BLOCK = 1024;
+
+  /**
+   * Distance function to use.
+   */
+  private Distance<? super O> distance;
+
+  /**
+   * Sample size, 0 for the exact index.
+   */
+  private int sample;
+
+  /**
+   * Number of samples.
+   */
+  private int repeat;
+
+  /**
+   * Random generator for sampling.
+   */
+  private RandomFactory rnd;
+
+  /**
+   * Key for logging statistics.
+   */
+  private String key = ParallelDBCV.class.getName();
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param sample Sample size, 0 for the exact index
+   * @param repeat Number of samples
+   * @param rnd Random generator for sampling
+   */
+  public ParallelDBCV(Distance<? super O> distance, int sample, int repeat, RandomFactory rnd) {
+    super();
+    this.distance = distance;
+    this.sample = sample;
+    this.repeat = repeat;
+    this.rnd = rnd;
+  }
+
+  /**
+   * Evaluate a single clustering.
+   *
+   * @param relation Data relation
+   * @param cl Clustering
+   * @return DBCV index
+   */
+  public double evaluateClustering(Relation<O> relation, Clustering<?> cl) {
+    DistanceQuery<O> dq = new QueryBuilder<>(relation, distance).distanceQuery();
+    List<? extends Cluster<?>> clusters = cl.getAllClusters();
+    // DBCV needs a "dimensionality".
+    @SuppressWarnings("unchecked")
+    final Relation<? extends SpatialComparable> vrel = (Relation<? extends SpatialComparable>) relation;
+    final int dim = RelationUtil.dimensionality(vrel);
+
+    final boolean sampled = sample > 0 && sample < relation.size();
+    double dbcv, ci = 0.;
+    if(sampled) {
+      MeanVariance mv = EvaluationSampling.repeat(clusters, sample, repeat, rnd, c -> dbcv(dq, c, dim, sample));
+      dbcv = mv.getMean();
+      ci = EvaluationSampling.confidence(mv, 0);
+    }
+    else {
+      dbcv = dbcv(dq, clusters, dim, relation.size());
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new DoubleStatistic(key + ".dbcv", dbcv));
+      if(sampled) {
+        LOG.statistics(new DoubleStatistic(key + ".dbcv.confidence", ci));
+      }
+    }
+
+    EvaluationResult ev = EvaluationResult.findOrCreate(cl, "Internal Clustering Evaluation");
+    MeasurementGroup g = ev.findOrCreateGroup("Distance-based");
+    g.addMeasure("Density Based Clustering Validation", dbcv, 0., Double.POSITIVE_INFINITY, 0., true);
+    if(sampled) {
+      EvaluationSampling.addConfidence(g, "Density Based Clustering Validation", ci);
+    }
+    if(!Metadata.hierarchyOf(cl).addChild(ev)) {
+      Metadata.of(ev).notifyChanged();
+    }
+    return dbcv;
+  }
+
+  /**
+   * Compute the DBCV index of a list of clusters.
+   *
+   * @param dq Distance query
+   * @param clusters Clusters
+   * @param dim Dimensionality
+   * @param total Total number of objects, for weighting
+   * @return DBCV index
+   */
+  protected double dbcv(DistanceQuery<?> dq, List<? extends Cluster<?>> clusters, int dim, int total) {
+    final int numc = clusters.size();
+    // Singletons are considered as noise, because they have no sparseness.
+    final ArrayDBIDs[] cids = new ArrayDBIDs[numc];
+    final int[] start = new int[numc + 1];
+    ArrayModifiableDBIDs all = DBIDUtil.newArray();
+    for(int c = 0; c < numc; c++) {
+      Cluster<?> cluster = clusters.get(c);
+      start[c] = all.size();
+      if(!cluster.isNoise() && cluster.size() >= 2) {
+        cids[c] = DBIDUtil.ensureArray(cluster.getIDs());
+        all.addDBIDs(cids[c]);
+      }
+    }
+    start[numc] = all.size();
+    final int size = all.size();
+    final int[] assign = new int[size];
+    for(int c = 0; c < numc; c++) {
+      Arrays.fill(assign, start[c], start[c + 1], c);
+    }
+
+    // Compute all core distances in parallel:
+    final double[] core = new double[size];
+    ParallelExecutor.run(0, size, MIN_BLOCK, (s, e) -> {
+      DBIDArrayIter it = all.iter(), it2 = all.iter();
+      for(int p = s; p < e; p++) {
+        final int c = assign[p];
+        it.seek(p);
+        double currentCoreDist = 0;
+        int neighbors = 0;
+        for(it2.seek(start[c]); it2.getOffset() < start[c + 1]; it2.advance()) {
+          if(it2.getOffset() == p) {
+            continue;
+          }
+          double dist = dq.distance(it, it2);
+          // Unfortunately, the DBCV definition has a division by zero.
+          // We ignore such objects.
+          if(dist > 0) {
+            currentCoreDist += MathUtil.powi(1. / dist, dim);
+            ++neighbors;
+          }
+        }
+        // Average, and undo power.
+        core[p] = FastMath.pow(currentCoreDist / neighbors, -1. / dim);
+      }
+    });
+
+    // Density sparseness of all clusters, from the minimum spanning trees:
+    final int[] degree = new int[size];
+    final double[] clusterDscMax = new double[numc];
+    for(int c = 0; c < numc; c++) {
+      if(cids[c] == null) {
+        continue;
+      }
+      final int m = cids[c].size(), off = start[c];
+      int[] nodes = new int[(m - 1) << 1];
+      double[] weights = minimumSpanningTree(dq, all, core, off, m, nodes);
+      for(int i = 0; i < nodes.length; i++) {
+        degree[off + nodes[i]]++;
+      }
+      // check if cluster contains any internal edges
+      boolean internalEdges = false;
+      for(int i = 0, e = nodes.length - 1; i < e; i += 2) {
+        if(degree[off + nodes[i]] > 1 && degree[off + nodes[i + 1]] > 1) {
+          internalEdges = true;
+        }
+      }
+      // find maximum sparseness in the Minimum Spanning Tree
+      double dscMax = 0;
+      for(int i = 0, e = nodes.length - 1; i < e; i += 2) {
+        final int n1 = off + nodes[i], n2 = off + nodes[i + 1];
+        // We only consider edges where both vertices are internal nodes.
+        // If a cluster has no internal nodes we consider all edges.
+        final double w = weights[i >>> 1];
+        if(w > dscMax && (!internalEdges || (degree[n1] > 1 && degree[n2] > 1))) {
+          dscMax = w;
+        }
+      }
+      clusterDscMax[c] = dscMax;
+    }
+
+    // Density separation of all objects, in parallel:
+    final double[] dspc = new double[size];
+    ParallelExecutor.run(0, size, MIN_BLOCK, (s, e) -> {
+      DBIDArrayIter it = all.iter(), it2 = all.iter();
+      for(int p = s; p < e; p++) {
+        final int c = assign[p];
+        final boolean large = start[c + 1] - start[c] > 2;
+        double dspcMin = Double.POSITIVE_INFINITY;
+        // We again ignore external nodes, if the cluster has any internal
+        // nodes (edge count is not reliable because of stars, use node count)
+        if(degree[p] >= 2 || !large) {
+          it.seek(p);
+          for(it2.seek(0); it2.valid(); it2.advance()) {
+            final int q = it2.getOffset();
+            if(assign[q] == c || (degree[q] < 2 && large)) {
+              continue;
+            }
+            double mutualReachDist = MathUtil.max(core[p], core[q], dq.distance(it, it2));
+            dspcMin = mutualReachDist < dspcMin ? mutualReachDist : dspcMin;
+          }
+        }
+        dspc[p] = dspcMin;
+      }
+    });
+
+    double dbcv = 0;
+    for(int c = 0; c < numc; c++) {
+      if(cids[c] == null) {
+        continue;
+      }
+      double dspcMin = Double.POSITIVE_INFINITY;
+      for(int p = start[c]; p < start[c + 1]; p++) {
+        dspcMin = dspc[p] < dspcMin ? dspc[p] : dspcMin;
+      }
+      final double currentDscMax = clusterDscMax[c];
+      double vc = (dspcMin - currentDscMax) / MathUtil.max(dspcMin, currentDscMax);
+      double weight = cids[c].size() / (double) total;
+      dbcv += weight * vc;
+    }
+    return dbcv;
+  }
+
+  /**
+   * Compute the minimum spanning tree of a cluster with respect to the mutual
+   * reachability distance, using Prim's algorithm. The candidate edges are
+   * updated in parallel.
+   *
+   * @param dq Distance query
+   * @param all All objects
+   * @param core Core distances
+   * @param off Offset of the cluster
+   * @param m Size of the cluster
+   * @param nodes Output array for the edges (pairs of node indexes)
+   * @return Edge weights
+   */
+  private static double[] minimumSpanningTree(DistanceQuery<?> dq, ArrayDBIDs all, double[] core, int off, int m, int[] nodes) {
+    final double[] best = new double[m], weights = new double[m - 1];
+    Arrays.fill(best, Double.POSITIVE_INFINITY);
+    final int[] src = new int[m];
+    final boolean[] connected = new boolean[m];
+    // We always start at node 0
+    int current = 0;
+    connected[current] = true;
+    best[current] = 0;
+    final Candidate cand = new Candidate();
+    for(int k = 0; k < m - 1; k++) {
+      final int cur = current;
+      cand.reset();
+      ParallelExecutor.run(0, m, PRIM_BLOCK, (s, e) -> {
+        DBIDArrayIter i1 = all.iter().seek(off + cur), i2 = all.iter();
+        final double ccur = core[off + cur];
+        int besti = -1;
+        double bestd = Double.POSITIVE_INFINITY;
+        for(int j = s; j < e; j++) {
+          if(connected[j]) {
+            continue;
+          }
+          final double dist = MathUtil.max(ccur, core[off + j], dq.distance(i1, i2.seek(off + j)));
+          if(dist < best[j]) {
+            best[j] = dist;
+            src[j] = cur;
+          }
+          if(best[j] < bestd || besti == -1) {
+            bestd = best[j];
+            besti = j;
+          }
+        }
+        if(besti >= 0) {
+          cand.offer(bestd, besti);
+        }
+      });
+      final int next = cand.index;
+      connected[next] = true;
+      nodes[k << 1] = src[next];
+      nodes[(k << 1) + 1] = next;
+      weights[k] = cand.dist;
+      current = next;
+    }
+    return weights;
+  }
+
+  /**
+   * Best candidate edge found by the threads, preferring the lowest index on
+   * ties.
+   *
+   * @author Erich Schubert
+   */
+  private static class Candidate {
+    /**
+     * Distance of the candidate.
+     */
+    double dist;
+
+    /**
+     * Index of the candidate, -1 if none.
+     */
+    int index;
+
+    /**
+     * Reset the candidate.
+     */
+    void reset() {
+      dist = Double.POSITIVE_INFINITY;
+      index = -1;
+    }
+
+    /**
+     * Offer a new candidate.
+     *
+     * @param d Distance
+     * @param i Index
+     */
+    synchronized void offer(double d, int i) {
+      if(index < 0 || d < dist || (d == dist && i < index)) {
+        dist = d;
+        index = i;
+      }
+    }
+  }
+
+  @Override
+  public void processNewResult(Object newResult) {
+    List<Clustering<?>> crs = Clustering.getClusteringResults(newResult);
+    if(crs.isEmpty()) {
+      return;
+    }
+    Database db = ResultUtil.findDatabase(newResult);
+    TypeInformation typ = new CombinedTypeInformation(this.distance.getInputTypeRestriction(), TypeUtil.NUMBER_VECTOR_FIELD);
+    Relation<O> rel = db.getRelation(typ);
+    if(rel != null) {
+      for(Clustering<?> cl : crs) {
+        evaluateClustering(rel, cl);
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * Sample size.
+     */
+    public static final OptionID SAMPLE_ID = new OptionID("dbcv.sample", "Size of the random subsamples to estimate the dbcv from, 0 to compute the exact dbcv.");
+
+    /**
+     * Number of samples.
+     */
+    public static final OptionID REPEAT_ID = new OptionID("dbcv.repeat", "Number of random subsamples.");
+
+    /**
+     * Random generator seed.
+     */
+    public static final OptionID SEED_ID = new OptionID("dbcv.seed", "Random generator seed for sampling.");
+
+    /**
+     * Distance function to use.
+     */
+    private Distance<? super O> distance;
+
+    /**
+     * Sample size, 0 for the exact index.
+     */
+    private int sample;
+
+    /**
+     * Number of samples.
+     */
+    private int repeat = 10;
+
+    /**
+     * Random generator for sampling.
+     */
+    private RandomFactory rnd;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(DBCV.Par.DISTANCE_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(SAMPLE_ID, 0) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+          .grab(config, x -> sample = x);
+      if(sample > 0) {
+        new IntParameter(REPEAT_ID, 10) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+            .grab(config, x -> repeat = x);
+        new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+      }
+    }
+
+    @Override
+    public ParallelDBCV<O> make() {
+      return new ParallelDBCV<>(distance, sample, repeat, rnd);
+    }
+  }
+}
@@ -0,0 +1,376 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import java.util.List;
+
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.database.Database;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.evaluation.Evaluator;
+import elki.evaluation.clustering.internal.NoiseHandling;
+import elki.evaluation.clustering.internal.Silhouette;
+import elki.logging.Logging;
+import elki.logging.statistics.DoubleStatistic;
+import elki.logging.statistics.LongStatistic;
+import elki.logging.statistics.StringStatistic;
+import elki.math.MeanVariance;
+import elki.parallel.ParallelExecutor;
+import elki.result.EvaluationResult;
+import elki.result.EvaluationResult.MeasurementGroup;
+import elki.result.Metadata;
+import elki.result.ResultUtil;
+import elki.utilities.documentation.Reference;
+import elki.utilities.io.FormatUtil;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.EnumParameter;
+import elki.utilities.optionhandling.parameters.Flag;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Compute the silhouette of a data set in parallel.
+ * <p>
+ * The silhouette of every object is computed independently, using the sum of
+ * distances to each cluster. Compared to {@link Silhouette}, this does not
+ * exploit the symmetry of the distances, but scales with the number of
+ * threads.
+ * <p>
+ * Optionally, the silhouette can be estimated from a random sample of objects
+ * only. Because the mean silhouette is the mean over all objects, this is an
+ * unbiased estimate, and a 95% confidence interval is added to the result.
+ * This reduces the cost from {@code O(n²)} to {@code O(sn)}.
+ * <p>
+ * Reference:
+ * <p>
+ * P. J. Rousseeuw<br>
+ * Silhouettes: A graphical aid to the interpretation and validation of cluster
+ * analysis<br>
+ * In: Journal of Computational and Applied Mathematics Volume 20, November 1987
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @assoc - analyzes - Clustering
+ * @composed - - - NoiseHandling
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "P. J. Rousseeuw", //
+    title = "Silhouettes: A graphical aid to the interpretation and validation of cluster analysis", //
+    booktitle = "Journal of Computational and Applied Mathematics, Volume 20", //
+    url = "https://doi.org/10.1016/0377-0427(87)90125-7", //
+    bibkey = "doi:10.1016/0377-04278790125-7")
+public class ParallelSilhouette<O> implements Evaluator {
+  /**
+   * Logger for debug output.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelSilhouette.class);
+
+  /**
+   * Minimum number of objects per thread.
+   */
+  private static final int MIN_BLOCK = 16;
+
+  /**
+   * Distance function to use.
+   */
+  private Distance<? super O> distance;
+
+  /**
+   * Option for noise handling.
+   */
+  private NoiseHandling noiseOption;
+
+  /**
+   * Penalize noise, if {@link NoiseHandling#IGNORE_NOISE} is set.
+   */
+  private boolean penalize = true;
+
+  /**
+   * Sample size, 0 for the exact silhouette.
+   */
+  private int sample;
+
+  /**
+   * Random generator for sampling.
+   */
+  private RandomFactory rnd;
+
+  /**
+   * Key for logging statistics.
+   */
+  private String key = ParallelSilhouette.class.getName();
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param noiseOption Handling of "noise" clusters.
+   * @param penalize noise, if {@link NoiseHandling#IGNORE_NOISE} is set.
+   * @param sample Sample size, 0 for the exact silhouette
+   * @param rnd Random generator for sampling
+   */
+  public ParallelSilhouette(Distance<? super O> distance, NoiseHandling noiseOption, boolean penalize, int sample, RandomFactory rnd) {
+    super();
+    this.distance = distance;
+    this.noiseOption = noiseOption;
+    this.penalize = penalize;
+    this.sample = sample;
+    this.rnd = rnd;
+  }
+
+  /**
+   * Evaluate a single clustering.
+   *
+   * @param rel Data relation
+   * @param dq Distance query
+   * @param c Clustering
+   * @return Average silhouette
+   */
+  public double evaluateClustering(Relation<O> rel, DistanceQuery<O> dq, Clustering<?> c) {
+    final List<? extends Cluster<?>> clusters = c.getAllClusters();
+    final int numc = clusters.size();
+    // Cluster members, and whether the clusters are treated as singletons:
+    final ArrayDBIDs[] cids = new ArrayDBIDs[numc];
+    final boolean[] single = new boolean[numc];
+    ArrayModifiableDBIDs eval = DBIDUtil.newArray();
+    int ignorednoise = 0;
+    for(int i = 0; i < numc; i++) {
+      Cluster<?> cluster = clusters.get(i);
+      // Note: we treat 1-element clusters the same as noise.
+      if(cluster.size() <= 1 || cluster.isNoise()) {
+        switch(noiseOption){
+        case IGNORE_NOISE:
+          ignorednoise += cluster.size();
+          continue; // Ignore noise elements
+        case TREAT_NOISE_AS_SINGLETONS:
+          single[i] = true;
+          break;
+        case MERGE_NOISE:
+          single[i] = cluster.size() <= 1;
+          break; // Treat as cluster below
+        }
+      }
+      // Sorted, so that sampling does not depend on the iteration order:
+      ArrayModifiableDBIDs ids = DBIDUtil.newArray(cluster.getIDs());
+      ids.sort();
+      cids[i] = ids;
+      eval.addDBIDs(cids[i]);
+    }
+    // Cluster number of each evaluated object:
+    final int[] assign = new int[eval.size()];
+    for(int i = 0, p = 0; i < numc; i++) {
+      for(int e = p + (cids[i] != null ? cids[i].size() : 0); p < e; p++) {
+        assign[p] = i;
+      }
+    }
+    // Objects to evaluate:
+    final int[] which = sample > 0 && sample < eval.size() ? samplePositions(eval.size()) : null;
+    final int size = which != null ? which.length : eval.size();
+    final double[] sil = new double[size];
+    ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+      DBIDArrayIter it = eval.iter();
+      for(int i = start; i < end; i++) {
+        final int p = which != null ? which[i] : i;
+        sil[i] = single[assign[p]] ? 0. : silhouette(dq, it.seek(p), assign[p], cids, single);
+      }
+    });
+    MeanVariance msil = new MeanVariance();
+    for(double s : sil) {
+      msil.put(s);
+    }
+    double penalty = 1.;
+    // Only if {@link NoiseHandling#IGNORE_NOISE}:
+    if(penalize && ignorednoise > 0) {
+      penalty = (rel.size() - ignorednoise) / (double) rel.size();
+    }
+    final double meansil = penalty * msil.getMean();
+    final double stdsil = penalty * msil.getSampleStddev();
+    final double ci = which != null ? penalty * EvaluationSampling.confidence(msil, eval.size()) : 0.;
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(key + ".silhouette.noise-handling", noiseOption.toString()));
+      if(ignorednoise > 0) {
+        LOG.statistics(new LongStatistic(key + ".silhouette.noise", ignorednoise));
+      }
+      LOG.statistics(new DoubleStatistic(key + ".silhouette.mean", meansil));
+      LOG.statistics(new DoubleStatistic(key + ".silhouette.stddev", stdsil));
+      if(which != null) {
+        LOG.statistics(new LongStatistic(key + ".silhouette.sample", which.length));
+        LOG.statistics(new DoubleStatistic(key + ".silhouette.confidence", ci));
+      }
+    }
+
+    EvaluationResult ev = EvaluationResult.findOrCreate(c, "Internal Clustering Evaluation");
+    MeasurementGroup g = ev.findOrCreateGroup("Distance-based");
+    g.addMeasure("Silhouette +-" + FormatUtil.NF2.format(stdsil), meansil, -1., 1., 0., false);
+    if(which != null) {
+      EvaluationSampling.addConfidence(g, "Silhouette", ci);
+    }
+    if(!Metadata.hierarchyOf(c).addChild(ev)) {
+      Metadata.of(ev).notifyChanged();
+    }
+    return meansil;
+  }
+
+  /**
+   * Choose a random sample of positions.
+   *
+   * @param size Number of positions
+   * @return Sorted sample of positions
+   */
+  private int[] samplePositions(int size) {
+    return EvaluationSampling.samplePositions(size, sample, rnd.getSingleThreadedRandom());
+  }
+
+  /**
+   * Compute the silhouette of a single object.
+   *
+   * @param dq Distance query
+   * @param obj Object
+   * @param own Cluster number of the object
+   * @param cids Cluster members, {@code null} for ignored clusters
+   * @param single Flags for clusters treated as singletons
+   * @return Silhouette
+   */
+  private static double silhouette(DistanceQuery<?> dq, DBIDRef obj, int own, ArrayDBIDs[] cids, boolean[] single) {
+    // a: In-cluster distances
+    double a = 0.;
+    for(DBIDIter it = cids[own].iter(); it.valid(); it.advance()) {
+      if(!DBIDUtil.equal(obj, it)) {
+        a += dq.distance(obj, it);
+      }
+    }
+    a /= cids[own].size() - 1;
+    // b: minimum average distance to other clusters:
+    double b = Double.POSITIVE_INFINITY;
+    for(int j = 0; j < cids.length; j++) {
+      if(j == own || cids[j] == null) {
+        continue;
+      }
+      if(single[j]) {
+        for(DBIDIter it = cids[j].iter(); it.valid(); it.advance()) {
+          final double dist = dq.distance(obj, it);
+          b = dist < b ? dist : b; // Minimum average
+        }
+        continue;
+      }
+      double btmp = 0.;
+      for(DBIDIter it = cids[j].iter(); it.valid(); it.advance()) {
+        btmp += dq.distance(obj, it);
+      }
+      btmp /= cids[j].size(); // Average
+      b = btmp < b ? btmp : b; // Minimum average
+    }
+    // One cluster only?
+    b = b < Double.POSITIVE_INFINITY ? b : a;
+    return (b - a) / (b > a ? b : a);
+  }
+
+  @Override
+  public void processNewResult(Object result) {
+    List<Clustering<?>> crs = Clustering.getClusteringResults(result);
+    if(crs.isEmpty()) {
+      return;
+    }
+    Database db = ResultUtil.findDatabase(result);
+    Relation<O> relation = db.getRelation(distance.getInputTypeRestriction());
+    DistanceQuery<O> dq = new QueryBuilder<>(relation, distance).distanceQuery();
+    for(Clustering<?> c : crs) {
+      evaluateClustering(relation, dq, c);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * Sample size.
+     */
+    public static final OptionID SAMPLE_ID = new OptionID("silhouette.sample", "Number of objects to estimate the silhouette from, 0 to compute the exact silhouette.");
+
+    /**
+     * Random generator seed.
+     */
+    public static final OptionID SEED_ID = new OptionID("silhouette.seed", "Random generator seed for sampling.");
+
+    /**
+     * Distance function to use.
+     */
+    private Distance<? super O> distance;
+
+    /**
+     * Noise handling
+     */
+    private NoiseHandling noiseOption;
+
+    /**
+     * Penalize noise, if {@link NoiseHandling#IGNORE_NOISE} is set.
+     */
+    private boolean penalize = true;
+
+    /**
+     * Sample size, 0 for the exact silhouette.
+     */
+    private int sample;
+
+    /**
+     * Random generator for sampling.
+     */
+    private RandomFactory rnd;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Silhouette.Par.DISTANCE_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new EnumParameter<NoiseHandling>(Silhouette.Par.NOISE_ID, NoiseHandling.class, NoiseHandling.TREAT_NOISE_AS_SINGLETONS) //
+          .grab(config, x -> noiseOption = x);
+      if(noiseOption == NoiseHandling.IGNORE_NOISE) {
+        new Flag(Silhouette.Par.NO_PENALIZE_ID).grab(config, x -> penalize = !x);
+      }
+      new IntParameter(SAMPLE_ID, 0) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+          .grab(config, x -> sample = x);
+      if(sample > 0) {
+        new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+      }
+    }
+
+    @Override
+    public ParallelSilhouette<O> make() {
+      return new ParallelSilhouette<>(distance, noiseOption, penalize, sample, rnd);
+    }
+  }
+}
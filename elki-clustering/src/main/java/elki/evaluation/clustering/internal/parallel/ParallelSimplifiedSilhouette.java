@@ -0,0 +1,256 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import java.util.List;
+
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.database.ids.ArrayModifiableDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.evaluation.Evaluator;
+import elki.evaluation.clustering.internal.NoiseHandling;
+import elki.evaluation.clustering.internal.Silhouette;
+import elki.evaluation.clustering.internal.SimplifiedSilhouette;
+import elki.logging.Logging;
+import elki.logging.statistics.DoubleStatistic;
+import elki.logging.statistics.LongStatistic;
+import elki.logging.statistics.StringStatistic;
+import elki.math.MeanVariance;
+import elki.parallel.ParallelExecutor;
+import elki.result.EvaluationResult;
+import elki.result.EvaluationResult.MeasurementGroup;
+import elki.result.Metadata;
+import elki.result.ResultUtil;
+import elki.utilities.io.FormatUtil;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.EnumParameter;
+import elki.utilities.optionhandling.parameters.Flag;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Compute the simplified silhouette of a data set, computing the centroids
+ * and the silhouettes of the objects in parallel.
+ * <p>
+ * The silhouettes are aggregated in the same order as in
+ * {@link SimplifiedSilhouette}, so the results do not depend on the number of
+ * threads.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @assoc - analyzes - Clustering
+ * @composed - - - NoiseHandling
+ */
+public class ParallelSimplifiedSilhouette implements Evaluator {
+  /**
+   * Logger for debug output.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelSimplifiedSilhouette.class);
+
+  /**
+   * Minimum number of objects per thread.
+   */
+  private static final int MIN_BLOCK = 256;
+
+  /**
+   * Option for noise handling.
+   */
+  private NoiseHandling noiseOption;
+
+  /**
+   * Distance function to use.
+   */
+  private NumberVectorDistance<?> distance;
+
+  /**
+   * Penalize noise, if {@link NoiseHandling#IGNORE_NOISE} is set.
+   */
+  private boolean penalize = true;
+
+  /**
+   * Key for logging statistics.
+   */
+  private String key = ParallelSimplifiedSilhouette.class.getName();
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param noiseOpt Handling of noise clusters
+   * @param penalize noise, if {@link NoiseHandling#IGNORE_NOISE} is set.
+   */
+  public ParallelSimplifiedSilhouette(NumberVectorDistance<?> distance, NoiseHandling noiseOpt, boolean penalize) {
+    super();
+    this.distance = distance;
+    this.noiseOption = noiseOpt;
+    this.penalize = penalize;
+  }
+
+  /**
+   * Evaluate a single clustering.
+   *
+   * @param rel Data relation
+   * @param c Clustering
+   * @return Mean simplified silhouette
+   */
+  public double evaluateClustering(Relation<? extends NumberVector> rel, Clustering<?> c) {
+    final List<? extends Cluster<?>> clusters = c.getAllClusters();
+    final NumberVector[] centroids = new NumberVector[clusters.size()];
+    final int ignorednoise = ClusterCentroids.centroids(rel, clusters, centroids, noiseOption);
+    // Clusters to evaluate, and objects to use as centroids:
+    final boolean[] include = new boolean[clusters.size()];
+    ArrayModifiableDBIDs singletons = DBIDUtil.newArray();
+    for(int i = 0; i < include.length; i++) {
+      Cluster<?> cluster = clusters.get(i);
+      include[i] = cluster.size() > 1 && centroids[i] != null;
+      if(centroids[i] == null && noiseOption == NoiseHandling.TREAT_NOISE_AS_SINGLETONS) {
+        singletons.addDBIDs(cluster.getIDs());
+      }
+    }
+    final NumberVector[] others = new NumberVector[singletons.size()];
+    for(DBIDArrayIter it = singletons.iter(); it.valid(); it.advance()) {
+      others[it.getOffset()] = rel.get(it);
+    }
+    final ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+    final int[] assign = ClusterCentroids.flatten(clusters, include, ids);
+    final double[] sil = new double[ids.size()];
+    ParallelExecutor.run(0, sil.length, MIN_BLOCK, (s, e) -> {
+      for(DBIDArrayIter it = ids.iter().seek(s); it.getOffset() < e; it.advance()) {
+        final int i = assign[it.getOffset()];
+        NumberVector obj = rel.get(it);
+        // a: Distance to own centroid
+        double a = distance.distance(centroids[i], obj);
+        // b: Distance to other clusters centroids, and to singletons:
+        double min = Double.POSITIVE_INFINITY;
+        for(int j = 0; j < centroids.length; j++) {
+          if(i != j && centroids[j] != null) {
+            double dist = distance.distance(centroids[j], obj);
+            min = dist < min ? dist : min;
+          }
+        }
+        for(NumberVector other : others) {
+          double dist = distance.distance(other, obj);
+          min = dist < min ? dist : min;
+        }
+        // One 'real' cluster only?
+        min = min < Double.POSITIVE_INFINITY ? min : a;
+        sil[it.getOffset()] = (min - a) / (min > a ? min : a);
+      }
+    });
+
+    // Aggregate in the same order as the sequential version:
+    MeanVariance mssil = new MeanVariance();
+    for(int i = 0, p = 0; i < include.length; i++) {
+      Cluster<?> cluster = clusters.get(i);
+      if(include[i]) {
+        for(DBIDIter it = cluster.getIDs().iter(); it.valid(); it.advance()) {
+          mssil.put(sil[p++]);
+        }
+      }
+      else if(cluster.size() <= 1 || noiseOption == NoiseHandling.TREAT_NOISE_AS_SINGLETONS) {
+        // As suggested in Rousseeuw, we use 0 for singletons.
+        mssil.put(0., cluster.size());
+      }
+    }
+
+    double penalty = 1.;
+    // Only if {@link NoiseHandling#IGNORE_NOISE}:
+    if(penalize && ignorednoise > 0) {
+      penalty = (rel.size() - ignorednoise) / (double) rel.size();
+    }
+    final double meanssil = penalty * mssil.getMean();
+    final double stdssil = penalty * mssil.getSampleStddev();
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(key + ".simplified-silhouette.noise-handling", noiseOption.toString()));
+      if(ignorednoise > 0) {
+        LOG.statistics(new LongStatistic(key + ".simplified-silhouette.ignored", ignorednoise));
+      }
+      LOG.statistics(new DoubleStatistic(key + ".simplified-silhouette.mean", meanssil));
+      LOG.statistics(new DoubleStatistic(key + ".simplified-silhouette.stddev", stdssil));
+    }
+
+    EvaluationResult ev = EvaluationResult.findOrCreate(c, "Internal Clustering Evaluation");
+    MeasurementGroup g = ev.findOrCreateGroup("Distance-based");
+    g.addMeasure("Simp. Silhouette +-" + FormatUtil.NF2.format(stdssil), meanssil, -1., 1., 0., false);
+    if(!Metadata.hierarchyOf(c).addChild(ev)) {
+      Metadata.of(ev).notifyChanged();
+    }
+    return meanssil;
+  }
+
+  @Override
+  public void processNewResult(Object result) {
+    List<Clustering<?>> crs = Clustering.getClusteringResults(result);
+    if(crs.isEmpty()) {
+      return;
+    }
+    Relation<? extends NumberVector> rel = ResultUtil.findDatabase(result).getRelation(this.distance.getInputTypeRestriction());
+    for(Clustering<?> c : crs) {
+      evaluateClustering(rel, c);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par implements Parameterizer {
+    /**
+     * Distance function to use.
+     */
+    private NumberVectorDistance<?> distance;
+
+    /**
+     * Option, how noise should be treated.
+     */
+    private NoiseHandling noiseOption;
+
+    /**
+     * Penalize noise, if {@link NoiseHandling#IGNORE_NOISE} is set.
+     */
+    private boolean penalize = true;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<NumberVectorDistance<?>>(Silhouette.Par.DISTANCE_ID, NumberVectorDistance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new EnumParameter<NoiseHandling>(Silhouette.Par.NOISE_ID, NoiseHandling.class, NoiseHandling.TREAT_NOISE_AS_SINGLETONS) //
+          .grab(config, x -> noiseOption = x);
+      if(noiseOption == NoiseHandling.IGNORE_NOISE) {
+        new Flag(Silhouette.Par.NO_PENALIZE_ID).grab(config, x -> penalize = !x);
+      }
+    }
+
+    @Override
+    public ParallelSimplifiedSilhouette make() {
+      return new ParallelSimplifiedSilhouette(distance, noiseOption, penalize);
+    }
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import java.util.List;
+
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.database.Database;
+import elki.database.ids.ArrayModifiableDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.Relation;
+import elki.distance.NumberVectorDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.evaluation.Evaluator;
+import elki.evaluation.clustering.internal.NoiseHandling;
+import elki.evaluation.clustering.internal.SquaredErrors;
+import elki.logging.Logging;
+import elki.logging.statistics.DoubleStatistic;
+import elki.parallel.ParallelExecutor;
+import elki.result.EvaluationResult;
+import elki.result.EvaluationResult.MeasurementGroup;
+import elki.result.Metadata;
+import elki.result.ResultUtil;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.EnumParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+import net.jafama.FastMath;
+
+/**
+ * Evaluate a clustering by reporting the squared errors (SSE, SSQ), as used by
+ * k-means, computing the centroids and distances in parallel.
+ * <p>
+ * The distances are aggregated in the same order as in {@link SquaredErrors},
+ * so the results do not depend on the number of threads.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @assoc - analyzes - Clustering
+ * @composed - - - NoiseHandling
+ */
+public class ParallelSquaredErrors implements Evaluator {
+  /**
+   * Logger for debug output.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelSquaredErrors.class);
+
+  /**
+   * Minimum number of objects per thread.
+   */
+  private static final int MIN_BLOCK = 256;
+
+  /**
+   * Option for noise handling.
+   */
+  private NoiseHandling noiseOption;
+
+  /**
+   * Distance function to use.
+   */
+  private NumberVectorDistance<?> distance;
+
+  /**
+   * Key for logging statistics.
+   */
+  private String key = ParallelSquaredErrors.class.getName();
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param noiseOption Handling of "noise" clusters.
+   */
+  public ParallelSquaredErrors(NumberVectorDistance<?> distance, NoiseHandling noiseOption) {
+    super();
+    this.distance = distance;
+    this.noiseOption = noiseOption;
+  }
+
+  /**
+   * Evaluate a single clustering.
+   *
+   * @param rel Data relation
+   * @param c Clustering
+   * @return ssq
+   */
+  public double evaluateClustering(Relation<? extends NumberVector> rel, Clustering<?> c) {
+    final boolean square = !distance.isSquared();
+    List<? extends Cluster<?>> clusters = c.getAllClusters();
+    final NumberVector[] centroids = new NumberVector[clusters.size()];
+    final int ignorednoise = ClusterCentroids.centroids(rel, clusters, centroids, noiseOption);
+    final boolean[] include = new boolean[clusters.size()];
+    for(int i = 0; i < include.length; i++) {
+      include[i] = centroids[i] != null;
+    }
+    final ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+    final int[] assign = ClusterCentroids.flatten(clusters, include, ids);
+    final double[] dists = new double[ids.size()];
+    ParallelExecutor.run(0, dists.length, MIN_BLOCK, (s, e) -> {
+      for(DBIDArrayIter it = ids.iter().seek(s); it.getOffset() < e; it.advance()) {
+        dists[it.getOffset()] = distance.distance(centroids[assign[it.getOffset()]], rel.get(it));
+      }
+    });
+    double ssq = 0, sum = 0;
+    for(double d : dists) {
+      sum += d;
+      ssq += square ? d * d : d;
+    }
+    final int div = Math.max(1, rel.size() - ignorednoise);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new DoubleStatistic(key + ".mean", sum / div));
+      LOG.statistics(new DoubleStatistic(key + ".ssq", ssq));
+      LOG.statistics(new DoubleStatistic(key + ".rmsd", FastMath.sqrt(ssq / div)));
+    }
+
+    EvaluationResult ev = EvaluationResult.findOrCreate(c, "Internal Clustering Evaluation");
+    MeasurementGroup g = ev.findOrCreateGroup("Distance-based");
+    g.addMeasure("Mean distance", sum / div, 0., Double.POSITIVE_INFINITY, true);
+    g.addMeasure("Sum of Squares", ssq, 0., Double.POSITIVE_INFINITY, true);
+    g.addMeasure("RMSD", FastMath.sqrt(ssq / div), 0., Double.POSITIVE_INFINITY, true);
+    if(!Metadata.hierarchyOf(c).addChild(ev)) {
+      Metadata.of(ev).notifyChanged();
+    }
+    return ssq;
+  }
+
+  @Override
+  public void processNewResult(Object result) {
+    List<Clustering<?>> crs = Clustering.getClusteringResults(result);
+    if(crs.isEmpty()) {
+      return;
+    }
+    Database db = ResultUtil.findDatabase(result);
+    Relation<NumberVector> rel = db.getRelation(distance.getInputTypeRestriction());
+    for(Clustering<?> c : crs) {
+      evaluateClustering(rel, c);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par implements Parameterizer {
+    /**
+     * Distance function to use.
+     */
+    private NumberVectorDistance<?> distance;
+
+    /**
+     * Handling of noise clusters.
+     */
+    private NoiseHandling noiseOption;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<NumberVectorDistance<?>>(SquaredErrors.Par.DISTANCE_ID, NumberVectorDistance.class, SquaredEuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new EnumParameter<NoiseHandling>(SquaredErrors.Par.NOISE_ID, NoiseHandling.class, NoiseHandling.TREAT_NOISE_AS_SINGLETONS) //
+          .grab(config, x -> noiseOption = x);
+    }
+
+    @Override
+    public ParallelSquaredErrors make() {
+      return new ParallelSquaredErrors(distance, noiseOption);
+    }
+  }
+}
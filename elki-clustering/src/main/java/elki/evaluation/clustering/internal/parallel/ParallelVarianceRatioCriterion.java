@@ -0,0 +1,227 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import java.util.List;
+
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.database.Database;
+import elki.database.ids.ArrayModifiableDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.evaluation.Evaluator;
+import elki.evaluation.clustering.internal.NoiseHandling;
+import elki.evaluation.clustering.internal.VarianceRatioCriterion;
+import elki.logging.Logging;
+import elki.logging.statistics.DoubleStatistic;
+import elki.logging.statistics.LongStatistic;
+import elki.logging.statistics.StringStatistic;
+import elki.math.linearalgebra.Centroid;
+import elki.parallel.ParallelExecutor;
+import elki.result.EvaluationResult;
+import elki.result.EvaluationResult.MeasurementGroup;
+import elki.result.Metadata;
+import elki.result.ResultUtil;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.EnumParameter;
+import elki.utilities.optionhandling.parameters.Flag;
+
+/**
+ * Compute the Variance Ratio Criterion of a data set, also known as
+ * Calinski-Harabasz index, computing the centroids and distances in parallel.
+ * <p>
+ * The distances are aggregated in the same order as in
+ * {@link VarianceRatioCriterion}, so the results do not depend on the number
+ * of threads.
+ * <p>
+ * Reference:
+ * <p>
+ * R. B. Calinski, J. Harabasz<br>
+ * A dendrite method for cluster analysis<br>
+ * Communications in Statistics - Theory and Methods 3(1)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @assoc - analyzes - Clustering
+ * @composed - - - NoiseHandling
+ */
+@Reference(authors = "R. B. Calinski, J. Harabasz", //
+    title = "A dendrite method for cluster analysis", //
+    booktitle = "Communications in Statistics - Theory and Methods 3(1)", //
+    url = "https://doi.org/10.1080/03610927408827101", //
+    bibkey = "doi:10.1080/03610927408827101")
+public class ParallelVarianceRatioCriterion implements Evaluator {
+  /**
+   * Logger for debug output.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelVarianceRatioCriterion.class);
+
+  /**
+   * Minimum number of objects per thread.
+   */
+  private static final int MIN_BLOCK = 256;
+
+  /**
+   * Option for noise handling.
+   */
+  private NoiseHandling noiseOption;
+
+  /**
+   * Penalize noise, if {@link NoiseHandling#IGNORE_NOISE} is set.
+   */
+  private boolean penalize = true;
+
+  /**
+   * Key for logging statistics.
+   */
+  private String key = ParallelVarianceRatioCriterion.class.getName();
+
+  /**
+   * Constructor.
+   *
+   * @param noiseOption Handling of noise clusters
+   * @param penalize noise, if {@link NoiseHandling#IGNORE_NOISE} is set.
+   */
+  public ParallelVarianceRatioCriterion(NoiseHandling noiseOption, boolean penalize) {
+    super();
+    this.noiseOption = noiseOption;
+    this.penalize = penalize;
+  }
+
+  /**
+   * Evaluate a single clustering.
+   *
+   * @param rel Data relation
+   * @param c Clustering
+   * @return Variance Ratio Criterion
+   */
+  public double evaluateClustering(Relation<? extends NumberVector> rel, Clustering<?> c) {
+    final SquaredEuclideanDistance df = SquaredEuclideanDistance.STATIC;
+    List<? extends Cluster<?>> clusters = c.getAllClusters();
+    double vrc = 0.;
+    int ignorednoise = 0;
+    if(clusters.size() > 1) {
+      final NumberVector[] centroids = new NumberVector[clusters.size()];
+      ignorednoise = ClusterCentroids.centroids(rel, clusters, centroids, noiseOption);
+
+      // Build global centroid and cluster count:
+      final Centroid overallCentroid = new Centroid(RelationUtil.dimensionality(rel));
+      int clustercount = VarianceRatioCriterion.globalCentroid(overallCentroid, rel, clusters, centroids, noiseOption);
+
+      // Objects to process; singletons (without centroid) have a = 0:
+      final boolean[] include = new boolean[clusters.size()];
+      for(int i = 0; i < include.length; i++) {
+        include[i] = centroids[i] != null || noiseOption == NoiseHandling.TREAT_NOISE_AS_SINGLETONS;
+      }
+      final ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+      final int[] assign = ClusterCentroids.flatten(clusters, include, ids);
+      // a: Distance to own centroid
+      // b: Distance to overall centroid
+      final double[] da = new double[ids.size()], db = new double[ids.size()];
+      ParallelExecutor.run(0, da.length, MIN_BLOCK, (s, e) -> {
+        for(DBIDArrayIter it = ids.iter().seek(s); it.getOffset() < e; it.advance()) {
+          final NumberVector vec = rel.get(it), center = centroids[assign[it.getOffset()]];
+          da[it.getOffset()] = center != null ? df.distance(center, vec) : 0.;
+          db[it.getOffset()] = df.distance(overallCentroid, vec);
+        }
+      });
+      double a = 0, b = 0;
+      for(int p = 0; p < da.length; p++) {
+        a += da[p];
+        b += db[p];
+      }
+
+      vrc = ((b - a) / a) * ((rel.size() - clustercount) / (clustercount - 1.));
+      // Only if {@link NoiseHandling#IGNORE_NOISE}:
+      if(penalize && ignorednoise > 0) {
+        vrc *= (rel.size() - ignorednoise) / (double) rel.size();
+      }
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(key + ".vrc.noise-handling", noiseOption.toString()));
+      if(ignorednoise > 0) {
+        LOG.statistics(new LongStatistic(key + ".vrc.ignored", ignorednoise));
+      }
+      LOG.statistics(new DoubleStatistic(key + ".vrc", vrc));
+    }
+
+    EvaluationResult ev = EvaluationResult.findOrCreate(c, "Internal Clustering Evaluation");
+    MeasurementGroup g = ev.findOrCreateGroup("Distance-based");
+    g.addMeasure("Variance Ratio Criteria", vrc, 0., 1., 0., false);
+    if(!Metadata.hierarchyOf(c).addChild(ev)) {
+      Metadata.of(ev).notifyChanged();
+    }
+    return vrc;
+  }
+
+  @Override
+  public void processNewResult(Object result) {
+    List<Clustering<?>> crs = Clustering.getClusteringResults(result);
+    if(crs.isEmpty()) {
+      return;
+    }
+    Database db = ResultUtil.findDatabase(result);
+    Relation<? extends NumberVector> rel = db.getRelation(EuclideanDistance.STATIC.getInputTypeRestriction());
+    for(Clustering<?> c : crs) {
+      evaluateClustering(rel, c);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par implements Parameterizer {
+    /**
+     * Option, how noise should be treated.
+     */
+    private NoiseHandling noiseOption;
+
+    /**
+     * Penalize noise, if {@link NoiseHandling#IGNORE_NOISE} is set.
+     */
+    private boolean penalize = true;
+
+    @Override
+    public void configure(Parameterization config) {
+      new EnumParameter<NoiseHandling>(VarianceRatioCriterion.Par.NOISE_ID, NoiseHandling.class, NoiseHandling.TREAT_NOISE_AS_SINGLETONS) //
+          .grab(config, x -> noiseOption = x);
+      if(noiseOption == NoiseHandling.IGNORE_NOISE) {
+        new Flag(VarianceRatioCriterion.Par.NO_PENALIZE_ID).grab(config, x -> penalize = !x);
+      }
+    }
+
+    @Override
+    public ParallelVarianceRatioCriterion make() {
+      return new ParallelVarianceRatioCriterion(noiseOption, penalize);
+    }
+  }
+}
@@ -0,0 +1,33 @@
+/**
+ * Parallel and sampling-based variants of internal evaluation measures for
+ * clusterings.
+ * <p>
+ * The exact variants compute the same measures as the classes in
+ * {@link elki.evaluation.clustering.internal}, using all available cores.
+ * Some measures can optionally be estimated from random samples, and then
+ * also report a 95% confidence interval of the estimate.
+ *
+ * @opt include .*elki.evaluation.Evaluator
+ * @opt include .*elki.data.Clustering
+ */
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
@@ -24,7 +24,10 @@ import java.util.*;
 
 import elki.data.Cluster;
 import elki.data.Clustering;
+import elki.database.datastore.IntegerDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
 import elki.database.ids.*;
+import elki.evaluation.clustering.ClusterContingencyTable;
 import elki.logging.Logging;
 import elki.result.Metadata;
 import elki.utilities.documentation.Reference;
@@ -130,12 +133,68 @@ public class Segments implements Iterable<Segment> {
       clusteringIndex++;
     }
 
-    recursivelyFill(clusters);
+    // Two clusterings, and the second does not overlap: use the contingency
+    // table instead of recursive intersections.
+    WritableIntegerDataStore labels = clusteringsCount == 2 ? ClusterContingencyTable.labelMap(clusters.get(1)) : null;
+    if(labels != null) {
+      fillFromTable(labels);
+      labels.destroy();
+    }
+    else {
+      recursivelyFill(clusters);
+    }
     for(Segment seg : segments.keySet()) {
       actualPairs += seg.pairsize;
     }
   }
 
+  /**
+   * Fill the segments of two clusterings from their contingency table.
+   * <p>
+   * Every nonzero cell yields an object segment, and the objects of the
+   * clusters not in that cell yield the two fragmented segments.
+   *
+   * @param labels2 Cluster labels of the second clustering
+   */
+  private void fillFromTable(IntegerDataStore labels2) {
+    ClusterContingencyTable table = new ClusterContingencyTable(true, false, clusterings.get(0), clusterings.get(1), labels2);
+    int[] path = new int[2];
+    Iterator<? extends Cluster<?>> iter = clusters.get(0).iterator();
+    for(int cnum = 0; iter.hasNext(); cnum++) {
+      Cluster<?> clust = iter.next();
+      final int start = table.getRowStart(cnum), end = table.getRowStart(cnum + 1);
+      // Collect the objects of each nonzero cell of this row:
+      ArrayModifiableDBIDs[] cells = new ArrayModifiableDBIDs[end - start];
+      for(int k = start; k < end; k++) {
+        cells[k - start] = DBIDUtil.newArray(table.getCellCount(k));
+      }
+      for(DBIDIter iter2 = clust.getIDs().iter(); iter2.valid(); iter2.advance()) {
+        final int c2 = labels2.intValue(iter2);
+        if(c2 >= 0) {
+          cells[table.findCell(cnum, c2) - start].add(iter2);
+        }
+      }
+      for(int k = start; k < end; k++) {
+        final int c2 = table.getCellColumn(k), size = table.getCellCount(k);
+        path[0] = cnum;
+        path[1] = c2;
+        makeOrUpdateSegment(path, cells[k - start], size * size - size);
+        // Pairs only in the first clustering
+        if(clust.size() > size) {
+          path[1] = Segment.UNCLUSTERED;
+          makeOrUpdateSegment(path, null, (clust.size() - size) * size);
+        }
+        // Pairs only in the second clustering
+        if(table.getClusterSize2(c2) > size) {
+          path[0] = Segment.UNCLUSTERED;
+          path[1] = c2;
+          makeOrUpdateSegment(path, null, (table.getClusterSize2(c2) - size) * size);
+        }
+      }
+      totalObjects += clust.size();
+    }
+  }
+
   private void recursivelyFill(List<List<? extends Cluster<?>>> cs) {
     final int numclusterings = cs.size();
     Iterator<? extends Cluster<?>> iter = cs.get(0).iterator();
@@ -20,13 +20,21 @@
  */
 package elki.clustering.em;
 
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
 import org.junit.Test;
 
 import elki.clustering.AbstractClusterAlgorithmTest;
 import elki.clustering.kmeans.KMeans;
 import elki.data.Clustering;
 import elki.data.DoubleVector;
+import elki.data.model.EMModel;
 import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.parallel.ParallelCore;
 import elki.utilities.ELKIBuilder;
 
 /**
@@ -62,6 +70,20 @@ public class MultivariateGaussianModelTest extends AbstractClusterAlgorithmTest
     assertClusterSizes(result, new int[] { 3, 95, 97, 202, 313 });
   }
 
+  @Test
+  public void testHierarchicalMiniBatch() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> result = new ELKIBuilder<EM<DoubleVector, ?>>(EM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Par.K_ID, 6) //
+        .with(EM.Par.INIT_ID, MultivariateGaussianModelFactory.class) //
+        .with(EM.Par.MINIBATCH_ID, 100) //
+        .with(EM.Par.SEED_ID, 0) //
+        .build().autorun(db);
+    assertFMeasure(db, result, 0.8187918);
+    assertClusterSizes(result, new int[] { 8, 93, 102, 117, 190, 200 });
+  }
+
   @Test
   public void testConstantMLE() {
     Database db = makeSimpleDatabase(UNITTEST + "constant-attribute.csv.gz", 200);
@@ -86,4 +108,47 @@ public class MultivariateGaussianModelTest extends AbstractClusterAlgorithmTest
     assertFMeasure(db, result, 1.);
     assertClusterSizes(result, new int[] { 100, 100 });
   }
+
+  @Test
+  public void testThreadIndependence() {
+    // Enough objects for multiple blocks in the M-step aggregation.
+    Random rnd = new Random(0L);
+    double[][] data = new double[5000][3];
+    for(int j = 0; j < data.length; j++) {
+      for(int d = 0; d < 3; d++) {
+        data[j][d] = rnd.nextGaussian() + (j % 3 == d ? 5 : 0);
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data));
+    db.initialize();
+    ParallelCore core = ParallelCore.getCore();
+    final int parallelism = core.getParallelism();
+    try {
+      core.setParallelism(1);
+      Clustering<EMModel> r1 = runEM(db);
+      core.setParallelism(3);
+      Clustering<EMModel> r3 = runEM(db);
+      for(int i = 0; i < r1.getAllClusters().size(); i++) {
+        assertArrayEquals("Results depend on the number of threads.", //
+            r1.getAllClusters().get(i).getModel().getMean(), r3.getAllClusters().get(i).getModel().getMean(), 0.);
+      }
+    }
+    finally {
+      core.setParallelism(parallelism);
+    }
+  }
+
+  /**
+   * Run EM with fixed parameters.
+   *
+   * @param db Database
+   * @return Clustering
+   */
+  private static Clustering<EMModel> runEM(Database db) {
+    return new ELKIBuilder<EM<DoubleVector, EMModel>>(EM.class) //
+        .with(KMeans.SEED_ID, 0) //
+        .with(EM.Par.K_ID, 3) //
+        .with(EM.Par.INIT_ID, MultivariateGaussianModelFactory.class) //
+        .build().autorun(db);
+  }
 }
@@ -0,0 +1,147 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.Algorithm;
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.hierarchical.extraction.CutDendrogramByNumberOfClusters;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDs;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Perform HDBSCAN unit test
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class HDBSCANBoruvkaTest extends AbstractClusterAlgorithmTest {
+  /**
+   * Run agglomerative hierarchical clustering with fixed parameters and compare
+   * the result to a golden standard.
+   */
+  @Test
+  public void testHDBSCAN() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Par.MINCLUSTERS_ID, 3) //
+        .with(Algorithm.Utils.ALGORITHM_ID, HDBSCANBoruvka.class) //
+        .with(HDBSCANBoruvka.Par.MIN_PTS_ID, 20) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.686953412);
+    assertClusterSizes(clustering, new int[] { 1, 200, 437 });
+  }
+
+  /**
+   * With minPts=1, this must produce the single-linkage result.
+   */
+  @Test
+  public void testSingleLink() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Clustering<?> clustering = new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Par.MINCLUSTERS_ID, 3) //
+        .with(Algorithm.Utils.ALGORITHM_ID, HDBSCANBoruvka.class) //
+        .with(HDBSCANBoruvka.Par.MIN_PTS_ID, 1) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.6829722);
+    assertClusterSizes(clustering, new int[] { 9, 200, 429 });
+  }
+
+  /**
+   * Regression test against github #46O
+   */
+  @Test
+  public void testHDBSCANCornerCase() {
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(new double[][] { { 1, 0 }, { 0, 1 } }), null);
+    db.initialize();
+    new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Par.MINCLUSTERS_ID, 3) //
+        .with(Algorithm.Utils.ALGORITHM_ID, HDBSCANBoruvka.class) //
+        .with(HDBSCANBoruvka.Par.MIN_PTS_ID, 20) //
+        .build().autorun(db);
+    db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(new double[][] { { 0 } }), null);
+    db.initialize();
+    new ELKIBuilder<>(CutDendrogramByNumberOfClusters.class) //
+        .with(CutDendrogramByNumberOfClusters.Par.MINCLUSTERS_ID, 3) //
+        .with(Algorithm.Utils.ALGORITHM_ID, HDBSCANBoruvka.class) //
+        .with(Algorithm.Utils.DISTANCE_FUNCTION_ID, SquaredEuclideanDistance.class) //
+        .with(HDBSCANBoruvka.Par.MIN_PTS_ID, 20) //
+        .build().autorun(db);
+  }
+
+  /**
+   * Data on a coarse grid, with many duplicate points and tied distances,
+   * which must give the same merge heights as {@link HDBSCANLinearMemory}.
+   */
+  @Test
+  public void testDuplicatesAndTies() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[400][];
+    for(int i = 0; i < data.length; i++) {
+      // Every tenth point is in a cluster of identical points.
+      data[i] = i % 10 == 0 ? new double[] { 10, 10 } : new double[] { rnd.nextInt(6), rnd.nextInt(6) };
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    for(int minPts : new int[] { 2, 5, 50 }) {
+      PointerDensityHierarchyRepresentationResult expect = new ELKIBuilder<HDBSCANLinearMemory<DoubleVector>>(HDBSCANLinearMemory.class) //
+          .with(HDBSCANLinearMemory.Par.MIN_PTS_ID, minPts).build().run(relation);
+      PointerDensityHierarchyRepresentationResult result = new ELKIBuilder<HDBSCANBoruvka<DoubleVector>>(HDBSCANBoruvka.class) //
+          .with(HDBSCANBoruvka.Par.MIN_PTS_ID, minPts).build().run(relation);
+      assertArrayEquals("Core distances differ for minPts=" + minPts, sorted(expect.getCoreDistanceStore(), expect.getDBIDs()), sorted(result.getCoreDistanceStore(), result.getDBIDs()), 1e-15);
+      assertArrayEquals("Merge heights differ for minPts=" + minPts, sorted(expect.getParentDistanceStore(), expect.getDBIDs()), sorted(result.getParentDistanceStore(), result.getDBIDs()), 1e-15);
+    }
+  }
+
+  /**
+   * Get the sorted values of a data store.
+   *
+   * @param store Data store
+   * @param ids Object ids
+   * @return Sorted values
+   */
+  private static double[] sorted(DoubleDataStore store, DBIDs ids) {
+    double[] values = new double[ids.size()];
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      values[i++] = store.doubleValue(it);
+    }
+    Arrays.sort(values);
+    return values;
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the storage of the {@link MatrixParadigm}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class MatrixParadigmTest {
+  @Test
+  public void testSegmentedStorage() {
+    // Use tiny segments, to test segment boundaries.
+    final long len = MatrixParadigm.triangleSize(100);
+    MatrixParadigm.Storage ref = new MatrixParadigm.DoubleStorage(len);
+    MatrixParadigm.Storage seg = new MatrixParadigm.SegmentedDoubleStorage(len, 5);
+    MatrixParadigm.Storage fseg = new MatrixParadigm.SegmentedFloatStorage(len, 5);
+    MatrixParadigm.Storage flt = new MatrixParadigm.FloatStorage(len);
+    for(long i = 0; i < len; i++) {
+      final double v = Math.sqrt(i);
+      ref.set(i, v);
+      seg.set(i, v);
+      fseg.set(i, v);
+      flt.set(i, v);
+    }
+    for(long i = 0; i < len; i++) {
+      assertEquals("Segmented storage differs at " + i, ref.get(i), seg.get(i), 0.);
+      assertEquals("Float storage differs at " + i, (float) ref.get(i), flt.get(i), 0.);
+      assertEquals("Segmented float storage differs at " + i, flt.get(i), fseg.get(i), 0.);
+    }
+  }
+
+  @Test
+  public void testTriangleSize() {
+    assertEquals(0L, MatrixParadigm.triangleSize(1));
+    assertEquals(4950L, MatrixParadigm.triangleSize(100));
+    // Beyond the old limit of 65536 objects, where int arithmetic overflows.
+    assertEquals(100000L * 99999L / 2, MatrixParadigm.triangleSize(100000));
+  }
+}
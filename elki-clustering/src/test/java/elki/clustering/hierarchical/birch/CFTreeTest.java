@@ -0,0 +1,160 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2020
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.hierarchical.birch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.datasource.bundle.MultipleObjectsBundle;
+import elki.parallel.ParallelCore;
+import elki.utilities.ELKIBuilder;
+import elki.utilities.exceptions.AbortException;
+
+/**
+ * Test the construction of CF-trees from streams, and merging of trees.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class CFTreeTest extends AbstractSimpleAlgorithmTest {
+  @Test
+  public void testStream() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    CFTree.Factory factory = new ELKIBuilder<>(CFTree.Factory.class) //
+        .with(CFTree.Factory.Par.ABSORPTION_ID, EuclideanDistanceCriterion.class) //
+        .with(CFTree.Factory.Par.MAXLEAVES_ID, 50) //
+        .build();
+    List<NumberVector> vecs = new ArrayList<>(rel.size());
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      vecs.add(rel.get(it));
+    }
+    MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), vecs);
+    // Same insertion order, so both trees must be identical.
+    ClusteringFeatureArray a = new ClusteringFeatureArray(factory.newTree(rel.getDBIDs(), rel));
+    ClusteringFeatureArray b = new ClusteringFeatureArray(factory.newTree(bundle.asStream()));
+    assertEquals("Number of leaves", a.size(), b.size());
+    assertArrayEquals("Weights", a.n, b.n);
+    assertArrayEquals("Linear sums", a.ls, b.ls, 0.);
+    assertArrayEquals("Sum of squares", a.ss, b.ss, 0.);
+    assertEquals("Not all points summarized", 638, sum(b.n));
+  }
+
+  @Test(expected = AbortException.class)
+  public void testStreamRelative() {
+    CFTree.Factory factory = new ELKIBuilder<>(CFTree.Factory.class) //
+        .with(CFTree.Factory.Par.MAXLEAVES_ID, .1) //
+        .build();
+    factory.newTree(new MultipleObjectsBundle().asStream());
+  }
+
+  @Test
+  public void testMerge() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    CFTree.Factory factory = new ELKIBuilder<>(CFTree.Factory.class) //
+        .with(CFTree.Factory.Par.MAXLEAVES_ID, 50) //
+        .build();
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    CFTree tree = factory.newTree(ids.slice(0, 300), rel);
+    tree.merge(factory.newTree(ids.slice(300, ids.size()), rel));
+    ClusteringFeatureArray cfs = new ClusteringFeatureArray(tree);
+    assertEquals("Leaf count inconsistent", tree.numLeaves(), cfs.size());
+    assertEquals("Not all points summarized", 638, sum(cfs.n));
+    // The linear sum must be preserved exactly (up to rounding).
+    double[] expected = new double[RelationUtil.dimensionality(rel)];
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      NumberVector v = rel.get(it);
+      for(int d = 0; d < expected.length; d++) {
+        expected[d] += v.doubleValue(d);
+      }
+    }
+    double[] actual = new double[expected.length];
+    for(int i = 0; i < cfs.size(); i++) {
+      cfs.addLinearSum(i, actual);
+    }
+    assertArrayEquals("Linear sum", expected, actual, 1e-9);
+  }
+
+  @Test
+  public void testThreadIndependence() {
+    // Enough objects for multiple partial trees.
+    Random rnd = new Random(0L);
+    double[][] data = new double[30000][2];
+    for(int j = 0; j < data.length; j++) {
+      data[j][0] = rnd.nextGaussian() + (j % 3) * 5;
+      data[j][1] = rnd.nextGaussian();
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data));
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    CFTree.Factory factory = new ELKIBuilder<>(CFTree.Factory.class) //
+        .with(CFTree.Factory.Par.MAXLEAVES_ID, 50) //
+        .build();
+    ParallelCore core = ParallelCore.getCore();
+    final int parallelism = core.getParallelism();
+    try {
+      core.setParallelism(1);
+      ClusteringFeatureArray a = new ClusteringFeatureArray(factory.newTree(rel.getDBIDs(), rel));
+      core.setParallelism(3);
+      ClusteringFeatureArray b = new ClusteringFeatureArray(factory.newTree(rel.getDBIDs(), rel));
+      assertEquals("Number of leaves", a.size(), b.size());
+      assertArrayEquals("Weights", a.n, b.n);
+      assertArrayEquals("Linear sums", a.ls, b.ls, 0.);
+      assertArrayEquals("Sum of squares", a.ss, b.ss, 0.);
+      assertEquals("Not all points summarized", data.length, sum(b.n));
+    }
+    finally {
+      core.setParallelism(parallelism);
+    }
+  }
+
+  /**
+   * Sum of an integer array.
+   *
+   * @param n Array
+   * @return Sum
+   */
+  private static int sum(int[] n) {
+    int s = 0;
+    for(int v : n) {
+      s += v;
+    }
+    return s;
+  }
+}
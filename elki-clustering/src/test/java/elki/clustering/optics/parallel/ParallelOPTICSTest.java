@@ -0,0 +1,76 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.clustering.optics.parallel;
+
+import org.junit.Test;
+
+import elki.clustering.AbstractClusterAlgorithmTest;
+import elki.clustering.optics.ClusterOrder;
+import elki.clustering.optics.OPTICSXi;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.model.OPTICSModel;
+import elki.database.Database;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Performs a full OPTICS run, and compares the result with a clustering derived
+ * from the data set labels. This test ensures that OPTICS's performance doesn't
+ * unexpectedly drop on this data set (and also ensures that the algorithms
+ * work, as a side effect).
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelOPTICSTest extends AbstractClusterAlgorithmTest {
+  @Test
+  public void testOPTICS() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Clustering<?> clustering = new ELKIBuilder<>(OPTICSXi.class) //
+        .with(ParallelOPTICS.Par.MINPTS_ID, 20) //
+        .with(ParallelOPTICS.Par.EPSILON_ID, 0.15) //
+        .with(OPTICSXi.Par.XI_ID, 0.05) //
+        .with(OPTICSXi.Par.XIALG_ID, ParallelOPTICS.class) //
+        .build().autorun(db);
+    assertFMeasure(db, clustering, 0.893865);
+    assertClusterSizes(clustering, new int[] { 8, 35, 72, 115, 209, 271 });
+  }
+
+  @Test
+  public void testCacheReuse() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+    Relation<NumberVector> rel = db.getRelation(EuclideanDistance.STATIC.getInputTypeRestriction());
+    NeighborhoodCache cache = NeighborhoodCache.build(rel, EuclideanDistance.STATIC, 0.2);
+    OPTICSXi xi = new OPTICSXi(new ParallelOPTICS<>(EuclideanDistance.STATIC, 0.2, 20), 0.05);
+    // Smaller radius, same result as above
+    ClusterOrder order = ParallelOPTICS.run(cache, 0.15, 20);
+    Clustering<OPTICSModel> clustering = xi.run(order, 20);
+    assertFMeasure(db, clustering, 0.893865);
+    assertClusterSizes(clustering, new int[] { 8, 35, 72, 115, 209, 271 });
+    // Different minPts, from the same cache
+    order = ParallelOPTICS.run(cache, 0.2, 10);
+    clustering = xi.run(order, 10);
+    assertFMeasure(db, clustering, 0.5457097);
+    assertClusterSizes(clustering, new int[] { 6, 12, 14, 14, 14, 15, 17, 20, 25, 26, 47, 65, 79, 90, 104, 162 });
+  }
+}
@@ -21,13 +21,22 @@
 package elki.evaluation.clustering;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
 
 import org.junit.Test;
 
 import elki.algorithm.AbstractSimpleAlgorithmTest;
 import elki.clustering.trivial.ByLabelClustering;
 import elki.clustering.trivial.TrivialAllInOne;
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.model.Model;
 import elki.database.Database;
+import elki.database.ids.DBIDRange;
+import elki.database.ids.DBIDUtil;
 import elki.math.MeanVariance;
 
 /**
@@ -37,7 +46,7 @@ import elki.math.MeanVariance;
  * @author Erich Schubert
  * @since 0.7.0
  */
-public class ClusterContingencyTableTest {
+public class ClusterContingencyTableTest extends AbstractClusterEvaluationTest {
   // the following values depend on the data set used!
   String dataset = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
 
@@ -58,4 +67,52 @@ public class ClusterContingencyTableTest {
     assertEquals(Double.NaN, v2.getMean(), 0);
     assertEquals(Double.NaN, v2.getPopulationVariance(), 0);
   }
+
+  @Test
+  public void testSparseCells() {
+    // Large enough to be processed in multiple blocks:
+    int[] a = repeat(SKLEARNA, 10000), b = repeat(SKLEARNB, 10000);
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(a.length);
+    Clustering<?> c1 = makeClustering(ids.iter(), a), c2 = makeClustering(ids.iter(), b);
+    ClusterContingencyTable table = new ClusterContingencyTable(true, false, c1, c2);
+    assertTrue(table.isStrictPartitioning());
+    assertCells(table, c1, c2);
+  }
+
+  @Test
+  public void testOverlappingCells() {
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(SKLEARNA.length);
+    Clustering<?> c1 = makeClustering(ids.iter(), SKLEARNA);
+    Clustering<Model> c2 = makeClustering(ids.iter(), SKLEARNB);
+    c2.addToplevelCluster(new Cluster<>(ids)); // Overlaps all others
+    ClusterContingencyTable table = new ClusterContingencyTable(true, false, c1, c2);
+    assertFalse(table.isStrictPartitioning());
+    assertCells(table, c1, c2);
+    // Also with the overlapping clustering first:
+    assertCells(new ClusterContingencyTable(true, false, c2, c1), c2, c1);
+  }
+
+  /**
+   * Compare the sparse cells to the cluster intersections.
+   *
+   * @param table Contingency table
+   * @param c1 First clustering
+   * @param c2 Second clustering
+   */
+  private static void assertCells(ClusterContingencyTable table, Clustering<?> c1, Clustering<?> c2) {
+    List<? extends Cluster<?>> cs1 = c1.getAllClusters(), cs2 = c2.getAllClusters();
+    int nonzero = 0;
+    for(int i1 = 0; i1 < cs1.size(); i1++) {
+      assertEquals("Cluster size", cs1.get(i1).size(), table.getClusterSize1(i1));
+      for(int i2 = 0; i2 < cs2.size(); i2++) {
+        int expect = DBIDUtil.intersectionSize(DBIDUtil.ensureSet(cs1.get(i1).getIDs()), cs2.get(i2).getIDs());
+        assertEquals("Cell " + i1 + "," + i2, expect, table.getCount(i1, i2));
+        nonzero += expect > 0 ? 1 : 0;
+      }
+    }
+    for(int i2 = 0; i2 < cs2.size(); i2++) {
+      assertEquals("Cluster size", cs2.get(i2).size(), table.getClusterSize2(i2));
+    }
+    assertEquals("Nonzero cells", nonzero, table.getRowStart(cs1.size()));
+  }
 }
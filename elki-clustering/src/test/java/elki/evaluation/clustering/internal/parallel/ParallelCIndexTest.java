@@ -0,0 +1,131 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import static org.junit.Assert.*;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.clustering.kmeans.LloydKMeans;
+import elki.clustering.kmeans.initialization.RandomlyChosen;
+import elki.clustering.trivial.ByLabelClustering;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.query.distance.PrimitiveDistanceQuery;
+import elki.database.relation.Relation;
+import elki.datasource.AbstractDatabaseConnection;
+import elki.datasource.filter.typeconversions.ClassLabelFilter;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.evaluation.clustering.internal.CIndex;
+import elki.evaluation.clustering.internal.NoiseHandling;
+import elki.result.EvaluationResult;
+import elki.result.EvaluationResult.MeasurementGroup;
+import elki.result.Metadata;
+import elki.utilities.ELKIBuilder;
+import elki.utilities.datastructures.iterator.It;
+import elki.utilities.optionhandling.parameterization.ListParameterization;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Test for {@link ParallelCIndex}, which must give the same results as
+ * {@link CIndex}.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelCIndexTest {
+  final static String dataset = "elki/testdata/unittests/uebungsblatt-2d-mini.csv";
+
+  /**
+   * Test with TREAT_NOISE_AS_SINGLETONS option.
+   */
+  @Test
+  public void testSingleton() {
+    MeasurementGroup g = evaluate(new ELKIBuilder<>(ParallelCIndex.class). //
+        with(CIndex.Par.NOISE_ID, NoiseHandling.TREAT_NOISE_AS_SINGLETONS).build(), false);
+    assertEquals("C-Index not as expected", 0.002711774027916, g.getMeasure("C-Index").getVal(), 1e-15);
+  }
+
+  /**
+   * Test with MERGE_NOISE option.
+   */
+  @Test
+  public void testMerge() {
+    MeasurementGroup g = evaluate(new ELKIBuilder<>(ParallelCIndex.class). //
+        with(CIndex.Par.NOISE_ID, NoiseHandling.MERGE_NOISE).build(), false);
+    assertEquals("C-Index not as expected", 0.024871721992941, g.getMeasure("C-Index").getVal(), 1e-15);
+  }
+
+  /**
+   * Test with k-means clustering.
+   */
+  @Test
+  public void testKMeans() {
+    MeasurementGroup g = evaluate(new ELKIBuilder<>(ParallelCIndex.class). //
+        with(CIndex.Par.NOISE_ID, NoiseHandling.TREAT_NOISE_AS_SINGLETONS).build(), true);
+    assertEquals("C-Index not as expected", 0.00891005391901485, g.getMeasure("C-Index").getVal(), 1e-15);
+  }
+
+  /**
+   * Test the sampling-based estimate.
+   */
+  @Test
+  public void testSampled() {
+    MeasurementGroup g = evaluate(new ELKIBuilder<>(ParallelCIndex.class). //
+        with(CIndex.Par.NOISE_ID, NoiseHandling.MERGE_NOISE). //
+        with(ParallelCIndex.Par.SAMPLE_ID, 10). //
+        with(ParallelCIndex.Par.REPEAT_ID, 5). //
+        with(ParallelCIndex.Par.SEED_ID, 0L).build(), false);
+    assertEquals("C-Index estimate not as expected", 0.008025483813754042, g.getMeasure("C-Index").getVal(), 1e-15);
+    assertEquals("Confidence interval not as expected", 0.015729659233467076, g.getMeasure("C-Index 95% CI").getVal(), 1e-15);
+  }
+
+  /**
+   * Evaluate a clustering.
+   *
+   * @param cind Evaluator
+   * @param kmeans Use k-means instead of the labels
+   * @return Measurements
+   */
+  private static MeasurementGroup evaluate(ParallelCIndex<NumberVector> cind, boolean kmeans) {
+    EuclideanDistance dist = EuclideanDistance.STATIC;
+    ListParameterization param = new ListParameterization();
+    param.addParameter(AbstractDatabaseConnection.Par.FILTERS_ID, //
+        new ELKIBuilder<ClassLabelFilter>(ClassLabelFilter.class).with(ClassLabelFilter.Par.CLASS_LABEL_INDEX_ID, 0).build());
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 20, param);
+    Clustering<?> rbl = kmeans ? //
+        new LloydKMeans<NumberVector>(dist, 3, 20, new RandomlyChosen<>(new RandomFactory(12341234L))).run(db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD_2D)) : //
+        new ELKIBuilder<>(ByLabelClustering.class).with(ByLabelClustering.Par.NOISE_ID, Pattern.compile("Outlier")).build().run(db.getRelation(TypeUtil.CLASSLABEL));
+    Relation<NumberVector> rel = db.getRelation(dist.getInputTypeRestriction());
+    cind.evaluateClustering(rel, new PrimitiveDistanceQuery<NumberVector>(rel, dist), rbl);
+
+    It<EvaluationResult> it = Metadata.hierarchyOf(rbl).iterChildren().filter(EvaluationResult.class);
+    assertTrue("No evaluation result", it.valid());
+    EvaluationResult er = it.get();
+    it.advance();
+    assertFalse("More than one evaluation result?", it.valid());
+    return er.findOrCreateGroup("Distance-based");
+  }
+}
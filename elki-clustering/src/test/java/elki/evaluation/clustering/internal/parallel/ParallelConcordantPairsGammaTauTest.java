@@ -0,0 +1,140 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import static org.junit.Assert.*;
+
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.clustering.kmeans.LloydKMeans;
+import elki.clustering.kmeans.initialization.RandomlyChosen;
+import elki.clustering.trivial.ByLabelClustering;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.relation.Relation;
+import elki.datasource.AbstractDatabaseConnection;
+import elki.datasource.filter.typeconversions.ClassLabelFilter;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.evaluation.clustering.internal.ConcordantPairsGammaTau;
+import elki.evaluation.clustering.internal.NoiseHandling;
+import elki.result.EvaluationResult;
+import elki.result.EvaluationResult.MeasurementGroup;
+import elki.result.Metadata;
+import elki.utilities.ELKIBuilder;
+import elki.utilities.datastructures.iterator.It;
+import elki.utilities.optionhandling.parameterization.ListParameterization;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Test for {@link ParallelConcordantPairsGammaTau}, which must give the same
+ * results as {@link ConcordantPairsGammaTau}.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelConcordantPairsGammaTauTest {
+  final static String dataset = "elki/testdata/unittests/uebungsblatt-2d-mini.csv";
+
+  /**
+   * Test with the labels, and MERGE_NOISE option.
+   */
+  @Test
+  public void testMerge() {
+    MeasurementGroup g = evaluate(new ELKIBuilder<>(ParallelConcordantPairsGammaTau.class). //
+        with(ConcordantPairsGammaTau.Par.NOISE_ID, NoiseHandling.MERGE_NOISE).build()::evaluateClustering, false);
+    assertEquals("Gamma Value not as expected", 0.9683676514473292, g.getMeasure("Gamma").getVal(), 1e-15);
+    assertEquals("Tau Value not as expected", 0.5907925965590582, g.getMeasure("Tau").getVal(), 1e-15);
+  }
+
+  /**
+   * Test with k-means clustering.
+   */
+  @Test
+  public void testKMeans() {
+    MeasurementGroup g = evaluate(new ELKIBuilder<>(ParallelConcordantPairsGammaTau.class). //
+        with(ConcordantPairsGammaTau.Par.NOISE_ID, NoiseHandling.MERGE_NOISE).build()::evaluateClustering, true);
+    assertEquals("Gamma Value not as expected", 0.9918554339526597, g.getMeasure("Gamma").getVal(), 1e-15);
+    assertEquals("Tau Value not as expected", 0.655704137488994, g.getMeasure("Tau").getVal(), 1e-15);
+  }
+
+  /**
+   * Test the sampling-based estimate.
+   */
+  @Test
+  public void testSampled() {
+    MeasurementGroup g = evaluate(new ELKIBuilder<>(ParallelConcordantPairsGammaTau.class). //
+        with(ConcordantPairsGammaTau.Par.NOISE_ID, NoiseHandling.MERGE_NOISE). //
+        with(ParallelConcordantPairsGammaTau.Par.SAMPLE_ID, 12). //
+        with(ParallelConcordantPairsGammaTau.Par.SEED_ID, 0L).build()::evaluateClustering, false);
+    assertEquals("Gamma estimate not as expected", 0.9756882147438464, g.getMeasure("Gamma").getVal(), 1e-15);
+    assertEquals("Gamma confidence not as expected", 0.028050359628875886, g.getMeasure("Gamma 95% CI").getVal(), 1e-15);
+    assertEquals("Tau estimate not as expected", 0.6227496055093367, g.getMeasure("Tau").getVal(), 1e-15);
+    assertEquals("Tau confidence not as expected", 0.029841383259488683, g.getMeasure("Tau 95% CI").getVal(), 1e-15);
+  }
+
+  /**
+   * Test with the labels, including a noise cluster, for all noise handling
+   * options.
+   */
+  @Test
+  public void testNoise() {
+    for(NoiseHandling noise : NoiseHandling.values()) {
+      MeasurementGroup g = evaluate(new ELKIBuilder<>(ParallelConcordantPairsGammaTau.class). //
+          with(ConcordantPairsGammaTau.Par.NOISE_ID, noise).build()::evaluateClustering, false);
+      MeasurementGroup e = evaluate(new ELKIBuilder<>(ConcordantPairsGammaTau.class). //
+          with(ConcordantPairsGammaTau.Par.NOISE_ID, noise).build()::evaluateClustering, false);
+      assertEquals("Gamma Value not as expected for " + noise, e.getMeasure("Gamma").getVal(), g.getMeasure("Gamma").getVal(), 1e-15);
+      assertEquals("Tau Value not as expected for " + noise, e.getMeasure("Tau").getVal(), g.getMeasure("Tau").getVal(), 1e-15);
+    }
+  }
+
+  /**
+   * Evaluate a clustering.
+   *
+   * @param ecp Evaluator
+   * @param kmeans Use k-means instead of the labels
+   * @return Measurements
+   */
+  private static MeasurementGroup evaluate(BiConsumer<Relation<NumberVector>, Clustering<?>> ecp, boolean kmeans) {
+    EuclideanDistance dist = EuclideanDistance.STATIC;
+    ListParameterization param = new ListParameterization();
+    param.addParameter(AbstractDatabaseConnection.Par.FILTERS_ID, //
+        new ELKIBuilder<ClassLabelFilter>(ClassLabelFilter.class).with(ClassLabelFilter.Par.CLASS_LABEL_INDEX_ID, 0).build());
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 20, param);
+    Clustering<?> rbl = kmeans ? //
+        new LloydKMeans<NumberVector>(dist, 3, 20, new RandomlyChosen<>(new RandomFactory(12341234L))).run(db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD_2D)) : //
+        new ELKIBuilder<>(ByLabelClustering.class).with(ByLabelClustering.Par.NOISE_ID, Pattern.compile("Outlier")).build().run(db.getRelation(TypeUtil.CLASSLABEL));
+    Relation<NumberVector> rel = db.getRelation(dist.getInputTypeRestriction());
+    ecp.accept(rel, rbl);
+
+    It<EvaluationResult> it = Metadata.hierarchyOf(rbl).iterChildren().filter(EvaluationResult.class);
+    assertTrue("No evaluation result", it.valid());
+    EvaluationResult er = it.get();
+    it.advance();
+    assertFalse("More than one evaluation result?", it.valid());
+    return er.findOrCreateGroup("Concordance");
+  }
+}
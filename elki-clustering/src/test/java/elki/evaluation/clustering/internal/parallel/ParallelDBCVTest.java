@@ -0,0 +1,101 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import static org.junit.Assert.*;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.clustering.trivial.ByLabelClustering;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.relation.Relation;
+import elki.datasource.AbstractDatabaseConnection;
+import elki.datasource.filter.FixedDBIDsFilter;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.evaluation.clustering.internal.DBCV;
+import elki.result.EvaluationResult;
+import elki.result.EvaluationResult.MeasurementGroup;
+import elki.result.Metadata;
+import elki.utilities.ELKIBuilder;
+import elki.utilities.datastructures.iterator.It;
+import elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test for {@link ParallelDBCV}, which must give the same results as
+ * {@link DBCV}.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelDBCVTest {
+  final static String dataset = "elki/testdata/unittests/uebungsblatt-2d-mini-jitter.csv";
+
+  /**
+   * Test with the labels.
+   */
+  @Test
+  public void testDBCV() {
+    MeasurementGroup g = evaluate(new ELKIBuilder<>(ParallelDBCV.class).build());
+    assertEquals("Density Based Clustering Validation value not as expected", 0.699142946543063, g.getMeasure("Density Based Clustering Validation").getVal(), 1e-15);
+  }
+
+  /**
+   * Test the sampling-based estimate.
+   */
+  @Test
+  public void testSampled() {
+    MeasurementGroup g = evaluate(new ELKIBuilder<>(ParallelDBCV.class). //
+        with(ParallelDBCV.Par.SAMPLE_ID, 15). //
+        with(ParallelDBCV.Par.SEED_ID, 0L).build());
+    assertEquals("DBCV estimate not as expected", 0.6981282051374589, g.getMeasure("Density Based Clustering Validation").getVal(), 1e-15);
+    assertEquals("Confidence interval not as expected", 0.032473985755795964, g.getMeasure("Density Based Clustering Validation 95% CI").getVal(), 1e-15);
+  }
+
+  /**
+   * Evaluate the labeled clustering.
+   *
+   * @param dbcv Evaluator
+   * @return Measurements
+   */
+  private static MeasurementGroup evaluate(ParallelDBCV<NumberVector> dbcv) {
+    EuclideanDistance dist = EuclideanDistance.STATIC;
+    ListParameterization param = new ListParameterization();
+    param.addParameter(AbstractDatabaseConnection.Par.FILTERS_ID, new FixedDBIDsFilter(1));
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 20, param);
+    ByLabelClustering clustering = new ELKIBuilder<>(ByLabelClustering.class). //
+        with(ByLabelClustering.Par.NOISE_ID, Pattern.compile("Outlier")).build();
+    Clustering<?> rbl = clustering.run(db.getRelation(TypeUtil.GUESSED_LABEL));
+    Relation<NumberVector> rel = db.getRelation(dist.getInputTypeRestriction());
+    dbcv.evaluateClustering(rel, rbl);
+
+    It<EvaluationResult> it = Metadata.hierarchyOf(rbl).iterChildren().filter(EvaluationResult.class);
+    assertTrue("No evaluation result", it.valid());
+    EvaluationResult er = it.get();
+    it.advance();
+    assertFalse("More than one evaluation result?", it.valid());
+    return er.findOrCreateGroup("Distance-based");
+  }
+}
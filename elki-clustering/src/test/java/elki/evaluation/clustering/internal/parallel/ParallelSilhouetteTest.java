@@ -0,0 +1,137 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import static org.junit.Assert.*;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.clustering.trivial.ByLabelClustering;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.query.distance.PrimitiveDistanceQuery;
+import elki.database.relation.Relation;
+import elki.datasource.AbstractDatabaseConnection;
+import elki.datasource.filter.typeconversions.ClassLabelFilter;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.evaluation.clustering.internal.NoiseHandling;
+import elki.evaluation.clustering.internal.Silhouette;
+import elki.result.EvaluationResult;
+import elki.result.EvaluationResult.Measurement;
+import elki.result.EvaluationResult.MeasurementGroup;
+import elki.result.Metadata;
+import elki.utilities.ELKIBuilder;
+import elki.utilities.datastructures.iterator.It;
+import elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test for {@link ParallelSilhouette}, which must give the same results as
+ * {@link Silhouette}.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelSilhouetteTest {
+  final static String dataset = "elki/testdata/unittests/uebungsblatt-2d-mini.csv";
+
+  /**
+   * Test with TREAT_NOISE_AS_SINGLETONS option.
+   */
+  @Test
+  public void testSingleton() {
+    MeasurementGroup g = evaluate(new ELKIBuilder<>(ParallelSilhouette.class). //
+        with(Silhouette.Par.NOISE_ID, NoiseHandling.TREAT_NOISE_AS_SINGLETONS).build());
+    assertEquals("Silhouette not as expected", 0.520636492550455, getSilhouette(g).getVal(), 1e-15);
+    assertNull("Exact silhouette should not have a confidence interval", g.getMeasure("Silhouette 95% CI"));
+  }
+
+  /**
+   * Test with MERGE_NOISE option.
+   */
+  @Test
+  public void testMerge() {
+    MeasurementGroup g = evaluate(new ELKIBuilder<>(ParallelSilhouette.class). //
+        with(Silhouette.Par.NOISE_ID, NoiseHandling.MERGE_NOISE).build());
+    assertEquals("Silhouette not as expected", 0.589897756171037, getSilhouette(g).getVal(), 1e-13);
+  }
+
+  /**
+   * Test the sampling-based estimate.
+   */
+  @Test
+  public void testSampled() {
+    MeasurementGroup g = evaluate(new ELKIBuilder<>(ParallelSilhouette.class). //
+        with(Silhouette.Par.NOISE_ID, NoiseHandling.TREAT_NOISE_AS_SINGLETONS). //
+        with(ParallelSilhouette.Par.SAMPLE_ID, 10). //
+        with(ParallelSilhouette.Par.SEED_ID, 0L).build());
+    final double est = getSilhouette(g).getVal(), ci = g.getMeasure("Silhouette 95% CI").getVal();
+    assertEquals("Silhouette estimate not as expected", 0.5631723784839805, est, 1e-15);
+    assertEquals("Confidence interval not as expected", 0.10106445004122243, ci, 1e-15);
+    assertTrue("Exact value not in the confidence interval", Math.abs(est - 0.520636492550455) <= ci);
+  }
+
+  /**
+   * Evaluate the labeled clustering.
+   *
+   * @param silh Evaluator
+   * @return Measurements
+   */
+  private static MeasurementGroup evaluate(ParallelSilhouette<NumberVector> silh) {
+    EuclideanDistance dist = EuclideanDistance.STATIC;
+    ListParameterization param = new ListParameterization();
+    param.addParameter(AbstractDatabaseConnection.Par.FILTERS_ID, //
+        new ELKIBuilder<ClassLabelFilter>(ClassLabelFilter.class).with(ClassLabelFilter.Par.CLASS_LABEL_INDEX_ID, 0).build());
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 20, param);
+    ByLabelClustering clustering = new ELKIBuilder<>(ByLabelClustering.class). //
+        with(ByLabelClustering.Par.NOISE_ID, Pattern.compile("Outlier")).build();
+    Clustering<?> rbl = clustering.run(db.getRelation(TypeUtil.CLASSLABEL));
+    Relation<NumberVector> rel = db.getRelation(dist.getInputTypeRestriction());
+    silh.evaluateClustering(rel, new PrimitiveDistanceQuery<NumberVector>(rel, dist), rbl);
+
+    It<EvaluationResult> it = Metadata.hierarchyOf(rbl).iterChildren().filter(EvaluationResult.class);
+    assertTrue("No evaluation result", it.valid());
+    EvaluationResult er = it.get();
+    it.advance();
+    assertFalse("More than one evaluation result?", it.valid());
+    return er.findOrCreateGroup("Distance-based");
+  }
+
+  /**
+   * Find the silhouette measurement, which includes the standard deviation in
+   * its name.
+   *
+   * @param g Measurements
+   * @return Silhouette measurement
+   */
+  private static Measurement getSilhouette(MeasurementGroup g) {
+    for(Measurement m : g) {
+      if(m.getName().startsWith("Silhouette +-")) {
+        return m;
+      }
+    }
+    fail("No silhouette measurement");
+    return null;
+  }
+}
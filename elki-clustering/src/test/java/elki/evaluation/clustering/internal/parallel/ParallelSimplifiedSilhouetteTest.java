@@ -0,0 +1,108 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.clustering.trivial.ByLabelClustering;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.relation.Relation;
+import elki.datasource.AbstractDatabaseConnection;
+import elki.datasource.filter.typeconversions.ClassLabelFilter;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.evaluation.clustering.internal.NoiseHandling;
+import elki.evaluation.clustering.internal.Silhouette;
+import elki.evaluation.clustering.internal.SimplifiedSilhouette;
+import elki.result.EvaluationResult;
+import elki.result.EvaluationResult.Measurement;
+import elki.result.Metadata;
+import elki.utilities.ELKIBuilder;
+import elki.utilities.datastructures.iterator.It;
+import elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test for {@link ParallelSimplifiedSilhouette}, which must give the same
+ * results as {@link SimplifiedSilhouette}.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelSimplifiedSilhouetteTest {
+  final static String dataset = "elki/testdata/unittests/uebungsblatt-2d-mini.csv";
+
+  /**
+   * Test with TREAT_NOISE_AS_SINGLETONS option.
+   */
+  @Test
+  public void testSingleton() {
+    assertEquals("Silhouette not as expected", 0.639274812814525, evaluate(NoiseHandling.TREAT_NOISE_AS_SINGLETONS), 1e-15);
+  }
+
+  /**
+   * Test with MERGE_NOISE option.
+   */
+  @Test
+  public void testMerge() {
+    assertEquals("Silhouette not as expected", 0.698584394068721, evaluate(NoiseHandling.MERGE_NOISE), 1e-15);
+  }
+
+  /**
+   * Evaluate the labeled clustering.
+   *
+   * @param noise Noise handling
+   * @return Simplified silhouette
+   */
+  private static double evaluate(NoiseHandling noise) {
+    EuclideanDistance dist = EuclideanDistance.STATIC;
+    ListParameterization param = new ListParameterization();
+    param.addParameter(AbstractDatabaseConnection.Par.FILTERS_ID, //
+        new ELKIBuilder<ClassLabelFilter>(ClassLabelFilter.class).with(ClassLabelFilter.Par.CLASS_LABEL_INDEX_ID, 0).build());
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 20, param);
+    ParallelSimplifiedSilhouette silh = new ELKIBuilder<>(ParallelSimplifiedSilhouette.class). //
+        with(Silhouette.Par.DISTANCE_ID, dist). //
+        with(Silhouette.Par.NOISE_ID, noise).build();
+    ByLabelClustering clustering = new ELKIBuilder<>(ByLabelClustering.class). //
+        with(ByLabelClustering.Par.NOISE_ID, Pattern.compile("Outlier")).build();
+    Clustering<?> rbl = clustering.run(db.getRelation(TypeUtil.CLASSLABEL));
+    Relation<NumberVector> rel = db.getRelation(dist.getInputTypeRestriction());
+    final double ret = silh.evaluateClustering(rel, rbl);
+
+    It<EvaluationResult> it = Metadata.hierarchyOf(rbl).iterChildren().filter(EvaluationResult.class);
+    assertTrue("No evaluation result", it.valid());
+    EvaluationResult er = it.get();
+    it.advance();
+    assertFalse("More than one evaluation result?", it.valid());
+    Iterator<Measurement> silit = er.findOrCreateGroup("Distance-based").iterator();
+    assertTrue("No silhouette measurement", silit.hasNext());
+    Measurement m = silit.next();
+    assertFalse("Too many measurements", silit.hasNext());
+    assertEquals("Returned value differs from measurement", m.getVal(), ret, 0.);
+    return m.getVal();
+  }
+}
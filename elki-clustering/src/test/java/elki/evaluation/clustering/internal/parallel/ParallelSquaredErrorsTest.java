@@ -0,0 +1,107 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import static org.junit.Assert.*;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.clustering.trivial.ByLabelClustering;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.relation.Relation;
+import elki.datasource.AbstractDatabaseConnection;
+import elki.datasource.filter.typeconversions.ClassLabelFilter;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.evaluation.clustering.internal.NoiseHandling;
+import elki.evaluation.clustering.internal.SquaredErrors;
+import elki.result.EvaluationResult;
+import elki.result.EvaluationResult.MeasurementGroup;
+import elki.result.Metadata;
+import elki.utilities.ELKIBuilder;
+import elki.utilities.datastructures.iterator.It;
+import elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test for {@link ParallelSquaredErrors}, which must give the same results as
+ * {@link SquaredErrors}.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelSquaredErrorsTest {
+  final static String dataset = "elki/testdata/unittests/uebungsblatt-2d-mini.csv";
+
+  /**
+   * Test with TREAT_NOISE_AS_SINGLETONS option.
+   */
+  @Test
+  public void testSingleton() {
+    MeasurementGroup g = evaluate(NoiseHandling.TREAT_NOISE_AS_SINGLETONS);
+    assertEquals("Mean distance not as expected", 0.790049591497545, g.getMeasure("Mean distance").getVal(), 1e-15);
+    assertEquals("Sum of Squares not as expected", 16.8, g.getMeasure("Sum of Squares").getVal(), 1e-15);
+    assertEquals("RMSD not as expected", 0.916515138991168, g.getMeasure("RMSD").getVal(), 1e-15);
+  }
+
+  /**
+   * Test with MERGE_NOISE option.
+   */
+  @Test
+  public void testMerge() {
+    MeasurementGroup g = evaluate(NoiseHandling.MERGE_NOISE);
+    assertEquals("Mean distance not as expected", 1.30231191554356, g.getMeasure("Mean distance").getVal(), 1e-13);
+    assertEquals("Sum of Squares not as expected", 55.4666666666667, g.getMeasure("Sum of Squares").getVal(), 1e-13);
+    assertEquals("RMSD not as expected", 1.66533279957291, g.getMeasure("RMSD").getVal(), 1e-13);
+  }
+
+  /**
+   * Evaluate the labeled clustering.
+   *
+   * @param noise Noise handling
+   * @return Measurements
+   */
+  private static MeasurementGroup evaluate(NoiseHandling noise) {
+    EuclideanDistance dist = EuclideanDistance.STATIC;
+    ListParameterization param = new ListParameterization();
+    param.addParameter(AbstractDatabaseConnection.Par.FILTERS_ID, //
+        new ELKIBuilder<ClassLabelFilter>(ClassLabelFilter.class).with(ClassLabelFilter.Par.CLASS_LABEL_INDEX_ID, 0).build());
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 20, param);
+    ParallelSquaredErrors serr = new ELKIBuilder<>(ParallelSquaredErrors.class). //
+        with(SquaredErrors.Par.DISTANCE_ID, dist). //
+        with(SquaredErrors.Par.NOISE_ID, noise).build();
+    ByLabelClustering clustering = new ELKIBuilder<>(ByLabelClustering.class). //
+        with(ByLabelClustering.Par.NOISE_ID, Pattern.compile("Outlier")).build();
+    Clustering<?> rbl = clustering.run(db.getRelation(TypeUtil.CLASSLABEL));
+    Relation<NumberVector> rel = db.getRelation(dist.getInputTypeRestriction());
+    serr.evaluateClustering(rel, rbl);
+
+    It<EvaluationResult> it = Metadata.hierarchyOf(rbl).iterChildren().filter(EvaluationResult.class);
+    assertTrue("No evaluation result", it.valid());
+    EvaluationResult er = it.get();
+    it.advance();
+    assertFalse("More than one evaluation result?", it.valid());
+    return er.findOrCreateGroup("Distance-based");
+  }
+}
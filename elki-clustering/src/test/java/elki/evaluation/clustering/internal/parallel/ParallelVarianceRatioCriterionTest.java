@@ -0,0 +1,110 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.clustering.internal.parallel;
+
+import static org.junit.Assert.*;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.clustering.kmeans.LloydKMeans;
+import elki.clustering.kmeans.initialization.RandomlyChosen;
+import elki.clustering.trivial.ByLabelClustering;
+import elki.data.Clustering;
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.relation.Relation;
+import elki.datasource.AbstractDatabaseConnection;
+import elki.datasource.filter.typeconversions.ClassLabelFilter;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.evaluation.clustering.internal.NoiseHandling;
+import elki.evaluation.clustering.internal.VarianceRatioCriterion;
+import elki.result.EvaluationResult;
+import elki.result.Metadata;
+import elki.utilities.ELKIBuilder;
+import elki.utilities.datastructures.iterator.It;
+import elki.utilities.optionhandling.parameterization.ListParameterization;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Test for {@link ParallelVarianceRatioCriterion}, which must give the same
+ * results as {@link VarianceRatioCriterion}.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelVarianceRatioCriterionTest {
+  final static String dataset = "elki/testdata/unittests/uebungsblatt-2d-mini.csv";
+
+  /**
+   * Test with TREAT_NOISE_AS_SINGLETONS option.
+   */
+  @Test
+  public void testSingleton() {
+    assertEquals("VarianceRatioCriterion not as expected", 77.025, evaluate(NoiseHandling.TREAT_NOISE_AS_SINGLETONS, false), 1e-13);
+  }
+
+  /**
+   * Test with MERGE_NOISE option.
+   */
+  @Test
+  public void testMerge() {
+    assertEquals("VarianceRatioCriterion not as expected", 40.7195512820513, evaluate(NoiseHandling.MERGE_NOISE, false), 1e-13);
+  }
+
+  /**
+   * Test with k-means clustering.
+   */
+  @Test
+  public void testKMeans() {
+    assertEquals("VarianceRatioCriterion not as expected", 65.60937499999999, evaluate(NoiseHandling.TREAT_NOISE_AS_SINGLETONS, true), 1e-13);
+  }
+
+  /**
+   * Evaluate a clustering.
+   *
+   * @param noise Noise handling
+   * @param kmeans Use k-means instead of the labels
+   * @return Variance ratio criterion
+   */
+  private static double evaluate(NoiseHandling noise, boolean kmeans) {
+    ListParameterization param = new ListParameterization();
+    param.addParameter(AbstractDatabaseConnection.Par.FILTERS_ID, //
+        new ELKIBuilder<ClassLabelFilter>(ClassLabelFilter.class).with(ClassLabelFilter.Par.CLASS_LABEL_INDEX_ID, 0).build());
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 20, param);
+    ParallelVarianceRatioCriterion varacri = new ELKIBuilder<>(ParallelVarianceRatioCriterion.class). //
+        with(VarianceRatioCriterion.Par.NOISE_ID, noise).build();
+    Clustering<?> rbl = kmeans ? //
+        new LloydKMeans<NumberVector>(SquaredEuclideanDistance.STATIC, 3, 20, new RandomlyChosen<>(new RandomFactory(12341234L))).run(db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD_2D)) : //
+        new ELKIBuilder<>(ByLabelClustering.class).with(ByLabelClustering.Par.NOISE_ID, Pattern.compile("Outlier")).build().run(db.getRelation(TypeUtil.CLASSLABEL));
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD_2D);
+    varacri.evaluateClustering(rel, rbl);
+
+    It<EvaluationResult> it = Metadata.hierarchyOf(rbl).iterChildren().filter(EvaluationResult.class);
+    assertTrue("No evaluation result", it.valid());
+    EvaluationResult er = it.get();
+    it.advance();
+    assertFalse("More than one evaluation result?", it.valid());
+    return er.findOrCreateGroup("Distance-based").getMeasure("Variance Ratio Criteria").getVal();
+  }
+}
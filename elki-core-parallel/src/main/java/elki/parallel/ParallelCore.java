@@ -73,6 +73,20 @@ public class ParallelCore {
     return STATIC;
   }
 
+  /**
+   * Test whether the current thread is a worker of this core.
+   * <p>
+   * Waiting for the thread pool from one of its own workers can deadlock, as
+   * the submitted tasks may be queued behind the waiting workers. Nested
+   * parallel sections must therefore run in the calling thread.
+   *
+   * @return {@code true} if called from a worker thread of this core
+   */
+  public boolean isWorkerThread() {
+    final Thread t = Thread.currentThread();
+    return t instanceof WorkerThread && ((WorkerThread) t).core == this;
+  }
+
   /**
    * Get desired level of parallelism
    * 
@@ -82,6 +96,23 @@ public class ParallelCore {
     return executor != null ? executor.getMaximumPoolSize() : processors;
   }
 
+  /**
+   * Set the maximum number of threads to use (e.g., for testing).
+   * <p>
+   * This must not be called while parallel tasks are running.
+   *
+   * @param processors Number of threads
+   */
+  public synchronized void setParallelism(int processors) {
+    if(connected > 0) {
+      throw new IllegalStateException("Cannot change the parallelism while tasks are running.");
+    }
+    this.processors = processors;
+    if(executor != null) {
+      executor.setMaximumPoolSize(processors);
+    }
+  }
+
   /**
    * Submit a task to the executor core.
    * 
@@ -98,7 +129,7 @@ public class ParallelCore {
    */
   public synchronized void connect() {
     if(executor == null) {
-      executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+      executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), r -> new WorkerThread(this, r));
       executor.allowCoreThreadTimeOut(true);
     }
     if(++connected == 1) {
@@ -116,4 +147,29 @@ public class ParallelCore {
       executor.setCorePoolSize(0);
     }
   }
+
+  /**
+   * Worker thread, to detect nested parallel sections.
+   *
+   * @author Erich Schubert
+   */
+  private static class WorkerThread extends Thread {
+    /**
+     * Core owning this thread.
+     */
+    final ParallelCore core;
+
+    /**
+     * Constructor.
+     *
+     * @param core Core owning this thread
+     * @param r Runnable
+     */
+    WorkerThread(ParallelCore core, Runnable r) {
+      super(r, "ELKI parallel worker");
+      this.core = core;
+      setDaemon(false);
+      setPriority(Thread.NORM_PRIORITY);
+    }
+  }
 }
@@ -44,6 +44,7 @@ import elki.parallel.variables.SharedVariable.Instance;
  * @since 0.7.0
  *
  * @has - - - BlockArrayRunner
+ * @has - - - BlockTask
  * @assoc - - - ParallelCore
  */
 public final class ParallelExecutor {
@@ -56,12 +57,21 @@ public final class ParallelExecutor {
 
   /**
    * Run a task on all available CPUs.
+   * <p>
+   * Nested calls from a worker thread (e.g., from within another parallel
+   * block) are processed in the calling thread, as waiting for the shared
+   * thread pool from one of its own workers could deadlock.
    *
    * @param ids IDs to process
    * @param procs Processors to run
    */
   public static void run(DBIDs ids, Processor... procs) {
     ParallelCore core = ParallelCore.getCore();
+    if(core.isWorkerThread()) {
+      ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+      new BlockArrayRunner(aids, 0, aids.size(), procs).call();
+      return;
+    }
     core.connect();
     try {
       // TODO: try different strategies anyway!
@@ -95,6 +105,75 @@ public final class ParallelExecutor {
     }
   }
 
+  /**
+   * Run a task on all available CPUs, on blocks of an integer range.
+   * <p>
+   * Ranges that are not at least twice the minimum block size are processed
+   * in the calling thread, so this can also be used in inner loops where the
+   * range is often small. Nested calls from a worker thread are also processed
+   * in the calling thread, as waiting for the shared thread pool from one of
+   * its own workers could deadlock.
+   *
+   * @param start First index (inclusive)
+   * @param end Last index (exclusive)
+   * @param minblock Minimum block size
+   * @param task Task to process a block
+   */
+  public static void run(int start, int end, int minblock, BlockTask task) {
+    final int size = end - start;
+    ParallelCore core = ParallelCore.getCore();
+    int numparts = core.getParallelism();
+    // Same heuristic as above, but avoid too small blocks:
+    numparts = (size > numparts * numparts * 16) ? numparts * Math.max(1, numparts - 1) : numparts;
+    numparts = Math.min(numparts, size / Math.max(1, minblock));
+    if(numparts <= 1 || core.isWorkerThread()) {
+      if(size > 0) {
+        task.process(start, end);
+      }
+      return;
+    }
+    core.connect();
+    try {
+      final int blocksize = (size + (numparts - 1)) / numparts;
+      List<Future<Void>> parts = new ArrayList<>(numparts);
+      for(int i = start; i < end; i += blocksize) {
+        final int bstart = i, bend = Math.min(i + blocksize, end);
+        parts.add(core.submit(() -> {
+          task.process(bstart, bend);
+          return null;
+        }));
+      }
+      for(Future<Void> fut : parts) {
+        fut.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Processor execution failed.", e);
+    }
+    catch(InterruptedException e) {
+      throw new RuntimeException("Parallel execution interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Task to process a block of an integer range.
+   *
+   * @author Erich Schubert
+   */
+  @FunctionalInterface
+  public interface BlockTask {
+    /**
+     * Process a block.
+     *
+     * @param start First index (inclusive)
+     * @param end Last index (exclusive)
+     */
+    void process(int start, int end);
+  }
+
   /**
    * Run for an array part, without step size.
    *
@@ -0,0 +1,419 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.scores;
+
+import java.util.Arrays;
+
+import elki.database.ids.*;
+import elki.database.relation.DoubleRelation;
+import elki.math.MathUtil;
+import elki.parallel.ParallelExecutor;
+
+import net.jafama.FastMath;
+
+/**
+ * Mergeable single-pass ranking evaluation.
+ * <p>
+ * All ranking measures of this package only depend on how many negative
+ * objects are ranked before, or tied with, each positive object. This class
+ * therefore only sorts the scores of the positive objects, and maintains a
+ * histogram of the negative objects, with one bin for each distinct positive
+ * score, and one bin for each gap in between. Every negative object is added
+ * with a binary search, in {@code O(log p)} time, without sorting the full
+ * data set, and with memory linear in the number of positive objects only.
+ * The resulting measures are exactly the same as with the sorted evaluation,
+ * including the handling of ties.
+ * <p>
+ * Partial histograms sharing the same positive scores can be obtained via
+ * {@link #newPartial()}, filled independently (e.g., in parallel threads), and
+ * combined with {@link #merge(RankHistogram)}.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class RankHistogram {
+  /**
+   * Minimum number of objects per thread.
+   */
+  private static final int MIN_BLOCK = 4096;
+
+  /**
+   * Distinct keys of the positive objects, descending.
+   */
+  private final long[] keys;
+
+  /**
+   * Number of positive objects with each key.
+   */
+  private final int[] pcnt;
+
+  /**
+   * Total number of positive objects.
+   */
+  private final int numpos;
+
+  /**
+   * Sort ascending (instead of descending).
+   */
+  private final boolean ascending;
+
+  /**
+   * Number of negative objects in the gap before each key, and after the last
+   * key (size: keys + 1).
+   */
+  private final int[] gaps;
+
+  /**
+   * Number of negative objects tied with each key.
+   */
+  private final int[] ties;
+
+  /**
+   * Constructor.
+   *
+   * @param positive Scores of the positive objects
+   * @param ascending Rank low scores first
+   */
+  public RankHistogram(double[] positive, boolean ascending) {
+    this.ascending = ascending;
+    this.numpos = positive.length;
+    long[] k = new long[positive.length];
+    for(int i = 0; i < k.length; i++) {
+      k[i] = key(positive[i], ascending);
+    }
+    Arrays.sort(k); // Ascending here, reversed below.
+    int d = 0;
+    for(int i = 0; i < k.length; i++) {
+      if(i == 0 || k[i] != k[i - 1]) {
+        d++;
+      }
+    }
+    this.keys = new long[d];
+    this.pcnt = new int[d];
+    for(int i = k.length - 1, j = -1; i >= 0; i--) {
+      if(j < 0 || k[i] != keys[j]) {
+        keys[++j] = k[i];
+      }
+      pcnt[j]++;
+    }
+    this.gaps = new int[d + 1];
+    this.ties = new int[d];
+  }
+
+  /**
+   * Constructor for partial histograms.
+   *
+   * @param other Histogram to share the positive objects with
+   */
+  private RankHistogram(RankHistogram other) {
+    this.keys = other.keys;
+    this.pcnt = other.pcnt;
+    this.numpos = other.numpos;
+    this.ascending = other.ascending;
+    this.gaps = new int[keys.length + 1];
+    this.ties = new int[keys.length];
+  }
+
+  /**
+   * Build a histogram from a score relation, in parallel.
+   *
+   * @param scores Scores
+   * @param positive Positive objects
+   * @param ascending Rank low scores first
+   * @return Histogram
+   */
+  public static RankHistogram build(DoubleRelation scores, DBIDs positive, boolean ascending) {
+    final SetDBIDs pset = DBIDUtil.ensureSet(positive);
+    double[] pos = new double[pset.size()];
+    int i = 0;
+    for(DBIDIter it = pset.iter(); it.valid(); it.advance()) {
+      pos[i++] = scores.doubleValue(it);
+    }
+    final RankHistogram hist = new RankHistogram(pos, ascending);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(scores.getDBIDs());
+    ParallelExecutor.run(0, ids.size(), MIN_BLOCK, (start, end) -> {
+      RankHistogram partial = hist.newPartial();
+      for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        if(!pset.contains(it)) {
+          partial.addNegative(scores.doubleValue(it));
+        }
+      }
+      synchronized(hist) {
+        hist.merge(partial);
+      }
+    });
+    return hist;
+  }
+
+  /**
+   * Map a score to a long key, with the same order as
+   * {@link Double#compare(double, double)}, and reversed when sorting
+   * ascending; such that high keys are ranked first.
+   *
+   * @param score Score
+   * @param ascending Rank low scores first
+   * @return Key
+   */
+  private static long key(double score, boolean ascending) {
+    final long bits = Double.doubleToLongBits(score + 0.); // -0. becomes 0.
+    final long key = bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    return ascending ? ~key : key;
+  }
+
+  /**
+   * Get a new, empty partial histogram for the same positive objects.
+   *
+   * @return Partial histogram
+   */
+  public RankHistogram newPartial() {
+    return new RankHistogram(this);
+  }
+
+  /**
+   * Merge a partial histogram into this histogram.
+   *
+   * @param other Partial histogram, from {@link #newPartial()}
+   */
+  public void merge(RankHistogram other) {
+    if(other.keys != keys) {
+      throw new IllegalArgumentException("Only partial histograms of the same positive objects can be merged.");
+    }
+    for(int i = 0; i < gaps.length; i++) {
+      gaps[i] += other.gaps[i];
+    }
+    for(int i = 0; i < ties.length; i++) {
+      ties[i] += other.ties[i];
+    }
+  }
+
+  /**
+   * Add a negative object.
+   *
+   * @param score Score of the negative object
+   */
+  public void addNegative(double score) {
+    final long key = key(score, ascending);
+    // Binary search in the descending keys:
+    int l = 0, r = keys.length;
+    while(l < r) {
+      final int m = (l + r) >>> 1;
+      final long km = keys[m];
+      if(km == key) {
+        ties[m]++;
+        return;
+      }
+      if(km > key) {
+        l = m + 1;
+      }
+      else {
+        r = m;
+      }
+    }
+    gaps[l]++;
+  }
+
+  /**
+   * Get the number of positive objects.
+   *
+   * @return Number of positive objects
+   */
+  public int numPositive() {
+    return numpos;
+  }
+
+  /**
+   * Get the total number of objects.
+   *
+   * @return Number of objects
+   */
+  public int size() {
+    int size = numpos;
+    for(int g : gaps) {
+      size += g;
+    }
+    for(int t : ties) {
+      size += t;
+    }
+    return size;
+  }
+
+  /**
+   * Compute the area under the ROC curve, see {@link ROCEvaluation}.
+   *
+   * @return AUROC
+   */
+  public double computeAUROC() {
+    int poscnt = 0, negcnt = 0;
+    double acc = 0.;
+    for(int j = 0; j < keys.length; j++) {
+      // Negatives before the next positive:
+      acc += poscnt * (double) gaps[j];
+      negcnt += gaps[j];
+      // Tied with the next positives:
+      acc += (2 * poscnt + pcnt[j]) * .5 * ties[j];
+      negcnt += ties[j];
+      poscnt += pcnt[j];
+    }
+    acc += poscnt * (double) gaps[keys.length];
+    negcnt += gaps[keys.length];
+    acc /= negcnt * (long) poscnt;
+    return Double.isNaN(acc) ? 0.5 : acc; /* Detect NaN */
+  }
+
+  /**
+   * Compute the average precision, see {@link AveragePrecisionEvaluation}.
+   *
+   * @return Average precision
+   */
+  public double computeAveragePrecision() {
+    int poscnt = 0, negcnt = 0;
+    double acc = 0.;
+    for(int j = 0; j < keys.length; j++) {
+      negcnt += gaps[j] + ties[j];
+      poscnt += pcnt[j];
+      acc += (poscnt / (double) (poscnt + negcnt)) * pcnt[j];
+    }
+    return numpos > 0 ? acc / numpos : 0.;
+  }
+
+  /**
+   * Compute the area under the precision-recall curve, see
+   * {@link AUPRCEvaluation}.
+   *
+   * @return AUPRC
+   */
+  public double computeAUPRC() {
+    double acc = 0;
+    int pos = 0, rank = 0;
+    for(int j = 0; j < keys.length; j++) {
+      rank += gaps[j];
+      final int prevpos = pos, prevrank = rank;
+      final int newpos = pcnt[j], tied = newpos + ties[j];
+      pos += newpos;
+      rank += tied;
+      // Interpolation based on Davis and Goadrich
+      // Starting point for curve that may otherwise be undefined:
+      if(prevrank == 0) {
+        acc = newpos / (double) tied * newpos;
+        continue;
+      }
+      final double l = FastMath.log(rank) - FastMath.log(prevrank);
+      double integral = l * prevpos / (double) newpos - (l * prevrank / (double) tied - 1);
+      acc += integral / (double) tied * newpos;
+    }
+    return acc / pos;
+  }
+
+  /**
+   * Compute the precision at k, see {@link PrecisionAtKEvaluation}.
+   *
+   * @param k Number of objects, 0 for R-precision
+   * @return Precision at k
+   */
+  public double computePrecisionAtK(int k) {
+    k = k > 0 ? k : numpos;
+    int total = 0;
+    double score = 0.;
+    for(int j = 0; j <= keys.length && total < k; j++) {
+      // Negatives before the next positive:
+      if(gaps[j] > 0) {
+        if(total + gaps[j] > k) {
+          total = k;
+          break;
+        }
+        total += gaps[j];
+      }
+      if(j == keys.length || total >= k) {
+        break;
+      }
+      // Tied with the next positives:
+      final int posthis = pcnt[j], cntthis = posthis + ties[j];
+      if(total + cntthis > k) {
+        score += posthis / (double) cntthis * (k - total);
+        total = k;
+        break;
+      }
+      score += posthis;
+      total += cntthis;
+    }
+    return score / total;
+  }
+
+  /**
+   * Compute the maximum F1 measure, see {@link MaximumF1Evaluation}.
+   *
+   * @return Maximum F1 measure
+   */
+  public double computeMaximumF1() {
+    int poscnt = 0, cnt = 0;
+    double maxf1 = 0.;
+    for(int j = 0; j < keys.length; j++) {
+      // Negatives only cannot increase the F1 measure.
+      cnt += gaps[j] + pcnt[j] + ties[j];
+      poscnt += pcnt[j];
+      double p = poscnt / (double) cnt, r = poscnt / (double) numpos;
+      double f1 = 2. * p * r / (p + r);
+      if(f1 > maxf1) {
+        maxf1 = f1;
+      }
+    }
+    return maxf1;
+  }
+
+  /**
+   * Compute the discounted cumulative gain, see {@link DCGEvaluation}.
+   *
+   * @return DCG
+   */
+  public double computeDCG() {
+    return sumDCG() * MathUtil.LOG2; // Change base to log 2.
+  }
+
+  /**
+   * Compute the normalized discounted cumulative gain, see
+   * {@link NDCGEvaluation}.
+   *
+   * @return NDCG
+   */
+  public double computeNDCG() {
+    // Optimum value:
+    double idcg = DCGEvaluation.sumInvLog1p(1, numpos);
+    return sumDCG() / idcg; // log(2) base would disappear
+  }
+
+  /**
+   * Sum of the discounted gain, with natural logarithms.
+   *
+   * @return Sum
+   */
+  private double sumDCG() {
+    double sum = 0.;
+    int i = 0;
+    for(int j = 0; j < keys.length; j++) {
+      i += gaps[j];
+      final int positive = pcnt[j], tied = positive + ties[j];
+      i += tied;
+      sum += tied == 1 ? 1. / FastMath.log(i + 1) : //
+          DCGEvaluation.sumInvLog1p(i - tied + 1, i) * positive / (double) tied;
+    }
+    return sum;
+  }
+}
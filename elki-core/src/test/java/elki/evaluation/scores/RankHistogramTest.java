@@ -0,0 +1,121 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.evaluation.scores;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.evaluation.scores.adapter.DistanceResultAdapter;
+
+/**
+ * Test the rank histogram against the sorting based evaluation measures.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class RankHistogramTest {
+  /**
+   * Test with many ties, using ascending distances.
+   */
+  @Test
+  public void testTies() {
+    Random r = new Random(0L);
+    for(int rep = 0; rep < 20; rep++) {
+      final int n = 200 + r.nextInt(200), range = 5 + r.nextInt(50);
+      DBIDRange ids = DBIDUtil.generateStaticDBIDRange(n);
+      HashSetModifiableDBIDs positive = DBIDUtil.newHashSet();
+      ModifiableDoubleDBIDList distances = DBIDUtil.newDistanceDBIDList(n);
+      double[] pos = new double[n];
+      int p = 0;
+      RankHistogram hist = null;
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        // Positives tend to have smaller distances
+        final boolean ispos = r.nextInt(10) == 0;
+        final double d = r.nextInt(ispos ? range / 2 + 1 : range);
+        distances.add(d, it);
+        if(ispos) {
+          positive.add(it);
+          pos[p++] = d;
+        }
+      }
+      distances.sort();
+      hist = new RankHistogram(Arrays.copyOf(pos, p), true);
+      // Fill two partial histograms, and merge them:
+      RankHistogram part = hist.newPartial();
+      for(DoubleDBIDListIter it = distances.iter(); it.valid(); it.advance()) {
+        if(!positive.contains(it)) {
+          (it.getOffset() % 2 == 0 ? hist : part).addNegative(it.doubleValue());
+        }
+      }
+      hist.merge(part);
+      assertEquals("Size", n, hist.size());
+      assertEquals("Positive", p, hist.numPositive());
+      assertEquals("AUROC", ROCEvaluation.STATIC.evaluate(positive, distances), hist.computeAUROC(), 1e-15);
+      assertEquals("AUPRC", AUPRCEvaluation.STATIC.evaluate(positive, distances), hist.computeAUPRC(), 1e-15);
+      assertEquals("AveP", AveragePrecisionEvaluation.STATIC.evaluate(positive, distances), hist.computeAveragePrecision(), 1e-15);
+      assertEquals("R-Precision", PrecisionAtKEvaluation.RPRECISION.evaluate(positive, distances), hist.computePrecisionAtK(0), 1e-15);
+      for(int k : new int[] { 1, 7, 20, n }) {
+        assertEquals("Precision@" + k, new PrecisionAtKEvaluation(k).evaluate(positive, distances), hist.computePrecisionAtK(k), 1e-15);
+      }
+      assertEquals("Max F1", MaximumF1Evaluation.STATIC.evaluate(positive, distances), hist.computeMaximumF1(), 1e-15);
+      assertEquals("DCG", DCGEvaluation.STATIC.evaluate(positive, distances), hist.computeDCG(), 1e-13);
+      assertEquals("NDCG", NDCGEvaluation.STATIC.evaluate(new DistanceResultAdapter(positive, distances.iter())), hist.computeNDCG(), 1e-15);
+    }
+  }
+
+  /**
+   * Test building the histogram from a score relation, descending.
+   */
+  @Test
+  public void testBuild() {
+    Random r = new Random(1L);
+    final int n = 10000;
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(n);
+    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_DB);
+    HashSetModifiableDBIDs positive = DBIDUtil.newHashSet();
+    ModifiableDoubleDBIDList distances = DBIDUtil.newDistanceDBIDList(n);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final boolean ispos = r.nextInt(20) == 0;
+      final double s = Math.round((r.nextDouble() + (ispos ? .5 : 0.)) * 1000) / 1000.;
+      scores.putDouble(it, s);
+      distances.add(-s, it); // Ascending negative scores
+      if(ispos) {
+        positive.add(it);
+      }
+    }
+    distances.sort();
+    RankHistogram hist = RankHistogram.build(new MaterializedDoubleRelation("scores", ids, scores), positive, false);
+    assertEquals("Size", n, hist.size());
+    assertEquals("AUROC", ROCEvaluation.STATIC.evaluate(positive, distances), hist.computeAUROC(), 1e-15);
+    assertEquals("AveP", AveragePrecisionEvaluation.STATIC.evaluate(positive, distances), hist.computeAveragePrecision(), 1e-15);
+    assertEquals("AUPRC", AUPRCEvaluation.STATIC.evaluate(positive, distances), hist.computeAUPRC(), 1e-15);
+    assertEquals("NDCG", NDCGEvaluation.STATIC.evaluate(positive, distances), hist.computeNDCG(), 1e-15);
+  }
+}
@@ -32,7 +32,8 @@ import elki.database.query.distance.DistanceQuery;
 import elki.database.query.knn.KNNSearcher;
 import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
-import elki.distance.Distance;
+import elki.distance.*;
+import elki.distance.minkowski.EuclideanDistance;
 import elki.distance.minkowski.LPNormDistance;
 import elki.distance.minkowski.SquaredEuclideanDistance;
 import elki.index.*;
@@ -77,6 +78,11 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
    */
   private final Constructor<? extends Index> kdIndex;
 
+  /**
+   * Ball tree index class.
+   */
+  private final Constructor<? extends Index> ballIndex;
+
   /**
    * Constructor.
    */
@@ -133,6 +139,19 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
       LOG.exception(e);
     }
     this.kdIndex = kdIndex;
+    //
+    Constructor<? extends Index> ballIndex = null;
+    try {
+      Class<?> cls = this.getClass().getClassLoader().loadClass("elki.index.tree.spatial.balltree.BallTree");
+      ballIndex = (Constructor<? extends Index>) cls.getConstructor(Relation.class, Distance.class);
+    }
+    catch(ClassNotFoundException e) {
+      LOG.verbose("BallTree is not available, and cannot be automatically used for optimization.");
+    }
+    catch(NoSuchMethodException | SecurityException e) {
+      LOG.exception(e);
+    }
+    this.ballIndex = ballIndex;
   }
 
   @Override
@@ -153,7 +172,10 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
   @Override
   @SuppressWarnings("unchecked")
   public <O> KNNSearcher<O> kNNByObject(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
-    KNNIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    KNNIndex<O> idx = makeBallTree(relation, distanceQuery.getDistance());
+    if(idx == null) {
+      idx = makeCoverTree(relation, distanceQuery.getDistance());
+    }
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
       idx = makeKDTree(relation, distanceQuery.getDistance());
     }
@@ -195,7 +217,10 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
   @Override
   @SuppressWarnings("unchecked")
   public <O> KNNSearcher<DBIDRef> kNNByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, int maxk, int flags) {
-    KNNIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    KNNIndex<O> idx = makeBallTree(relation, distanceQuery.getDistance());
+    if(idx == null) {
+      idx = makeCoverTree(relation, distanceQuery.getDistance());
+    }
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
       idx = makeKDTree(relation, distanceQuery.getDistance());
     }
@@ -239,7 +264,10 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
 
   @Override
   public <O> RangeSearcher<O> rangeByObject(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    RangeIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    RangeIndex<O> idx = makeBallTree(relation, distanceQuery.getDistance());
+    if(idx == null) {
+      idx = makeCoverTree(relation, distanceQuery.getDistance());
+    }
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
       idx = makeKDTree(relation, distanceQuery.getDistance());
     }
@@ -254,7 +282,10 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
 
   @Override
   public <O> RangeSearcher<DBIDRef> rangeByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    RangeIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    RangeIndex<O> idx = makeBallTree(relation, distanceQuery.getDistance());
+    if(idx == null) {
+      idx = makeCoverTree(relation, distanceQuery.getDistance());
+    }
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
       idx = makeKDTree(relation, distanceQuery.getDistance());
     }
@@ -272,7 +303,10 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
 
   @Override
   public <O> PrioritySearcher<O> priorityByObject(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    DistancePriorityIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    DistancePriorityIndex<O> idx = makeBallTree(relation, distanceQuery.getDistance());
+    if(idx == null) {
+      idx = makeCoverTree(relation, distanceQuery.getDistance());
+    }
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
       idx = makeKDTree(relation, distanceQuery.getDistance());
     }
@@ -287,7 +321,10 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
 
   @Override
   public <O> PrioritySearcher<DBIDRef> priorityByDBID(Relation<? extends O> relation, DistanceQuery<O> distanceQuery, double maxrange, int flags) {
-    DistancePriorityIndex<O> idx = makeCoverTree(relation, distanceQuery.getDistance());
+    DistancePriorityIndex<O> idx = makeBallTree(relation, distanceQuery.getDistance());
+    if(idx == null) {
+      idx = makeCoverTree(relation, distanceQuery.getDistance());
+    }
     if(idx == null) { // Try k-d-tree for squared Euclidean mostly
       idx = makeKDTree(relation, distanceQuery.getDistance());
     }
@@ -373,6 +410,44 @@ public class EmpiricalQueryOptimizer implements QueryOptimizer {
     return null;
   }
 
+  private <O> DistancePriorityIndex<O> makeBallTree(Relation<? extends O> relation, Distance<? super O> distance) {
+    TypeInformation type = relation.getDataTypeInformation();
+    if(ballIndex == null // not available
+        || !TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(type) //
+        || !(distance instanceof EuclideanDistance || distance instanceof SquaredEuclideanDistance //
+            || distance instanceof CosineDistance || distance instanceof CosineUnitlengthDistance //
+            || distance instanceof ArcCosineDistance || distance instanceof ArcCosineUnitlengthDistance) //
+        // Sparse vectors would become dense copies:
+        || TypeUtil.SPARSE_VECTOR_FIELD.isAssignableFromType(type) //
+        // k-d-trees and cover trees work well for lower dimensionality
+        || ((FieldTypeInformation) type).getDimensionality() <= 20) {
+      return null;
+    }
+    // The ball tree stores a dense copy of the data, plus the node centers.
+    final long cells = relation.size() * (long) ((FieldTypeInformation) type).getDimensionality();
+    if(cells > Integer.MAX_VALUE - 8) {
+      return null;
+    }
+    long freeMemory = getFreeMemory();
+    final long msize = cells * 16L;
+    if(msize > 0.8 * freeMemory) {
+      LOG.warning("An automatic ball tree would need about " + formatMemory(msize) + " memory, only " + formatMemory(freeMemory) + " are available.");
+      return null;
+    }
+    try {
+      @SuppressWarnings("unchecked")
+      DistancePriorityIndex<O> idx = (DistancePriorityIndex<O>) ballIndex.newInstance(relation, distance);
+      LOG.verbose("Optimizer: automatically adding a ball tree index.");
+      idx.initialize();
+      return idx;
+    }
+    catch(InstantiationException | IllegalAccessException
+        | IllegalArgumentException | InvocationTargetException e) {
+      LOG.exception("Automatic ball tree creation failed.", e);
+    }
+    return null;
+  }
+
   /**
    * Get the currently free amount of memory.
    *
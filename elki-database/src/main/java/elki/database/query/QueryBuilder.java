@@ -341,10 +341,10 @@ public class QueryBuilder<O> {
    */
   @SuppressWarnings("unchecked")
   public KNNSearcher<O> kNNByObject(int maxk) {
-    int precompute = flags & FLAG_PRECOMPUTE;
-    flags ^= precompute; // Mask
+    int mask = flags & (FLAG_PRECOMPUTE | FLAG_OPTIMIZED_ONLY);
+    flags ^= mask; // Mask
     DistanceQuery<O> distanceQuery = distanceQuery();
-    flags ^= precompute; // Restore
+    flags ^= mask; // Restore
     for(It<KNNIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(KNNIndex.class); it.valid(); it.advance()) {
       KNNSearcher<O> q = it.get().kNNByObject(distanceQuery, maxk, flags);
       logUsing(it.get(), "kNN", q != null);
@@ -392,10 +392,10 @@ public class QueryBuilder<O> {
    */
   @SuppressWarnings("unchecked")
   public KNNSearcher<DBIDRef> kNNByDBID(int maxk) {
-    int precompute = flags & FLAG_PRECOMPUTE;
-    flags ^= precompute; // Mask
+    int mask = flags & (FLAG_PRECOMPUTE | FLAG_OPTIMIZED_ONLY);
+    flags ^= mask; // Mask
     DistanceQuery<O> distanceQuery = distanceQuery();
-    flags ^= precompute; // Restore
+    flags ^= mask; // Restore
     for(It<KNNIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(KNNIndex.class); it.valid(); it.advance()) {
       KNNSearcher<DBIDRef> q = it.get().kNNByDBID(distanceQuery, maxk, flags);
       logUsing(it.get(), "kNN", q != null);
@@ -443,10 +443,10 @@ public class QueryBuilder<O> {
    */
   @SuppressWarnings("unchecked")
   public RangeSearcher<O> rangeByObject(double maxrange) {
-    int precompute = flags & FLAG_PRECOMPUTE;
-    flags ^= precompute; // Mask
+    int mask = flags & (FLAG_PRECOMPUTE | FLAG_OPTIMIZED_ONLY);
+    flags ^= mask; // Mask
     DistanceQuery<O> distanceQuery = distanceQuery();
-    flags ^= precompute; // Restore
+    flags ^= mask; // Restore
     for(It<RangeIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(RangeIndex.class); it.valid(); it.advance()) {
       RangeSearcher<O> q = it.get().rangeByObject(distanceQuery, maxrange, flags);
       if(LOG.isDebuggingFinest()) {
@@ -497,10 +497,10 @@ public class QueryBuilder<O> {
    */
   @SuppressWarnings("unchecked")
   public RangeSearcher<DBIDRef> rangeByDBID(double maxrange) {
-    int precompute = flags & FLAG_PRECOMPUTE;
-    flags ^= precompute; // Mask
+    int mask = flags & (FLAG_PRECOMPUTE | FLAG_OPTIMIZED_ONLY);
+    flags ^= mask; // Mask
     DistanceQuery<O> distanceQuery = distanceQuery();
-    flags ^= precompute; // Restore
+    flags ^= mask; // Restore
     for(It<RangeIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(RangeIndex.class); it.valid(); it.advance()) {
       RangeSearcher<DBIDRef> q = it.get().rangeByDBID(distanceQuery, maxrange, flags);
       if(LOG.isDebuggingFinest()) {
@@ -552,10 +552,10 @@ public class QueryBuilder<O> {
    * @return Similarity range query
    */
   public RangeSearcher<O> similarityRangeByObject(double threshold) {
-    int precompute = flags & FLAG_PRECOMPUTE;
-    flags ^= precompute; // Mask
+    int mask = flags & (FLAG_PRECOMPUTE | FLAG_OPTIMIZED_ONLY);
+    flags ^= mask; // Mask
     SimilarityQuery<O> simQuery = similarityQuery();
-    flags ^= precompute; // Restore
+    flags ^= mask; // Restore
     for(It<SimilarityRangeIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(SimilarityRangeIndex.class); it.valid(); it.advance()) {
       RangeSearcher<O> q = it.get().similarityRangeByObject(simQuery, threshold, flags);
       if(LOG.isDebuggingFinest()) {
@@ -601,10 +601,10 @@ public class QueryBuilder<O> {
    * @return Similarity range query
    */
   public RangeSearcher<DBIDRef> similarityRangeByDBID(double threshold) {
-    int precompute = flags & FLAG_PRECOMPUTE;
-    flags ^= precompute; // Mask
+    int mask = flags & (FLAG_PRECOMPUTE | FLAG_OPTIMIZED_ONLY);
+    flags ^= mask; // Mask
     SimilarityQuery<O> simQuery = similarityQuery();
-    flags ^= precompute; // Restore
+    flags ^= mask; // Restore
     for(It<SimilarityRangeIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(SimilarityRangeIndex.class); it.valid(); it.advance()) {
       RangeSearcher<DBIDRef> q = it.get().similarityRangeByDBID(simQuery, threshold, flags);
       if(LOG.isDebuggingFinest()) {
@@ -648,10 +648,10 @@ public class QueryBuilder<O> {
    * @return rkNN query
    */
   public RKNNSearcher<O> rKNNByObject(int k) {
-    int precompute = flags & FLAG_PRECOMPUTE;
-    flags ^= precompute; // Mask
+    int mask = flags & (FLAG_PRECOMPUTE | FLAG_OPTIMIZED_ONLY);
+    flags ^= mask; // Mask
     DistanceQuery<O> distanceQuery = distanceQuery();
-    flags ^= precompute; // Restore
+    flags ^= mask; // Restore
     for(It<RKNNIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(RKNNIndex.class); it.valid(); it.advance()) {
       RKNNSearcher<O> q = it.get().rkNNByObject(distanceQuery, k, flags);
       if(LOG.isDebuggingFinest()) {
@@ -692,10 +692,10 @@ public class QueryBuilder<O> {
    * @return rkNN query
    */
   public RKNNSearcher<DBIDRef> rKNNByDBID(int k) {
-    int precompute = flags & FLAG_PRECOMPUTE;
-    flags ^= precompute; // Mask
+    int mask = flags & (FLAG_PRECOMPUTE | FLAG_OPTIMIZED_ONLY);
+    flags ^= mask; // Mask
     DistanceQuery<O> distanceQuery = distanceQuery();
-    flags ^= precompute; // Restore
+    flags ^= mask; // Restore
     for(It<RKNNIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(RKNNIndex.class); it.valid(); it.advance()) {
       RKNNSearcher<DBIDRef> q = it.get().rkNNByDBID(distanceQuery, k, flags);
       if(LOG.isDebuggingFinest()) {
@@ -737,10 +737,10 @@ public class QueryBuilder<O> {
    */
   @SuppressWarnings("unchecked")
   public PrioritySearcher<O> priorityByObject(double maxrange) {
-    int precompute = flags & FLAG_PRECOMPUTE;
-    flags ^= precompute; // Mask
+    int mask = flags & (FLAG_PRECOMPUTE | FLAG_OPTIMIZED_ONLY);
+    flags ^= mask; // Mask
     DistanceQuery<O> distanceQuery = distanceQuery();
-    flags ^= precompute; // Restore
+    flags ^= mask; // Restore
     for(It<DistancePriorityIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(DistancePriorityIndex.class); it.valid(); it.advance()) {
       PrioritySearcher<O> q = it.get().priorityByObject(distanceQuery, maxrange, flags);
       if(LOG.isDebuggingFinest()) {
@@ -786,10 +786,10 @@ public class QueryBuilder<O> {
    */
   @SuppressWarnings("unchecked")
   public PrioritySearcher<DBIDRef> priorityByDBID(double maxrange) {
-    int precompute = flags & FLAG_PRECOMPUTE;
-    flags ^= precompute; // Mask
+    int mask = flags & (FLAG_PRECOMPUTE | FLAG_OPTIMIZED_ONLY);
+    flags ^= mask; // Mask
     DistanceQuery<O> distanceQuery = distanceQuery();
-    flags ^= precompute; // Restore
+    flags ^= mask; // Restore
     for(It<DistancePriorityIndex<O>> it = Metadata.hierarchyOf(relation).iterChildrenReverse().filter(DistancePriorityIndex.class); it.valid(); it.advance()) {
       PrioritySearcher<DBIDRef> q = it.get().priorityByDBID(distanceQuery, maxrange, flags);
       if(LOG.isDebuggingFinest()) {
@@ -35,9 +35,11 @@ import elki.index.KNNIndex;
 import elki.index.RangeIndex;
 import elki.index.lsh.hashfamilies.LocalitySensitiveHashFunctionFamily;
 import elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction;
+import elki.index.lsh.hashfunctions.MultiProbeLocalitySensitiveHashFunction;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -45,10 +47,17 @@ import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.ObjectParameter;
 
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 
 /**
  * Locality Sensitive Hashing.
+ * <p>
+ * Each hash table is stored in a compressed sparse row layout: one array of
+ * bucket start positions, and one array of object offsets sorted by bucket.
+ * The tables are built in parallel. If the hash functions support it, queries
+ * can probe multiple nearby buckets in each table (multi-probe LSH), which
+ * improves recall without adding more tables.
  *
  * @author Erich Schubert
  * @since 0.6.0
@@ -64,6 +73,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
    */
   private static final Logging LOG = Logging.getLogger(InMemoryLSHIndex.class);
 
+  /**
+   * Minimum number of objects to hash per thread.
+   */
+  private static final int MIN_BLOCK = 1024;
+
   /**
    * LSH hash function family to use.
    */
@@ -79,6 +93,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
    */
   int numberOfBuckets;
 
+  /**
+   * Number of buckets to probe in each table.
+   */
+  int probes;
+
   /**
    * Constructor.
    *
@@ -87,10 +106,23 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
    * @param numberOfBuckets Number of buckets to use.
    */
   public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets) {
+    this(family, l, numberOfBuckets, 1);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param family Projection family
+   * @param l Number of hash tables to use
+   * @param numberOfBuckets Number of buckets to use.
+   * @param probes Number of buckets to probe in each table
+   */
+  public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets, int probes) {
     super();
     this.family = family;
     this.l = l;
     this.numberOfBuckets = numberOfBuckets;
+    this.probes = probes;
   }
 
   @Override
@@ -117,9 +149,19 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
     ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions;
 
     /**
-     * The actual table
+     * Object ids, defining the offsets stored in the tables.
      */
-    ArrayList<Int2ObjectOpenHashMap<DBIDs>> hashtables;
+    ArrayDBIDs ids;
+
+    /**
+     * Start of each bucket in the member arrays, for each table.
+     */
+    int[][] bucketStart;
+
+    /**
+     * Object offsets, sorted by bucket, for each table.
+     */
+    int[][] members;
 
     /**
      * Number of buckets to use.
@@ -140,58 +182,75 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
 
     @Override
     public void initialize() {
-      final int numhash = hashfunctions.size();
-      hashtables = new ArrayList<>(numhash);
-      for(int i = 0; i < numhash; i++) {
-        hashtables.add(new Int2ObjectOpenHashMap<DBIDs>(numberOfBuckets));
-      }
-
+      final int numhash = hashfunctions.size(), size = relation.size();
+      ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      // Phase 1: compute the buckets of all objects, in parallel.
+      final int[][] buckets = new int[numhash][size];
       // TODO: We assume all hash functions have the same dimensionality.
-      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", relation.size(), LOG) : null;
-      int expect = Math.max(2, (int) Math.ceil(relation.size() / (double) numberOfBuckets));
-      for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-        V obj = relation.get(iter);
-        for(int i = 0; i < numhash; i++) {
-          final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur == null) {
-            table.put(bucket, DBIDUtil.deref(iter));
+      final int numproj = hashfunctions.get(0).getNumberOfProjections();
+      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", size, LOG) : null;
+      ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+        double[] buf = new double[numproj];
+        for(DBIDArrayIter iter = ids.iter().seek(start); iter.getOffset() < end; iter.advance()) {
+          V obj = relation.get(iter);
+          for(int i = 0; i < numhash; i++) {
+            buckets[i][iter.getOffset()] = bucket(hashfunctions.get(i).hashObject(obj, buf));
+          }
+          LOG.incrementProcessed(progress);
+        }
+      });
+      LOG.ensureCompleted(progress);
+      // Phase 2: sort the objects by bucket, for each table.
+      bucketStart = new int[numhash][];
+      members = new int[numhash][];
+      ParallelExecutor.run(0, numhash, 1, (start, end) -> {
+        for(int i = start; i < end; i++) {
+          final int[] b = buckets[i];
+          final int[] bstart = new int[numberOfBuckets + 1];
+          for(int j = 0; j < size; j++) {
+            ++bstart[b[j] + 1];
           }
-          else if(cur.size() > 1) {
-            ((ModifiableDBIDs) cur).add(iter);
+          for(int j = 0; j < numberOfBuckets; j++) {
+            bstart[j + 1] += bstart[j];
           }
-          else {
-            ModifiableDBIDs newbuck = DBIDUtil.newArray(expect);
-            newbuck.addDBIDs(cur);
-            newbuck.add(iter);
-            table.put(bucket, newbuck);
+          final int[] pos = bstart.clone();
+          final int[] mem = new int[size];
+          for(int j = 0; j < size; j++) {
+            mem[pos[b[j]]++] = j;
           }
+          bucketStart[i] = bstart;
+          members[i] = mem;
+          buckets[i] = null; // Allow garbage collection
         }
-        LOG.incrementProcessed(progress);
-      }
-      LOG.ensureCompleted(progress);
+      });
       if(LOG.isStatistics()) {
         int min = Integer.MAX_VALUE, max = 0;
         for(int i = 0; i < numhash; i++) {
-          final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
-          for(DBIDs set : table.values()) {
-            final int size = set.size();
-            min = size < min ? size : min;
-            max = size > max ? size : max;
+          final int[] bstart = bucketStart[i];
+          for(int j = 0; j < numberOfBuckets; j++) {
+            final int bsize = bstart[j + 1] - bstart[j];
+            if(bsize > 0) {
+              min = bsize < min ? bsize : min;
+              max = bsize > max ? bsize : max;
+            }
           }
         }
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.min", min));
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.max", max));
-        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", hashtables.size()));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", numhash));
       }
     }
 
+    /**
+     * Reduce a hash code to the table size.
+     *
+     * @param hash Hash code (unsigned)
+     * @return Bucket number
+     */
+    private int bucket(int hash) {
+      return Integer.remainderUnsigned(hash, numberOfBuckets);
+    }
+
     @Override
     public Logging getLogger() {
       return LOG;
@@ -207,36 +266,41 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
     @Override
     public RangeSearcher<V> rangeByObject(DistanceQuery<V> distanceQuery, double maxradius, int flags) {
       return (flags & QueryBuilder.FLAG_EXACT_ONLY) == 0 && // approximate
-          !family.isCompatible(distanceQuery.getDistance()) ? // compatible
+          family.isCompatible(distanceQuery.getDistance()) ? // compatible
               new LSHRangeQuery(distanceQuery) : null;
     }
 
     /**
-     * Get the candidates: points which have at least one hash bucket in common.
-     * 
+     * Get the candidates: points which have at least one hash bucket in common
+     * (or in one of the probed buckets).
+     *
      * @param obj Query object
-     * @return Candidates
+     * @param candidates Output candidate offsets
+     * @param buf Projection buffer
+     * @param probebuf Buffer for the hash values to probe
      */
-    protected DBIDs getCandidates(V obj) {
-      ModifiableDBIDs candidates = null;
-      final int numhash = hashtables.size();
-      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+    protected void getCandidates(V obj, IntOpenHashSet candidates, double[] buf, int[] probebuf) {
+      candidates.clear();
+      final int numhash = hashfunctions.size();
       for(int i = 0; i < numhash; i++) {
-        final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
         final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-        // Get the initial (unbounded) hash code:
-        int hash = hashfunc.hashObject(obj, buf);
-        // Reduce to hash table size
-        int bucket = hash % numberOfBuckets;
-        DBIDs cur = table.get(bucket);
-        if(cur != null) {
-          if(candidates == null) {
-            candidates = DBIDUtil.newHashSet(cur.size() * numhash);
+        int numprobes = 1;
+        if(probebuf.length > 1 && hashfunc instanceof MultiProbeLocalitySensitiveHashFunction) {
+          @SuppressWarnings("unchecked")
+          final MultiProbeLocalitySensitiveHashFunction<? super V> mp = (MultiProbeLocalitySensitiveHashFunction<? super V>) hashfunc;
+          numprobes = mp.hashProbes(obj, buf, probebuf);
+        }
+        else {
+          probebuf[0] = hashfunc.hashObject(obj, buf);
+        }
+        final int[] bstart = bucketStart[i], mem = members[i];
+        for(int p = 0; p < numprobes; p++) {
+          final int b = bucket(probebuf[p]);
+          for(int j = bstart[b], end = bstart[b + 1]; j < end; j++) {
+            candidates.add(mem[j]);
           }
-          candidates.addDBIDs(cur);
         }
       }
-      return (candidates == null) ? DBIDUtil.EMPTYDBIDS : candidates;
     }
 
     /**
@@ -245,6 +309,21 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
      * @author Erich Schubert
      */
     protected class LSHKNNQuery extends AbstractRefiningQuery implements KNNSearcher<V> {
+      /**
+       * Candidate buffer.
+       */
+      private IntOpenHashSet candidates = new IntOpenHashSet();
+
+      /**
+       * Projection buffer.
+       */
+      private double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+
+      /**
+       * Probe buffer.
+       */
+      private int[] probebuf = new int[probes];
+
       /**
        * Constructor.
        *
@@ -256,10 +335,12 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
 
       @Override
       public KNNList getKNN(V obj, int k) {
-        DBIDs candidates = getCandidates(obj);
+        getCandidates(obj, candidates, buf, probebuf);
         // Refine.
         KNNHeap heap = DBIDUtil.newHeap(k);
-        for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
+        DBIDArrayIter iter = ids.iter();
+        for(IntIterator it = candidates.iterator(); it.hasNext();) {
+          iter.seek(it.nextInt());
           final double dist = distanceQuery.distance(obj, iter);
           super.incRefinements(1);
           heap.insert(dist, iter);
@@ -274,6 +355,21 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
      * @author Erich Schubert
      */
     protected class LSHRangeQuery extends AbstractRefiningQuery implements RangeSearcher<V> {
+      /**
+       * Candidate buffer.
+       */
+      private IntOpenHashSet candidates = new IntOpenHashSet();
+
+      /**
+       * Projection buffer.
+       */
+      private double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+
+      /**
+       * Probe buffer.
+       */
+      private int[] probebuf = new int[probes];
+
       /**
        * Constructor.
        *
@@ -285,9 +381,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
 
       @Override
       public ModifiableDoubleDBIDList getRange(V obj, double range, ModifiableDoubleDBIDList result) {
-        DBIDs candidates = getCandidates(obj);
+        getCandidates(obj, candidates, buf, probebuf);
         // Refine.
-        for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
+        DBIDArrayIter iter = ids.iter();
+        for(IntIterator it = candidates.iterator(); it.hasNext();) {
+          iter.seek(it.nextInt());
           final double dist = distanceQuery.distance(obj, iter);
           super.incRefinements(1);
           if(dist <= range) {
@@ -320,6 +418,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
      */
     public static final OptionID BUCKETS_ID = new OptionID("lsh.buckets", "Number of hash buckets to use.");
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    public static final OptionID PROBES_ID = new OptionID("lsh.probes", "Number of buckets to probe in each hash table (multi-probe LSH).");
+
     /**
      * LSH hash function family to use.
      */
@@ -335,6 +438,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
      */
     int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    int probes;
+
     @Override
     public void configure(Parameterization config) {
       new ObjectParameter<LocalitySensitiveHashFunctionFamily<? super V>>(FAMILY_ID, LocalitySensitiveHashFunctionFamily.class) //
@@ -346,11 +454,14 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V> {
           .setDefaultValue(7919) // Primes work best, apparently.
           .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
           .grab(config, x -> numberOfBuckets = x);
+      new IntParameter(PROBES_ID, 1) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> probes = x);
     }
 
     @Override
     public InMemoryLSHIndex<V> make() {
-      return new InMemoryLSHIndex<>(family, l, numberOfBuckets);
+      return new InMemoryLSHIndex<>(family, l, numberOfBuckets, probes);
     }
   }
 }
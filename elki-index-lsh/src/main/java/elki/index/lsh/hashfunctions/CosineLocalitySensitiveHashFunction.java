@@ -28,6 +28,9 @@ import elki.utilities.documentation.Reference;
 /**
  * Random projection family to use with sparse vectors.
  * <p>
+ * For multi-probe LSH, the bits of the projections closest to the hyperplane
+ * are flipped first.
+ * <p>
  * Reference:
  * <p>
  * M. S. Charikar<br>
@@ -42,7 +45,7 @@ import elki.utilities.documentation.Reference;
     booktitle = "Proc. 34th ACM Symposium on Theory of Computing, STOC'02", //
     url = "https://doi.org/10.1145/509907.509965", //
     bibkey = "DBLP:conf/stoc/Charikar02")
-public class CosineLocalitySensitiveHashFunction implements LocalitySensitiveHashFunction<NumberVector> {
+public class CosineLocalitySensitiveHashFunction implements MultiProbeLocalitySensitiveHashFunction<NumberVector> {
   /**
    * Projection function.
    */
@@ -81,6 +84,31 @@ public class CosineLocalitySensitiveHashFunction implements LocalitySensitiveHas
     return hashValue;
   }
 
+  @Override
+  public int hashProbes(NumberVector obj, double[] buf, int[] probes) {
+    final int hashValue = hashObject(obj, buf);
+    probes[0] = hashValue;
+    if(probes.length == 1) {
+      return 1;
+    }
+    // Flip the bits of the projections closest to the hyperplane first.
+    final int num = getNumberOfProjections();
+    double[] scores = new double[num];
+    for(int i = 0; i < num; i++) {
+      scores[i] = buf[i] * buf[i];
+    }
+    ProbingSequence seq = new ProbingSequence(scores, null);
+    int p = 1;
+    for(int[] set; p < probes.length && (set = seq.next()) != null; p++) {
+      int h = hashValue;
+      for(int bit : set) {
+        h ^= 1 << bit;
+      }
+      probes[p] = h;
+    }
+    return p;
+  }
+
   @Override
   public int getNumberOfProjections() {
     return projection.getOutputDimensionality();
@@ -0,0 +1,59 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.lsh.hashfunctions;
+
+import elki.utilities.documentation.Reference;
+
+/**
+ * Hash functions that can also compute the hash values of nearby buckets, for
+ * multi-probe LSH. Probing several buckets per table improves the recall of
+ * each hash table, so fewer tables (and less memory) are needed.
+ * <p>
+ * Reference:
+ * <p>
+ * Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li<br>
+ * Multi-Probe LSH: Efficient Indexing for High-Dimensional Similarity
+ * Search<br>
+ * Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB 2007)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <V> Data type to hash.
+ */
+@Reference(authors = "Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li", //
+    title = "Multi-Probe LSH: Efficient Indexing for High-Dimensional Similarity Search", //
+    booktitle = "Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB 2007)", //
+    url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf", //
+    bibkey = "DBLP:conf/vldb/LvJWCL07")
+public interface MultiProbeLocalitySensitiveHashFunction<V> extends LocalitySensitiveHashFunction<V> {
+  /**
+   * Compute the hash values of the buckets to probe for an object: the hash
+   * value of the object itself first, then the hash values of nearby buckets
+   * in order of decreasing likelihood to contain neighbors.
+   *
+   * @param obj Object to hash
+   * @param buf Buffer, sized according to the number of projections.
+   * @param probes Output array for the hash values, of the desired length
+   * @return Number of hash values generated, at most the array length
+   */
+  int hashProbes(V obj, double[] buf, int[] probes);
+}
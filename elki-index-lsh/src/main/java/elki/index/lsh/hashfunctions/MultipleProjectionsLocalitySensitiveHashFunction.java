@@ -30,6 +30,9 @@ import elki.utilities.documentation.Reference;
  * LSH hash function for vector space data. Depending on the choice of random
  * vectors, it can be appropriate for Manhattan and Euclidean distances.
  * <p>
+ * For multi-probe LSH, the neighboring buckets are probed in the order of the
+ * (squared) distance of the query to the bucket boundaries crossed.
+ * <p>
  * Reference:
  * <p>
  * M. Datar, N. Immorlica, P. Indyk, V. S. Mirrokni<br>
@@ -44,7 +47,7 @@ import elki.utilities.documentation.Reference;
     booktitle = "Proc. 20th Annual Symposium on Computational Geometry", //
     url = "https://doi.org/10.1145/997817.997857", //
     bibkey = "DBLP:conf/compgeom/DatarIIM04")
-public class MultipleProjectionsLocalitySensitiveHashFunction implements LocalitySensitiveHashFunction<NumberVector> {
+public class MultipleProjectionsLocalitySensitiveHashFunction implements MultiProbeLocalitySensitiveHashFunction<NumberVector> {
   /**
    * Projection matrix.
    */
@@ -118,6 +121,43 @@ public class MultipleProjectionsLocalitySensitiveHashFunction implements Localit
     return fastModPrime(t1sum);
   }
 
+  @Override
+  public int hashProbes(NumberVector vec, double[] buf, int[] probes) {
+    projection.project(vec, buf);
+    final int num = shift.length;
+    // Each coordinate can be perturbed down (2i) or up (2i+1).
+    double[] scores = probes.length > 1 ? new double[num << 1] : null;
+    long t1sum = 0L;
+    for(int i = 0; i < num; i++) {
+      final double v = (buf[i] + shift[i]) * iwidth, f = Math.floor(v);
+      t1sum += (randoms1[i] & MASK32) * (int) f; // unsigned math!
+      if(scores != null) {
+        final double frac = v - f;
+        scores[i << 1] = frac * frac;
+        scores[(i << 1) + 1] = (1 - frac) * (1 - frac);
+      }
+    }
+    probes[0] = fastModPrime(t1sum);
+    if(scores == null) {
+      return 1;
+    }
+    int[] coords = new int[num << 1];
+    for(int i = 0; i < coords.length; i++) {
+      coords[i] = i >>> 1;
+    }
+    ProbingSequence seq = new ProbingSequence(scores, coords);
+    int p = 1;
+    for(int[] set; p < probes.length && (set = seq.next()) != null; p++) {
+      long sum = t1sum;
+      for(int pert : set) {
+        final long r = randoms1[pert >>> 1] & MASK32;
+        sum += (pert & 1) == 0 ? -r : r;
+      }
+      probes[p] = fastModPrime(sum);
+    }
+    return p;
+  }
+
   /**
    * Fast modulo operation for the largest unsigned integer prime.
    *
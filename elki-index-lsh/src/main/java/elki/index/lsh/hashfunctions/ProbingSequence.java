@@ -0,0 +1,132 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.lsh.hashfunctions;
+
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import elki.utilities.datastructures.heap.DoubleObjectMinHeap;
+
+/**
+ * Generator for the perturbation sets of multi-probe LSH, in order of
+ * increasing score, using the shift and expand operations of Lv et al.
+ * <p>
+ * Each perturbation has a score (e.g., the squared distance of the query to
+ * the bucket boundary it crosses) and belongs to a coordinate; sets containing
+ * two perturbations of the same coordinate are skipped.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ProbingSequence {
+  /**
+   * Perturbation scores, sorted ascending.
+   */
+  private final double[] scores;
+
+  /**
+   * Perturbation identifiers, in the same order as the scores.
+   */
+  private final int[] perturbations;
+
+  /**
+   * Coordinate of each perturbation identifier.
+   */
+  private final int[] coords;
+
+  /**
+   * Candidate sets, by score.
+   */
+  private final DoubleObjectMinHeap<int[]> heap = new DoubleObjectMinHeap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param scores Perturbation scores (will be sorted)
+   * @param coords Coordinate of each perturbation, may be {@code null} if all
+   *        perturbations are compatible
+   */
+  public ProbingSequence(double[] scores, int[] coords) {
+    this.scores = scores;
+    this.coords = coords;
+    this.perturbations = new int[scores.length];
+    for(int i = 0; i < perturbations.length; i++) {
+      perturbations[i] = i;
+    }
+    DoubleIntegerArrayQuickSort.sort(scores, perturbations, scores.length);
+    if(scores.length > 0) {
+      heap.add(scores[0], new int[] { 0 });
+    }
+  }
+
+  /**
+   * Get the next perturbation set.
+   *
+   * @return Perturbation identifiers (as given by the order of the input
+   *         scores), or {@code null} when exhausted.
+   */
+  public int[] next() {
+    while(!heap.isEmpty()) {
+      final double score = heap.peekKey();
+      final int[] set = heap.peekValue();
+      heap.poll();
+      final int last = set[set.length - 1];
+      if(last + 1 < scores.length) {
+        // Shift: replace the last element by its successor.
+        int[] shift = set.clone();
+        shift[set.length - 1] = last + 1;
+        heap.add(score - scores[last] + scores[last + 1], shift);
+        // Expand: add the successor of the last element.
+        int[] expand = new int[set.length + 1];
+        System.arraycopy(set, 0, expand, 0, set.length);
+        expand[set.length] = last + 1;
+        heap.add(score + scores[last + 1], expand);
+      }
+      if(isValid(set)) {
+        int[] ret = new int[set.length];
+        for(int i = 0; i < set.length; i++) {
+          ret[i] = perturbations[set[i]];
+        }
+        return ret;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Test whether a set contains at most one perturbation per coordinate.
+   *
+   * @param set Set of sorted positions
+   * @return {@code true} if valid
+   */
+  private boolean isValid(int[] set) {
+    if(coords == null) {
+      return true;
+    }
+    for(int i = 1; i < set.length; i++) {
+      final int ci = coords[perturbations[set[i]]];
+      for(int j = 0; j < i; j++) {
+        if(coords[perturbations[set[j]]] == ci) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
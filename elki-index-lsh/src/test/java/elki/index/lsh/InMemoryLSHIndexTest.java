@@ -0,0 +1,104 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.lsh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDs;
+import elki.database.ids.KNNList;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for the in-memory LSH index, with and without multi-probe
+ * queries.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class InMemoryLSHIndexTest {
+  // the following values depend on the data set used!
+  static String dataset = "elki/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // number of kNN to query
+  int k = 10;
+
+  // size of the data set
+  int shoulds = 330;
+
+  @Test
+  public void testSingleProbe() {
+    assertEquals("Recall does not match.", 0.9057575757575758, recall(1), 1e-15);
+  }
+
+  @Test
+  public void testMultiProbe() {
+    assertEquals("Recall does not match.", 0.9524242424242424, recall(5), 1e-15);
+  }
+
+  /**
+   * Compute the recall of the kNN queries.
+   *
+   * @param probes Number of probes
+   * @return Recall
+   */
+  private double recall(int probes) {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = new QueryBuilder<>(relation, EuclideanDistance.STATIC).distanceQuery();
+    InMemoryLSHIndex<DoubleVector>.Instance index = new ELKIBuilder<InMemoryLSHIndex<DoubleVector>>(InMemoryLSHIndex.class) //
+        .with(InMemoryLSHIndex.Par.FAMILY_ID, EuclideanHashFunctionFamily.class) //
+        .with(EuclideanHashFunctionFamily.Par.RANDOM_ID, 0L) //
+        .with(EuclideanHashFunctionFamily.Par.WIDTH_ID, .1) //
+        .with(EuclideanHashFunctionFamily.Par.NUMPROJ_ID, 2) //
+        .with(InMemoryLSHIndex.Par.L_ID, 2) //
+        .with(InMemoryLSHIndex.Par.PROBES_ID, probes) //
+        .build().instantiate(relation);
+    index.initialize();
+    assertNull("Exact query should not use the index.", index.kNNByDBID(distanceQuery, k, QueryBuilder.FLAG_EXACT_ONLY));
+    KNNSearcher<DBIDRef> exact = new QueryBuilder<>(relation, EuclideanDistance.STATIC).linearOnly().kNNByDBID(k);
+    KNNSearcher<DBIDRef> approx = index.kNNByDBID(distanceQuery, k, 0);
+    int found = 0;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList truth = exact.getKNN(iter, k);
+      DBIDs result = DBIDUtil.ensureSet(approx.getKNN(iter, k));
+      for(DBIDIter it = truth.iter(); it.valid(); it.advance()) {
+        found += result.contains(it) ? 1 : 0;
+      }
+    }
+    return found / (double) (relation.size() * k);
+  }
+}
@@ -0,0 +1,840 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.preprocessed.knn;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import elki.data.type.TypeInformation;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.index.AbstractRefiningIndex;
+import elki.index.IndexFactory;
+import elki.index.KNNIndex;
+import elki.index.RangeIndex;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
+import elki.utilities.datastructures.heap.DoubleIntegerHeap;
+import elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Hierarchical Navigable Small World (HNSW) graph index for approximate
+ * nearest neighbor search.
+ * <p>
+ * Every object is assigned a random maximum layer (with exponentially
+ * decaying probability), and is linked to its approximate nearest neighbors
+ * on each layer up to this level. Queries descend greedily through the upper
+ * layers, then perform a best-first search with a candidate list of size ef on
+ * the bottom layer. The index works with any distance function, but will only
+ * yield good results if the distance is reasonably close to a metric.
+ * <p>
+ * The graph is built with multiple threads: objects are inserted concurrently,
+ * with the adjacency list of each object guarded by its own lock. The
+ * resulting graph (but not the query results for a given graph) may hence
+ * vary slightly between runs.
+ * <p>
+ * The adjacency lists are stored in one primitive array per object, holding
+ * the bottom layer (with up to 2M neighbors) followed by the upper layers (up
+ * to M neighbors each), each prefixed with the current number of neighbors.
+ * <p>
+ * Reference:
+ * <p>
+ * Yu. A. Malkov, D. A. Yashunin<br>
+ * Efficient and robust approximate nearest neighbor search using Hierarchical
+ * Navigable Small World graphs<br>
+ * IEEE Trans. Pattern Analysis and Machine Intelligence 42(4)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - Instance
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Yu. A. Malkov, D. A. Yashunin", //
+    title = "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs", //
+    booktitle = "IEEE Trans. Pattern Analysis and Machine Intelligence 42(4)", //
+    url = "https://doi.org/10.1109/TPAMI.2018.2889473", //
+    bibkey = "DBLP:journals/pami/MalkovY20")
+public class HNSWIndex<O> implements IndexFactory<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(HNSWIndex.class);
+
+  /**
+   * Minimum number of insertions per thread.
+   */
+  private static final int MIN_BLOCK = 256;
+
+  /**
+   * Distance function.
+   */
+  Distance<? super O> distance;
+
+  /**
+   * Maximum number of neighbors on the upper layers.
+   */
+  int m;
+
+  /**
+   * Candidate list size during construction.
+   */
+  int efConstruction;
+
+  /**
+   * Candidate list size for queries.
+   */
+  int ef;
+
+  /**
+   * Random generator for the layer assignment.
+   */
+  RandomFactory rnd;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param m Maximum number of neighbors (2m on the bottom layer)
+   * @param efConstruction Candidate list size during construction
+   * @param ef Candidate list size for queries
+   * @param rnd Random generator
+   */
+  public HNSWIndex(Distance<? super O> distance, int m, int efConstruction, int ef, RandomFactory rnd) {
+    super();
+    this.distance = distance;
+    this.m = m;
+    this.efConstruction = efConstruction;
+    this.ef = ef;
+    this.rnd = rnd;
+  }
+
+  @Override
+  public Instance instantiate(Relation<O> relation) {
+    return new Instance(relation);
+  }
+
+  @Override
+  public TypeInformation getInputTypeRestriction() {
+    return distance.getInputTypeRestriction();
+  }
+
+  /**
+   * HNSW index for a single relation.
+   *
+   * @author Erich Schubert
+   *
+   * @has - - - HNSWKNNSearcher
+   * @has - - - HNSWRangeSearcher
+   */
+  public class Instance extends AbstractRefiningIndex<O> implements KNNIndex<O>, RangeIndex<O> {
+    /**
+     * Object ids, defining the offsets used in the graph.
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Distance query used for construction.
+     */
+    private DistanceQuery<O> distanceQuery;
+
+    /**
+     * Maximum number of neighbors on the bottom layer.
+     */
+    private final int m0;
+
+    /**
+     * Adjacency lists of each object, for all its layers.
+     */
+    private int[][] links;
+
+    /**
+     * Current entry point, -1 if empty.
+     */
+    private int entryPoint = -1;
+
+    /**
+     * Layer of the entry point.
+     */
+    private int maxLevel = -1;
+
+    /**
+     * Lock for the entry point.
+     */
+    private final Object entryLock = new Object();
+
+    /**
+     * Number of distance computations during construction.
+     */
+    private long buildDistances;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation to index
+     */
+    public Instance(Relation<O> relation) {
+      super(relation);
+      this.m0 = m << 1;
+    }
+
+    @Override
+    public void initialize() {
+      ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      distanceQuery = distance.instantiate(relation);
+      final int size = ids.size();
+      // Assign layers sequentially, to be reproducible.
+      Random random = rnd.getSingleThreadedRandom();
+      final double mult = 1. / Math.log(Math.max(m, 2));
+      links = new int[size][];
+      for(int i = 0; i < size; i++) {
+        final int level = (int) (-Math.log(1. - random.nextDouble()) * mult);
+        links[i] = new int[m0 + 1 + level * (m + 1)];
+      }
+      if(size == 0) {
+        return;
+      }
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building HNSW graph", size, LOG) : null;
+      // The first object is the initial entry point.
+      insert(0, new SearchContext(size, efConstruction));
+      LOG.incrementProcessed(prog);
+      ParallelExecutor.run(1, size, MIN_BLOCK, (start, end) -> {
+        SearchContext ctx = new SearchContext(size, efConstruction);
+        for(int i = start; i < end; i++) {
+          insert(i, ctx);
+          LOG.incrementProcessed(prog);
+        }
+        synchronized(entryLock) {
+          buildDistances += ctx.distances;
+        }
+      });
+      LOG.ensureCompleted(prog);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(HNSWIndex.class.getName() + ".layers", maxLevel + 1));
+        LOG.statistics(new LongStatistic(HNSWIndex.class.getName() + ".construction-distances", buildDistances));
+      }
+    }
+
+    /**
+     * Get the level of an object.
+     *
+     * @param node Object offset
+     * @return Level
+     */
+    private int level(int node) {
+      return (links[node].length - m0 - 1) / (m + 1);
+    }
+
+    /**
+     * Offset of the adjacency list of a layer.
+     *
+     * @param level Layer
+     * @return Offset in the adjacency array
+     */
+    private int offset(int level) {
+      return level == 0 ? 0 : m0 + 1 + (level - 1) * (m + 1);
+    }
+
+    /**
+     * Copy the neighbors of an object on a layer.
+     *
+     * @param node Object offset
+     * @param level Layer
+     * @param buf Output buffer
+     * @return Number of neighbors
+     */
+    private int copyLinks(int node, int level, int[] buf) {
+      final int[] l = links[node];
+      final int off = offset(level);
+      synchronized(l) {
+        final int cnt = l[off];
+        System.arraycopy(l, off + 1, buf, 0, cnt);
+        return cnt;
+      }
+    }
+
+    /**
+     * Insert an object into the graph.
+     *
+     * @param q Object offset
+     * @param ctx Search context
+     */
+    private void insert(int q, SearchContext ctx) {
+      final int lq = level(q);
+      int top;
+      synchronized(entryLock) {
+        if(entryPoint < 0) {
+          entryPoint = q;
+          maxLevel = lq;
+          return;
+        }
+        ctx.ep = entryPoint;
+        top = maxLevel;
+      }
+      final O obj = relation.get(ctx.a.seek(q));
+      ctx.epd = ctx.distance(distanceQuery, obj, ctx.ep);
+      for(int l = top; l > lq; l--) {
+        greedySearch(ctx, distanceQuery, obj, l);
+      }
+      for(int l = Math.min(top, lq); l >= 0; l--) {
+        searchLayer(ctx, distanceQuery, obj, efConstruction, Double.NEGATIVE_INFINITY, l);
+        int cnt = ctx.drainSorted();
+        ctx.ep = ctx.cand[0];
+        ctx.epd = ctx.candd[0];
+        cnt = selectNeighbors(ctx, ctx.cand, ctx.candd, cnt, m);
+        final int[] lnk = links[q];
+        final int off = offset(l);
+        synchronized(lnk) {
+          System.arraycopy(ctx.cand, 0, lnk, off + 1, cnt);
+          lnk[off] = cnt;
+        }
+        for(int i = 0; i < cnt; i++) {
+          connect(ctx, ctx.cand[i], q, ctx.candd[i], l);
+        }
+      }
+      if(lq > top) {
+        synchronized(entryLock) {
+          if(lq > maxLevel) {
+            entryPoint = q;
+            maxLevel = lq;
+          }
+        }
+      }
+    }
+
+    /**
+     * Add a reverse link, shrinking the adjacency list if necessary.
+     *
+     * @param ctx Search context
+     * @param node Object to add the link to
+     * @param q New neighbor
+     * @param dq Distance of the new neighbor
+     * @param level Layer
+     */
+    private void connect(SearchContext ctx, int node, int q, double dq, int level) {
+      final int[] l = links[node];
+      final int off = offset(level), mmax = level == 0 ? m0 : m;
+      final int[] tmp = ctx.shrink;
+      final double[] tmpd = ctx.shrinkd;
+      synchronized(l) {
+        final int cnt = l[off];
+        if(cnt < mmax) {
+          l[off + 1 + cnt] = q;
+          l[off] = cnt + 1;
+          return;
+        }
+        ctx.a.seek(node);
+        for(int i = 0; i < cnt; i++) {
+          tmp[i] = l[off + 1 + i];
+          tmpd[i] = ctx.distance(distanceQuery, ctx.a, tmp[i]);
+        }
+        tmp[cnt] = q;
+        tmpd[cnt] = dq;
+        sortByDistance(tmp, tmpd, cnt + 1);
+        final int sel = selectNeighbors(ctx, tmp, tmpd, cnt + 1, mmax);
+        System.arraycopy(tmp, 0, l, off + 1, sel);
+        l[off] = sel;
+      }
+    }
+
+    /**
+     * Neighbor selection heuristic: keep a candidate only if it is closer to
+     * the query than to all neighbors selected so far. This favors links in
+     * different directions, and keeps the graph navigable across clusters.
+     *
+     * @param ctx Search context
+     * @param cand Candidates, sorted by distance (modified)
+     * @param candd Candidate distances (modified)
+     * @param size Number of candidates
+     * @param mmax Maximum number of neighbors to keep
+     * @return Number of neighbors selected
+     */
+    private int selectNeighbors(SearchContext ctx, int[] cand, double[] candd, int size, int mmax) {
+      int sel = 0;
+      for(int i = 0; i < size && sel < mmax; i++) {
+        final int c = cand[i];
+        final double dc = candd[i];
+        boolean good = true;
+        ctx.a.seek(c);
+        for(int j = 0; j < sel; j++) {
+          if(ctx.distance(distanceQuery, ctx.a, cand[j]) < dc) {
+            good = false;
+            break;
+          }
+        }
+        if(good) {
+          cand[sel] = c;
+          candd[sel++] = dc;
+        }
+      }
+      return sel;
+    }
+
+    /**
+     * Greedy search for the nearest neighbor on an upper layer.
+     *
+     * @param ctx Search context, with entry point
+     * @param dq Distance query
+     * @param obj Query object
+     * @param level Layer
+     */
+    private void greedySearch(SearchContext ctx, DistanceQuery<O> dq, O obj, int level) {
+      boolean changed = true;
+      while(changed) {
+        changed = false;
+        final int cnt = copyLinks(ctx.ep, level, ctx.buf);
+        for(int i = 0; i < cnt; i++) {
+          final int c = ctx.buf[i];
+          final double d = ctx.distance(dq, obj, c);
+          if(d < ctx.epd) {
+            ctx.ep = c;
+            ctx.epd = d;
+            changed = true;
+          }
+        }
+      }
+    }
+
+    /**
+     * Best-first search on a single layer. The result contains (at least) the
+     * ef best candidates found, and all candidates within the given radius.
+     *
+     * @param ctx Search context, with entry point
+     * @param dq Distance query
+     * @param obj Query object
+     * @param ef Candidate list size
+     * @param range Query radius, or negative infinity
+     * @param level Layer
+     */
+    private void searchLayer(SearchContext ctx, DistanceQuery<O> dq, O obj, int ef, double range, int level) {
+      final DoubleIntegerMinHeap candidates = ctx.candidates;
+      final DoubleIntegerMaxHeap results = ctx.results;
+      candidates.clear();
+      results.clear();
+      final int stamp = ctx.nextStamp();
+      ctx.visited[ctx.ep] = stamp;
+      candidates.add(ctx.epd, ctx.ep);
+      results.add(ctx.epd, ctx.ep);
+      while(!candidates.isEmpty()) {
+        final double bound = results.size() < ef ? Double.POSITIVE_INFINITY : results.peekKey();
+        if(candidates.peekKey() > (bound > range ? bound : range)) {
+          break;
+        }
+        final int c = candidates.peekValue();
+        candidates.poll();
+        final int cnt = copyLinks(c, level, ctx.buf);
+        for(int i = 0; i < cnt; i++) {
+          final int nb = ctx.buf[i];
+          if(ctx.visited[nb] == stamp) {
+            continue;
+          }
+          ctx.visited[nb] = stamp;
+          final double d = ctx.distance(dq, obj, nb);
+          if(d <= range || results.size() < ef || d < results.peekKey()) {
+            candidates.add(d, nb);
+            results.add(d, nb);
+            while(results.size() > ef && results.peekKey() > range) {
+              results.poll();
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Search the bottom layer, starting at the entry point.
+     *
+     * @param ctx Search context
+     * @param dq Distance query
+     * @param obj Query object
+     * @param ef Candidate list size
+     * @param range Query radius, or negative infinity
+     * @return {@code false} if the index is empty
+     */
+    private boolean search(SearchContext ctx, DistanceQuery<O> dq, O obj, int ef, double range) {
+      if(entryPoint < 0) {
+        return false;
+      }
+      ctx.ep = entryPoint;
+      ctx.epd = ctx.distance(dq, obj, ctx.ep);
+      for(int l = maxLevel; l > 0; l--) {
+        greedySearch(ctx, dq, obj, l);
+      }
+      searchLayer(ctx, dq, obj, ef, range, 0);
+      return true;
+    }
+
+    @Override
+    public Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+      return (flags & QueryBuilder.FLAG_EXACT_ONLY) == 0 && // approximate
+          distance.equals(distanceQuery.getDistance()) ? // compatible
+              new HNSWKNNSearcher(distanceQuery) : null;
+    }
+
+    @Override
+    public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxradius, int flags) {
+      return (flags & QueryBuilder.FLAG_EXACT_ONLY) == 0 && // approximate
+          distance.equals(distanceQuery.getDistance()) ? // compatible
+              new HNSWRangeSearcher(distanceQuery) : null;
+    }
+
+    /**
+     * kNN search in the HNSW graph.
+     *
+     * @author Erich Schubert
+     */
+    protected class HNSWKNNSearcher extends AbstractRefiningQuery implements KNNSearcher<O> {
+      /**
+       * Search context.
+       */
+      private final SearchContext ctx;
+
+      /**
+       * Constructor.
+       *
+       * @param distanceQuery Distance query
+       */
+      public HNSWKNNSearcher(DistanceQuery<O> distanceQuery) {
+        super(distanceQuery);
+        this.ctx = new SearchContext(links.length, ef);
+      }
+
+      @Override
+      public KNNList getKNN(O obj, int k) {
+        KNNHeap heap = DBIDUtil.newHeap(k);
+        ctx.distances = 0;
+        if(search(ctx, distanceQuery, obj, ef > k ? ef : k, Double.NEGATIVE_INFINITY)) {
+          for(DoubleIntegerHeap.UnsortedIter it = ctx.results.unsortedIter(); it.valid(); it.advance()) {
+            heap.insert(it.getKey(), ctx.a.seek(it.getValue()));
+          }
+        }
+        incRefinements((int) ctx.distances);
+        return heap.toKNNList();
+      }
+    }
+
+    /**
+     * Range search in the HNSW graph.
+     *
+     * @author Erich Schubert
+     */
+    protected class HNSWRangeSearcher extends AbstractRefiningQuery implements RangeSearcher<O> {
+      /**
+       * Search context.
+       */
+      private final SearchContext ctx;
+
+      /**
+       * Constructor.
+       *
+       * @param distanceQuery Distance query
+       */
+      public HNSWRangeSearcher(DistanceQuery<O> distanceQuery) {
+        super(distanceQuery);
+        this.ctx = new SearchContext(links.length, ef);
+      }
+
+      @Override
+      public ModifiableDoubleDBIDList getRange(O obj, double range, ModifiableDoubleDBIDList result) {
+        ctx.distances = 0;
+        if(search(ctx, distanceQuery, obj, ef, range)) {
+          for(DoubleIntegerHeap.UnsortedIter it = ctx.results.unsortedIter(); it.valid(); it.advance()) {
+            if(it.getKey() <= range) {
+              result.add(it.getKey(), ctx.a.seek(it.getValue()));
+            }
+          }
+        }
+        incRefinements((int) ctx.distances);
+        return result;
+      }
+    }
+
+    /**
+     * Per-thread buffers for searching the graph.
+     *
+     * @author Erich Schubert
+     */
+    private class SearchContext {
+      /**
+       * Visited markers.
+       */
+      final int[] visited;
+
+      /**
+       * Current visit stamp.
+       */
+      int stamp = 0;
+
+      /**
+       * Neighbor buffer.
+       */
+      final int[] buf = new int[m0 > m ? m0 : m];
+
+      /**
+       * Candidate heap.
+       */
+      final DoubleIntegerMinHeap candidates;
+
+      /**
+       * Result heap.
+       */
+      final DoubleIntegerMaxHeap results;
+
+      /**
+       * Sorted results.
+       */
+      int[] cand;
+
+      /**
+       * Sorted result distances.
+       */
+      double[] candd;
+
+      /**
+       * Buffers for shrinking adjacency lists.
+       */
+      final int[] shrink = new int[m0 + 1];
+
+      /**
+       * Buffers for shrinking adjacency lists.
+       */
+      final double[] shrinkd = new double[m0 + 1];
+
+      /**
+       * Iterators for distance computations.
+       */
+      final DBIDArrayIter a = ids.iter(), b = ids.iter();
+
+      /**
+       * Current entry point and its distance.
+       */
+      int ep;
+
+      /**
+       * Distance of the entry point.
+       */
+      double epd;
+
+      /**
+       * Number of distance computations.
+       */
+      long distances;
+
+      /**
+       * Constructor.
+       *
+       * @param size Data set size
+       * @param ef Expected candidate list size
+       */
+      SearchContext(int size, int ef) {
+        this.visited = new int[size];
+        this.candidates = new DoubleIntegerMinHeap(ef + 1);
+        this.results = new DoubleIntegerMaxHeap(ef + 1);
+        this.cand = new int[ef + 1];
+        this.candd = new double[ef + 1];
+      }
+
+      /**
+       * Start a new search.
+       *
+       * @return Visit stamp
+       */
+      int nextStamp() {
+        if(++stamp == Integer.MAX_VALUE) {
+          Arrays.fill(visited, 0);
+          stamp = 1;
+        }
+        return stamp;
+      }
+
+      /**
+       * Distance from a query object to an indexed object.
+       *
+       * @param dq Distance query
+       * @param obj Query object
+       * @param i Object offset
+       * @return Distance
+       */
+      double distance(DistanceQuery<O> dq, O obj, int i) {
+        ++distances;
+        return dq.distance(obj, b.seek(i));
+      }
+
+      /**
+       * Distance from an indexed object to another indexed object.
+       *
+       * @param dq Distance query
+       * @param ref First object
+       * @param i Offset of the second object
+       * @return Distance
+       */
+      double distance(DistanceQuery<O> dq, DBIDRef ref, int i) {
+        ++distances;
+        return dq.distance(ref, b.seek(i));
+      }
+
+      /**
+       * Move the results into the sorted arrays, emptying the result heap.
+       *
+       * @return Number of results
+       */
+      int drainSorted() {
+        final int size = results.size();
+        if(cand.length < size) {
+          cand = new int[size];
+          candd = new double[size];
+        }
+        for(int i = size - 1; i >= 0; i--) {
+          cand[i] = results.peekValue();
+          candd[i] = results.peekKey();
+          results.poll();
+        }
+        return size;
+      }
+    }
+  }
+
+  /**
+   * Sort a short list of candidates by ascending distance.
+   *
+   * @param ids Candidate offsets
+   * @param dists Candidate distances
+   * @param size Number of candidates
+   */
+  private static void sortByDistance(int[] ids, double[] dists, int size) {
+    for(int i = 1; i < size; i++) {
+      final int id = ids[i];
+      final double d = dists[i];
+      int j = i - 1;
+      for(; j >= 0 && dists[j] > d; j--) {
+        ids[j + 1] = ids[j];
+        dists[j + 1] = dists[j];
+      }
+      ids[j + 1] = id;
+      dists[j + 1] = d;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * Distance function to index.
+     */
+    public static final OptionID DISTANCE_FUNCTION_ID = new OptionID("hnsw.distance", "Distance function to build the graph for.");
+
+    /**
+     * Maximum number of neighbors per layer.
+     */
+    public static final OptionID M_ID = new OptionID("hnsw.m", "Maximum number of neighbors of each object on the upper layers (twice that on the bottom layer).");
+
+    /**
+     * Candidate list size during construction.
+     */
+    public static final OptionID EF_CONSTRUCTION_ID = new OptionID("hnsw.efconstruction", "Size of the candidate list during graph construction.");
+
+    /**
+     * Candidate list size for queries.
+     */
+    public static final OptionID EF_ID = new OptionID("hnsw.ef", "Size of the candidate list for queries (at least k is used). Larger values yield better recall, but slower queries.");
+
+    /**
+     * Random generator seed.
+     */
+    public static final OptionID SEED_ID = new OptionID("hnsw.seed", "Random seed for the layer assignment.");
+
+    /**
+     * Distance function.
+     */
+    Distance<? super O> distance;
+
+    /**
+     * Maximum number of neighbors.
+     */
+    int m;
+
+    /**
+     * Candidate list size during construction.
+     */
+    int efConstruction;
+
+    /**
+     * Candidate list size for queries.
+     */
+    int ef;
+
+    /**
+     * Random generator.
+     */
+    RandomFactory rnd;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(DISTANCE_FUNCTION_ID, Distance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(M_ID, 16) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+          .grab(config, x -> m = x);
+      new IntParameter(EF_CONSTRUCTION_ID, 100) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> efConstruction = x);
+      new IntParameter(EF_ID, 50) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> ef = x);
+      new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+    }
+
+    @Override
+    public HNSWIndex<O> make() {
+      return new HNSWIndex<>(distance, m, efConstruction, ef, rnd);
+    }
+  }
+}
@@ -0,0 +1,769 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.preprocessed.knn;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.logging.Logging;
+import elki.logging.progress.IndefiniteProgress;
+import elki.logging.statistics.DoubleStatistic;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
+import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Multi-threaded NN-descent, storing the kNN graph in flat primitive arrays.
+ * <p>
+ * The neighbors of each object are kept as a bounded max-heap in a slice of a
+ * shared {@code int} array (with {@code float} distances and a "new" flag per
+ * entry), which is guarded by striped locks. The candidate sampling and the
+ * local joins run in parallel. Sampling uses pseudo-random priorities derived
+ * from the random seed and the object pair (rather than a shared random
+ * generator), so the result does not depend on the number of threads, except
+ * for ties in the distances.
+ * <p>
+ * The graph can optionally be seeded from random partition trees: the data is
+ * split recursively by proximity to two random pivots (the distance-based
+ * analogue of random projection trees), and all pairs within each leaf are
+ * used as initial neighbors. Remaining slots are filled with random objects.
+ * <p>
+ * When the graph is complete, the distances are recomputed in double
+ * precision, so the resulting neighbor distances are exact.
+ * <p>
+ * Reference:
+ * <p>
+ * W. Dong and C. Moses and K. Li<br>
+ * Efficient k-nearest neighbor graph construction for generic similarity
+ * measures<br>
+ * Proc. 20th Int. Conf. on World Wide Web (WWW'11)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "W. Dong, C. Moses, K. Li", //
+    title = "Efficient k-nearest neighbor graph construction for generic similarity measures", //
+    booktitle = "Proc. 20th Int. Conf. on World Wide Web (WWW'11)", //
+    url = "https://doi.org/10.1145/1963405.1963487", //
+    bibkey = "DBLP:conf/www/DongCL11")
+public class ParallelNNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
+  /**
+   * Logger
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNNDescent.class);
+
+  /**
+   * Minimum number of objects per thread.
+   */
+  private static final int MIN_BLOCK = 128;
+
+  /**
+   * Number of locks (must be a power of two).
+   */
+  private static final int NUM_LOCKS = 1 << 12;
+
+  /**
+   * Log prefix.
+   */
+  private String prefix = getClass().getCanonicalName();
+
+  /**
+   * Random generator
+   */
+  private final RandomFactory rnd;
+
+  /**
+   * Early termination parameter
+   */
+  private final double delta;
+
+  /**
+   * Sample rate
+   */
+  private final double rho;
+
+  /**
+   * Maximum number of iterations
+   */
+  private final int iterations;
+
+  /**
+   * Number of random partition trees for initialization.
+   */
+  private final int trees;
+
+  /**
+   * Object ids, defining the offsets.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Map from object ids to offsets.
+   */
+  private WritableIntegerDataStore offsets;
+
+  /**
+   * Number of neighbors stored per object (excluding the object itself).
+   */
+  private int kk;
+
+  /**
+   * Neighbor offsets, kk per object, -1 for empty slots.
+   */
+  private int[] nbr;
+
+  /**
+   * Neighbor distances during construction, +infinity for empty slots.
+   */
+  private float[] dst;
+
+  /**
+   * Flags for entries not yet used in a local join.
+   */
+  private boolean[] isnew;
+
+  /**
+   * Exact neighbor distances of the final graph.
+   */
+  private double[] kdist;
+
+  /**
+   * Striped locks for the neighbor and candidate lists.
+   */
+  private Object[] locks;
+
+  /**
+   * Number of distance computations.
+   */
+  private AtomicLong distcount = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distance distance function
+   * @param k k
+   * @param rnd Random generator
+   * @param delta Delta threshold
+   * @param rho Sample rate
+   * @param iterations Maximum number of iterations
+   * @param trees Number of random partition trees for initialization
+   */
+  public ParallelNNDescent(Relation<O> relation, Distance<? super O> distance, int k, RandomFactory rnd, double delta, double rho, int iterations, int trees) {
+    super(relation, distance, k);
+    this.rnd = rnd;
+    this.delta = delta;
+    this.rho = rho;
+    this.iterations = iterations;
+    this.trees = trees;
+  }
+
+  @Override
+  protected void preprocess() {
+    final long starttime = System.currentTimeMillis();
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT, -1);
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      offsets.putInt(iter, iter.getOffset());
+    }
+    kk = Math.min(k - 1, size - 1);
+    final int items = Math.max(1, (int) Math.ceil(rho * kk));
+    if((long) size * Math.max(kk, items) > Integer.MAX_VALUE - 8) {
+      throw new AbortException("Data set too large for the neighbor arrays.");
+    }
+    nbr = new int[size * kk];
+    Arrays.fill(nbr, -1);
+    dst = new float[size * kk];
+    Arrays.fill(dst, Float.POSITIVE_INFINITY);
+    isnew = new boolean[size * kk];
+    if(kk == 0) {
+      kdist = new double[0];
+      return;
+    }
+    locks = new Object[NUM_LOCKS];
+    for(int i = 0; i < NUM_LOCKS; i++) {
+      locks[i] = new Object();
+    }
+    final long seed = rnd.getSingleThreadedRandom().nextLong();
+    if(trees > 0) {
+      initializeTrees(seed);
+    }
+    initializeRandom(seed);
+
+    IndefiniteProgress progress = LOG.isVerbose() ? new IndefiniteProgress("KNNGraph iteration", LOG) : null;
+    final int[] newc = new int[size * items], oldc = new int[size * items];
+    final int[] newcnt = new int[size], oldcnt = new int[size];
+    int iter = 0;
+    for(; iter < iterations; iter++) {
+      final long t = sampleCandidates(seed + iter, items, newc, newcnt, oldc, oldcnt);
+      final double rate = t / (double) (kk * (long) size);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new DoubleStatistic(prefix + ".update-rate", rate));
+      }
+      if(rate < delta) {
+        LOG.verbose("KNNGraph terminated because update rate got smaller than delta.");
+        break;
+      }
+      localJoins(items, newc, newcnt, oldc, oldcnt);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new DoubleStatistic(prefix + ".scan-rate", distcount.get() * .5 / (size * (size - 1L))));
+      }
+      LOG.incrementProcessed(progress);
+    }
+    if(LOG.isVerbose() && iter == iterations) {
+      LOG.verbose("KNNGraph terminated because the maximum number of iterations was reached.");
+    }
+    LOG.setCompleted(progress);
+    finish();
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(prefix + ".iterations", iter));
+      LOG.statistics(new LongStatistic(prefix + ".distance-computations", distcount.get()));
+      LOG.statistics(new LongStatistic(prefix + ".construction-time.ms", System.currentTimeMillis() - starttime));
+    }
+  }
+
+  /**
+   * Seed the graph using random partition trees.
+   *
+   * @param seed Random seed
+   */
+  private void initializeTrees(long seed) {
+    final int size = ids.size(), leafsize = Math.max(10, k);
+    ParallelExecutor.run(0, trees, 1, (start, end) -> {
+      final DBIDArrayIter a = ids.iter(), b = ids.iter(), c = ids.iter();
+      final int[] idx = new int[size];
+      int[] stack = new int[64];
+      long count = 0;
+      for(int t = start; t < end; t++) {
+        Random r = new Random(mix(seed ^ mix(t + 1)));
+        for(int i = 0; i < size; i++) {
+          idx[i] = i;
+        }
+        int sp = 0;
+        stack[sp++] = 0;
+        stack[sp++] = size;
+        while(sp > 0) {
+          final int e = stack[--sp], s = stack[--sp], len = e - s;
+          if(len <= leafsize) {
+            for(int i = s; i < e; i++) {
+              a.seek(idx[i]);
+              for(int j = i + 1; j < e; j++) {
+                final double d = distanceQuery.distance(a, b.seek(idx[j]));
+                insert(idx[i], idx[j], d);
+                insert(idx[j], idx[i], d);
+              }
+            }
+            count += (len * (len - 1L)) >>> 1;
+            continue;
+          }
+          // Split by proximity to two random pivots.
+          final int p1 = s + r.nextInt(len);
+          int p2 = s + r.nextInt(len - 1);
+          p2 = p2 < p1 ? p2 : p2 + 1;
+          a.seek(idx[p1]);
+          b.seek(idx[p2]);
+          int lo = s, hi = e - 1;
+          boolean tie = false;
+          while(lo <= hi) {
+            c.seek(idx[lo]);
+            final double d1 = distanceQuery.distance(a, c), d2 = distanceQuery.distance(b, c);
+            if(d1 == d2) {
+              tie = !tie; // Alternate ties, for duplicates
+            }
+            if(d1 < d2 || (d1 == d2 && tie)) {
+              ++lo;
+            }
+            else {
+              final int tmp = idx[lo];
+              idx[lo] = idx[hi];
+              idx[hi--] = tmp;
+            }
+          }
+          count += (len << 1);
+          final int mid = lo == s || lo == e ? (s + e) >>> 1 : lo;
+          if(sp + 4 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length << 1);
+          }
+          stack[sp++] = s;
+          stack[sp++] = mid;
+          stack[sp++] = mid;
+          stack[sp++] = e;
+        }
+      }
+      distcount.addAndGet(count);
+    });
+  }
+
+  /**
+   * Fill the remaining neighbor slots with random objects.
+   *
+   * @param seed Random seed
+   */
+  private void initializeRandom(long seed) {
+    final int size = ids.size();
+    ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+      final DBIDArrayIter a = ids.iter(), b = ids.iter();
+      long count = 0;
+      for(int i = start; i < end; i++) {
+        final int base = i * kk;
+        int missing = 0;
+        synchronized(locks[i & (NUM_LOCKS - 1)]) {
+          for(int j = base; j < base + kk; j++) {
+            missing += nbr[j] < 0 ? 1 : 0;
+          }
+        }
+        a.seek(i);
+        for(int attempt = 0; missing > 0 && attempt < (kk << 1); attempt++) {
+          final int o = (int) ((mix(seed ^ mix(((long) i << 32) + attempt)) >>> 1) % size);
+          if(o == i) {
+            continue;
+          }
+          ++count;
+          if(insert(i, o, distanceQuery.distance(a, b.seek(o)))) {
+            --missing;
+          }
+        }
+      }
+      distcount.addAndGet(count);
+    });
+  }
+
+  /**
+   * Sample the new and old candidates of each object, from the forward and
+   * reverse neighbors. Sampled new entries are marked as old.
+   *
+   * @param seed Random seed of this iteration
+   * @param items Maximum number of candidates
+   * @param newc New candidates (output)
+   * @param newcnt Number of new candidates (output)
+   * @param oldc Old candidates (output)
+   * @param oldcnt Number of old candidates (output)
+   * @return Number of new entries in the graph
+   */
+  private long sampleCandidates(long seed, int items, int[] newc, int[] newcnt, int[] oldc, int[] oldcnt) {
+    final int size = ids.size();
+    Arrays.fill(newcnt, 0);
+    Arrays.fill(oldcnt, 0);
+    AtomicLong numnew = new AtomicLong();
+    ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+      long t = 0;
+      for(int i = start; i < end; i++) {
+        for(int j = i * kk, e = j + kk; j < e; j++) {
+          final int o = nbr[j];
+          if(o < 0) {
+            continue;
+          }
+          if(isnew[j]) {
+            addCandidate(seed, newc, newcnt, items, i, o);
+            addCandidate(seed, newc, newcnt, items, o, i);
+            ++t;
+          }
+          else {
+            addCandidate(seed, oldc, oldcnt, items, i, o);
+            addCandidate(seed, oldc, oldcnt, items, o, i);
+          }
+        }
+      }
+      numnew.addAndGet(t);
+    });
+    ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+      for(int i = start; i < end; i++) {
+        final int cb = i * items, ce = cb + newcnt[i];
+        for(int j = i * kk, e = j + kk; j < e; j++) {
+          if(isnew[j]) {
+            for(int c = cb; c < ce; c++) {
+              if(newc[c] == nbr[j]) {
+                isnew[j] = false;
+                break;
+              }
+            }
+          }
+        }
+      }
+    });
+    return numnew.get();
+  }
+
+  /**
+   * Add a candidate to a bounded candidate list, keeping the candidates with
+   * the smallest pseudo-random priority.
+   *
+   * @param seed Random seed
+   * @param list Candidate lists
+   * @param cnt Candidate list sizes
+   * @param items Maximum number of candidates
+   * @param owner Object to add the candidate to
+   * @param cand Candidate
+   */
+  private void addCandidate(long seed, int[] list, int[] cnt, int items, int owner, int cand) {
+    final int base = owner * items;
+    synchronized(locks[owner & (NUM_LOCKS - 1)]) {
+      final int n = cnt[owner];
+      int worst = -1;
+      long worstp = Long.MIN_VALUE;
+      for(int j = base; j < base + n; j++) {
+        final int c = list[j];
+        if(c == cand) {
+          return;
+        }
+        final long p = priority(seed, owner, c);
+        if(p > worstp) {
+          worstp = p;
+          worst = j;
+        }
+      }
+      if(n < items) {
+        list[base + n] = cand;
+        cnt[owner] = n + 1;
+      }
+      else if(priority(seed, owner, cand) < worstp) {
+        list[worst] = cand;
+      }
+    }
+  }
+
+  /**
+   * Run the local joins of all objects.
+   *
+   * @param items Maximum number of candidates
+   * @param newc New candidates
+   * @param newcnt Number of new candidates
+   * @param oldc Old candidates
+   * @param oldcnt Number of old candidates
+   */
+  private void localJoins(int items, int[] newc, int[] newcnt, int[] oldc, int[] oldcnt) {
+    ParallelExecutor.run(0, ids.size(), MIN_BLOCK, (start, end) -> {
+      final DBIDArrayIter a = ids.iter(), b = ids.iter();
+      long count = 0;
+      for(int i = start; i < end; i++) {
+        final int nb = i * items, ne = nb + newcnt[i];
+        final int ob = i * items, oe = ob + oldcnt[i];
+        for(int x = nb; x < ne; x++) {
+          final int p = newc[x];
+          a.seek(p);
+          // new x new
+          for(int y = x + 1; y < ne; y++) {
+            final int q = newc[y];
+            final double d = distanceQuery.distance(a, b.seek(q));
+            insert(p, q, d);
+            insert(q, p, d);
+          }
+          // new x old
+          for(int y = ob; y < oe; y++) {
+            final int q = oldc[y];
+            if(q == p) {
+              continue;
+            }
+            final double d = distanceQuery.distance(a, b.seek(q));
+            insert(p, q, d);
+            insert(q, p, d);
+            ++count;
+          }
+          count += ne - x - 1;
+        }
+      }
+      distcount.addAndGet(count);
+    });
+  }
+
+  /**
+   * Insert a neighbor into the heap of an object.
+   *
+   * @param p Object
+   * @param q Neighbor candidate
+   * @param distance Distance
+   * @return {@code true} if the candidate was added.
+   */
+  private boolean insert(int p, int q, double distance) {
+    final float d = (float) distance;
+    final int base = p * kk;
+    if(d >= dst[base]) {
+      return false; // Not better than the current k-distance
+    }
+    synchronized(locks[p & (NUM_LOCKS - 1)]) {
+      if(d >= dst[base]) {
+        return false;
+      }
+      for(int j = base, e = base + kk; j < e; j++) {
+        if(nbr[j] == q) {
+          return false;
+        }
+      }
+      // Replace the top element, and sift down.
+      int pos = 0;
+      while(true) {
+        int child = (pos << 1) + 1;
+        if(child >= kk) {
+          break;
+        }
+        if(child + 1 < kk && dst[base + child + 1] > dst[base + child]) {
+          ++child;
+        }
+        if(dst[base + child] <= d) {
+          break;
+        }
+        nbr[base + pos] = nbr[base + child];
+        dst[base + pos] = dst[base + child];
+        isnew[base + pos] = isnew[base + child];
+        pos = child;
+      }
+      nbr[base + pos] = q;
+      dst[base + pos] = d;
+      isnew[base + pos] = true;
+      return true;
+    }
+  }
+
+  /**
+   * Recompute the exact distances, and release the construction buffers.
+   */
+  private void finish() {
+    final double[] kdist = new double[nbr.length];
+    ParallelExecutor.run(0, ids.size(), MIN_BLOCK, (start, end) -> {
+      final DBIDArrayIter a = ids.iter(), b = ids.iter();
+      for(int i = start; i < end; i++) {
+        a.seek(i);
+        for(int j = i * kk, e = j + kk; j < e; j++) {
+          kdist[j] = nbr[j] >= 0 ? distanceQuery.distance(a, b.seek(nbr[j])) : Double.POSITIVE_INFINITY;
+        }
+      }
+    });
+    this.kdist = kdist;
+    dst = null;
+    isnew = null;
+    locks = null;
+  }
+
+  /**
+   * Priority of a candidate in the sample of an object.
+   *
+   * @param seed Random seed
+   * @param owner Object
+   * @param cand Candidate
+   * @return Priority
+   */
+  private static long priority(long seed, int owner, int cand) {
+    return mix(seed ^ mix(((long) owner << 32) | (cand & 0xFFFFFFFFL)));
+  }
+
+  /**
+   * Bit mixing function (from SplitMix64).
+   *
+   * @param z Input
+   * @return Mixed bits
+   */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  @Override
+  public KNNList get(DBIDRef id) {
+    if(kdist == null) {
+      if(getLogger().isDebugging()) {
+        getLogger().debug("Running kNN preprocessor: " + this.getClass());
+      }
+      preprocess();
+    }
+    final int base = offsets.intValue(id) * kk;
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    heap.insert(0, id);
+    DBIDArrayIter it = ids.iter();
+    for(int j = base, e = base + kk; j < e; j++) {
+      if(nbr[j] >= 0) {
+        heap.insert(kdist[j], it.seek(nbr[j]));
+      }
+    }
+    return heap.toKNNList();
+  }
+
+  @Override
+  public void initialize() {
+    if(kdist != null) {
+      throw new UnsupportedOperationException("Preprocessor already ran.");
+    }
+    if(relation.size() > 0) {
+      preprocess();
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  @Override
+  public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    return (flags & QueryBuilder.FLAG_EXACT_ONLY) != 0 ? null : // approximate
+        super.kNNByObject(distanceQuery, maxk, flags);
+  }
+
+  @Override
+  public KNNSearcher<DBIDRef> kNNByDBID(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    return (flags & QueryBuilder.FLAG_EXACT_ONLY) != 0 ? null : // approximate
+        super.kNNByDBID(distanceQuery, maxk, flags);
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> extends AbstractMaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * Random generator
+     */
+    private final RandomFactory rnd;
+
+    /**
+     * Early termination parameter
+     */
+    private final double delta;
+
+    /**
+     * Sample rate
+     */
+    private final double rho;
+
+    /**
+     * Maximum number of iterations
+     */
+    private final int iterations;
+
+    /**
+     * Number of random partition trees for initialization.
+     */
+    private final int trees;
+
+    /**
+     * Constructor.
+     *
+     * @param k K
+     * @param distance distance function
+     * @param rnd Random generator
+     * @param delta Delta threshold
+     * @param rho Sample rate
+     * @param iterations Maximum number of iterations
+     * @param trees Number of random partition trees for initialization
+     */
+    public Factory(int k, Distance<? super O> distance, RandomFactory rnd, double delta, double rho, int iterations, int trees) {
+      super(k, distance);
+      this.rnd = rnd;
+      this.delta = delta;
+      this.rho = rho;
+      this.iterations = iterations;
+      this.trees = trees;
+    }
+
+    @Override
+    public ParallelNNDescent<O> instantiate(Relation<O> relation) {
+      return new ParallelNNDescent<>(relation, distance, k, rnd, delta, rho, iterations, trees);
+    }
+
+    /**
+     * Parameterization class
+     *
+     * @author Erich Schubert
+     *
+     * @hidden
+     *
+     * @param <O> Object type
+     */
+    public static class Par<O> extends AbstractMaterializeKNNPreprocessor.Factory.Par<O> {
+      /**
+       * Number of random partition trees for initialization.
+       */
+      public static final OptionID TREES_ID = new OptionID("knngraph.trees", "Number of random partition trees used to initialize the graph (0: random initialization only).");
+
+      /**
+       * Random generator
+       */
+      private RandomFactory rnd;
+
+      /**
+       * Early termination parameter
+       */
+      private double delta;
+
+      /**
+       * Sample rate
+       */
+      private double rho;
+
+      /**
+       * Maximum number of iterations
+       */
+      private int iterations;
+
+      /**
+       * Number of random partition trees for initialization.
+       */
+      private int trees;
+
+      @Override
+      public void configure(Parameterization config) {
+        super.configure(config);
+        new RandomParameter(NNDescent.Factory.Par.SEED_ID).grab(config, x -> rnd = x);
+        new DoubleParameter(NNDescent.Factory.Par.DELTA_ID, 0.001) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+            .grab(config, x -> delta = x);
+        new DoubleParameter(NNDescent.Factory.Par.RHO_ID, 1) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+            .grab(config, x -> rho = x);
+        new IntParameter(NNDescent.Factory.Par.ITER_ID, 100) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> iterations = x);
+        new IntParameter(TREES_ID, 0) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+            .grab(config, x -> trees = x);
+      }
+
+      @Override
+      public ParallelNNDescent.Factory<O> make() {
+        return new ParallelNNDescent.Factory<>(k, distance, rnd, delta, rho, iterations, trees);
+      }
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.preprocessed.knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.knn.LinearScanKNNByDBID;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.ManhattanDistance;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for the HNSW index.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class HNSWIndexTest {
+  // the following values depend on the data set used!
+  static String dataset = "elki/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // number of kNN to query
+  int k = 10;
+
+  // size of the data set
+  int shoulds = 330;
+
+  @Test
+  public void testKNN() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = new QueryBuilder<>(relation, EuclideanDistance.STATIC).distanceQuery();
+    KNNSearcher<DBIDRef> lin_knn_query = new LinearScanKNNByDBID<>(distanceQuery);
+
+    HNSWIndex<DoubleVector>.Instance index = new ELKIBuilder<HNSWIndex<DoubleVector>>(HNSWIndex.class) //
+        .with(HNSWIndex.Par.DISTANCE_FUNCTION_ID, EuclideanDistance.STATIC) //
+        .with(HNSWIndex.Par.M_ID, 4) //
+        .with(HNSWIndex.Par.EF_CONSTRUCTION_ID, 20) //
+        .with(HNSWIndex.Par.EF_ID, 10) //
+        .with(HNSWIndex.Par.SEED_ID, 0) //
+        .build().instantiate(relation);
+    index.initialize();
+    assertNull("Exact query should not use the index.", index.kNNByDBID(distanceQuery, k, QueryBuilder.FLAG_EXACT_ONLY));
+    assertNull("Incompatible distance.", index.kNNByDBID(new QueryBuilder<>(relation, ManhattanDistance.STATIC).distanceQuery(), k, 0));
+    KNNSearcher<DBIDRef> preproc_knn_query = index.kNNByDBID(distanceQuery, k, 0);
+    assertNotNull("No approximate query returned.", preproc_knn_query);
+    MaterializedKNNPreprocessorTest.testKNNQueries(relation, lin_knn_query, preproc_knn_query, k, 44);
+  }
+
+  @Test
+  public void testRange() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    QueryBuilder<DoubleVector> qb = new QueryBuilder<>(relation, EuclideanDistance.STATIC);
+    RangeSearcher<DBIDRef> linear = qb.linearOnly().rangeByDBID();
+
+    HNSWIndex<DoubleVector>.Instance index = new ELKIBuilder<HNSWIndex<DoubleVector>>(HNSWIndex.class) //
+        .with(HNSWIndex.Par.DISTANCE_FUNCTION_ID, EuclideanDistance.STATIC) //
+        .with(HNSWIndex.Par.SEED_ID, 0) //
+        .build().instantiate(relation);
+    index.initialize();
+    RangeSearcher<DBIDRef> approx = index.rangeByDBID(qb.distanceQuery(), 0.1, 0);
+    int total = 0, found = 0;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      total += linear.getRange(iter, 0.1).size();
+      found += approx.getRange(iter, 0.1).size();
+    }
+    assertEquals("Range query results do not match.", total, found);
+  }
+}
@@ -0,0 +1,992 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.invertedlist;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import elki.data.NumberVector;
+import elki.data.SparseNumberVector;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.*;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.distance.ArcCosineDistance;
+import elki.distance.CosineDistance;
+import elki.distance.Distance;
+import elki.index.IndexFactory;
+import elki.index.KNNIndex;
+import elki.index.RangeIndex;
+import elki.logging.Logging;
+import elki.logging.statistics.DoubleStatistic;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
+import elki.utilities.Alias;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.documentation.Reference;
+import elki.utilities.io.ByteArrayUtil;
+import elki.utilities.optionhandling.Parameterizer;
+
+import net.jafama.FastMath;
+
+/**
+ * Inverted index with compressed postings and block-max MaxScore top-k
+ * retrieval, for cosine and arc-cosine distance on sparse data.
+ * <p>
+ * Vectors are normalized to unit length when indexing, so that the cosine
+ * similarity is the sum of the contributions of the shared dimensions. As in
+ * {@link CosineDistance}, the absolute value of the cosine is used, so both the
+ * positive and the negative contributions are bounded. The
+ * postings of every dimension are stored in ascending order of the object
+ * offsets, as delta- and varint-encoded blocks of {@link #BLOCKSIZE} entries,
+ * with the largest and smallest weight of each block.
+ * <p>
+ * Queries are evaluated document-at-a-time: the query dimensions are ordered by
+ * their maximum contribution, and lists whose cumulative maximum cannot reach
+ * the current top-k threshold are only probed for candidates found in the
+ * other lists. Candidates are discarded as soon as the block maxima show that
+ * they cannot reach the threshold, so most postings are never decoded. The
+ * final distances are computed with the distance function, and are hence
+ * exact.
+ * <p>
+ * If the threshold admits objects that do not share any dimension with the
+ * query (e.g., if fewer than k objects have a positive similarity), the query
+ * falls back to a linear scan.
+ * <p>
+ * References:
+ * <p>
+ * H. Turtle, J. Flood<br>
+ * Query Evaluation: Strategies and Optimizations<br>
+ * Information Processing and Management 31(6)
+ * <p>
+ * S. Ding, T. Suel<br>
+ * Faster top-k document retrieval using block-max indexes<br>
+ * Proc. 34th Int. ACM SIGIR Conf. on Research and Development in Information
+ * Retrieval
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - BlockMaxKNNSearcher
+ * @has - - - BlockMaxRangeSearcher
+ *
+ * @param <V> Vector type
+ */
+@Reference(authors = "H. Turtle, J. Flood", //
+    title = "Query Evaluation: Strategies and Optimizations", //
+    booktitle = "Information Processing and Management 31(6)", //
+    url = "https://doi.org/10.1016/0306-4573(95)00020-H", //
+    bibkey = "DBLP:journals/ipm/TurtleF95")
+@Reference(authors = "S. Ding, T. Suel", //
+    title = "Faster top-k document retrieval using block-max indexes", //
+    booktitle = "Proc. 34th Int. ACM SIGIR Conf. on Research and Development in Information Retrieval", //
+    url = "https://doi.org/10.1145/2009916.2010048", //
+    bibkey = "DBLP:conf/sigir/DingS11")
+public class BlockMaxInvertedIndex<V extends NumberVector> implements KNNIndex<V>, RangeIndex<V> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(BlockMaxInvertedIndex.class);
+
+  /**
+   * Number of postings per block.
+   */
+  public static final int BLOCKSIZE = 64;
+
+  /**
+   * Minimum number of queries per thread in batch queries.
+   */
+  private static final int MIN_BLOCK = 16;
+
+  /**
+   * Tolerance for rounding errors when pruning with similarity bounds.
+   */
+  private static final double SLACK = 1e-12;
+
+  /**
+   * Distance kinds supported.
+   */
+  private static final int COSINE = 0, ARCCOSINE = 1;
+
+  /**
+   * The representation we are bound to.
+   */
+  protected final Relation<V> relation;
+
+  /**
+   * Object ids, defining the offsets used in the postings.
+   */
+  protected ArrayDBIDs ids;
+
+  /**
+   * Start of the postings of each dimension (size: dimensions + 1).
+   */
+  protected int[] termStart;
+
+  /**
+   * Normalized weights of the postings.
+   */
+  protected double[] weights;
+
+  /**
+   * Largest and smallest weight of each dimension.
+   */
+  protected double[] termMax, termMin;
+
+  /**
+   * First block of each dimension (size: dimensions + 1).
+   */
+  protected int[] blockStart;
+
+  /**
+   * Byte offset of each block in the encoded postings.
+   */
+  protected int[] blockOffset;
+
+  /**
+   * Last object offset of each block.
+   */
+  protected int[] blockLast;
+
+  /**
+   * Largest and smallest weight of each block.
+   */
+  protected double[] blockMax, blockMin;
+
+  /**
+   * Delta- and varint-encoded object offsets.
+   */
+  protected byte[] postings;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data.
+   */
+  public BlockMaxInvertedIndex(Relation<V> relation) {
+    this.relation = relation;
+  }
+
+  @Override
+  public void initialize() {
+    if(ids != null) {
+      LOG.warning("Index was already initialized!");
+    }
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    // Pass 1: count the postings of each dimension, compute vector lengths.
+    NonZeros buf = new NonZeros();
+    double[] len = new double[size];
+    int[] counts = new int[16];
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      buf.load(relation.get(iter));
+      for(int j = 0; j < buf.size; j++) {
+        final int dim = buf.dims[j];
+        if(dim >= counts.length) {
+          counts = Arrays.copyOf(counts, Math.max(dim + 1, counts.length << 1));
+        }
+        counts[dim]++;
+      }
+      len[iter.getOffset()] = buf.length;
+    }
+    int numterms = counts.length;
+    while(numterms > 0 && counts[numterms - 1] == 0) {
+      --numterms;
+    }
+    termStart = new int[numterms + 1];
+    blockStart = new int[numterms + 1];
+    long total = 0;
+    for(int t = 0; t < numterms; t++) {
+      termStart[t] = (int) total;
+      blockStart[t + 1] = blockStart[t] + (counts[t] + BLOCKSIZE - 1) / BLOCKSIZE;
+      total += counts[t];
+      if(total > Integer.MAX_VALUE - 8) {
+        throw new AbortException("Too many postings for the inverted index.");
+      }
+    }
+    termStart[numterms] = (int) total;
+    // Pass 2: fill the postings, which are sorted by offset by construction.
+    final int[] docs = new int[(int) total];
+    weights = new double[(int) total];
+    final int[] pos = Arrays.copyOf(termStart, numterms);
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      final int off = iter.getOffset();
+      buf.load(relation.get(iter));
+      final double f = 1. / len[off];
+      for(int j = 0; j < buf.size; j++) {
+        final int p = pos[buf.dims[j]]++;
+        docs[p] = off;
+        weights[p] = buf.vals[j] * f;
+      }
+    }
+    // Pass 3: encode the blocks.
+    final int numblocks = blockStart[numterms];
+    termMax = new double[numterms];
+    termMin = new double[numterms];
+    blockOffset = new int[numblocks];
+    blockLast = new int[numblocks];
+    blockMax = new double[numblocks];
+    blockMin = new double[numblocks];
+    long bytes = 0;
+    for(int t = 0; t < numterms; t++) {
+      int prev = 0;
+      for(int p = termStart[t], e = termStart[t + 1]; p < e; p++) {
+        bytes += ByteArrayUtil.getUnsignedVarintSize(docs[p] - prev);
+        prev = docs[p];
+      }
+      if(bytes > Integer.MAX_VALUE - 8) {
+        throw new AbortException("Too many postings for the inverted index.");
+      }
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(postings = new byte[(int) bytes]);
+    for(int t = 0; t < numterms; t++) {
+      double tmax = Double.NEGATIVE_INFINITY, tmin = Double.POSITIVE_INFINITY;
+      int prev = 0;
+      for(int b = blockStart[t], p = termStart[t], e = termStart[t + 1]; p < e; b++) {
+        double bmax = Double.NEGATIVE_INFINITY, bmin = Double.POSITIVE_INFINITY;
+        blockOffset[b] = buffer.position();
+        for(final int be = Math.min(p + BLOCKSIZE, e); p < be; p++) {
+          ByteArrayUtil.writeUnsignedVarint(buffer, docs[p] - prev);
+          prev = docs[p];
+          final double w = weights[p];
+          bmax = w > bmax ? w : bmax;
+          bmin = w < bmin ? w : bmin;
+        }
+        blockLast[b] = prev;
+        blockMax[b] = bmax;
+        blockMin[b] = bmin;
+        tmax = bmax > tmax ? bmax : tmax;
+        tmin = bmin < tmin ? bmin : tmin;
+      }
+      termMax[t] = tmax;
+      termMin[t] = tmin;
+    }
+    double sparsity = total / (numterms * (double) size);
+    if(sparsity > .2) {
+      LOG.warning("Inverted list indexes only perform well for very sparse data. Your data set has a sparsity of " + sparsity);
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    final int numterms = termStart.length - 1;
+    final long total = termStart[numterms];
+    LOG.statistics(new DoubleStatistic(this.getClass().getName() + ".sparsity", total / (numterms * (double) ids.size())));
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".postings", total));
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".encoded-bytes", postings.length));
+  }
+
+  /**
+   * Get the kind of a supported distance function.
+   *
+   * @param df Distance function
+   * @return Kind, or -1 if not supported
+   */
+  private static int distanceKind(Distance<?> df) {
+    return df instanceof CosineDistance ? COSINE : df instanceof ArcCosineDistance ? ARCCOSINE : -1;
+  }
+
+  @Override
+  public KNNSearcher<V> kNNByObject(DistanceQuery<V> distanceQuery, int maxk, int flags) {
+    final int kind = distanceKind(distanceQuery.getDistance());
+    return kind >= 0 && distanceQuery.getRelation() == relation ? new BlockMaxKNNSearcher(distanceQuery) : null;
+  }
+
+  @Override
+  public RangeSearcher<V> rangeByObject(DistanceQuery<V> distanceQuery, double maxradius, int flags) {
+    final int kind = distanceKind(distanceQuery.getDistance());
+    return kind >= 0 && distanceQuery.getRelation() == relation ? new BlockMaxRangeSearcher(distanceQuery, kind) : null;
+  }
+
+  /**
+   * Find the k nearest neighbors of many objects, in parallel.
+   *
+   * @param distanceQuery Distance query (cosine or arc-cosine)
+   * @param queries Query objects
+   * @param k Number of neighbors
+   * @return Nearest neighbors of all query objects
+   */
+  public WritableDataStore<KNNList> kNNBatch(DistanceQuery<V> distanceQuery, DBIDs queries, int k) {
+    if(kNNByObject(distanceQuery, k, 0) == null) {
+      throw new IllegalArgumentException("Distance not supported by the index: " + distanceQuery.getDistance());
+    }
+    final ArrayDBIDs aids = DBIDUtil.ensureArray(queries);
+    final KNNList[] results = new KNNList[aids.size()];
+    ParallelExecutor.run(0, results.length, MIN_BLOCK, (start, end) -> {
+      BlockMaxKNNSearcher searcher = new BlockMaxKNNSearcher(distanceQuery);
+      for(DBIDArrayIter it = aids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        results[it.getOffset()] = searcher.getKNN(relation.get(it), k);
+      }
+    });
+    WritableDataStore<KNNList> store = DataStoreUtil.makeStorage(aids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, KNNList.class);
+    for(DBIDArrayIter it = aids.iter(); it.valid(); it.advance()) {
+      store.put(it, results[it.getOffset()]);
+    }
+    return store;
+  }
+
+  /**
+   * Find the range neighbors of many objects, in parallel.
+   *
+   * @param distanceQuery Distance query (cosine or arc-cosine)
+   * @param queries Query objects
+   * @param range Query radius
+   * @return Neighbors of all query objects, unsorted
+   */
+  public WritableDataStore<DoubleDBIDList> rangeBatch(DistanceQuery<V> distanceQuery, DBIDs queries, double range) {
+    final int kind = distanceKind(distanceQuery.getDistance());
+    if(kind < 0) {
+      throw new IllegalArgumentException("Distance not supported by the index: " + distanceQuery.getDistance());
+    }
+    final ArrayDBIDs aids = DBIDUtil.ensureArray(queries);
+    final DoubleDBIDList[] results = new DoubleDBIDList[aids.size()];
+    ParallelExecutor.run(0, results.length, MIN_BLOCK, (start, end) -> {
+      BlockMaxRangeSearcher searcher = new BlockMaxRangeSearcher(distanceQuery, kind);
+      for(DBIDArrayIter it = aids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        results[it.getOffset()] = searcher.getRange(relation.get(it), range);
+      }
+    });
+    WritableDataStore<DoubleDBIDList> store = DataStoreUtil.makeStorage(aids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, DoubleDBIDList.class);
+    for(DBIDArrayIter it = aids.iter(); it.valid(); it.advance()) {
+      store.put(it, results[it.getOffset()]);
+    }
+    return store;
+  }
+
+  /**
+   * Buffer for the non-zero values of a vector.
+   *
+   * @author Erich Schubert
+   */
+  private static class NonZeros {
+    /**
+     * Dimensions.
+     */
+    int[] dims = new int[16];
+
+    /**
+     * Values.
+     */
+    double[] vals = new double[16];
+
+    /**
+     * Number of non-zero values.
+     */
+    int size;
+
+    /**
+     * Euclidean length of the vector.
+     */
+    double length;
+
+    /**
+     * Load the non-zero values of a vector.
+     *
+     * @param obj Vector
+     */
+    void load(NumberVector obj) {
+      size = 0;
+      double len = 0.;
+      if(obj instanceof SparseNumberVector) {
+        SparseNumberVector sobj = (SparseNumberVector) obj;
+        for(int iter = sobj.iter(); sobj.iterValid(iter); iter = sobj.iterAdvance(iter)) {
+          len += add(sobj.iterDim(iter), sobj.iterDoubleValue(iter));
+        }
+      }
+      else {
+        for(int dim = 0, max = obj.getDimensionality(); dim < max; dim++) {
+          len += add(dim, obj.doubleValue(dim));
+        }
+      }
+      length = FastMath.sqrt(len);
+    }
+
+    /**
+     * Add a single value, unless it is zero or NaN.
+     *
+     * @param dim Dimension
+     * @param val Value
+     * @return Squared value added
+     */
+    private double add(int dim, double val) {
+      if(val == 0. || val != val) {
+        return 0.;
+      }
+      if(size == dims.length) {
+        dims = Arrays.copyOf(dims, size << 1);
+        vals = Arrays.copyOf(vals, size << 1);
+      }
+      dims[size] = dim;
+      vals[size++] = val;
+      return val * val;
+    }
+  }
+
+  /**
+   * Cursor over the postings of one query dimension.
+   *
+   * @author Erich Schubert
+   */
+  private static class Cursor {
+    /**
+     * Index.
+     */
+    final BlockMaxInvertedIndex<?> index;
+
+    /**
+     * Buffer for the decoded object offsets of the current block.
+     */
+    final int[] buf = new int[BLOCKSIZE];
+
+    /**
+     * Dimension.
+     */
+    int term;
+
+    /**
+     * Normalized query weight.
+     */
+    double weight;
+
+    /**
+     * Maximum positive and negative contribution to the similarity, and the
+     * larger of both.
+     */
+    double posBound, negBound, bound;
+
+    /**
+     * Current block, and end of blocks.
+     */
+    int block, blockEnd;
+
+    /**
+     * Block currently decoded into the buffer.
+     */
+    int decoded;
+
+    /**
+     * Number of entries in the buffer, and position within.
+     */
+    int bufsize, pos;
+
+    /**
+     * Current object offset, {@link Integer#MAX_VALUE} when exhausted.
+     */
+    int doc;
+
+    /**
+     * Constructor.
+     *
+     * @param index Index
+     */
+    Cursor(BlockMaxInvertedIndex<?> index) {
+      this.index = index;
+    }
+
+    /**
+     * Start a new cursor.
+     *
+     * @param term Dimension
+     * @param weight Normalized query weight
+     */
+    void start(int term, double weight) {
+      this.term = term;
+      this.weight = weight;
+      final double hi = weight * (weight > 0 ? index.termMax[term] : index.termMin[term]);
+      final double lo = weight * (weight > 0 ? index.termMin[term] : index.termMax[term]);
+      this.posBound = hi > 0 ? hi : 0.;
+      this.negBound = lo < 0 ? -lo : 0.;
+      this.bound = posBound > negBound ? posBound : negBound;
+      this.block = index.blockStart[term];
+      this.blockEnd = index.blockStart[term + 1];
+      decode();
+      doc = buf[pos = 0];
+    }
+
+    /**
+     * Decode the current block into the buffer.
+     */
+    private void decode() {
+      final int first = index.blockStart[term];
+      final int p0 = index.termStart[term] + (block - first) * BLOCKSIZE;
+      bufsize = Math.min(BLOCKSIZE, index.termStart[term + 1] - p0);
+      int prev = block == first ? 0 : index.blockLast[block - 1];
+      for(int i = 0, p = index.blockOffset[block]; i < bufsize; i++) {
+        int v = 0, shift = 0;
+        byte b;
+        do {
+          b = index.postings[p++];
+          v |= (b & 0x7F) << shift;
+          shift += 7;
+        }
+        while(b < 0);
+        buf[i] = prev += v;
+      }
+      decoded = block;
+    }
+
+    /**
+     * Contribution of the current posting to the similarity.
+     *
+     * @return Contribution
+     */
+    double score() {
+      return weight * index.weights[index.termStart[term] + (block - index.blockStart[term]) * BLOCKSIZE + pos];
+    }
+
+    /**
+     * Advance to the next posting.
+     */
+    void next() {
+      if(++pos < bufsize) {
+        doc = buf[pos];
+        return;
+      }
+      if(++block < blockEnd) {
+        decode();
+        doc = buf[pos = 0];
+        return;
+      }
+      doc = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Move to the block that may contain the given object, without decoding
+     * the blocks skipped.
+     *
+     * @param target Object offset
+     * @return {@code false} if the list is exhausted
+     */
+    boolean skipBlocks(int target) {
+      while(block < blockEnd && index.blockLast[block] < target) {
+        ++block;
+      }
+      return block < blockEnd;
+    }
+
+    /**
+     * Maximum positive contribution of the current block.
+     *
+     * @return Upper bound
+     */
+    double blockPosBound() {
+      final double b = weight * (weight > 0 ? index.blockMax[block] : index.blockMin[block]);
+      return b > 0 ? b : 0.;
+    }
+
+    /**
+     * Maximum negative contribution of the current block.
+     *
+     * @return Upper bound of the absolute value
+     */
+    double blockNegBound() {
+      final double b = weight * (weight > 0 ? index.blockMin[block] : index.blockMax[block]);
+      return b < 0 ? -b : 0.;
+    }
+
+    /**
+     * Advance to the first posting not before the given object.
+     *
+     * @param target Object offset
+     * @return Object offset of the posting reached
+     */
+    int advanceTo(int target) {
+      if(doc >= target) {
+        return doc;
+      }
+      if(!skipBlocks(target)) {
+        return doc = Integer.MAX_VALUE;
+      }
+      if(decoded != block) {
+        decode();
+        pos = 0;
+      }
+      while(buf[pos] < target) {
+        ++pos;
+      }
+      return doc = buf[pos];
+    }
+  }
+
+  /**
+   * Base class for the searchers, implementing the document-at-a-time
+   * traversal.
+   *
+   * @author Erich Schubert
+   */
+  private abstract class AbstractSearcher {
+    /**
+     * Distance query, for the final distances.
+     */
+    protected final DistanceQuery<V> distanceQuery;
+
+    /**
+     * Iterator for accessing objects by offset.
+     */
+    protected final DBIDArrayIter it = ids.iter();
+
+    /**
+     * Query buffer.
+     */
+    private final NonZeros query = new NonZeros();
+
+    /**
+     * Cursors, sorted by ascending maximum contribution.
+     */
+    private Cursor[] cursors = new Cursor[0];
+
+    /**
+     * Cumulative maximum positive and negative contributions.
+     */
+    private double[] cumPos = new double[0], cumNeg = new double[0];
+
+    /**
+     * Number of cursors in use.
+     */
+    private int numcursors;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     */
+    protected AbstractSearcher(DistanceQuery<V> distanceQuery) {
+      this.distanceQuery = distanceQuery;
+    }
+
+    /**
+     * Current similarity threshold.
+     *
+     * @return Threshold
+     */
+    protected abstract double threshold();
+
+    /**
+     * Collect a candidate that was not pruned.
+     *
+     * @param doc Object offset
+     * @param sim Absolute similarity
+     */
+    protected abstract void collect(int doc, double sim);
+
+    /**
+     * Process a query, calling {@link #collect} for all candidates whose
+     * similarity may reach the threshold.
+     *
+     * @param obj Query object
+     * @return {@code false} if the query vector has length zero
+     */
+    protected boolean search(V obj) {
+      prepare(obj);
+      if(numcursors == 0) {
+        return false;
+      }
+      final Cursor[] cursors = this.cursors;
+      final double[] cumPos = this.cumPos, cumNeg = this.cumNeg;
+      final int m = numcursors;
+      double theta = threshold() - SLACK;
+      int ess = 0; // First essential list
+      while(ess < m && cumPos[ess] < theta && cumNeg[ess] < theta) {
+        ++ess;
+      }
+      while(ess < m) {
+        int d = Integer.MAX_VALUE;
+        for(int i = ess; i < m; i++) {
+          d = cursors[i].doc < d ? cursors[i].doc : d;
+        }
+        if(d == Integer.MAX_VALUE) {
+          break;
+        }
+        double sim = 0.;
+        for(int i = ess; i < m; i++) {
+          final Cursor c = cursors[i];
+          if(c.doc == d) {
+            sim += c.score();
+            c.next();
+          }
+        }
+        // Probe the non-essential lists, largest first, while the candidate
+        // can still reach the threshold.
+        boolean pruned = false;
+        for(int i = ess - 1; i >= 0; i--) {
+          if(sim + cumPos[i] < theta && cumNeg[i] - sim < theta) {
+            pruned = true;
+            break;
+          }
+          final Cursor c = cursors[i];
+          if(!c.skipBlocks(d)) {
+            continue;
+          }
+          final double restPos = i > 0 ? cumPos[i - 1] : 0., restNeg = i > 0 ? cumNeg[i - 1] : 0.;
+          if(sim + c.blockPosBound() + restPos < theta && c.blockNegBound() + restNeg - sim < theta) {
+            pruned = true;
+            break;
+          }
+          if(c.advanceTo(d) == d) {
+            sim += c.score();
+          }
+        }
+        if(pruned) {
+          continue;
+        }
+        collect(d, sim > 0 ? sim : -sim);
+        final double newtheta = threshold() - SLACK;
+        if(newtheta > theta) {
+          theta = newtheta;
+          while(ess < m && cumPos[ess] < theta && cumNeg[ess] < theta) {
+            ++ess;
+          }
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Set up the cursors for a query.
+     *
+     * @param obj Query object
+     */
+    private void prepare(V obj) {
+      query.load(obj);
+      final int numterms = termStart.length - 1;
+      if(cursors.length < query.size) {
+        Cursor[] newc = Arrays.copyOf(cursors, query.size);
+        for(int i = cursors.length; i < newc.length; i++) {
+          newc[i] = new Cursor(BlockMaxInvertedIndex.this);
+        }
+        cursors = newc;
+        cumPos = new double[query.size];
+        cumNeg = new double[query.size];
+      }
+      numcursors = 0;
+      final double f = 1. / query.length;
+      for(int j = 0; j < query.size; j++) {
+        final int t = query.dims[j];
+        if(t < numterms && termStart[t] < termStart[t + 1]) {
+          cursors[numcursors++].start(t, query.vals[j] * f);
+        }
+      }
+      // Insertion sort by the maximum contribution; queries are short.
+      for(int i = 1; i < numcursors; i++) {
+        final Cursor c = cursors[i];
+        int j = i - 1;
+        for(; j >= 0 && cursors[j].bound > c.bound; j--) {
+          cursors[j + 1] = cursors[j];
+        }
+        cursors[j + 1] = c;
+      }
+      double sumPos = 0., sumNeg = 0.;
+      for(int i = 0; i < numcursors; i++) {
+        cumPos[i] = sumPos += cursors[i].posBound;
+        cumNeg[i] = sumNeg += cursors[i].negBound;
+      }
+    }
+  }
+
+  /**
+   * kNN searcher for cosine and arc-cosine distance.
+   *
+   * @author Erich Schubert
+   */
+  public class BlockMaxKNNSearcher extends AbstractSearcher implements KNNSearcher<V> {
+    /**
+     * Heap of the best similarities, using the negative similarity as key.
+     */
+    private KNNHeap best;
+
+    /**
+     * All candidates evaluated, with their similarity. Because of rounding,
+     * the similarities may differ slightly from the distances, so we need to
+     * keep candidates close to the threshold to find all ties.
+     */
+    private final ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     */
+    public BlockMaxKNNSearcher(DistanceQuery<V> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    protected double threshold() {
+      return -best.getKNNDistance();
+    }
+
+    @Override
+    protected void collect(int doc, double sim) {
+      if(-sim <= best.getKNNDistance() + SLACK) {
+        best.insert(-sim, it.seek(doc));
+        candidates.add(sim, it);
+      }
+    }
+
+    @Override
+    public KNNList getKNN(V obj, int k) {
+      best = best == null || best.getK() != k ? DBIDUtil.newHeap(k) : best;
+      best.clear();
+      candidates.clear();
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      if(!search(obj) || best.size() < k || threshold() <= SLACK) {
+        // Objects without shared dimensions may be among the results.
+        for(it.seek(0); it.valid(); it.advance()) {
+          heap.insert(distanceQuery.distance(obj, it), it);
+        }
+        return heap.toKNNList();
+      }
+      final double theta = threshold() - SLACK;
+      for(DoubleDBIDListIter c = candidates.iter(); c.valid(); c.advance()) {
+        if(c.doubleValue() >= theta) {
+          heap.insert(distanceQuery.distance(obj, c), c);
+        }
+      }
+      return heap.toKNNList();
+    }
+  }
+
+  /**
+   * Range searcher for cosine and arc-cosine distance.
+   *
+   * @author Erich Schubert
+   */
+  public class BlockMaxRangeSearcher extends AbstractSearcher implements RangeSearcher<V> {
+    /**
+     * Distance kind.
+     */
+    private final int kind;
+
+    /**
+     * Current query object.
+     */
+    private V obj;
+
+    /**
+     * Query radius.
+     */
+    private double range;
+
+    /**
+     * Similarity threshold.
+     */
+    private double theta;
+
+    /**
+     * Output list.
+     */
+    private ModifiableDoubleDBIDList result;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     * @param kind Distance kind
+     */
+    public BlockMaxRangeSearcher(DistanceQuery<V> distanceQuery, int kind) {
+      super(distanceQuery);
+      this.kind = kind;
+    }
+
+    @Override
+    protected double threshold() {
+      return theta;
+    }
+
+    @Override
+    protected void collect(int doc, double sim) {
+      if(sim >= theta - SLACK) {
+        final double d = distanceQuery.distance(obj, it.seek(doc));
+        if(d <= range) {
+          result.add(d, it);
+        }
+      }
+    }
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(V obj, double range, ModifiableDoubleDBIDList result) {
+      this.theta = kind == COSINE ? 1. - range : range < Math.PI ? FastMath.cos(range) : -1.;
+      if(theta > SLACK) {
+        this.obj = obj;
+        this.range = range;
+        this.result = result;
+        boolean nonzero = search(obj);
+        this.obj = null;
+        this.result = null;
+        if(nonzero) {
+          return result;
+        }
+      }
+      // Objects without shared dimensions may be within the radius.
+      for(it.seek(0); it.valid(); it.advance()) {
+        final double d = distanceQuery.distance(obj, it);
+        if(d <= range) {
+          result.add(d, it);
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @has - - - BlockMaxInvertedIndex
+   *
+   * @param <V> Vector type
+   */
+  @Alias({ "blockmax", "maxscore" })
+  public static class Factory<V extends NumberVector> implements IndexFactory<V> {
+    @Override
+    public BlockMaxInvertedIndex<V> instantiate(Relation<V> relation) {
+      return new BlockMaxInvertedIndex<>(relation);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_VARIABLE_LENGTH;
+    }
+
+    /**
+     * Parameterizer for the block-max inverted index.
+     *
+     * @author Erich Schubert
+     *
+     * @hidden
+     *
+     * @param <V> Vector type
+     */
+    public static class Par<V extends NumberVector> implements Parameterizer {
+      @Override
+      public Factory<V> make() {
+        return new Factory<>();
+      }
+    }
+  }
+}
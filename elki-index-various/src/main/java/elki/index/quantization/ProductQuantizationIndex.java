@@ -0,0 +1,693 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.quantization;
+
+import java.util.Arrays;
+import java.util.List;
+
+import elki.clustering.kmeans.LloydKMeans;
+import elki.clustering.kmeans.initialization.KMeansPlusPlus;
+import elki.data.Cluster;
+import elki.data.Clustering;
+import elki.data.DoubleVector;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.data.type.VectorFieldTypeInformation;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.MaterializedRelation;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.index.AbstractRefiningIndex;
+import elki.index.IndexFactory;
+import elki.index.KNNIndex;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
+import elki.utilities.datastructures.heap.DoubleIntegerHeap;
+import elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.constraints.LessEqualConstraint;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+import net.jafama.FastMath;
+
+/**
+ * Product quantization index for approximate nearest neighbor search with the
+ * (squared) Euclidean distance.
+ * <p>
+ * The vectors are split into m subspaces, and every subvector is quantized
+ * with a separate k-means codebook of at most 256 centroids, so every object
+ * is stored with only m bytes. Queries use asymmetric distance computation:
+ * the unquantized query is compared to all centroids once, and the
+ * approximate distance to each object then is the sum of m table lookups.
+ * <p>
+ * Optionally, the data is first partitioned into inverted lists with a coarse
+ * k-means quantizer, and the residuals to the coarse centroids are encoded
+ * (IVFADC). Queries then only scan the lists of the nearest coarse centroids.
+ * The best candidates can be re-ranked with exact distances, at the cost of
+ * accessing the original vectors.
+ * <p>
+ * The codes of each inverted list are stored in a single byte array, so one
+ * list can hold at most 2<sup>31</sup>/m objects. Very large data sets hence
+ * require the use of inverted lists.
+ * <p>
+ * Reference:
+ * <p>
+ * H. Jégou, M. Douze, C. Schmid<br>
+ * Product Quantization for Nearest Neighbor Search<br>
+ * IEEE Trans. Pattern Analysis and Machine Intelligence 33(1)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - Instance
+ *
+ * @param <V> Vector type
+ */
+@Reference(authors = "H. Jégou, M. Douze, C. Schmid", //
+    title = "Product Quantization for Nearest Neighbor Search", //
+    booktitle = "IEEE Trans. Pattern Analysis and Machine Intelligence 33(1)", //
+    url = "https://doi.org/10.1109/TPAMI.2010.57", //
+    bibkey = "DBLP:journals/pami/JegouDS11")
+public class ProductQuantizationIndex<V extends NumberVector> implements IndexFactory<V> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ProductQuantizationIndex.class);
+
+  /**
+   * Minimum number of objects to encode per thread.
+   */
+  private static final int MIN_BLOCK = 1024;
+
+  /**
+   * Number of subspaces.
+   */
+  int subspaces;
+
+  /**
+   * Number of centroids per subspace.
+   */
+  int centroids;
+
+  /**
+   * Number of inverted lists.
+   */
+  int lists;
+
+  /**
+   * Number of inverted lists to scan.
+   */
+  int probe;
+
+  /**
+   * Number of candidates per neighbor to re-rank, 0 to disable.
+   */
+  int rerank;
+
+  /**
+   * Size of the training sample.
+   */
+  int samplesize;
+
+  /**
+   * Maximum number of k-means iterations.
+   */
+  int maxiter;
+
+  /**
+   * Random generator for sampling and k-means initialization.
+   */
+  RandomFactory rnd;
+
+  /**
+   * Constructor.
+   *
+   * @param subspaces Number of subspaces
+   * @param centroids Number of centroids per subspace (at most 256)
+   * @param lists Number of inverted lists, 1 to disable
+   * @param probe Number of inverted lists to scan
+   * @param rerank Number of candidates per neighbor to re-rank, 0 to disable
+   * @param samplesize Size of the training sample
+   * @param maxiter Maximum number of k-means iterations
+   * @param rnd Random generator
+   */
+  public ProductQuantizationIndex(int subspaces, int centroids, int lists, int probe, int rerank, int samplesize, int maxiter, RandomFactory rnd) {
+    super();
+    if(centroids > 256) {
+      throw new IllegalArgumentException("Product quantization supports at most 256 centroids per subspace.");
+    }
+    this.subspaces = subspaces;
+    this.centroids = centroids;
+    this.lists = lists;
+    this.probe = probe;
+    this.rerank = rerank;
+    this.samplesize = samplesize;
+    this.maxiter = maxiter;
+    this.rnd = rnd;
+  }
+
+  @Override
+  public Instance instantiate(Relation<V> relation) {
+    return new Instance(relation);
+  }
+
+  @Override
+  public TypeInformation getInputTypeRestriction() {
+    return TypeUtil.NUMBER_VECTOR_FIELD;
+  }
+
+  /**
+   * Product quantization index for a single relation.
+   *
+   * @author Erich Schubert
+   *
+   * @has - - - PQKNNSearcher
+   */
+  public class Instance extends AbstractRefiningIndex<V> implements KNNIndex<V> {
+    /**
+     * Object ids, defining the offsets used.
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Subspace boundaries (size m+1).
+     */
+    private int[] bounds;
+
+    /**
+     * Coarse centroids, {@code null} when not using inverted lists.
+     */
+    private double[][] coarse;
+
+    /**
+     * Codebook of each subspace, with the centroids stored consecutively.
+     */
+    private double[][] codebooks;
+
+    /**
+     * Offset of each subspace in the distance lookup table (size m+1).
+     */
+    private int[] tableOffset;
+
+    /**
+     * Start of each inverted list in {@link #members} (size lists+1).
+     */
+    private int[] listStart;
+
+    /**
+     * Object offsets, in the order of the inverted lists.
+     */
+    private int[] members;
+
+    /**
+     * Codes of each inverted list, m bytes per object.
+     */
+    private byte[][] codes;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation to index
+     */
+    public Instance(Relation<V> relation) {
+      super(relation);
+    }
+
+    @Override
+    public void initialize() {
+      ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      final int size = ids.size(), dim = RelationUtil.dimensionality(relation);
+      final int m = Math.max(1, Math.min(subspaces, dim));
+      bounds = new int[m + 1];
+      for(int j = 0; j <= m; j++) {
+        bounds[j] = (int) ((long) j * dim / m);
+      }
+      listStart = new int[2];
+      members = new int[0];
+      codes = new byte[][] { new byte[0] };
+      if(size == 0) {
+        return;
+      }
+      // Training sample, used for all quantizers.
+      ArrayDBIDs sample = samplesize < size ? DBIDUtil.ensureArray(DBIDUtil.randomSample(ids, samplesize, rnd)) : ids;
+      double[][] train = new double[sample.size()][];
+      for(DBIDArrayIter it = sample.iter(); it.valid(); it.advance()) {
+        train[it.getOffset()] = relation.get(it).toArray();
+      }
+      // Coarse quantizer, encode the residuals.
+      final int[] assign = new int[size];
+      if(lists > 1) {
+        coarse = kMeans(sample, train, 0, dim, Math.min(lists, train.length));
+        for(double[] vec : train) {
+          minusEquals(vec, coarse[nearest(coarse, vec)]);
+        }
+        ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+          DBIDArrayIter it = ids.iter();
+          for(int i = start; i < end; i++) {
+            assign[i] = nearest(coarse, relation.get(it.seek(i)).toArray());
+          }
+        });
+      }
+      // Codebooks of the subspaces.
+      codebooks = new double[m][];
+      tableOffset = new int[m + 1];
+      for(int j = 0; j < m; j++) {
+        final int dsub = bounds[j + 1] - bounds[j];
+        double[][] means = kMeans(sample, train, bounds[j], bounds[j + 1], Math.min(centroids, train.length));
+        double[] cb = codebooks[j] = new double[means.length * dsub];
+        for(int c = 0; c < means.length; c++) {
+          System.arraycopy(means[c], 0, cb, c * dsub, dsub);
+        }
+        tableOffset[j + 1] = tableOffset[j] + means.length;
+      }
+      // Counting sort into the inverted lists.
+      final int nlists = coarse != null ? coarse.length : 1;
+      listStart = new int[nlists + 1];
+      for(int i = 0; i < size; i++) {
+        listStart[assign[i] + 1]++;
+      }
+      for(int c = 0; c < nlists; c++) {
+        listStart[c + 1] += listStart[c];
+      }
+      final int[] fill = Arrays.copyOf(listStart, nlists);
+      members = new int[size];
+      for(int i = 0; i < size; i++) {
+        members[fill[assign[i]]++] = i;
+      }
+      codes = new byte[nlists][];
+      for(int c = 0; c < nlists; c++) {
+        final long len = (listStart[c + 1] - listStart[c]) * (long) m;
+        if(len > Integer.MAX_VALUE - 8) {
+          throw new AbortException("Too many objects in one inverted list. Use more lists.");
+        }
+        codes[c] = new byte[(int) len];
+      }
+      // Encode all objects, in list order.
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Encoding vectors", size, LOG) : null;
+      ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+        DBIDArrayIter it = ids.iter();
+        for(int p = start; p < end; p++) {
+          final int i = members[p], c = assign[i];
+          double[] vec = relation.get(it.seek(i)).toArray();
+          if(coarse != null) {
+            minusEquals(vec, coarse[c]);
+          }
+          final byte[] lc = codes[c];
+          for(int j = 0, b = (p - listStart[c]) * m; j < m; j++) {
+            lc[b + j] = (byte) nearestCode(j, vec);
+          }
+          LOG.incrementProcessed(prog);
+        }
+      });
+      LOG.ensureCompleted(prog);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(ProductQuantizationIndex.class.getName() + ".lists", nlists));
+        LOG.statistics(new LongStatistic(ProductQuantizationIndex.class.getName() + ".code-bytes", size * (long) m));
+      }
+    }
+
+    /**
+     * Run k-means on a range of dimensions of the training sample.
+     *
+     * @param sample Sample ids
+     * @param train Training vectors
+     * @param start First dimension
+     * @param end End of the dimension range (exclusive)
+     * @param k Number of centroids
+     * @return Centroids
+     */
+    private double[][] kMeans(ArrayDBIDs sample, double[][] train, int start, int end, int k) {
+      WritableDataStore<DoubleVector> store = DataStoreUtil.makeStorage(sample, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, DoubleVector.class);
+      for(DBIDArrayIter it = sample.iter(); it.valid(); it.advance()) {
+        store.put(it, DoubleVector.wrap(Arrays.copyOfRange(train[it.getOffset()], start, end)));
+      }
+      Relation<DoubleVector> rel = new MaterializedRelation<>("Training sample", new VectorFieldTypeInformation<>(DoubleVector.FACTORY, end - start), sample, store);
+      Clustering<KMeansModel> clustering = new LloydKMeans<DoubleVector>(SquaredEuclideanDistance.STATIC, k, maxiter, new KMeansPlusPlus<>(rnd)).run(rel);
+      List<Cluster<KMeansModel>> clusters = clustering.getAllClusters();
+      double[][] means = new double[clusters.size()][];
+      for(int c = 0; c < means.length; c++) {
+        means[c] = clusters.get(c).getModel().getMean();
+      }
+      store.destroy();
+      return means;
+    }
+
+    /**
+     * Find the nearest code of a subvector.
+     *
+     * @param j Subspace
+     * @param vec Vector (or residual)
+     * @return Code
+     */
+    private int nearestCode(int j, double[] vec) {
+      final double[] cb = codebooks[j];
+      final int s = bounds[j], dsub = bounds[j + 1] - s;
+      int best = 0;
+      double bestd = Double.POSITIVE_INFINITY;
+      for(int c = 0, b = 0; b < cb.length; c++, b += dsub) {
+        double d = 0;
+        for(int i = 0; i < dsub; i++) {
+          final double v = vec[s + i] - cb[b + i];
+          d += v * v;
+        }
+        if(d < bestd) {
+          bestd = d;
+          best = c;
+        }
+      }
+      return best;
+    }
+
+    @Override
+    public Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    public KNNSearcher<V> kNNByObject(DistanceQuery<V> distanceQuery, int maxk, int flags) {
+      Distance<? super V> df = distanceQuery.getDistance();
+      return (flags & QueryBuilder.FLAG_EXACT_ONLY) == 0 && // approximate
+          (df instanceof SquaredEuclideanDistance || df instanceof EuclideanDistance) ? // compatible
+              new PQKNNSearcher(distanceQuery, df instanceof SquaredEuclideanDistance) : null;
+    }
+
+    /**
+     * kNN search using asymmetric distance computation.
+     *
+     * @author Erich Schubert
+     */
+    protected class PQKNNSearcher extends AbstractRefiningQuery implements KNNSearcher<V> {
+      /**
+       * Flag whether the squared Euclidean distance is used.
+       */
+      private final boolean squared;
+
+      /**
+       * Distance lookup table.
+       */
+      private final double[] table;
+
+      /**
+       * Inverted lists to scan.
+       */
+      private final DoubleIntegerMaxHeap probes;
+
+      /**
+       * Best candidates found.
+       */
+      private final DoubleIntegerMaxHeap candidates = new DoubleIntegerMaxHeap();
+
+      /**
+       * Constructor.
+       *
+       * @param distanceQuery Distance query
+       * @param squared Flag whether the squared Euclidean distance is used
+       */
+      public PQKNNSearcher(DistanceQuery<V> distanceQuery, boolean squared) {
+        super(distanceQuery);
+        this.squared = squared;
+        this.table = new double[tableOffset != null ? tableOffset[tableOffset.length - 1] : 0];
+        this.probes = new DoubleIntegerMaxHeap(probe + 1);
+      }
+
+      @Override
+      public KNNList getKNN(V obj, int k) {
+        KNNHeap heap = DBIDUtil.newHeap(k);
+        if(members.length == 0) {
+          return heap.toKNNList();
+        }
+        final double[] q = obj.toArray();
+        final int ncand = rerank > 0 ? k * rerank : k;
+        candidates.clear();
+        if(coarse == null) {
+          scan(q, 0, ncand);
+        }
+        else {
+          probes.clear();
+          for(int c = 0; c < coarse.length; c++) {
+            probes.add(squaredDistance(q, coarse[c]), c, probe);
+          }
+          final double[] res = new double[q.length];
+          for(; !probes.isEmpty(); probes.poll()) {
+            final double[] cen = coarse[probes.peekValue()];
+            for(int i = 0; i < res.length; i++) {
+              res[i] = q[i] - cen[i];
+            }
+            scan(res, probes.peekValue(), ncand);
+          }
+        }
+        DBIDArrayIter it = ids.iter();
+        for(DoubleIntegerHeap.UnsortedIter iter = candidates.unsortedIter(); iter.valid(); iter.advance()) {
+          it.seek(members[iter.getValue()]);
+          final double d = iter.getKey();
+          heap.insert(rerank > 0 ? refine(it, obj) : squared ? d : FastMath.sqrt(d), it);
+        }
+        return heap.toKNNList();
+      }
+
+      /**
+       * Scan one inverted list, adding the best objects to the candidates.
+       *
+       * @param q Query vector (or residual)
+       * @param c List number
+       * @param ncand Number of candidates to keep
+       */
+      private void scan(double[] q, int c, int ncand) {
+        final int m = bounds.length - 1;
+        // Build the lookup table for this query (residual)
+        for(int j = 0; j < m; j++) {
+          final double[] cb = codebooks[j];
+          final int s = bounds[j], dsub = bounds[j + 1] - s;
+          for(int t = tableOffset[j], b = 0; b < cb.length; t++, b += dsub) {
+            double d = 0;
+            for(int i = 0; i < dsub; i++) {
+              final double v = q[s + i] - cb[b + i];
+              d += v * v;
+            }
+            table[t] = d;
+          }
+        }
+        final byte[] lc = codes[c];
+        final int[] off = tableOffset;
+        for(int p = listStart[c], e = listStart[c + 1], b = 0; p < e; p++) {
+          double d = 0;
+          for(int j = 0; j < m; j++, b++) {
+            d += table[off[j] + (lc[b] & 0xFF)];
+          }
+          candidates.add(d, p, ncand);
+        }
+      }
+    }
+  }
+
+  /**
+   * Find the nearest centroid.
+   *
+   * @param means Centroids
+   * @param vec Vector
+   * @return Index of the nearest centroid
+   */
+  private static int nearest(double[][] means, double[] vec) {
+    int best = 0;
+    double bestd = Double.POSITIVE_INFINITY;
+    for(int c = 0; c < means.length; c++) {
+      final double d = squaredDistance(vec, means[c]);
+      if(d < bestd) {
+        bestd = d;
+        best = c;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Squared Euclidean distance of two arrays.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Squared distance
+   */
+  private static double squaredDistance(double[] a, double[] b) {
+    double d = 0;
+    for(int i = 0; i < a.length; i++) {
+      final double v = a[i] - b[i];
+      d += v * v;
+    }
+    return d;
+  }
+
+  /**
+   * Subtract a centroid from a vector, in place.
+   *
+   * @param vec Vector
+   * @param cen Centroid
+   */
+  private static void minusEquals(double[] vec, double[] cen) {
+    for(int i = 0; i < vec.length; i++) {
+      vec[i] -= cen[i];
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <V> Vector type
+   */
+  public static class Par<V extends NumberVector> implements Parameterizer {
+    /**
+     * Number of subspaces.
+     */
+    public static final OptionID SUBSPACES_ID = new OptionID("pq.subspaces", "Number of subspaces to quantize separately, i.e., the number of bytes per object.");
+
+    /**
+     * Number of centroids per subspace.
+     */
+    public static final OptionID CENTROIDS_ID = new OptionID("pq.centroids", "Number of centroids per subspace (at most 256).");
+
+    /**
+     * Number of inverted lists.
+     */
+    public static final OptionID LISTS_ID = new OptionID("pq.lists", "Number of inverted lists of the coarse quantizer (1 disables the inverted lists).");
+
+    /**
+     * Number of lists to scan.
+     */
+    public static final OptionID PROBE_ID = new OptionID("pq.probe", "Number of inverted lists to scan for each query.");
+
+    /**
+     * Number of candidates to re-rank.
+     */
+    public static final OptionID RERANK_ID = new OptionID("pq.rerank", "Number of candidates per requested neighbor to re-rank with exact distances (0 disables re-ranking).");
+
+    /**
+     * Training sample size.
+     */
+    public static final OptionID SAMPLE_ID = new OptionID("pq.sample", "Number of objects to sample for training the quantizers.");
+
+    /**
+     * Maximum number of k-means iterations.
+     */
+    public static final OptionID MAXITER_ID = new OptionID("pq.maxiter", "Maximum number of k-means iterations for training the quantizers (0 runs until convergence).");
+
+    /**
+     * Random generator seed.
+     */
+    public static final OptionID SEED_ID = new OptionID("pq.seed", "Random seed for sampling and k-means initialization.");
+
+    /**
+     * Number of subspaces.
+     */
+    int subspaces;
+
+    /**
+     * Number of centroids per subspace.
+     */
+    int centroids;
+
+    /**
+     * Number of inverted lists.
+     */
+    int lists;
+
+    /**
+     * Number of inverted lists to scan.
+     */
+    int probe = 1;
+
+    /**
+     * Number of candidates per neighbor to re-rank.
+     */
+    int rerank;
+
+    /**
+     * Size of the training sample.
+     */
+    int samplesize;
+
+    /**
+     * Maximum number of k-means iterations.
+     */
+    int maxiter;
+
+    /**
+     * Random generator.
+     */
+    RandomFactory rnd;
+
+    @Override
+    public void configure(Parameterization config) {
+      new IntParameter(SUBSPACES_ID, 8) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> subspaces = x);
+      new IntParameter(CENTROIDS_ID, 256) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+          .addConstraint(new LessEqualConstraint(256)) //
+          .grab(config, x -> centroids = x);
+      new IntParameter(LISTS_ID, 1) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> lists = x);
+      if(lists > 1) {
+        new IntParameter(PROBE_ID, 1) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> probe = x);
+      }
+      new IntParameter(RERANK_ID, 0) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+          .grab(config, x -> rerank = x);
+      new IntParameter(SAMPLE_ID, 10000) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> samplesize = x);
+      new IntParameter(MAXITER_ID, 20) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+          .grab(config, x -> maxiter = x);
+      new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+    }
+
+    @Override
+    public ProductQuantizationIndex<V> make() {
+      return new ProductQuantizationIndex<>(subspaces, centroids, lists, probe, rerank, samplesize, maxiter, rnd);
+    }
+  }
+}
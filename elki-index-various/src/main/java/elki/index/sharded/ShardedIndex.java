@@ -0,0 +1,721 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.sharded;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import elki.clustering.kmeans.LloydKMeans;
+import elki.clustering.kmeans.initialization.KMeansPlusPlus;
+import elki.data.Cluster;
+import elki.data.ModifiableHyperBoundingBox;
+import elki.data.NumberVector;
+import elki.data.model.KMeansModel;
+import elki.data.spatial.SpatialComparable;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.*;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.ProxyView;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.SpatialPrimitiveDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.index.Index;
+import elki.index.IndexFactory;
+import elki.index.KNNIndex;
+import elki.index.RangeIndex;
+import elki.logging.Logging;
+import elki.logging.statistics.LongStatistic;
+import elki.math.spacefillingcurves.HilbertSpatialSorter;
+import elki.math.spacefillingcurves.SpatialSorter;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.EnumParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Index that partitions the data into shards, and builds a separate index for
+ * each shard, in parallel.
+ * <p>
+ * The data can be partitioned randomly, by k-means, or along a space-filling
+ * curve. kNN and range queries are sent to every shard, and the results are
+ * merged. For vector data, the bounding box of each shard is kept; with a
+ * spatial distance function, shards are then queried in the order of their
+ * minimum distance, and shards that cannot contain any result are skipped.
+ * Compact shards (k-means, space-filling curves) are required for this
+ * pruning to be effective.
+ * <p>
+ * Because the shard indexes are independent, they are smaller and can be built
+ * concurrently; batch queries are run in parallel, too.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - ShardedKNNSearcher
+ * @has - - - ShardedRangeSearcher
+ *
+ * @param <O> Object type
+ */
+public class ShardedIndex<O> implements KNNIndex<O>, RangeIndex<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ShardedIndex.class);
+
+  /**
+   * Minimum number of queries per thread in batch queries.
+   */
+  private static final int MIN_BLOCK = 16;
+
+  /**
+   * Maximum number of k-means iterations for partitioning.
+   */
+  private static final int KMEANS_MAXITER = 20;
+
+  /**
+   * Partitioning strategies.
+   *
+   * @author Erich Schubert
+   */
+  public enum Partitioning {
+    /**
+     * Random partitions of equal size.
+     */
+    RANDOM,
+    /**
+     * Partitions of equal size along a space-filling curve.
+     */
+    SPACEFILLING,
+    /**
+     * Partitions obtained by k-means clustering.
+     */
+    KMEANS
+  }
+
+  /**
+   * The representation we are bound to.
+   */
+  protected final Relation<O> relation;
+
+  /**
+   * Index factory for the shards.
+   */
+  protected final IndexFactory<O> factory;
+
+  /**
+   * Number of shards.
+   */
+  protected final int numshards;
+
+  /**
+   * Partitioning strategy.
+   */
+  protected final Partitioning partitioning;
+
+  /**
+   * Spatial sorter, for space-filling curve partitioning.
+   */
+  protected final SpatialSorter sorter;
+
+  /**
+   * Random generator.
+   */
+  protected final RandomFactory rnd;
+
+  /**
+   * Shard relations.
+   */
+  protected List<Relation<O>> shards;
+
+  /**
+   * Shard indexes.
+   */
+  protected Index[] indexes;
+
+  /**
+   * Bounding boxes of the shards, for vector data only.
+   */
+  protected ModifiableHyperBoundingBox[] bounds;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param factory Index factory for the shards
+   * @param numshards Number of shards
+   * @param partitioning Partitioning strategy
+   * @param sorter Spatial sorter, for space-filling curve partitioning
+   * @param rnd Random generator
+   */
+  public ShardedIndex(Relation<O> relation, IndexFactory<O> factory, int numshards, Partitioning partitioning, SpatialSorter sorter, RandomFactory rnd) {
+    super();
+    this.relation = relation;
+    this.factory = factory;
+    this.numshards = numshards;
+    this.partitioning = partitioning;
+    this.sorter = sorter;
+    this.rnd = rnd;
+  }
+
+  @Override
+  public void initialize() {
+    final boolean vectors = TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(relation.getDataTypeInformation()) //
+        || TypeUtil.NUMBER_VECTOR_VARIABLE_LENGTH.isAssignableFromType(relation.getDataTypeInformation());
+    if(partitioning != Partitioning.RANDOM && !vectors) {
+      throw new IllegalArgumentException("Partitioning " + partitioning + " is only supported for vector data.");
+    }
+    List<? extends DBIDs> parts = partitioning == Partitioning.KMEANS ? partitionKMeans() : //
+        partitioning == Partitioning.SPACEFILLING ? partitionSpaceFilling() : partitionRandom();
+    final int n = parts.size();
+    shards = new ArrayList<>(n);
+    indexes = new Index[n];
+    bounds = vectors ? new ModifiableHyperBoundingBox[n] : null;
+    for(int i = 0; i < n; i++) {
+      shards.add(new ProxyView<>(parts.get(i), relation));
+    }
+    ParallelExecutor.run(0, n, 1, (start, end) -> {
+      for(int i = start; i < end; i++) {
+        Index index = factory.instantiate(shards.get(i));
+        index.initialize();
+        indexes[i] = index;
+        if(bounds != null) {
+          bounds[i] = boundingBox(shards.get(i));
+        }
+      }
+    });
+  }
+
+  /**
+   * Compute the bounding box of a shard.
+   *
+   * @param shard Shard relation
+   * @return Bounding box
+   */
+  private static ModifiableHyperBoundingBox boundingBox(Relation<?> shard) {
+    DBIDIter it = shard.iterDBIDs();
+    ModifiableHyperBoundingBox mbr = new ModifiableHyperBoundingBox((SpatialComparable) shard.get(it));
+    for(it.advance(); it.valid(); it.advance()) {
+      mbr.extend((SpatialComparable) shard.get(it));
+    }
+    return mbr;
+  }
+
+  /**
+   * Random partitions of equal size.
+   *
+   * @return Partitions
+   */
+  private List<ArrayDBIDs> partitionRandom() {
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(relation.getDBIDs());
+    DBIDUtil.randomShuffle(ids, rnd);
+    return split(ids);
+  }
+
+  /**
+   * Partitions of equal size along a space-filling curve.
+   *
+   * @return Partitions
+   */
+  private List<ArrayDBIDs> partitionSpaceFilling() {
+    List<SpatialRef> objs = new ArrayList<>(relation.size());
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      objs.add(new SpatialRef(DBIDUtil.deref(it), (NumberVector) relation.get(it)));
+    }
+    sorter.sort(objs, 0, objs.size(), SpatialSorter.computeMinMax(objs), null);
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(objs.size());
+    for(SpatialRef obj : objs) {
+      ids.add(obj.id);
+    }
+    return split(ids);
+  }
+
+  /**
+   * Split into contiguous partitions of equal size.
+   *
+   * @param ids Ordered object ids
+   * @return Partitions
+   */
+  private List<ArrayDBIDs> split(ArrayDBIDs ids) {
+    final int size = ids.size(), n = Math.max(1, Math.min(numshards, size));
+    List<ArrayDBIDs> parts = new ArrayList<>(n);
+    for(int i = 0; i < n; i++) {
+      parts.add(DBIDUtil.newArray(ids.slice((int) (i * (long) size / n), (int) ((i + 1) * (long) size / n))));
+    }
+    return parts;
+  }
+
+  /**
+   * Partitions obtained by k-means clustering.
+   *
+   * @return Partitions
+   */
+  @SuppressWarnings("unchecked")
+  private List<DBIDs> partitionKMeans() {
+    final int k = Math.max(1, Math.min(numshards, relation.size()));
+    List<Cluster<KMeansModel>> clusters = new LloydKMeans<NumberVector>(SquaredEuclideanDistance.STATIC, k, KMEANS_MAXITER, new KMeansPlusPlus<>(rnd)) //
+        .run((Relation<NumberVector>) relation).getAllClusters();
+    List<DBIDs> parts = new ArrayList<>(clusters.size());
+    for(Cluster<KMeansModel> c : clusters) {
+      if(c.size() > 0) {
+        parts.add(c.getIDs());
+      }
+    }
+    return parts;
+  }
+
+  @Override
+  public void logStatistics() {
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".shards", shards.size()));
+    for(Index index : indexes) {
+      index.logStatistics();
+    }
+  }
+
+  /**
+   * Get a spatial distance for shard pruning.
+   *
+   * @param df Distance function
+   * @return Spatial distance, or {@code null}
+   */
+  private SpatialPrimitiveDistance<?> spatialDistance(Distance<? super O> df) {
+    return bounds != null && df instanceof SpatialPrimitiveDistance ? (SpatialPrimitiveDistance<?>) df : null;
+  }
+
+  @Override
+  public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    final Distance<? super O> df = distanceQuery.getDistance();
+    List<KNNSearcher<O>> searchers = new ArrayList<>(shards.size());
+    for(int i = 0; i < indexes.length; i++) {
+      if(!(indexes[i] instanceof KNNIndex)) {
+        return null;
+      }
+      // Safe, the index was built by our factory on a relation of type O.
+      @SuppressWarnings("unchecked")
+      final KNNIndex<O> index = (KNNIndex<O>) indexes[i];
+      KNNSearcher<O> searcher = index.kNNByObject(df.instantiate(shards.get(i)), maxk, flags);
+      if(searcher == null) {
+        return null;
+      }
+      searchers.add(searcher);
+    }
+    return new ShardedKNNSearcher(searchers, spatialDistance(df));
+  }
+
+  @Override
+  public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    final Distance<? super O> df = distanceQuery.getDistance();
+    List<RangeSearcher<O>> searchers = new ArrayList<>(shards.size());
+    for(int i = 0; i < indexes.length; i++) {
+      if(!(indexes[i] instanceof RangeIndex)) {
+        return null;
+      }
+      // Safe, the index was built by our factory on a relation of type O.
+      @SuppressWarnings("unchecked")
+      final RangeIndex<O> index = (RangeIndex<O>) indexes[i];
+      RangeSearcher<O> searcher = index.rangeByObject(df.instantiate(shards.get(i)), maxrange, flags);
+      if(searcher == null) {
+        return null;
+      }
+      searchers.add(searcher);
+    }
+    return new ShardedRangeSearcher(searchers, spatialDistance(df));
+  }
+
+  /**
+   * Find the k nearest neighbors of many objects, in parallel.
+   *
+   * @param distanceQuery Distance query
+   * @param queries Query objects
+   * @param k Number of neighbors
+   * @return Nearest neighbors of all query objects
+   */
+  public WritableDataStore<KNNList> kNNBatch(DistanceQuery<O> distanceQuery, DBIDs queries, int k) {
+    if(kNNByObject(distanceQuery, k, 0) == null) {
+      throw new IllegalArgumentException("Distance not supported by the shard indexes: " + distanceQuery.getDistance());
+    }
+    final ArrayDBIDs aids = DBIDUtil.ensureArray(queries);
+    final KNNList[] results = new KNNList[aids.size()];
+    ParallelExecutor.run(0, results.length, MIN_BLOCK, (start, end) -> {
+      KNNSearcher<O> searcher = kNNByObject(distanceQuery, k, 0);
+      for(DBIDArrayIter it = aids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        results[it.getOffset()] = searcher.getKNN(relation.get(it), k);
+      }
+    });
+    WritableDataStore<KNNList> store = DataStoreUtil.makeStorage(aids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, KNNList.class);
+    for(DBIDArrayIter it = aids.iter(); it.valid(); it.advance()) {
+      store.put(it, results[it.getOffset()]);
+    }
+    return store;
+  }
+
+  /**
+   * Find the range neighbors of many objects, in parallel.
+   *
+   * @param distanceQuery Distance query
+   * @param queries Query objects
+   * @param range Query radius
+   * @return Neighbors of all query objects, unsorted
+   */
+  public WritableDataStore<DoubleDBIDList> rangeBatch(DistanceQuery<O> distanceQuery, DBIDs queries, double range) {
+    if(rangeByObject(distanceQuery, range, 0) == null) {
+      throw new IllegalArgumentException("Distance not supported by the shard indexes: " + distanceQuery.getDistance());
+    }
+    final ArrayDBIDs aids = DBIDUtil.ensureArray(queries);
+    final DoubleDBIDList[] results = new DoubleDBIDList[aids.size()];
+    ParallelExecutor.run(0, results.length, MIN_BLOCK, (start, end) -> {
+      RangeSearcher<O> searcher = rangeByObject(distanceQuery, range, 0);
+      for(DBIDArrayIter it = aids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        results[it.getOffset()] = searcher.getRange(relation.get(it), range);
+      }
+    });
+    WritableDataStore<DoubleDBIDList> store = DataStoreUtil.makeStorage(aids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, DoubleDBIDList.class);
+    for(DBIDArrayIter it = aids.iter(); it.valid(); it.advance()) {
+      store.put(it, results[it.getOffset()]);
+    }
+    return store;
+  }
+
+  /**
+   * Object reference for sorting along a space-filling curve.
+   *
+   * @author Erich Schubert
+   */
+  private static class SpatialRef implements SpatialComparable {
+    /**
+     * Object id.
+     */
+    DBID id;
+
+    /**
+     * Vector.
+     */
+    NumberVector vec;
+
+    /**
+     * Constructor.
+     *
+     * @param id Object id
+     * @param vec Vector
+     */
+    SpatialRef(DBID id, NumberVector vec) {
+      this.id = id;
+      this.vec = vec;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return vec.getDimensionality();
+    }
+
+    @Override
+    public double getMin(int dimension) {
+      return vec.getMin(dimension);
+    }
+
+    @Override
+    public double getMax(int dimension) {
+      return vec.getMax(dimension);
+    }
+  }
+
+  /**
+   * Base class for the searchers, ordering the shards by their minimum
+   * distance.
+   *
+   * @author Erich Schubert
+   */
+  private abstract class AbstractSearcher {
+    /**
+     * Spatial distance for pruning, may be {@code null}.
+     */
+    private final SpatialPrimitiveDistance<?> spatial;
+
+    /**
+     * Minimum distances of the shards.
+     */
+    protected final double[] mindist;
+
+    /**
+     * Shard order.
+     */
+    protected final int[] order;
+
+    /**
+     * Constructor.
+     *
+     * @param spatial Spatial distance for pruning, may be {@code null}
+     */
+    protected AbstractSearcher(SpatialPrimitiveDistance<?> spatial) {
+      this.spatial = spatial;
+      this.mindist = new double[shards.size()];
+      this.order = new int[shards.size()];
+    }
+
+    /**
+     * Order the shards by their minimum distance to the query.
+     *
+     * @param obj Query object
+     */
+    protected void orderShards(O obj) {
+      final boolean prune = spatial != null && obj instanceof SpatialComparable;
+      for(int i = 0; i < order.length; i++) {
+        mindist[i] = prune ? spatial.minDist(bounds[i], (SpatialComparable) obj) : 0.;
+        order[i] = i;
+      }
+      if(prune) {
+        DoubleIntegerArrayQuickSort.sort(mindist, order, order.length);
+      }
+    }
+  }
+
+  /**
+   * kNN searcher, merging the results of the shards.
+   *
+   * @author Erich Schubert
+   */
+  public class ShardedKNNSearcher extends AbstractSearcher implements KNNSearcher<O> {
+    /**
+     * Searchers of the shards.
+     */
+    private final List<KNNSearcher<O>> searchers;
+
+    /**
+     * Constructor.
+     *
+     * @param searchers Searchers of the shards
+     * @param spatial Spatial distance for pruning, may be {@code null}
+     */
+    public ShardedKNNSearcher(List<KNNSearcher<O>> searchers, SpatialPrimitiveDistance<?> spatial) {
+      super(spatial);
+      this.searchers = searchers;
+    }
+
+    @Override
+    public KNNList getKNN(O obj, int k) {
+      orderShards(obj);
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      for(int j = 0; j < order.length; j++) {
+        if(mindist[j] > heap.getKNNDistance()) {
+          break; // Shards are sorted by minimum distance.
+        }
+        for(DoubleDBIDListIter it = searchers.get(order[j]).getKNN(obj, k).iter(); it.valid(); it.advance()) {
+          heap.insert(it.doubleValue(), it);
+        }
+      }
+      return heap.toKNNList();
+    }
+  }
+
+  /**
+   * Range searcher, merging the results of the shards.
+   *
+   * @author Erich Schubert
+   */
+  public class ShardedRangeSearcher extends AbstractSearcher implements RangeSearcher<O> {
+    /**
+     * Searchers of the shards.
+     */
+    private final List<RangeSearcher<O>> searchers;
+
+    /**
+     * Constructor.
+     *
+     * @param searchers Searchers of the shards
+     * @param spatial Spatial distance for pruning, may be {@code null}
+     */
+    public ShardedRangeSearcher(List<RangeSearcher<O>> searchers, SpatialPrimitiveDistance<?> spatial) {
+      super(spatial);
+      this.searchers = searchers;
+    }
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(O obj, double range, ModifiableDoubleDBIDList result) {
+      orderShards(obj);
+      for(int j = 0; j < order.length; j++) {
+        if(mindist[j] > range) {
+          break; // Shards are sorted by minimum distance.
+        }
+        searchers.get(order[j]).getRange(obj, range, result);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @has - - - ShardedIndex
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> implements IndexFactory<O> {
+    /**
+     * Index factory for the shards.
+     */
+    protected final IndexFactory<O> factory;
+
+    /**
+     * Number of shards.
+     */
+    protected final int numshards;
+
+    /**
+     * Partitioning strategy.
+     */
+    protected final Partitioning partitioning;
+
+    /**
+     * Spatial sorter, for space-filling curve partitioning.
+     */
+    protected final SpatialSorter sorter;
+
+    /**
+     * Random generator.
+     */
+    protected final RandomFactory rnd;
+
+    /**
+     * Constructor.
+     *
+     * @param factory Index factory for the shards
+     * @param numshards Number of shards
+     * @param partitioning Partitioning strategy
+     * @param sorter Spatial sorter, for space-filling curve partitioning
+     * @param rnd Random generator
+     */
+    public Factory(IndexFactory<O> factory, int numshards, Partitioning partitioning, SpatialSorter sorter, RandomFactory rnd) {
+      super();
+      this.factory = factory;
+      this.numshards = numshards;
+      this.partitioning = partitioning;
+      this.sorter = sorter;
+      this.rnd = rnd;
+    }
+
+    @Override
+    public ShardedIndex<O> instantiate(Relation<O> relation) {
+      return new ShardedIndex<>(relation, factory, numshards, partitioning, sorter, rnd);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return factory.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @hidden
+     *
+     * @param <O> Object type
+     */
+    public static class Par<O> implements Parameterizer {
+      /**
+       * Index factory for the shards.
+       */
+      public static final OptionID INDEX_ID = new OptionID("sharded.index", "Index to build for each shard.");
+
+      /**
+       * Number of shards.
+       */
+      public static final OptionID SHARDS_ID = new OptionID("sharded.shards", "Number of shards to partition the data into.");
+
+      /**
+       * Partitioning strategy.
+       */
+      public static final OptionID PARTITIONING_ID = new OptionID("sharded.partitioning", "Strategy to partition the data into shards.");
+
+      /**
+       * Spatial sorter.
+       */
+      public static final OptionID SORTER_ID = new OptionID("sharded.sorter", "Space-filling curve for partitioning the data.");
+
+      /**
+       * Random seed.
+       */
+      public static final OptionID SEED_ID = new OptionID("sharded.seed", "Random seed for partitioning.");
+
+      /**
+       * Index factory for the shards.
+       */
+      protected IndexFactory<O> factory;
+
+      /**
+       * Number of shards.
+       */
+      protected int numshards;
+
+      /**
+       * Partitioning strategy.
+       */
+      protected Partitioning partitioning;
+
+      /**
+       * Spatial sorter, for space-filling curve partitioning.
+       */
+      protected SpatialSorter sorter;
+
+      /**
+       * Random generator.
+       */
+      protected RandomFactory rnd;
+
+      @Override
+      public void configure(Parameterization config) {
+        new ObjectParameter<IndexFactory<O>>(INDEX_ID, IndexFactory.class) //
+            .grab(config, x -> factory = x);
+        new IntParameter(SHARDS_ID, ParallelCore.ALL_PROCESSORS) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> numshards = x);
+        new EnumParameter<Partitioning>(PARTITIONING_ID, Partitioning.class, Partitioning.RANDOM) //
+            .grab(config, x -> partitioning = x);
+        if(partitioning == Partitioning.SPACEFILLING) {
+          new ObjectParameter<SpatialSorter>(SORTER_ID, SpatialSorter.class, HilbertSpatialSorter.class) //
+              .grab(config, x -> sorter = x);
+        }
+        new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+      }
+
+      @Override
+      public Factory<O> make() {
+        return new Factory<>(factory, numshards, partitioning, sorter, rnd);
+      }
+    }
+  }
+}
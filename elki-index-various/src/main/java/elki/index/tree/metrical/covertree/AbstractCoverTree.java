@@ -20,16 +20,26 @@
  */
 package elki.index.tree.metrical.covertree;
 
+import java.util.concurrent.atomic.LongAdder;
+
 import elki.data.type.TypeInformation;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
 import elki.database.ids.*;
 import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
 import elki.database.relation.Relation;
 import elki.distance.Distance;
 import elki.index.Index;
 import elki.index.IndexFactory;
 import elki.logging.Logging;
 import elki.logging.LoggingUtil;
+import elki.logging.statistics.DoubleStatistic;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -42,6 +52,15 @@ import net.jafama.FastMath;
 
 /**
  * Abstract base class for cover tree variants.
+ * <p>
+ * After construction, the trees are stored in a compact read-only layout:
+ * nodes are numbered in breadth-first order, such that the children of each
+ * node are consecutive, and all node properties are stored in primitive
+ * arrays. Objects are referenced by their offset in {@link #ids}.
+ * <p>
+ * Searchers keep all their state locally, so multiple searchers can be used
+ * concurrently. The batch query methods use this to answer many queries in
+ * parallel.
  * 
  * @author Erich Schubert
  * @since 0.7.0
@@ -49,6 +68,11 @@ import net.jafama.FastMath;
  * @param <O> Object type
  */
 public abstract class AbstractCoverTree<O> implements Index {
+  /**
+   * Minimum number of queries per thread in batch queries.
+   */
+  private static final int MIN_BLOCK = 64;
+
   /**
    * The representation we are bound to.
    */
@@ -84,7 +108,38 @@ public abstract class AbstractCoverTree<O> implements Index {
   /**
    * Distance computations performed.
    */
-  protected long distComputations = 0L;
+  private final LongAdder distComputations = new LongAdder();
+
+  /**
+   * Object ids, defining the offsets used in the compact layout.
+   */
+  protected ArrayDBIDs ids;
+
+  /**
+   * Routing object (offset) of each node, {@code null} if empty.
+   */
+  protected int[] routing;
+
+  /**
+   * Maximum distance of each node to any descendant.
+   */
+  protected double[] maxDist;
+
+  /**
+   * Start of the children of each node (size nodes+1).
+   */
+  protected int[] childStart;
+
+  /**
+   * Start of the entries of each node (size nodes+1), except for the routing
+   * object.
+   */
+  protected int[] entryStart;
+
+  /**
+   * Entry object offsets.
+   */
+  protected int[] entries;
 
   /**
    * Stop refining the tree at this size, but build a leaf.
@@ -153,7 +208,7 @@ public abstract class AbstractCoverTree<O> implements Index {
    * @return Distance
    */
   protected double distance(DBIDRef a, DBIDRef b) {
-    ++distComputations;
+    distComputations.increment();
     return distanceQuery.distance(a, b);
   }
 
@@ -165,7 +220,7 @@ public abstract class AbstractCoverTree<O> implements Index {
    * @return Distance
    */
   protected double distance(O a, DBIDRef b) {
-    ++distComputations;
+    distComputations.increment();
     return distanceQuery.distance(a, b);
   }
 
@@ -212,9 +267,163 @@ public abstract class AbstractCoverTree<O> implements Index {
     }
   }
 
+  /**
+   * Map object ids to their offsets in {@link #ids}, to build the compact
+   * layout.
+   * 
+   * @return Offsets, to be destroyed after use
+   */
+  protected WritableIntegerDataStore computeOffsets() {
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+    return offsets;
+  }
+
+  /**
+   * Log some statistics on the tree structure.
+   */
+  protected void logTreeStatistics() {
+    final int nodes = routing != null ? routing.length : 0;
+    int[] depth = new int[nodes];
+    long sumDepth = 0, singletons = 0, numEntries = 0;
+    int maxDepth = 0;
+    for(int n = 0; n < nodes; n++) {
+      final int d = depth[n], cs = childStart[n], ce = childStart[n + 1];
+      for(int c = cs; c < ce; c++) {
+        depth[c] = d + 1;
+      }
+      sumDepth += d;
+      maxDepth = d > maxDepth ? d : maxDepth;
+      final int e = entryStart[n + 1] - entryStart[n];
+      singletons += e;
+      numEntries += cs == ce ? e + 1 : e;
+    }
+    final Logging log = getLogger();
+    log.statistics(new LongStatistic(this.getClass().getName() + ".nodes", nodes));
+    log.statistics(new DoubleStatistic(this.getClass().getName() + ".avg-depth", sumDepth / (double) nodes));
+    log.statistics(new LongStatistic(this.getClass().getName() + ".max-depth", maxDepth));
+    log.statistics(new LongStatistic(this.getClass().getName() + ".singletons", singletons));
+    log.statistics(new LongStatistic(this.getClass().getName() + ".entries", numEntries));
+  }
+
+  /**
+   * Get a new kNN searcher, for use by a single thread.
+   * 
+   * @return kNN searcher
+   */
+  protected abstract KNNSearcher<DBIDRef> newKNNSearcher();
+
+  /**
+   * Get a new range searcher, for use by a single thread.
+   * 
+   * @return Range searcher
+   */
+  protected abstract RangeSearcher<DBIDRef> newRangeSearcher();
+
+  /**
+   * Find the k nearest neighbors of many objects, in parallel.
+   * 
+   * @param queries Query objects
+   * @param k Number of neighbors
+   * @return kNN lists of all query objects
+   */
+  public WritableDataStore<KNNList> kNNBatch(DBIDs queries, int k) {
+    final ArrayDBIDs aids = DBIDUtil.ensureArray(queries);
+    final KNNList[] results = new KNNList[aids.size()];
+    ParallelExecutor.run(0, results.length, MIN_BLOCK, (start, end) -> {
+      KNNSearcher<DBIDRef> searcher = newKNNSearcher();
+      for(DBIDArrayIter it = aids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        results[it.getOffset()] = searcher.getKNN(it, k);
+      }
+    });
+    WritableDataStore<KNNList> store = DataStoreUtil.makeStorage(aids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, KNNList.class);
+    for(DBIDArrayIter it = aids.iter(); it.valid(); it.advance()) {
+      store.put(it, results[it.getOffset()]);
+    }
+    return store;
+  }
+
+  /**
+   * Find the range neighbors of many objects, in parallel.
+   * 
+   * @param queries Query objects
+   * @param range Query radius
+   * @return Neighbors of all query objects, unsorted
+   */
+  public WritableDataStore<DoubleDBIDList> rangeBatch(DBIDs queries, double range) {
+    final ArrayDBIDs aids = DBIDUtil.ensureArray(queries);
+    final DoubleDBIDList[] results = new DoubleDBIDList[aids.size()];
+    ParallelExecutor.run(0, results.length, MIN_BLOCK, (start, end) -> {
+      RangeSearcher<DBIDRef> searcher = newRangeSearcher();
+      for(DBIDArrayIter it = aids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        results[it.getOffset()] = searcher.getRange(it, range);
+      }
+    });
+    WritableDataStore<DoubleDBIDList> store = DataStoreUtil.makeStorage(aids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, DoubleDBIDList.class);
+    for(DBIDArrayIter it = aids.iter(); it.valid(); it.advance()) {
+      store.put(it, results[it.getOffset()]);
+    }
+    return store;
+  }
+
   @Override
   public void logStatistics() {
-    getLogger().statistics(new LongStatistic(this.getClass().getName() + ".distance-computations", distComputations));
+    getLogger().statistics(new LongStatistic(this.getClass().getName() + ".distance-computations", distComputations.sum()));
+  }
+
+  /**
+   * Base class for searchers, which counts distance computations locally, so
+   * that searchers can be used concurrently.
+   * 
+   * @author Erich Schubert
+   */
+  public abstract class CoverTreeSearcher {
+    /**
+     * Iterator for accessing objects by offset.
+     */
+    protected final DBIDArrayIter it = ids != null ? ids.iter() : EmptyDBIDs.EMPTY_ITERATOR;
+
+    /**
+     * Distance computations not yet added to the statistics.
+     */
+    private long distances;
+
+    /**
+     * Compute a distance (and count).
+     * 
+     * @param a Object reference
+     * @param b Object reference
+     * @return Distance
+     */
+    protected double distance(DBIDRef a, DBIDRef b) {
+      ++distances;
+      return distanceQuery.distance(a, b);
+    }
+
+    /**
+     * Compute a distance (and count).
+     * 
+     * @param a Object
+     * @param b Object reference
+     * @return Distance
+     */
+    protected double distance(O a, DBIDRef b) {
+      ++distances;
+      return distanceQuery.distance(a, b);
+    }
+
+    /**
+     * Add the distance computations to the statistics of the tree.
+     */
+    protected void flushStatistics() {
+      if(distances > 0) {
+        distComputations.add(distances);
+        distances = 0;
+      }
+    }
   }
 
   /**
@@ -21,9 +21,12 @@
 package elki.index.tree.metrical.covertree;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import elki.database.datastore.IntegerDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
 import elki.database.ids.*;
 import elki.database.query.PrioritySearcher;
 import elki.database.query.distance.DistanceQuery;
@@ -33,10 +36,8 @@ import elki.database.relation.Relation;
 import elki.distance.Distance;
 import elki.index.DistancePriorityIndex;
 import elki.logging.Logging;
-import elki.logging.statistics.DoubleStatistic;
-import elki.logging.statistics.LongStatistic;
 import elki.math.MathUtil;
-import elki.utilities.datastructures.heap.DoubleObjectMinHeap;
+import elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
 
 /**
  * Simplified cover tree data structure (in-memory). This is a <i>metrical</i>
@@ -68,11 +69,6 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
    */
   private static final Logging LOG = Logging.getLogger(SimplifiedCoverTree.class);
 
-  /**
-   * Tree root.
-   */
-  private Node root = null;
-
   /**
    * Constructor.
    *
@@ -140,13 +136,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
   public void initialize() {
     bulkLoad(relation.getDBIDs());
     if(LOG.isVerbose()) {
-      int[] counts = new int[5];
-      checkCoverTree(root, counts, 0);
-      LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", counts[0]));
-      LOG.statistics(new DoubleStatistic(this.getClass().getName() + ".avg-depth", counts[1] / (double) counts[0]));
-      LOG.statistics(new LongStatistic(this.getClass().getName() + ".max-depth", counts[2]));
-      LOG.statistics(new LongStatistic(this.getClass().getName() + ".singletons", counts[3]));
-      LOG.statistics(new LongStatistic(this.getClass().getName() + ".entries", counts[4]));
+      logTreeStatistics();
     }
   }
 
@@ -156,18 +146,19 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
    * @param ids IDs to load
    */
   public void bulkLoad(DBIDs ids) {
-    if(ids.isEmpty()) {
-      return;
-    }
-    assert root == null : "Tree already initialized.";
-    DBIDIter it = ids.iter();
-    DBID first = DBIDUtil.deref(it);
-    // Compute distances to all neighbors:
-    ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList(ids.size() - 1);
-    for(it.advance(); it.valid(); it.advance()) {
-      candidates.add(distance(first, it), it);
-    }
-    root = bulkConstruct(first, Integer.MAX_VALUE, candidates);
+    assert routing == null : "Tree already initialized.";
+    WritableIntegerDataStore offsets = computeOffsets();
+    if(!ids.isEmpty()) {
+      DBIDIter it = ids.iter();
+      DBID first = DBIDUtil.deref(it);
+      // Compute distances to all neighbors:
+      ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList(ids.size() - 1);
+      for(it.advance(); it.valid(); it.advance()) {
+        candidates.add(distance(first, it), it);
+      }
+      compact(bulkConstruct(first, Integer.MAX_VALUE, candidates), offsets);
+    }
+    offsets.destroy();
   }
 
   /**
@@ -232,24 +223,43 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
   }
 
   /**
-   * Collect some statistics on the tree.
+   * Convert the tree into the compact layout.
    *
-   * @param cur Current node
-   * @param counts Counter set
-   * @param depth Current depth
+   * @param root Root node
+   * @param offsets Object offsets
    */
-  private void checkCoverTree(Node cur, int[] counts, int depth) {
-    counts[0] += 1; // Node count
-    counts[1] += depth; // Sum of depth
-    counts[2] = depth > counts[2] ? depth : counts[2]; // Max depth
-    counts[3] += cur.singletons.size() - 1;
-    counts[4] += cur.singletons.size() - (cur.children.isEmpty() ? 0 : 1);
-    if(!cur.children.isEmpty()) {
-      ++depth;
-      for(Node chi : cur.children) {
-        checkCoverTree(chi, counts, depth);
+  private void compact(Node root, IntegerDataStore offsets) {
+    // Breadth-first order, so the children of each node are consecutive.
+    List<Node> order = new ArrayList<>();
+    order.add(root);
+    int numEntries = 0;
+    for(int i = 0; i < order.size(); i++) {
+      final Node n = order.get(i);
+      order.addAll(n.children);
+      numEntries += n.singletons.size() - 1;
+    }
+    final int size = order.size();
+    routing = new int[size];
+    maxDist = new double[size];
+    childStart = new int[size + 1];
+    entryStart = new int[size + 1];
+    entries = new int[numEntries];
+    int c = 1, e = 0;
+    for(int i = 0; i < size; i++) {
+      final Node n = order.get(i);
+      order.set(i, null); // Allow early garbage collection
+      DBIDIter it = n.singletons.iter();
+      routing[i] = offsets.intValue(it);
+      maxDist[i] = n.maxDist;
+      childStart[i] = c;
+      c += n.children.size();
+      entryStart[i] = e;
+      for(it.advance(); it.valid(); it.advance()) {
+        entries[e++] = offsets.intValue(it);
       }
     }
+    childStart[size] = c;
+    entryStart[size] = e;
   }
 
   @Override
@@ -288,6 +298,16 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
         new CoverTreePriorityDBIDSearcher() : null;
   }
 
+  @Override
+  protected KNNSearcher<DBIDRef> newKNNSearcher() {
+    return new CoverTreeKNNDBIDSearcher();
+  }
+
+  @Override
+  protected RangeSearcher<DBIDRef> newRangeSearcher() {
+    return new CoverTreeRangeDBIDSearcher();
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -298,16 +318,11 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
    *
    * @author Erich Schubert
    */
-  public abstract class CoverTreeRangeSearcher {
+  public abstract class CoverTreeRangeSearcher extends CoverTreeSearcher {
     /**
      * LIFO stack of open nodes.
      */
-    private ArrayList<Node> open = new ArrayList<>();
-
-    /**
-     * Temporary storage.
-     */
-    private DBIDVar tmp = DBIDUtil.newVar();
+    private int[] open = new int[16];
 
     /**
      * Compute distance to query object.
@@ -325,34 +340,42 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
      * @return result
      */
     protected ModifiableDoubleDBIDList doSearch(double range, ModifiableDoubleDBIDList result) {
-      open.clear();
-      open.add(root);
-      while(!open.isEmpty()) {
-        final Node cur = open.remove(open.size() - 1); // pop()
-        final double d = queryDistance(cur.singletons.assignVar(0, tmp));
+      if(routing == null) {
+        return result;
+      }
+      int size = 0;
+      open[size++] = 0; // root
+      while(size > 0) {
+        final int cur = open[--size]; // pop()
+        final double d = queryDistance(it.seek(routing[cur]));
         // Covered area not in range (metric assumption):
-        if(d - cur.maxDist > range) {
+        if(d - maxDist[cur] > range) {
           continue;
         }
-        if(!cur.children.isEmpty()) { // Inner node:
-          for(int i = 0, l = cur.children.size(); i < l; i++) {
-            open.add(cur.children.get(i));
+        final int cs = childStart[cur], ce = childStart[cur + 1];
+        if(cs < ce) { // Inner node:
+          if(size + ce - cs > open.length) {
+            open = Arrays.copyOf(open, Math.max(open.length << 1, size + ce - cs));
+          }
+          for(int c = cs; c < ce; c++) {
+            open[size++] = c;
           }
         }
         else { // Leaf node
           // Consider routing object, too:
           if(d <= range) {
-            result.add(d, tmp); // First element is a candidate now
+            result.add(d, it); // First element is a candidate now
           }
         }
         // For remaining singletons, compute the distances:
-        for(int i = 1, l = cur.singletons.size(); i < l; i++) {
-          final double d2 = queryDistance(cur.singletons.assignVar(i, tmp));
+        for(int e = entryStart[cur], ee = entryStart[cur + 1]; e < ee; e++) {
+          final double d2 = queryDistance(it.seek(entries[e]));
           if(d2 <= range) {
-            result.add(d2, tmp);
+            result.add(d2, it);
           }
         }
       }
+      flushStatistics();
       return result;
     }
   }
@@ -408,16 +431,16 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
    *
    * @author Erich Schubert
    */
-  public abstract class CoverTreeKNNSearcher {
+  public abstract class CoverTreeKNNSearcher extends CoverTreeSearcher {
     /**
      * Priority queue of candidates.
      */
-    private DoubleObjectMinHeap<Node> pq = new DoubleObjectMinHeap<>();
+    private DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap();
 
     /**
-     * Temporary storage.
+     * Heap of results, reused if k does not change.
      */
-    private DBIDVar tmp = DBIDUtil.newVar();
+    private KNNHeap knnList;
 
     /**
      * Do the main search
@@ -426,29 +449,35 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
      * @return results
      */
     protected KNNList doSearch(int k) {
-      KNNHeap knnList = DBIDUtil.newHeap(k);
+      if(knnList == null || knnList.getK() != k) {
+        knnList = DBIDUtil.newHeap(k);
+      }
+      knnList.clear();
+      if(routing == null) {
+        return knnList.toKNNList();
+      }
       double d_k = Double.POSITIVE_INFINITY;
       pq.clear();
-      pq.add(queryDistance(root.singletons.iter()) - root.maxDist, root);
+      pq.add(queryDistance(it.seek(routing[0])) - maxDist[0], 0);
 
       // search in tree
       while(!pq.isEmpty()) {
-        final Node cur = pq.peekValue();
+        final int cur = pq.peekValue();
         final double prio = pq.peekKey(); // Minimum distance to cover
         pq.poll(); // Remove
 
         if(knnList.size() >= k && prio > d_k) {
           continue;
         }
-        final double d = prio + cur.maxDist; // Restore distance to center.
+        final double d = prio + maxDist[cur]; // Restore distance to center.
 
-        final DBIDIter it = cur.singletons.iter();
-        if(!cur.children.isEmpty()) { // Inner node:
-          for(Node c : cur.children) {
+        final int cs = childStart[cur], ce = childStart[cur + 1];
+        if(cs < ce) { // Inner node:
+          final int r = routing[cur];
+          for(int c = cs; c < ce; c++) {
             // Reuse distance if the previous routing object is the same:
-            double newprio = (DBIDUtil.equal(c.singletons.assignVar(0, tmp), it) //
-                ? d : queryDistance(tmp)) //
-                - c.maxDist; // Minimum distance
+            double newprio = (routing[c] == r ? d : queryDistance(it.seek(routing[c]))) //
+                - maxDist[c]; // Minimum distance
             if(newprio <= d_k) {
               pq.add(newprio, c);
             }
@@ -457,19 +486,18 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
         else { // Leaf node
           // Consider routing object, too:
           if(d <= d_k) {
-            d_k = knnList.insert(d, it); // First element is a candidate now
+            d_k = knnList.insert(d, it.seek(routing[cur])); // First element is a candidate now
           }
         }
-        it.advance(); // Skip routing object.
         // For remaining singletons, compute the distances:
-        while(it.valid()) {
-          final double d2 = queryDistance(it);
+        for(int e = entryStart[cur], ee = entryStart[cur + 1]; e < ee; e++) {
+          final double d2 = queryDistance(it.seek(entries[e]));
           if(d2 <= d_k) {
             d_k = knnList.insert(d2, it);
           }
-          it.advance();
         }
       }
+      flushStatistics();
       return knnList.toKNNList();
     }
 
@@ -535,26 +563,31 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
    * 
    * @param <Q> query type
    */
-  public abstract class CoverTreePrioritySearcher<Q> implements PrioritySearcher<Q> {
+  public abstract class CoverTreePrioritySearcher<Q> extends CoverTreeSearcher implements PrioritySearcher<Q> {
     /**
      * Stopping distance threshold.
      */
     double threshold = Double.POSITIVE_INFINITY;
 
     /**
-     * Temporary storage.
+     * Priority queue
      */
-    private DBIDVar tmp = DBIDUtil.newVar();
+    private DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap();
 
     /**
-     * Priority queue
+     * Current node.
+     */
+    private int cur = -1;
+
+    /**
+     * Current candidate entry, -1 for the routing object.
      */
-    private DoubleObjectMinHeap<Node> pq = new DoubleObjectMinHeap<>();
+    private int pos = 0;
 
     /**
-     * Candidates
+     * End of the entries of the current node.
      */
-    private DBIDArrayIter candidates = EmptyDBIDs.EMPTY_ITERATOR;
+    private int end = 0;
 
     /**
      * Distance to routing object.
@@ -564,7 +597,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
     /**
      * Maximum distance of current node.
      */
-    private double maxDist;
+    private double curMaxDist;
 
     /**
      * Current lower bound.
@@ -594,7 +627,10 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
     protected PrioritySearcher<Q> doSearch() {
       this.threshold = Double.POSITIVE_INFINITY;
       pq.clear();
-      pq.add(queryDistance(root.singletons.iter()) - root.maxDist, root);
+      pos = end = 0;
+      if(routing != null) {
+        pq.add(queryDistance(it.seek(routing[0])) - maxDist[0], 0);
+      }
       lb = 0;
       return advance(); // Find first
     }
@@ -613,21 +649,21 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
 
     @Override
     public boolean valid() {
-      return candidates.valid();
+      return pos < end;
     }
 
     @Override
     public PrioritySearcher<Q> advance() {
       // Advance the main iterator, if defined:
-      if(candidates.valid()) {
-        candidates.advance();
+      if(pos < end) {
+        pos = pos < 0 ? entryStart[cur] : pos + 1;
       }
       // First try the singletons
       // These aren't the best candidates usually, but we don't want to have to
       // manage them and their bounds in the heap. If we do this locally, we get
       // upper and lower bounds easily.
       do {
-        if(candidates.valid()) {
+        if(pos < end) {
           return this;
         }
       }
@@ -640,33 +676,36 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
      */
     protected boolean advanceQueue() {
       if(pq.isEmpty()) {
+        flushStatistics();
         return false;
       }
       // Poll from heap (optimized, hence key and value separate):
       final double prio = pq.peekKey(); // Minimum distance to cover
       if(prio > threshold) {
         pq.clear();
+        flushStatistics();
         return false;
       }
-      final Node cur = pq.peekValue();
+      cur = pq.peekValue();
       lb = prio > lb ? prio : lb;
-      routingDist = prio + cur.maxDist; // Restore distance to center.
-      maxDist = cur.maxDist; // Store accuracy for bounds
-      candidates = cur.singletons.iter(); // Routing object initially
+      curMaxDist = maxDist[cur]; // Store accuracy for bounds
+      routingDist = prio + curMaxDist; // Restore distance to center.
+      pos = -1; // Routing object initially
+      end = entryStart[cur + 1];
       pq.poll(); // Remove
 
       // Add child nodes to priority queue:
-      for(Node c : cur.children) {
+      final int r = routing[cur], cs = childStart[cur], ce = childStart[cur + 1];
+      for(int c = cs; c < ce; c++) {
         // Reuse distance if the previous routing object is the same:
-        double newprio = (DBIDUtil.equal(c.singletons.assignVar(0, tmp), candidates) //
-            ? routingDist : queryDistance(tmp)) //
-            - c.maxDist; // Minimum distance
+        double newprio = (routing[c] == r ? routingDist : queryDistance(it.seek(routing[c]))) //
+            - maxDist[c]; // Minimum distance
         if(newprio <= threshold) {
           pq.add(newprio, c);
         }
       }
-      if(!cur.children.isEmpty()) {
-        candidates.advance(); // Skip routing object (also in children)
+      if(cs < ce) {
+        pos = entryStart[cur]; // Skip routing object (also in children)
       }
       return true;
     }
@@ -678,27 +717,27 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O> implements Dist
 
     @Override
     public double getApproximateAccuracy() {
-      return candidates.getOffset() == 0 ? 0. : maxDist;
+      return pos < 0 ? 0. : curMaxDist;
     }
 
     @Override
     public double getLowerBound() {
-      return candidates.getOffset() == 0 ? routingDist : MathUtil.max(lb, routingDist > maxDist ? routingDist - maxDist : 0.);
+      return pos < 0 ? routingDist : MathUtil.max(lb, routingDist > curMaxDist ? routingDist - curMaxDist : 0.);
     }
 
     @Override
     public double getUpperBound() {
-      return candidates.getOffset() == 0 ? routingDist : routingDist + maxDist;
+      return pos < 0 ? routingDist : routingDist + curMaxDist;
     }
 
     @Override
     public double computeExactDistance() {
-      return candidates.getOffset() == 0 ? routingDist : queryDistance(candidates);
+      return pos < 0 ? routingDist : queryDistance(it.seek(entries[pos]));
     }
 
     @Override
     public int internalGetIndex() {
-      return candidates.internalGetIndex();
+      return it.seek(pos < 0 ? routing[cur] : entries[pos]).internalGetIndex();
     }
   }
 
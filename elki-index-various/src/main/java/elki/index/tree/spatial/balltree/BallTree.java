@@ -0,0 +1,1112 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.tree.spatial.balltree;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.ids.*;
+import elki.database.query.PrioritySearcher;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.*;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.index.DistancePriorityIndex;
+import elki.index.IndexFactory;
+import elki.logging.Logging;
+import elki.logging.statistics.Counter;
+import elki.parallel.ParallelExecutor;
+import elki.utilities.Alias;
+import elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.WrongParameterValueException;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+import net.jafama.FastMath;
+
+/**
+ * Static in-memory ball tree for Euclidean and cosine distances.
+ * <p>
+ * Every node is a ball given by the mean of its points and the maximum
+ * Euclidean distance to the mean. Inner nodes are split at the median of the
+ * projection onto the line between two far apart points, which adapts better
+ * to data with a moderately high number of dimensions (say, 20 to 100) than
+ * the axis-parallel splits of a k-d-tree.
+ * <p>
+ * The coordinates are copied into a contiguous array in leaf order, and the
+ * nodes are stored in pre-order in primitive arrays. Because the tree is
+ * balanced by construction, the layout only depends on the data set size, and
+ * all nodes of a level can be built in parallel.
+ * <p>
+ * For cosine distances, the tree is built on the normalized vectors, where
+ * the squared Euclidean distance is twice the cosine distance. Because
+ * {@link CosineDistance} and {@link ArcCosineDistance} use the absolute value
+ * of the cosine, a point may also be close to the mirrored query -q, and the
+ * bounds then use the smaller of the two distances.
+ * <p>
+ * Reference:
+ * <p>
+ * S. M. Omohundro<br>
+ * Five Balltree Construction Algorithms<br>
+ * International Computer Science Institute, Technical Report TR-89-063
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - BallTreeKNNSearcher
+ * @has - - - BallTreeRangeSearcher
+ * @has - - - BallTreePrioritySearcher
+ *
+ * @param <O> Vector type
+ */
+@Reference(authors = "S. M. Omohundro", //
+    title = "Five Balltree Construction Algorithms", //
+    booktitle = "International Computer Science Institute, Technical Report TR-89-063", //
+    url = "http://www.icsi.berkeley.edu/ftp/global/pub/techreports/1989/tr-89-063.pdf", //
+    bibkey = "tr/icsi/Omohundro89")
+public class BallTree<O extends NumberVector> implements DistancePriorityIndex<O> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(BallTree.class);
+
+  /**
+   * Squared Euclidean distance.
+   */
+  private static final int SQUARED = 0;
+
+  /**
+   * Euclidean distance.
+   */
+  private static final int EUCLIDEAN = 1;
+
+  /**
+   * Cosine distance of unit length vectors.
+   */
+  private static final int COSINE = 2;
+
+  /**
+   * Arc cosine distance of unit length vectors.
+   */
+  private static final int ARCCOSINE = 3;
+
+  /**
+   * Cosine distance, using the absolute value of the cosine.
+   */
+  private static final int ABS_COSINE = 4;
+
+  /**
+   * Arc cosine distance, using the absolute value of the cosine.
+   */
+  private static final int ABS_ARCCOSINE = 5;
+
+  /**
+   * Maximum length of a Java array.
+   */
+  private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  /**
+   * Default leaf size, used by the query optimizer.
+   */
+  public static final int DEFAULT_LEAFSIZE = 16;
+
+  /**
+   * The representation we are bound to.
+   */
+  protected final Relation<O> relation;
+
+  /**
+   * Distance function determining the geometry.
+   */
+  protected final Distance<? super O> distance;
+
+  /**
+   * Build on normalized vectors.
+   */
+  protected final boolean normalize;
+
+  /**
+   * Maximum size of leaf nodes.
+   */
+  protected final int leafsize;
+
+  /**
+   * Object ids, in leaf order.
+   */
+  protected ArrayModifiableDBIDs sorted = null;
+
+  /**
+   * Coordinates, in leaf order (row-major).
+   */
+  protected double[] data;
+
+  /**
+   * The number of dimensions.
+   */
+  protected int dims = -1;
+
+  /**
+   * Number of nodes.
+   */
+  protected int numnodes = 0;
+
+  /**
+   * First object of each node.
+   */
+  protected int[] nodeStart;
+
+  /**
+   * End (exclusive) of the objects of each node.
+   */
+  protected int[] nodeEnd;
+
+  /**
+   * Offset of the right child. The left child is the next node.
+   */
+  protected int[] rightChild;
+
+  /**
+   * Ball centers (row-major).
+   */
+  protected double[] centers;
+
+  /**
+   * Ball radii.
+   */
+  protected double[] radius;
+
+  /**
+   * Counter for distance computations.
+   */
+  protected final Counter distcalc;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distance Distance function
+   * @param leafsize Maximum size of leaf nodes
+   */
+  public BallTree(Relation<O> relation, Distance<? super O> distance, int leafsize) {
+    this.relation = relation;
+    this.distance = distance;
+    this.leafsize = leafsize;
+    final int kind = distanceKind(distance);
+    if(kind < 0) {
+      throw new IllegalArgumentException("The ball tree only supports Euclidean and cosine distances.");
+    }
+    this.normalize = kind >= COSINE;
+    assert (leafsize >= 1);
+    this.distcalc = LOG.isStatistics() ? LOG.newCounter(this.getClass().getName() + ".distancecalcs") : null;
+  }
+
+  /**
+   * Constructor with default leaf size.
+   *
+   * @param relation Relation to index
+   * @param distance Distance function
+   */
+  public BallTree(Relation<O> relation, Distance<? super O> distance) {
+    this(relation, distance, DEFAULT_LEAFSIZE);
+  }
+
+  /**
+   * Get the kind of a distance function.
+   *
+   * @param df Distance function
+   * @return Kind, or -1 if not supported
+   */
+  private static int distanceKind(Distance<?> df) {
+    return df instanceof SquaredEuclideanDistance ? SQUARED : //
+        df instanceof EuclideanDistance ? EUCLIDEAN : //
+            df instanceof CosineUnitlengthDistance ? COSINE : //
+                df instanceof ArcCosineUnitlengthDistance ? ARCCOSINE : //
+                    df instanceof CosineDistance ? ABS_COSINE : //
+                        df instanceof ArcCosineDistance ? ABS_ARCCOSINE : -1;
+  }
+
+  @Override
+  public void initialize() {
+    final int size = relation.size();
+    dims = RelationUtil.dimensionality(relation);
+    numnodes = countNodes(size);
+    if((long) size * dims > MAX_ARRAY_SIZE || (long) numnodes * dims > MAX_ARRAY_SIZE) {
+      throw new AbortException("Data set too large for the ball tree arrays.");
+    }
+    sorted = DBIDUtil.newArray(relation.getDBIDs());
+    data = new double[size * dims];
+    int off = 0;
+    for(DBIDIter it = sorted.iter(); it.valid(); it.advance(), off += dims) {
+      final O v = relation.get(it);
+      for(int d = 0; d < dims; d++) {
+        data[off + d] = v.doubleValue(d);
+      }
+      if(normalize) {
+        normalize(data, off, dims);
+      }
+    }
+    nodeStart = new int[numnodes];
+    nodeEnd = new int[numnodes];
+    rightChild = new int[numnodes];
+    centers = new double[numnodes * dims];
+    radius = new double[numnodes];
+    if(size == 0) {
+      return;
+    }
+    // The layout only depends on the sizes, so we can compute it first.
+    int[] depth = new int[numnodes];
+    layout(0, 0, size, 0, depth);
+    int maxdepth = 0;
+    for(int d : depth) {
+      maxdepth = d > maxdepth ? d : maxdepth;
+    }
+    int[][] levels = new int[maxdepth + 1][];
+    int[] counts = new int[maxdepth + 1];
+    for(int d : depth) {
+      counts[d]++;
+    }
+    for(int d = 0; d <= maxdepth; d++) {
+      levels[d] = new int[counts[d]];
+      counts[d] = 0;
+    }
+    for(int i = 0; i < numnodes; i++) {
+      levels[depth[i]][counts[depth[i]]++] = i;
+    }
+    // All nodes of a level cover disjoint ranges, and can be built in parallel.
+    for(int[] level : levels) {
+      ParallelExecutor.run(0, level.length, 1, (start, end) -> {
+        for(int i = start; i < end; i++) {
+          buildNode(level[i]);
+        }
+      });
+    }
+  }
+
+  /**
+   * Normalize a vector to unit length.
+   *
+   * @param data Data array
+   * @param off Offset
+   * @param dims Dimensionality
+   */
+  private static void normalize(double[] data, int off, int dims) {
+    double len = 0.;
+    for(int d = off, e = off + dims; d < e; d++) {
+      len += data[d] * data[d];
+    }
+    if(len > 0) {
+      len = 1. / FastMath.sqrt(len);
+      for(int d = off, e = off + dims; d < e; d++) {
+        data[d] *= len;
+      }
+    }
+  }
+
+  /**
+   * Count the number of nodes of a tree.
+   *
+   * @param size Number of points
+   * @return Number of nodes
+   */
+  private int countNodes(int size) {
+    if(size <= leafsize) {
+      return 1;
+    }
+    final int half = size >>> 1;
+    return 1 + countNodes(half) + countNodes(size - half);
+  }
+
+  /**
+   * Compute the layout of the tree.
+   *
+   * @param node Current node
+   * @param left Interval minimum
+   * @param right Interval maximum (exclusive)
+   * @param d Depth
+   * @param depth Depth of each node (output)
+   * @return Next free node
+   */
+  private int layout(int node, int left, int right, int d, int[] depth) {
+    nodeStart[node] = left;
+    nodeEnd[node] = right;
+    rightChild[node] = -1;
+    depth[node] = d;
+    if(right - left <= leafsize) {
+      return node + 1;
+    }
+    final int middle = (left + right) >>> 1;
+    final int next = layout(node + 1, left, middle, d + 1, depth);
+    rightChild[node] = next;
+    return layout(next, middle, right, d + 1, depth);
+  }
+
+  /**
+   * Compute the ball of a node, and partition its points for the children.
+   *
+   * @param node Node
+   */
+  private void buildNode(int node) {
+    final int start = nodeStart[node], end = nodeEnd[node];
+    final int coff = node * dims;
+    // Center:
+    for(int i = start * dims, e = end * dims; i < e; i += dims) {
+      for(int d = 0; d < dims; d++) {
+        centers[coff + d] += data[i + d];
+      }
+    }
+    final double norm = 1. / (end - start);
+    for(int d = 0; d < dims; d++) {
+      centers[coff + d] *= norm;
+    }
+    // Radius, and farthest point:
+    double max = 0.;
+    int a = start;
+    for(int i = start; i < end; i++) {
+      final double dist = squaredDistance(data, i * dims, centers, coff);
+      if(dist > max) {
+        max = dist;
+        a = i;
+      }
+    }
+    radius[node] = FastMath.sqrt(max);
+    if(rightChild[node] < 0 || max <= 0) {
+      return; // Leaf, or all points identical.
+    }
+    // Point farthest from a:
+    int b = a;
+    max = 0.;
+    for(int i = start; i < end; i++) {
+      final double dist = squaredDistance(data, i * dims, data, a * dims);
+      if(dist > max) {
+        max = dist;
+        b = i;
+      }
+    }
+    // Project onto the line from a to b:
+    final double[] dir = new double[dims];
+    for(int d = 0; d < dims; d++) {
+      dir[d] = data[b * dims + d] - data[a * dims + d];
+    }
+    final double[] keys = new double[end - start];
+    for(int i = start; i < end; i++) {
+      double dot = 0.;
+      for(int d = 0, off = i * dims; d < dims; d++) {
+        dot += data[off + d] * dir[d];
+      }
+      keys[i - start] = dot;
+    }
+    quickSelect(keys, start, 0, end - start, ((start + end) >>> 1) - start);
+  }
+
+  /**
+   * Squared Euclidean distance of two rows.
+   *
+   * @param x First array
+   * @param xoff Offset in first array
+   * @param y Second array
+   * @param yoff Offset in second array
+   * @return Squared distance
+   */
+  private double squaredDistance(double[] x, int xoff, double[] y, int yoff) {
+    double agg = 0.;
+    for(int d = 0; d < dims; d++) {
+      final double delta = x[xoff + d] - y[yoff + d];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  /**
+   * Partially sort the points by their keys, such that the point at position
+   * k is in its final position.
+   *
+   * @param keys Projection keys
+   * @param base Offset of the first key
+   * @param start Interval minimum (relative to base)
+   * @param end Interval maximum (exclusive, relative to base)
+   * @param k Position (relative to base)
+   */
+  private void quickSelect(double[] keys, int base, int start, int end, int k) {
+    while(end - start > 1) {
+      final double x = keys[start], y = keys[(start + end) >>> 1], z = keys[end - 1];
+      // Median of three:
+      final double pivot = x < y ? (y < z ? y : x < z ? z : x) : (x < z ? x : y < z ? z : y);
+      int i = start, j = end - 1;
+      while(i <= j) {
+        while(keys[i] < pivot) {
+          ++i;
+        }
+        while(keys[j] > pivot) {
+          --j;
+        }
+        if(i <= j) {
+          swap(keys, base, i++, j--);
+        }
+      }
+      if(k <= j) {
+        end = j + 1;
+      }
+      else if(k >= i) {
+        start = i;
+      }
+      else {
+        return; // Between j and i, all values equal the pivot.
+      }
+    }
+  }
+
+  /**
+   * Swap two points.
+   *
+   * @param keys Projection keys
+   * @param base Offset of the first key
+   * @param i First point (relative to base)
+   * @param j Second point (relative to base)
+   */
+  private void swap(double[] keys, int base, int i, int j) {
+    if(i == j) {
+      return;
+    }
+    final double k = keys[i];
+    keys[i] = keys[j];
+    keys[j] = k;
+    i += base;
+    j += base;
+    sorted.swap(i, j);
+    for(int a = i * dims, b = j * dims, e = a + dims; a < e; a++, b++) {
+      final double tmp = data[a];
+      data[a] = data[b];
+      data[b] = tmp;
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    if(distcalc != null) {
+      LOG.statistics(distcalc);
+    }
+  }
+
+  /**
+   * Check if a query distance is compatible with the geometry of the tree.
+   *
+   * @param df Query distance
+   * @return Kind of the distance, or -1
+   */
+  private int compatibleKind(Distance<?> df) {
+    final int kind = distanceKind(df);
+    return kind >= 0 && (kind >= COSINE) == normalize ? kind : -1;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    final int kind = compatibleKind(distanceQuery.getDistance());
+    return kind >= 0 ? new BallTreeKNNSearcher(kind, (PrimitiveDistance<? super O>) distanceQuery.getDistance()) : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    final int kind = compatibleKind(distanceQuery.getDistance());
+    return kind >= 0 ? new BallTreeRangeSearcher(kind, (PrimitiveDistance<? super O>) distanceQuery.getDistance()) : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public PrioritySearcher<O> priorityByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    final int kind = compatibleKind(distanceQuery.getDistance());
+    return kind >= 0 ? new BallTreePrioritySearcher(kind, (PrimitiveDistance<? super O>) distanceQuery.getDistance()) : null;
+  }
+
+  /**
+   * Base class for searchers.
+   * <p>
+   * All bounds are computed on the squared Euclidean distance (of the
+   * normalized vectors for cosine), and converted to the query distance.
+   *
+   * @author Erich Schubert
+   */
+  private abstract class AbstractSearcher {
+    /**
+     * Distance kind.
+     */
+    protected final int kind;
+
+    /**
+     * Also consider the mirrored query -q, for the absolute cosine.
+     */
+    protected final boolean mirror;
+
+    /**
+     * Query distance.
+     */
+    protected final PrimitiveDistance<? super O> df;
+
+    /**
+     * Query object.
+     */
+    protected O query;
+
+    /**
+     * Query coordinates.
+     */
+    protected final double[] qv = new double[dims];
+
+    /**
+     * Iterator for the object ids.
+     */
+    protected final DBIDArrayIter iter = sorted.iter();
+
+    /**
+     * Constructor.
+     *
+     * @param kind Distance kind
+     * @param df Query distance
+     */
+    protected AbstractSearcher(int kind, PrimitiveDistance<? super O> df) {
+      this.kind = kind;
+      this.mirror = kind >= ABS_COSINE;
+      this.df = df;
+    }
+
+    /**
+     * Copy the query coordinates.
+     *
+     * @param obj Query object
+     */
+    protected void setQuery(O obj) {
+      assert obj.getDimensionality() == dims : "Dimensionality does not agree.";
+      this.query = obj;
+      for(int d = 0; d < dims; d++) {
+        qv[d] = obj.doubleValue(d);
+      }
+      if(normalize) {
+        BallTree.normalize(qv, 0, dims);
+      }
+    }
+
+    /**
+     * Squared Euclidean distance of the query to a row of an array. For the
+     * absolute cosine, this is the minimum over the query and its mirror -q.
+     *
+     * @param x Data array
+     * @param off Offset
+     * @return Squared Euclidean distance
+     */
+    protected double queryDistance(double[] x, int off) {
+      if(!mirror) {
+        return squaredDistance(qv, 0, x, off);
+      }
+      double a = 0., b = 0.;
+      for(int d = 0; d < dims; d++) {
+        final double q = qv[d], v = x[off + d];
+        a += (q - v) * (q - v);
+        b += (q + v) * (q + v);
+      }
+      return a < b ? a : b;
+    }
+
+    /**
+     * Euclidean distance of the query to a center.
+     *
+     * @param node Node
+     * @return Euclidean distance to the ball center
+     */
+    protected double centerDistance(int node) {
+      return FastMath.sqrt(queryDistance(centers, node * dims));
+    }
+
+    /**
+     * Lower bound of the squared distance to any point of a ball.
+     *
+     * @param node Node
+     * @param dc Distance to the center
+     * @return Lower bound
+     */
+    protected double ballBound(int node, double dc) {
+      final double lb = dc - radius[node];
+      return lb > 0 ? lb * lb : 0.;
+    }
+
+    /**
+     * Compute the distance to a point.
+     *
+     * @param i Point position
+     * @param r Squared Euclidean distance
+     * @return Distance
+     */
+    protected double exactDistance(int i, double r) {
+      switch(kind){
+      case SQUARED:
+        return r;
+      case EUCLIDEAN:
+        return FastMath.sqrt(r);
+      default:
+        countDistanceComputations(1);
+        return df.distance(query, relation.get(iter.seek(i)));
+      }
+    }
+
+    /**
+     * Convert a squared distance to a lower bound of the query distance.
+     *
+     * @param r Squared distance
+     * @return Lower bound
+     */
+    protected double toLowerBound(double r) {
+      r *= 1 - 1e-12; // Tolerance for rounding errors
+      switch(kind){
+      case SQUARED:
+        return r;
+      case EUCLIDEAN:
+        return FastMath.sqrt(r);
+      case COSINE:
+      case ABS_COSINE:
+        return r * .5;
+      default:
+        return FastMath.acos(Math.max(-1., 1. - r * .5));
+      }
+    }
+
+    /**
+     * Convert a query distance into a bound on the squared distance. This
+     * bound includes a tolerance for rounding errors, so the final decision
+     * must be made on the exact distance.
+     *
+     * @param dist Distance
+     * @return Squared distance bound
+     */
+    protected double squaredBound(double dist) {
+      switch(kind){
+      case SQUARED:
+        return dist * (1 + 1e-12);
+      case EUCLIDEAN:
+        return dist * dist * (1 + 1e-12);
+      case COSINE:
+      case ABS_COSINE:
+        return dist * 2. * (1 + 1e-12) + 1e-12;
+      default:
+        return dist >= Math.PI ? Double.POSITIVE_INFINITY : 2. * (1. - FastMath.cos(dist)) * (1 + 1e-12) + 1e-12;
+      }
+    }
+
+    /**
+     * Count distance computations.
+     *
+     * @param n Number of distances computed
+     */
+    protected void countDistanceComputations(int n) {
+      if(distcalc != null) {
+        distcalc.increment(n);
+      }
+    }
+  }
+
+  /**
+   * kNN query for the ball tree.
+   *
+   * @author Erich Schubert
+   */
+  public class BallTreeKNNSearcher extends AbstractSearcher implements KNNSearcher<O> {
+    /**
+     * Result heap.
+     */
+    private KNNHeap knns;
+
+    /**
+     * Current kNN distance.
+     */
+    private double kdist;
+
+    /**
+     * Bound on squared distances.
+     */
+    private double bound;
+
+    /**
+     * Constructor.
+     *
+     * @param kind Distance kind
+     * @param df Query distance
+     */
+    public BallTreeKNNSearcher(int kind, PrimitiveDistance<? super O> df) {
+      super(kind, df);
+    }
+
+    @Override
+    public KNNList getKNN(O obj, int k) {
+      if(knns == null || knns.getK() != k) {
+        knns = DBIDUtil.newHeap(k);
+      }
+      knns.clear();
+      if(numnodes > 0 && sorted.size() > 0) {
+        setQuery(obj);
+        kdist = bound = Double.POSITIVE_INFINITY;
+        countDistanceComputations(1);
+        kNNSearch(0, centerDistance(0));
+      }
+      this.query = null;
+      return knns.toKNNList();
+    }
+
+    /**
+     * Perform a kNN search on the ball tree, descending into the nearer child
+     * first.
+     *
+     * @param node Current node
+     * @param dc Distance to the center of the node
+     */
+    private void kNNSearch(int node, double dc) {
+      if(ballBound(node, dc) > bound) {
+        return;
+      }
+      final int right = rightChild[node];
+      if(right < 0) { // Leaf: scan the bucket.
+        final int end = nodeEnd[node];
+        for(int i = nodeStart[node]; i < end; i++) {
+          final double r = queryDistance(data, i * dims);
+          if(r <= bound) {
+            final double dist = exactDistance(i, r);
+            if(dist <= kdist) {
+              final double newk = knns.insert(dist, iter.seek(i));
+              if(newk < kdist) {
+                bound = squaredBound(kdist = newk);
+              }
+            }
+          }
+        }
+        countDistanceComputations(end - nodeStart[node]);
+        return;
+      }
+      final int left = node + 1;
+      final double dl = centerDistance(left), dr = centerDistance(right);
+      countDistanceComputations(2);
+      if(dl <= dr) {
+        kNNSearch(left, dl);
+        kNNSearch(right, dr);
+      }
+      else {
+        kNNSearch(right, dr);
+        kNNSearch(left, dl);
+      }
+    }
+  }
+
+  /**
+   * Range query for the ball tree.
+   *
+   * @author Erich Schubert
+   */
+  public class BallTreeRangeSearcher extends AbstractSearcher implements RangeSearcher<O> {
+    /**
+     * Query radius.
+     */
+    private double range;
+
+    /**
+     * Bound on squared distances.
+     */
+    private double bound;
+
+    /**
+     * Output list.
+     */
+    private ModifiableDoubleDBIDList result;
+
+    /**
+     * Constructor.
+     *
+     * @param kind Distance kind
+     * @param df Query distance
+     */
+    public BallTreeRangeSearcher(int kind, PrimitiveDistance<? super O> df) {
+      super(kind, df);
+    }
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(O obj, double range, ModifiableDoubleDBIDList result) {
+      if(numnodes > 0 && sorted.size() > 0) {
+        setQuery(obj);
+        this.range = range;
+        this.bound = squaredBound(range);
+        this.result = result;
+        countDistanceComputations(1);
+        rangeSearch(0, centerDistance(0));
+        this.result = null;
+        this.query = null;
+      }
+      return result;
+    }
+
+    /**
+     * Perform a range search on the ball tree.
+     *
+     * @param node Current node
+     * @param dc Distance to the center of the node
+     */
+    private void rangeSearch(int node, double dc) {
+      if(ballBound(node, dc) > bound) {
+        return;
+      }
+      final int right = rightChild[node];
+      if(right < 0) { // Leaf: scan the bucket.
+        final int end = nodeEnd[node];
+        for(int i = nodeStart[node]; i < end; i++) {
+          final double r = queryDistance(data, i * dims);
+          if(r <= bound) {
+            final double dist = exactDistance(i, r);
+            if(dist <= range) {
+              result.add(dist, iter.seek(i));
+            }
+          }
+        }
+        countDistanceComputations(end - nodeStart[node]);
+        return;
+      }
+      countDistanceComputations(2);
+      rangeSearch(node + 1, centerDistance(node + 1));
+      rangeSearch(right, centerDistance(right));
+    }
+  }
+
+  /**
+   * Priority search for the ball tree.
+   *
+   * @author Erich Schubert
+   */
+  public class BallTreePrioritySearcher extends AbstractSearcher implements PrioritySearcher<O> {
+    /**
+     * Min heap for searching.
+     */
+    private DoubleIntegerMinHeap heap = new DoubleIntegerMinHeap();
+
+    /**
+     * Stopping threshold.
+     */
+    private double threshold;
+
+    /**
+     * Position within leaf.
+     */
+    private int pos;
+
+    /**
+     * End of current leaf.
+     */
+    private int end;
+
+    /**
+     * Lower bound of the current leaf.
+     */
+    private double mindist;
+
+    /**
+     * Constructor.
+     *
+     * @param kind Distance kind
+     * @param df Query distance
+     */
+    public BallTreePrioritySearcher(int kind, PrimitiveDistance<? super O> df) {
+      super(kind, df);
+    }
+
+    @Override
+    public PrioritySearcher<O> search(O query) {
+      this.threshold = Double.POSITIVE_INFINITY;
+      this.pos = this.end = 0;
+      this.mindist = 0.;
+      this.heap.clear();
+      if(numnodes > 0 && sorted.size() > 0) {
+        setQuery(query);
+        countDistanceComputations(1);
+        this.heap.add(toLowerBound(ballBound(0, centerDistance(0))), 0);
+      }
+      return advance();
+    }
+
+    @Override
+    public PrioritySearcher<O> advance() {
+      // Iteration within current leaf:
+      if(pos < end && ++pos < end) {
+        return this;
+      }
+      while(!heap.isEmpty()) {
+        final double nodedist = heap.peekKey();
+        final int node = heap.peekValue();
+        heap.poll();
+        if(nodedist > threshold) {
+          heap.clear();
+          break;
+        }
+        mindist = nodedist;
+        final int right = rightChild[node];
+        if(right < 0) { // Leaf
+          pos = nodeStart[node];
+          end = nodeEnd[node];
+          return this;
+        }
+        countDistanceComputations(2);
+        final double ldist = Math.max(nodedist, toLowerBound(ballBound(node + 1, centerDistance(node + 1))));
+        if(ldist <= threshold) {
+          heap.add(ldist, node + 1);
+        }
+        final double rdist = Math.max(nodedist, toLowerBound(ballBound(right, centerDistance(right))));
+        if(rdist <= threshold) {
+          heap.add(rdist, right);
+        }
+      }
+      pos = end = 0;
+      return this;
+    }
+
+    @Override
+    public boolean valid() {
+      return pos < end;
+    }
+
+    @Override
+    public double getLowerBound() {
+      return mindist;
+    }
+
+    @Override
+    public double allLowerBound() {
+      return mindist;
+    }
+
+    @Override
+    public double computeExactDistance() {
+      countDistanceComputations(1);
+      return exactDistance(pos, queryDistance(data, pos * dims));
+    }
+
+    @Override
+    public int internalGetIndex() {
+      return iter.seek(pos).internalGetIndex();
+    }
+
+    @Override
+    public PrioritySearcher<O> decreaseCutoff(double threshold) {
+      assert threshold <= this.threshold : "Thresholds must only decreasee.";
+      this.threshold = threshold;
+      return this;
+    }
+  }
+
+  /**
+   * Factory class
+   *
+   * @author Erich Schubert
+   *
+   * @stereotype factory
+   * @has - - - BallTree
+   *
+   * @param <O> Vector type
+   */
+  @Alias("balltree")
+  public static class Factory<O extends NumberVector> implements IndexFactory<O> {
+    /**
+     * Distance function.
+     */
+    Distance<? super O> distance;
+
+    /**
+     * Maximum size of leaf nodes.
+     */
+    int leafsize;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     * @param leafsize Maximum size of leaf nodes.
+     */
+    public Factory(Distance<? super O> distance, int leafsize) {
+      super();
+      this.distance = distance;
+      this.leafsize = leafsize;
+    }
+
+    @Override
+    public BallTree<O> instantiate(Relation<O> relation) {
+      return new BallTree<>(relation, distance, leafsize);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     */
+    public static class Par<O extends NumberVector> implements Parameterizer {
+      /**
+       * Distance function determining the geometry of the tree.
+       */
+      public static final OptionID DISTANCE_FUNCTION_ID = new OptionID("balltree.distancefunction", "Distance function, Euclidean or cosine.");
+
+      /**
+       * Option for setting the maximum leaf size.
+       */
+      public static final OptionID LEAFSIZE_ID = new OptionID("balltree.leafsize", "Maximum number of points in a leaf of the ball tree.");
+
+      /**
+       * Distance function.
+       */
+      Distance<? super O> distance;
+
+      /**
+       * Maximum size of leaf nodes.
+       */
+      int leafsize;
+
+      @Override
+      public void configure(Parameterization config) {
+        ObjectParameter<Distance<? super O>> distP = new ObjectParameter<>(DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class);
+        if(distP.grab(config, x -> distance = x) && distanceKind(distance) < 0) {
+          config.reportError(new WrongParameterValueException(distP, distP.getValueAsString(), "The ball tree only supports Euclidean and cosine distances."));
+        }
+        new IntParameter(LEAFSIZE_ID, DEFAULT_LEAFSIZE) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> leafsize = x);
+      }
+
+      @Override
+      public Factory<O> make() {
+        return new Factory<>(distance, leafsize);
+      }
+    }
+  }
+}
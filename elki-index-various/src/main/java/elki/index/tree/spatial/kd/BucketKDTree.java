@@ -0,0 +1,958 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.tree.spatial.kd;
+
+import java.util.Arrays;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.ids.*;
+import elki.database.query.PrioritySearcher;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.Distance;
+import elki.distance.WeightedNumberVectorDistance;
+import elki.distance.minkowski.LPNormDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.index.DistancePriorityIndex;
+import elki.index.IndexFactory;
+import elki.logging.Logging;
+import elki.logging.statistics.Counter;
+import elki.utilities.Alias;
+import elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+
+import net.jafama.FastMath;
+
+/**
+ * Static in-memory k-d-tree with bucket leaves, that copies all coordinates
+ * into a single contiguous array in leaf order.
+ * <p>
+ * {@link SmallMemoryKDTree} and {@link MinimalisticMemoryKDTree} only reorder
+ * the object ids, and need to access the vectors of the relation for every
+ * distance computation, which causes random memory access. Here, the points of
+ * each leaf are stored consecutively, so a leaf can be scanned with a tight
+ * loop over a primitive array. The nodes are also stored in primitive arrays,
+ * in pre-order (the left child of a node always follows the node itself).
+ * Inner nodes are split at the median of the dimension with the largest
+ * extent.
+ * <p>
+ * For kNN and range queries, the distance to the cells is maintained
+ * incrementally, as proposed by Arya and Mount, so that far branches can be
+ * pruned with a tight bound at constant cost.
+ * <p>
+ * This needs about as much memory as a copy of the data set in addition to the
+ * relation, but no object accesses during search.
+ * <p>
+ * Reference:
+ * <p>
+ * J. L. Bentley<br>
+ * Multidimensional binary search trees used for associative searching<br>
+ * Communications of the ACM 18(9)
+ * <p>
+ * S. Arya, D. M. Mount<br>
+ * Algorithms for fast vector quantization<br>
+ * Proc. Data Compression Conference (DCC 1993)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - KDTreeKNNSearcher
+ * @has - - - KDTreeRangeSearcher
+ * @has - - - KDTreePrioritySearcher
+ *
+ * @param <O> Vector type
+ */
+@Reference(authors = "J. L. Bentley", //
+    title = "Multidimensional binary search trees used for associative searching", //
+    booktitle = "Communications of the ACM 18(9)", //
+    url = "https://doi.org/10.1145/361002.361007", //
+    bibkey = "DBLP:journals/cacm/Bentley75")
+@Reference(authors = "S. Arya, D. M. Mount", //
+    title = "Algorithms for fast vector quantization", //
+    booktitle = "Proc. Data Compression Conference (DCC 1993)", //
+    url = "https://doi.org/10.1109/DCC.1993.253111", //
+    bibkey = "DBLP:conf/dcc/AryaM93")
+public class BucketKDTree<O extends NumberVector> implements DistancePriorityIndex<O> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(BucketKDTree.class);
+
+  /**
+   * Squared Euclidean distance.
+   */
+  private static final int SQUARED = 0;
+
+  /**
+   * Euclidean distance.
+   */
+  private static final int EUCLIDEAN = 1;
+
+  /**
+   * Manhattan distance.
+   */
+  private static final int MANHATTAN = 2;
+
+  /**
+   * Maximum distance.
+   */
+  private static final int MAXIMUM = 3;
+
+  /**
+   * Other Lp norms.
+   */
+  private static final int LPNORM = 4;
+
+  /**
+   * Maximum length of a Java array.
+   */
+  private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  /**
+   * The representation we are bound to.
+   */
+  protected final Relation<O> relation;
+
+  /**
+   * Maximum size of leaf nodes.
+   */
+  protected final int leafsize;
+
+  /**
+   * Object ids, in leaf order.
+   */
+  protected ArrayModifiableDBIDs sorted = null;
+
+  /**
+   * Coordinates, in leaf order (row-major).
+   */
+  protected double[] data;
+
+  /**
+   * The number of dimensions.
+   */
+  protected int dims = -1;
+
+  /**
+   * Number of nodes.
+   */
+  protected int numnodes = 0;
+
+  /**
+   * First object of each node.
+   */
+  protected int[] nodeStart;
+
+  /**
+   * End (exclusive) of the objects of each node.
+   */
+  protected int[] nodeEnd;
+
+  /**
+   * Splitting dimension, -1 for leaves.
+   */
+  protected int[] splitDim;
+
+  /**
+   * Splitting value.
+   */
+  protected double[] splitVal;
+
+  /**
+   * Offset of the right child. The left child is the next node.
+   */
+  protected int[] rightChild;
+
+  /**
+   * Counter for distance computations.
+   */
+  protected final Counter distcalc;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param leafsize Maximum size of leaf nodes
+   */
+  public BucketKDTree(Relation<O> relation, int leafsize) {
+    this.relation = relation;
+    this.leafsize = leafsize;
+    assert (leafsize >= 1);
+    this.distcalc = LOG.isStatistics() ? LOG.newCounter(this.getClass().getName() + ".distancecalcs") : null;
+  }
+
+  @Override
+  public void initialize() {
+    final int size = relation.size();
+    dims = RelationUtil.dimensionality(relation);
+    if((long) size * dims > MAX_ARRAY_SIZE || (long) (size / leafsize) * 4 + 1 > MAX_ARRAY_SIZE) {
+      throw new AbortException("Data set too large for the k-d tree arrays.");
+    }
+    sorted = DBIDUtil.newArray(relation.getDBIDs());
+    data = new double[size * dims];
+    int off = 0;
+    for(DBIDIter it = sorted.iter(); it.valid(); it.advance()) {
+      final O v = relation.get(it);
+      for(int d = 0; d < dims; d++) {
+        data[off++] = v.doubleValue(d);
+      }
+    }
+    final int cap = (size / leafsize) * 4 + 1;
+    nodeStart = new int[cap];
+    nodeEnd = new int[cap];
+    splitDim = new int[cap];
+    splitVal = new double[cap];
+    rightChild = new int[cap];
+    if(size > 0) {
+      buildTree(0, size);
+    }
+  }
+
+  /**
+   * Recursively build the tree.
+   *
+   * @param left Interval minimum
+   * @param right Interval maximum (exclusive)
+   * @return Node offset
+   */
+  private int buildTree(int left, int right) {
+    final int node = newNode(left, right);
+    if(right - left <= leafsize) {
+      return node;
+    }
+    final int dim = widestDimension(left, right);
+    if(dim < 0) { // All points identical.
+      return node;
+    }
+    final int middle = (left + right) >>> 1;
+    quickSelect(left, right, dim, middle);
+    splitDim[node] = dim;
+    splitVal[node] = data[middle * dims + dim];
+    buildTree(left, middle);
+    final int r = buildTree(middle, right);
+    rightChild[node] = r;
+    return node;
+  }
+
+  /**
+   * Allocate a new (leaf) node.
+   *
+   * @param left Interval minimum
+   * @param right Interval maximum (exclusive)
+   * @return Node offset
+   */
+  private int newNode(int left, int right) {
+    if(numnodes == nodeStart.length) {
+      final int newsize = numnodes + (numnodes >>> 1) + 1;
+      nodeStart = Arrays.copyOf(nodeStart, newsize);
+      nodeEnd = Arrays.copyOf(nodeEnd, newsize);
+      splitDim = Arrays.copyOf(splitDim, newsize);
+      splitVal = Arrays.copyOf(splitVal, newsize);
+      rightChild = Arrays.copyOf(rightChild, newsize);
+    }
+    nodeStart[numnodes] = left;
+    nodeEnd[numnodes] = right;
+    splitDim[numnodes] = -1;
+    return numnodes++;
+  }
+
+  /**
+   * Find the dimension with the largest extent.
+   *
+   * @param left Interval minimum
+   * @param right Interval maximum (exclusive)
+   * @return Dimension, or -1 if all points are identical
+   */
+  private int widestDimension(int left, int right) {
+    int best = -1;
+    double bestwidth = 0.;
+    for(int d = 0; d < dims; d++) {
+      double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+      for(int i = left * dims + d, e = right * dims; i < e; i += dims) {
+        final double v = data[i];
+        min = v < min ? v : min;
+        max = v > max ? v : max;
+      }
+      if(max - min > bestwidth) {
+        bestwidth = max - min;
+        best = d;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Partially sort the points, such that the point at position k is in its
+   * final position with respect to dimension dim.
+   *
+   * @param start Interval minimum
+   * @param end Interval maximum (exclusive)
+   * @param dim Dimension
+   * @param k Position
+   */
+  private void quickSelect(int start, int end, int dim, int k) {
+    while(end - start > 1) {
+      final double a = data[start * dims + dim], b = data[((start + end) >>> 1) * dims + dim], c = data[(end - 1) * dims + dim];
+      // Median of three:
+      final double pivot = a < b ? (b < c ? b : a < c ? c : a) : (a < c ? a : b < c ? c : b);
+      int i = start, j = end - 1;
+      while(i <= j) {
+        while(data[i * dims + dim] < pivot) {
+          ++i;
+        }
+        while(data[j * dims + dim] > pivot) {
+          --j;
+        }
+        if(i <= j) {
+          swap(i++, j--);
+        }
+      }
+      if(k <= j) {
+        end = j + 1;
+      }
+      else if(k >= i) {
+        start = i;
+      }
+      else {
+        return; // Between j and i, all values equal the pivot.
+      }
+    }
+  }
+
+  /**
+   * Swap two points.
+   *
+   * @param i First point
+   * @param j Second point
+   */
+  private void swap(int i, int j) {
+    if(i == j) {
+      return;
+    }
+    sorted.swap(i, j);
+    for(int a = i * dims, b = j * dims, e = a + dims; a < e; a++, b++) {
+      final double tmp = data[a];
+      data[a] = data[b];
+      data[b] = tmp;
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    if(distcalc != null) {
+      LOG.statistics(distcalc);
+    }
+  }
+
+  /**
+   * Get the norm type of a distance function.
+   *
+   * @param df Distance function
+   * @return Norm type, or -1 if not supported
+   */
+  private static int normType(Distance<?> df) {
+    if(df instanceof SquaredEuclideanDistance) {
+      return SQUARED;
+    }
+    if(df instanceof LPNormDistance && !(df instanceof WeightedNumberVectorDistance)) {
+      final double p = ((LPNormDistance) df).getP();
+      return p == 2 ? EUCLIDEAN : p == 1 ? MANHATTAN : p == Double.POSITIVE_INFINITY ? MAXIMUM : LPNORM;
+    }
+    return -1;
+  }
+
+  @Override
+  public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    final int norm = normType(distanceQuery.getDistance());
+    return norm >= 0 ? new KDTreeKNNSearcher(norm, distanceQuery.getDistance()) : null;
+  }
+
+  @Override
+  public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    final int norm = normType(distanceQuery.getDistance());
+    return norm >= 0 ? new KDTreeRangeSearcher(norm, distanceQuery.getDistance()) : null;
+  }
+
+  @Override
+  public PrioritySearcher<O> priorityByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    final int norm = normType(distanceQuery.getDistance());
+    return norm >= 0 ? new KDTreePrioritySearcher(norm, distanceQuery.getDistance()) : null;
+  }
+
+  /**
+   * Base class for searchers, with the distance computations on the
+   * contiguous coordinate array.
+   * <p>
+   * Distances are computed in a "reduced" form that omits the final root of Lp
+   * norms, which is monotone.
+   *
+   * @author Erich Schubert
+   */
+  private abstract class AbstractSearcher {
+    /**
+     * Norm type.
+     */
+    protected final int norm;
+
+    /**
+     * Exponent p of Lp norms.
+     */
+    protected final double p;
+
+    /**
+     * Query coordinates.
+     */
+    protected final double[] query = new double[dims];
+
+    /**
+     * Iterator for the object ids.
+     */
+    protected final DBIDArrayIter iter = sorted.iter();
+
+    /**
+     * Constructor.
+     *
+     * @param norm Norm type
+     * @param df Distance function
+     */
+    protected AbstractSearcher(int norm, Distance<?> df) {
+      this.norm = norm;
+      this.p = norm == LPNORM ? ((LPNormDistance) df).getP() : 2.;
+    }
+
+    /**
+     * Copy the query coordinates.
+     *
+     * @param obj Query object
+     */
+    protected void setQuery(O obj) {
+      assert obj.getDimensionality() == dims : "Dimensionality does not agree.";
+      for(int d = 0; d < dims; d++) {
+        query[d] = obj.doubleValue(d);
+      }
+    }
+
+    /**
+     * Compute the reduced distance to a point.
+     *
+     * @param i Point position
+     * @return Reduced distance
+     */
+    protected double reducedDistance(int i) {
+      final double[] data = BucketKDTree.this.data, query = this.query;
+      final int off = i * dims;
+      double agg = 0.;
+      switch(norm){
+      case SQUARED:
+      case EUCLIDEAN:
+        for(int d = 0; d < dims; d++) {
+          final double delta = data[off + d] - query[d];
+          agg += delta * delta;
+        }
+        return agg;
+      case MANHATTAN:
+        for(int d = 0; d < dims; d++) {
+          agg += Math.abs(data[off + d] - query[d]);
+        }
+        return agg;
+      case MAXIMUM:
+        for(int d = 0; d < dims; d++) {
+          final double delta = Math.abs(data[off + d] - query[d]);
+          agg = delta > agg ? delta : agg;
+        }
+        return agg;
+      default:
+        for(int d = 0; d < dims; d++) {
+          agg += FastMath.pow(Math.abs(data[off + d] - query[d]), p);
+        }
+        return agg;
+      }
+    }
+
+    /**
+     * Reduced distance contribution of a single axis.
+     *
+     * @param delta Coordinate difference
+     * @return Reduced distance
+     */
+    protected double reducedAxis(double delta) {
+      switch(norm){
+      case SQUARED:
+      case EUCLIDEAN:
+        return delta * delta;
+      case MANHATTAN:
+      case MAXIMUM:
+        return Math.abs(delta);
+      default:
+        return FastMath.pow(Math.abs(delta), p);
+      }
+    }
+
+    /**
+     * Update a reduced distance, when the distance along one axis increases.
+     *
+     * @param rd Reduced distance
+     * @param prev Previous axis contribution
+     * @param next New axis contribution
+     * @return Updated reduced distance
+     */
+    protected double updateReduced(double rd, double prev, double next) {
+      return norm == MAXIMUM ? (next > rd ? next : rd) : rd - prev + next;
+    }
+
+    /**
+     * Convert a reduced distance into a distance.
+     *
+     * @param rd Reduced distance
+     * @return Distance
+     */
+    protected double toDistance(double rd) {
+      switch(norm){
+      case EUCLIDEAN:
+        return FastMath.sqrt(rd);
+      case LPNORM:
+        return FastMath.pow(rd, 1. / p);
+      default:
+        return rd;
+      }
+    }
+
+    /**
+     * Convert a distance into a bound on the reduced distance. This bound
+     * includes a small tolerance for rounding errors (of the conversion, and
+     * of the incremental cell distances), so the final decision must be made
+     * on the exact distance.
+     *
+     * @param dist Distance
+     * @return Reduced distance bound
+     */
+    protected double reducedBound(double dist) {
+      switch(norm){
+      case SQUARED:
+      case MANHATTAN:
+        return dist * (1 + 1e-12);
+      case EUCLIDEAN:
+        return dist * dist * (1 + 1e-12);
+      case LPNORM:
+        return FastMath.pow(dist, p) * (1 + 1e-10);
+      default:
+        return dist;
+      }
+    }
+
+    /**
+     * Count distance computations.
+     *
+     * @param n Number of distances computed
+     */
+    protected void countDistanceComputations(int n) {
+      if(distcalc != null) {
+        distcalc.increment(n);
+      }
+    }
+  }
+
+  /**
+   * kNN query for the k-d-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class KDTreeKNNSearcher extends AbstractSearcher implements KNNSearcher<O> {
+    /**
+     * Per-axis contribution to the reduced distance to the current cell.
+     */
+    private final double[] offsets = new double[dims];
+
+    /**
+     * Result heap.
+     */
+    private KNNHeap knns;
+
+    /**
+     * Current kNN distance.
+     */
+    private double kdist;
+
+    /**
+     * Bound on reduced distances.
+     */
+    private double bound;
+
+    /**
+     * Constructor.
+     *
+     * @param norm Norm type
+     * @param df Distance function
+     */
+    public KDTreeKNNSearcher(int norm, Distance<?> df) {
+      super(norm, df);
+    }
+
+    @Override
+    public KNNList getKNN(O obj, int k) {
+      if(knns == null || knns.getK() != k) {
+        knns = DBIDUtil.newHeap(k);
+      }
+      knns.clear();
+      if(numnodes > 0) {
+        setQuery(obj);
+        Arrays.fill(offsets, 0.);
+        kdist = bound = Double.POSITIVE_INFINITY;
+        kdKNNSearch(0, 0.);
+      }
+      return knns.toKNNList();
+    }
+
+    /**
+     * Perform a kNN search on the k-d-tree.
+     *
+     * @param node Current node
+     * @param rd Reduced distance to the cell of the node
+     */
+    private void kdKNNSearch(int node, double rd) {
+      final int dim = splitDim[node];
+      if(dim < 0) { // Leaf: scan the bucket.
+        final int end = nodeEnd[node];
+        for(int i = nodeStart[node]; i < end; i++) {
+          final double r = reducedDistance(i);
+          if(r <= bound) {
+            final double dist = toDistance(r);
+            if(dist <= kdist) {
+              final double newk = knns.insert(dist, iter.seek(i));
+              if(newk < kdist) {
+                bound = reducedBound(kdist = newk);
+              }
+            }
+          }
+        }
+        countDistanceComputations(end - nodeStart[node]);
+        return;
+      }
+      final double delta = query[dim] - splitVal[node];
+      final int near = delta < 0 ? node + 1 : rightChild[node];
+      final int far = delta < 0 ? rightChild[node] : node + 1;
+      kdKNNSearch(near, rd);
+      // Incremental distance to the far cell:
+      final double prev = offsets[dim], next = reducedAxis(delta);
+      final double farrd = updateReduced(rd, prev, next);
+      if(farrd <= bound) {
+        offsets[dim] = next;
+        kdKNNSearch(far, farrd);
+        offsets[dim] = prev;
+      }
+    }
+  }
+
+  /**
+   * Range query for the k-d-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class KDTreeRangeSearcher extends AbstractSearcher implements RangeSearcher<O> {
+    /**
+     * Per-axis contribution to the reduced distance to the current cell.
+     */
+    private final double[] offsets = new double[dims];
+
+    /**
+     * Query radius.
+     */
+    private double radius;
+
+    /**
+     * Bound on reduced distances.
+     */
+    private double bound;
+
+    /**
+     * Output list.
+     */
+    private ModifiableDoubleDBIDList result;
+
+    /**
+     * Constructor.
+     *
+     * @param norm Norm type
+     * @param df Distance function
+     */
+    public KDTreeRangeSearcher(int norm, Distance<?> df) {
+      super(norm, df);
+    }
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(O obj, double range, ModifiableDoubleDBIDList result) {
+      if(numnodes > 0) {
+        setQuery(obj);
+        Arrays.fill(offsets, 0.);
+        this.radius = range;
+        this.bound = reducedBound(range);
+        this.result = result;
+        kdRangeSearch(0, 0.);
+        this.result = null;
+      }
+      return result;
+    }
+
+    /**
+     * Perform a range search on the k-d-tree.
+     *
+     * @param node Current node
+     * @param rd Reduced distance to the cell of the node
+     */
+    private void kdRangeSearch(int node, double rd) {
+      final int dim = splitDim[node];
+      if(dim < 0) { // Leaf: scan the bucket.
+        final int end = nodeEnd[node];
+        for(int i = nodeStart[node]; i < end; i++) {
+          final double r = reducedDistance(i);
+          if(r <= bound) {
+            final double dist = toDistance(r);
+            if(dist <= radius) {
+              result.add(dist, iter.seek(i));
+            }
+          }
+        }
+        countDistanceComputations(end - nodeStart[node]);
+        return;
+      }
+      final double delta = query[dim] - splitVal[node];
+      final int near = delta < 0 ? node + 1 : rightChild[node];
+      final int far = delta < 0 ? rightChild[node] : node + 1;
+      kdRangeSearch(near, rd);
+      // Incremental distance to the far cell:
+      final double prev = offsets[dim], next = reducedAxis(delta);
+      final double farrd = updateReduced(rd, prev, next);
+      if(farrd <= bound) {
+        offsets[dim] = next;
+        kdRangeSearch(far, farrd);
+        offsets[dim] = prev;
+      }
+    }
+  }
+
+  /**
+   * Priority search for the k-d-tree.
+   * <p>
+   * Nodes are expanded in the order of a lower bound, the maximum of the axis
+   * distances to the splitting planes along the path; within a leaf, the
+   * points are returned in storage order.
+   *
+   * @author Erich Schubert
+   */
+  public class KDTreePrioritySearcher extends AbstractSearcher implements PrioritySearcher<O> {
+    /**
+     * Min heap for searching.
+     */
+    private DoubleIntegerMinHeap heap = new DoubleIntegerMinHeap();
+
+    /**
+     * Stopping threshold.
+     */
+    private double threshold;
+
+    /**
+     * Position within leaf.
+     */
+    private int pos;
+
+    /**
+     * End of current leaf.
+     */
+    private int end;
+
+    /**
+     * Lower bound of the current leaf.
+     */
+    private double mindist;
+
+    /**
+     * Constructor.
+     *
+     * @param norm Norm type
+     * @param df Distance function
+     */
+    public KDTreePrioritySearcher(int norm, Distance<?> df) {
+      super(norm, df);
+    }
+
+    @Override
+    public PrioritySearcher<O> search(O query) {
+      this.threshold = Double.POSITIVE_INFINITY;
+      this.pos = this.end = 0;
+      this.mindist = 0.;
+      this.heap.clear();
+      if(numnodes > 0) {
+        setQuery(query);
+        this.heap.add(0., 0);
+      }
+      return advance();
+    }
+
+    @Override
+    public PrioritySearcher<O> advance() {
+      // Iteration within current leaf:
+      if(pos < end && ++pos < end) {
+        return this;
+      }
+      while(!heap.isEmpty()) {
+        final double nodedist = heap.peekKey();
+        final int node = heap.peekValue();
+        heap.poll();
+        if(nodedist > threshold) {
+          heap.clear();
+          break;
+        }
+        mindist = nodedist;
+        final int dim = splitDim[node];
+        if(dim < 0) { // Leaf
+          pos = nodeStart[node];
+          end = nodeEnd[node];
+          return this;
+        }
+        // Distance to axis:
+        final double delta = query[dim] - splitVal[node];
+        final double axisdist = norm == SQUARED ? delta * delta : Math.abs(delta);
+        final double fardist = axisdist > nodedist ? axisdist : nodedist;
+        final double ldist = delta > 0 ? fardist : nodedist;
+        if(ldist <= threshold) {
+          heap.add(ldist, node + 1);
+        }
+        final double rdist = delta < 0 ? fardist : nodedist;
+        if(rdist <= threshold) {
+          heap.add(rdist, rightChild[node]);
+        }
+      }
+      pos = end = 0;
+      return this;
+    }
+
+    @Override
+    public boolean valid() {
+      return pos < end;
+    }
+
+    @Override
+    public double getLowerBound() {
+      return mindist;
+    }
+
+    @Override
+    public double allLowerBound() {
+      return mindist;
+    }
+
+    @Override
+    public double computeExactDistance() {
+      countDistanceComputations(1);
+      return toDistance(reducedDistance(pos));
+    }
+
+    @Override
+    public int internalGetIndex() {
+      return iter.seek(pos).internalGetIndex();
+    }
+
+    @Override
+    public PrioritySearcher<O> decreaseCutoff(double threshold) {
+      assert threshold <= this.threshold : "Thresholds must only decreasee.";
+      this.threshold = threshold;
+      return this;
+    }
+  }
+
+  /**
+   * Factory class
+   *
+   * @author Erich Schubert
+   *
+   * @stereotype factory
+   * @has - - - BucketKDTree
+   *
+   * @param <O> Vector type
+   */
+  @Alias("bucketkd")
+  public static class Factory<O extends NumberVector> implements IndexFactory<O> {
+    /**
+     * Maximum size of leaf nodes.
+     */
+    int leafsize;
+
+    /**
+     * Constructor.
+     *
+     * @param leafsize Maximum size of leaf nodes.
+     */
+    public Factory(int leafsize) {
+      super();
+      this.leafsize = leafsize;
+    }
+
+    @Override
+    public BucketKDTree<O> instantiate(Relation<O> relation) {
+      return new BucketKDTree<>(relation, leafsize);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     */
+    public static class Par<O extends NumberVector> implements Parameterizer {
+      /**
+       * Option for setting the maximum leaf size.
+       */
+      public static final OptionID LEAFSIZE_P = MinimalisticMemoryKDTree.Factory.Par.LEAFSIZE_P;
+
+      /**
+       * Maximum size of leaf nodes.
+       */
+      int leafsize;
+
+      @Override
+      public void configure(Parameterization config) {
+        new IntParameter(LEAFSIZE_P, 16) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> leafsize = x);
+      }
+
+      @Override
+      public Factory<O> make() {
+        return new Factory<>(leafsize);
+      }
+    }
+  }
+}
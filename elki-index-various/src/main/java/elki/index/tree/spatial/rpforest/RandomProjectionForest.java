@@ -0,0 +1,1057 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.tree.spatial.rpforest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.*;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.SquaredEuclideanDistance;
+import elki.index.IndexFactory;
+import elki.index.KNNIndex;
+import elki.index.RangeIndex;
+import elki.logging.Logging;
+import elki.logging.statistics.Counter;
+import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
+import elki.utilities.Alias;
+import elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import elki.utilities.documentation.Reference;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.WrongParameterValueException;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+import net.jafama.FastMath;
+
+/**
+ * Forest of random projection trees for approximate nearest neighbor search,
+ * in the style of the Annoy library.
+ * <p>
+ * Every tree recursively splits the data with the hyperplane that is
+ * equidistant to two randomly chosen points, until the leaves have at most
+ * the given number of points. A kNN query visits the nodes of all trees in
+ * the order of their distance to the query (the largest distance to a
+ * splitting hyperplane on the path), and stops after the given number of
+ * candidates per requested neighbor, or earlier if the remaining nodes cannot
+ * contain better neighbors. Because every candidate is verified with the exact
+ * distance, the results are exact if the search terminates early. Range
+ * queries use the same bound, and are always exact.
+ * <p>
+ * For cosine distances, the trees are built on the normalized vectors.
+ * Because {@link CosineDistance} and {@link ArcCosineDistance} use the
+ * absolute value of the cosine, the trees are then searched both for the
+ * query and for the mirrored query -q.
+ * <p>
+ * Reference:
+ * <p>
+ * S. Dasgupta, Y. Freund<br>
+ * Random projection trees and low dimensional manifolds<br>
+ * Proc. 40th Annual ACM Symposium on Theory of Computing (STOC 2008)
+ * <p>
+ * E. Bernhardsson<br>
+ * Annoy: Approximate Nearest Neighbors in C++/Python<br>
+ * https://github.com/spotify/annoy
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - RPForestKNNSearcher
+ * @has - - - RPForestRangeSearcher
+ *
+ * @param <O> Vector type
+ */
+@Reference(authors = "S. Dasgupta, Y. Freund", //
+    title = "Random projection trees and low dimensional manifolds", //
+    booktitle = "Proc. 40th Annual ACM Symposium on Theory of Computing (STOC 2008)", //
+    url = "https://doi.org/10.1145/1374376.1374452", //
+    bibkey = "DBLP:conf/stoc/DasguptaF08")
+@Reference(authors = "E. Bernhardsson", //
+    title = "Annoy: Approximate Nearest Neighbors in C++/Python", //
+    booktitle = "Software", //
+    url = "https://github.com/spotify/annoy", //
+    bibkey = "software/Annoy")
+public class RandomProjectionForest<O extends NumberVector> implements KNNIndex<O>, RangeIndex<O> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(RandomProjectionForest.class);
+
+  /**
+   * Squared Euclidean distance.
+   */
+  private static final int SQUARED = 0;
+
+  /**
+   * Euclidean distance.
+   */
+  private static final int EUCLIDEAN = 1;
+
+  /**
+   * Cosine distance of unit length vectors.
+   */
+  private static final int COSINE = 2;
+
+  /**
+   * Arc cosine distance of unit length vectors.
+   */
+  private static final int ARCCOSINE = 3;
+
+  /**
+   * Cosine distance, using the absolute value of the cosine.
+   */
+  private static final int ABS_COSINE = 4;
+
+  /**
+   * Arc cosine distance, using the absolute value of the cosine.
+   */
+  private static final int ABS_ARCCOSINE = 5;
+
+  /**
+   * Maximum length of a Java array.
+   */
+  private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  /**
+   * Number of attempts to find two distinct points for a split.
+   */
+  private static final int SPLIT_ATTEMPTS = 5;
+
+  /**
+   * The representation we are bound to.
+   */
+  protected final Relation<O> relation;
+
+  /**
+   * Distance function determining the geometry.
+   */
+  protected final Distance<? super O> distance;
+
+  /**
+   * Build on normalized vectors.
+   */
+  protected final boolean normalize;
+
+  /**
+   * Number of trees.
+   */
+  protected final int numtrees;
+
+  /**
+   * Maximum size of leaf nodes.
+   */
+  protected final int leafsize;
+
+  /**
+   * Number of candidates to examine per requested neighbor.
+   */
+  protected final int candidates;
+
+  /**
+   * Random generator.
+   */
+  protected final RandomFactory rnd;
+
+  /**
+   * Object ids.
+   */
+  protected ArrayDBIDs ids;
+
+  /**
+   * Coordinates, in the order of the ids (row-major).
+   */
+  protected double[] data;
+
+  /**
+   * The number of dimensions.
+   */
+  protected int dims = -1;
+
+  /**
+   * Root node of each tree.
+   */
+  protected int[] roots;
+
+  /**
+   * Point offsets, concatenated for all trees, in leaf order.
+   */
+  protected int[] order;
+
+  /**
+   * First point of each node, in {@link #order}.
+   */
+  protected int[] nodeStart;
+
+  /**
+   * End (exclusive) of the points of each node.
+   */
+  protected int[] nodeEnd;
+
+  /**
+   * Left child of each node, -1 for leaves.
+   */
+  protected int[] leftChild;
+
+  /**
+   * Right child of each node, -1 for leaves.
+   */
+  protected int[] rightChild;
+
+  /**
+   * Unit normal vectors of the splitting hyperplanes (row-major).
+   */
+  protected double[] normals;
+
+  /**
+   * Offsets of the splitting hyperplanes.
+   */
+  protected double[] offsets;
+
+  /**
+   * Counter for distance computations.
+   */
+  protected final Counter distcalc;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distance Distance function
+   * @param numtrees Number of trees
+   * @param leafsize Maximum size of leaf nodes
+   * @param candidates Number of candidates per requested neighbor
+   * @param rnd Random generator
+   */
+  public RandomProjectionForest(Relation<O> relation, Distance<? super O> distance, int numtrees, int leafsize, int candidates, RandomFactory rnd) {
+    this.relation = relation;
+    this.distance = distance;
+    final int kind = distanceKind(distance);
+    if(kind < 0) {
+      throw new IllegalArgumentException("Random projection forests only support Euclidean and cosine distances.");
+    }
+    this.normalize = kind >= COSINE;
+    this.numtrees = numtrees;
+    this.leafsize = leafsize;
+    this.candidates = candidates;
+    this.rnd = rnd;
+    this.distcalc = LOG.isStatistics() ? LOG.newCounter(this.getClass().getName() + ".distancecalcs") : null;
+  }
+
+  /**
+   * Get the kind of a distance function.
+   *
+   * @param df Distance function
+   * @return Kind, or -1 if not supported
+   */
+  private static int distanceKind(Distance<?> df) {
+    return df instanceof SquaredEuclideanDistance ? SQUARED : //
+        df instanceof EuclideanDistance ? EUCLIDEAN : //
+            df instanceof CosineUnitlengthDistance ? COSINE : //
+                df instanceof ArcCosineUnitlengthDistance ? ARCCOSINE : //
+                    df instanceof CosineDistance ? ABS_COSINE : //
+                        df instanceof ArcCosineDistance ? ABS_ARCCOSINE : -1;
+  }
+
+  @Override
+  public void initialize() {
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    dims = RelationUtil.dimensionality(relation);
+    if((long) size * dims > MAX_ARRAY_SIZE || (long) numtrees * size > MAX_ARRAY_SIZE) {
+      throw new AbortException("Data set too large for the random projection forest arrays.");
+    }
+    data = new double[size * dims];
+    int off = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), off += dims) {
+      final O v = relation.get(it);
+      for(int d = 0; d < dims; d++) {
+        data[off + d] = v.doubleValue(d);
+      }
+      if(normalize) {
+        normalize(data, off, dims);
+      }
+    }
+    // Build the trees in parallel:
+    final long seed = rnd.getSingleThreadedRandom().nextLong();
+    final TreeBuilder[] builders = new TreeBuilder[numtrees];
+    ParallelExecutor.run(0, numtrees, 1, (start, end) -> {
+      for(int t = start; t < end; t++) {
+        builders[t] = new TreeBuilder(data, dims, leafsize, new Random(seed + t * 0x9E3779B97F4A7C15L));
+      }
+    });
+    // Concatenate the trees:
+    long ltotal = 0;
+    for(TreeBuilder b : builders) {
+      ltotal += b.numnodes;
+    }
+    if(ltotal * dims > MAX_ARRAY_SIZE) {
+      throw new AbortException("Data set too large for the random projection forest arrays.");
+    }
+    final int total = (int) ltotal;
+    roots = new int[numtrees];
+    order = new int[numtrees * size];
+    nodeStart = new int[total];
+    nodeEnd = new int[total];
+    leftChild = new int[total];
+    rightChild = new int[total];
+    normals = new double[total * dims];
+    offsets = new double[total];
+    for(int t = 0, base = 0; t < numtrees; t++) {
+      final TreeBuilder b = builders[t];
+      final int n = b.numnodes, shift = t * size;
+      roots[t] = base;
+      System.arraycopy(b.order, 0, order, shift, size);
+      System.arraycopy(b.normals, 0, normals, base * dims, n * dims);
+      System.arraycopy(b.offsets, 0, offsets, base, n);
+      for(int i = 0; i < n; i++) {
+        nodeStart[base + i] = b.nodeStart[i] + shift;
+        nodeEnd[base + i] = b.nodeEnd[i] + shift;
+        leftChild[base + i] = b.leftChild[i] < 0 ? -1 : b.leftChild[i] + base;
+        rightChild[base + i] = b.rightChild[i] < 0 ? -1 : b.rightChild[i] + base;
+      }
+      builders[t] = null; // Allow early garbage collection
+      base += n;
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", total));
+    }
+  }
+
+  /**
+   * Normalize a vector to unit length.
+   *
+   * @param data Data array
+   * @param off Offset
+   * @param dims Dimensionality
+   */
+  private static void normalize(double[] data, int off, int dims) {
+    double len = 0.;
+    for(int d = off, e = off + dims; d < e; d++) {
+      len += data[d] * data[d];
+    }
+    if(len > 0) {
+      len = 1. / FastMath.sqrt(len);
+      for(int d = off, e = off + dims; d < e; d++) {
+        data[d] *= len;
+      }
+    }
+  }
+
+  /**
+   * Builder for a single tree.
+   *
+   * @author Erich Schubert
+   */
+  private static class TreeBuilder {
+    /**
+     * Data buffer, row-major.
+     */
+    final double[] data;
+
+    /**
+     * Dimensionality.
+     */
+    final int dims;
+
+    /**
+     * Maximum leaf size.
+     */
+    final int leafsize;
+
+    /**
+     * Random generator.
+     */
+    final Random random;
+
+    /**
+     * Point order.
+     */
+    final int[] order;
+
+    /**
+     * Number of nodes.
+     */
+    int numnodes = 0;
+
+    /**
+     * Node data, as in the outer class.
+     */
+    int[] nodeStart, nodeEnd, leftChild, rightChild;
+
+    /**
+     * Hyperplanes, as in the outer class.
+     */
+    double[] normals, offsets;
+
+    /**
+     * Constructor, builds the tree.
+     *
+     * @param data Data buffer, row-major
+     * @param dims Dimensionality
+     * @param leafsize Maximum leaf size
+     * @param random Random generator
+     */
+    TreeBuilder(double[] data, int dims, int leafsize, Random random) {
+      final int size = data.length / dims;
+      this.data = data;
+      this.dims = dims;
+      this.leafsize = leafsize;
+      this.random = random;
+      this.order = new int[size];
+      for(int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      final int cap = (int) Math.min((size / leafsize) * 4L + 1, MAX_ARRAY_SIZE / Math.max(dims, 1));
+      nodeStart = new int[cap];
+      nodeEnd = new int[cap];
+      leftChild = new int[cap];
+      rightChild = new int[cap];
+      normals = new double[cap * dims];
+      offsets = new double[cap];
+      build(0, size);
+    }
+
+    /**
+     * Recursively build the tree.
+     *
+     * @param start Interval minimum
+     * @param end Interval maximum (exclusive)
+     * @return Node
+     */
+    private int build(int start, int end) {
+      final int node = newNode(start, end);
+      if(end - start <= leafsize) {
+        return node;
+      }
+      final int noff = node * dims;
+      double len = 0.;
+      for(int attempt = 0; attempt < SPLIT_ATTEMPTS && len <= 0; attempt++) {
+        final int a = order[start + random.nextInt(end - start)] * dims;
+        final int b = order[start + random.nextInt(end - start)] * dims;
+        double off = 0.;
+        len = 0.;
+        for(int d = 0; d < dims; d++) {
+          final double v = data[a + d] - data[b + d];
+          normals[noff + d] = v;
+          len += v * v;
+          off += v * (data[a + d] + data[b + d]) * .5;
+        }
+        if(len > 0) {
+          len = FastMath.sqrt(len);
+          for(int d = 0; d < dims; d++) {
+            normals[noff + d] /= len;
+          }
+          offsets[node] = off / len;
+        }
+      }
+      if(len <= 0) { // Failed to find a split; keep as leaf.
+        Arrays.fill(normals, noff, noff + dims, 0.);
+        return node;
+      }
+      // Partition by the side of the hyperplane:
+      int i = start, j = end - 1;
+      while(i <= j) {
+        if(margin(order[i], node) < 0) {
+          ++i;
+        }
+        else {
+          final int tmp = order[i];
+          order[i] = order[j];
+          order[j--] = tmp;
+        }
+      }
+      if(i == start || i == end) { // Degenerate split.
+        Arrays.fill(normals, noff, noff + dims, 0.);
+        offsets[node] = 0.;
+        return node;
+      }
+      final int l = build(start, i);
+      leftChild[node] = l;
+      final int r = build(i, end);
+      rightChild[node] = r;
+      return node;
+    }
+
+    /**
+     * Signed distance of a point to a splitting hyperplane.
+     *
+     * @param p Point offset
+     * @param node Node
+     * @return Signed distance
+     */
+    private double margin(int p, int node) {
+      double dot = -offsets[node];
+      for(int d = 0, poff = p * dims, noff = node * dims; d < dims; d++) {
+        dot += data[poff + d] * normals[noff + d];
+      }
+      return dot;
+    }
+
+    /**
+     * Allocate a new (leaf) node.
+     *
+     * @param start Interval minimum
+     * @param end Interval maximum (exclusive)
+     * @return Node offset
+     */
+    private int newNode(int start, int end) {
+      if(numnodes == nodeStart.length) {
+        final int newsize = (int) Math.min(numnodes + (numnodes >>> 1) + 1L, MAX_ARRAY_SIZE / Math.max(dims, 1));
+        if(newsize <= numnodes) {
+          throw new AbortException("Data set too large for the random projection forest arrays.");
+        }
+        nodeStart = Arrays.copyOf(nodeStart, newsize);
+        nodeEnd = Arrays.copyOf(nodeEnd, newsize);
+        leftChild = Arrays.copyOf(leftChild, newsize);
+        rightChild = Arrays.copyOf(rightChild, newsize);
+        normals = Arrays.copyOf(normals, newsize * dims);
+        offsets = Arrays.copyOf(offsets, newsize);
+      }
+      nodeStart[numnodes] = start;
+      nodeEnd[numnodes] = end;
+      leftChild[numnodes] = rightChild[numnodes] = -1;
+      return numnodes++;
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    if(distcalc != null) {
+      LOG.statistics(distcalc);
+    }
+  }
+
+  /**
+   * Check if a query distance is compatible with the geometry of the trees.
+   *
+   * @param df Query distance
+   * @return Kind of the distance, or -1
+   */
+  private int compatibleKind(Distance<?> df) {
+    final int kind = distanceKind(df);
+    return kind >= 0 && (kind >= COSINE) == normalize ? kind : -1;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public KNNSearcher<O> kNNByObject(DistanceQuery<O> distanceQuery, int maxk, int flags) {
+    if((flags & QueryBuilder.FLAG_EXACT_ONLY) != 0) {
+      return null; // Approximate
+    }
+    final int kind = compatibleKind(distanceQuery.getDistance());
+    return kind >= 0 ? new RPForestKNNSearcher(kind, (PrimitiveDistance<? super O>) distanceQuery.getDistance()) : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public RangeSearcher<O> rangeByObject(DistanceQuery<O> distanceQuery, double maxrange, int flags) {
+    final int kind = compatibleKind(distanceQuery.getDistance());
+    return kind >= 0 ? new RPForestRangeSearcher(kind, (PrimitiveDistance<? super O>) distanceQuery.getDistance()) : null;
+  }
+
+  /**
+   * Base class for searchers.
+   * <p>
+   * Nodes are visited in the order of the largest distance to a splitting
+   * hyperplane that separates them from the query, which is a lower bound of
+   * the Euclidean distance (of the normalized vectors for cosine). For the
+   * absolute cosine, every tree is also traversed for the mirrored query -q,
+   * stored in the queue as the bitwise complement of the node number.
+   *
+   * @author Erich Schubert
+   */
+  private abstract class AbstractSearcher {
+    /**
+     * Distance kind.
+     */
+    protected final int kind;
+
+    /**
+     * Also consider the mirrored query -q, for the absolute cosine.
+     */
+    protected final boolean mirror;
+
+    /**
+     * Query distance.
+     */
+    protected final PrimitiveDistance<? super O> df;
+
+    /**
+     * Query object.
+     */
+    protected O query;
+
+    /**
+     * Query coordinates.
+     */
+    protected final double[] qv = new double[dims];
+
+    /**
+     * Iterator for the object ids.
+     */
+    protected final DBIDArrayIter iter = ids.iter();
+
+    /**
+     * Priority queue of nodes, by squared lower bound.
+     */
+    protected final DoubleIntegerMinHeap heap = new DoubleIntegerMinHeap();
+
+    /**
+     * Query number in which each point was last seen, for deduplication.
+     */
+    protected final int[] seen = new int[ids.size()];
+
+    /**
+     * Current query number.
+     */
+    protected int stamp = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param kind Distance kind
+     * @param df Query distance
+     */
+    protected AbstractSearcher(int kind, PrimitiveDistance<? super O> df) {
+      this.kind = kind;
+      this.mirror = kind >= ABS_COSINE;
+      this.df = df;
+    }
+
+    /**
+     * Start a new query.
+     *
+     * @param obj Query object
+     */
+    protected void start(O obj) {
+      assert obj.getDimensionality() == dims : "Dimensionality does not agree.";
+      this.query = obj;
+      for(int d = 0; d < dims; d++) {
+        qv[d] = obj.doubleValue(d);
+      }
+      if(normalize) {
+        RandomProjectionForest.normalize(qv, 0, dims);
+      }
+      if(++stamp == 0) { // Overflow
+        Arrays.fill(seen, 0);
+        stamp = 1;
+      }
+      heap.clear();
+      for(int root : roots) {
+        addRoot(root);
+      }
+    }
+
+    /**
+     * Add the root of a tree to the queue.
+     *
+     * @param root Root node
+     */
+    protected void addRoot(int root) {
+      heap.add(0., root);
+      if(mirror) {
+        heap.add(0., ~root);
+      }
+    }
+
+    /**
+     * Expand inner nodes from the queue, until a leaf is found.
+     *
+     * @param bound Bound on squared distances
+     * @return Leaf node, or -1
+     */
+    protected int nextLeaf(double bound) {
+      while(!heap.isEmpty()) {
+        final double lb = heap.peekKey();
+        final int v = heap.peekValue(), node = v < 0 ? ~v : v;
+        heap.poll();
+        if(lb > bound) {
+          heap.clear();
+          return -1;
+        }
+        if(leftChild[node] < 0) {
+          return node;
+        }
+        double dot = 0.;
+        for(int d = 0, noff = node * dims; d < dims; d++) {
+          dot += qv[d] * normals[noff + d];
+        }
+        final double m = (v < 0 ? -dot : dot) - offsets[node];
+        final double far = Math.max(lb, m * m);
+        // Points with a negative margin are in the left child:
+        final int near = m < 0 ? leftChild[node] : rightChild[node];
+        heap.add(lb, v < 0 ? ~near : near);
+        if(far <= bound) {
+          final int other = m < 0 ? rightChild[node] : leftChild[node];
+          heap.add(far, v < 0 ? ~other : other);
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Squared Euclidean distance to a point. For the absolute cosine, this is
+     * the minimum over the query and its mirror -q.
+     *
+     * @param p Point offset
+     * @return Squared distance
+     */
+    protected double squaredDistance(int p) {
+      if(!mirror) {
+        double agg = 0.;
+        for(int d = 0, off = p * dims; d < dims; d++) {
+          final double delta = data[off + d] - qv[d];
+          agg += delta * delta;
+        }
+        return agg;
+      }
+      double a = 0., b = 0.;
+      for(int d = 0, off = p * dims; d < dims; d++) {
+        final double x = data[off + d], q = qv[d];
+        a += (x - q) * (x - q);
+        b += (x + q) * (x + q);
+      }
+      return a < b ? a : b;
+    }
+
+    /**
+     * Compute the distance to a point.
+     *
+     * @param p Point offset
+     * @param r Squared Euclidean distance
+     * @return Distance
+     */
+    protected double exactDistance(int p, double r) {
+      switch(kind){
+      case SQUARED:
+        return r;
+      case EUCLIDEAN:
+        return FastMath.sqrt(r);
+      default:
+        return df.distance(query, relation.get(iter.seek(p)));
+      }
+    }
+
+    /**
+     * Convert a query distance into a bound on the squared distance. This
+     * bound includes a tolerance for rounding errors, so the final decision
+     * must be made on the exact distance.
+     *
+     * @param dist Distance
+     * @return Squared distance bound
+     */
+    protected double squaredBound(double dist) {
+      switch(kind){
+      case SQUARED:
+        return dist * (1 + 1e-12);
+      case EUCLIDEAN:
+        return dist * dist * (1 + 1e-12);
+      case COSINE:
+      case ABS_COSINE:
+        return dist * 2. * (1 + 1e-12) + 1e-12;
+      default:
+        return dist >= Math.PI ? Double.POSITIVE_INFINITY : 2. * (1. - FastMath.cos(dist)) * (1 + 1e-12) + 1e-12;
+      }
+    }
+
+    /**
+     * Count distance computations.
+     *
+     * @param n Number of distances computed
+     */
+    protected void countDistanceComputations(int n) {
+      if(distcalc != null) {
+        distcalc.increment(n);
+      }
+    }
+  }
+
+  /**
+   * Approximate kNN query for the random projection forest.
+   *
+   * @author Erich Schubert
+   */
+  public class RPForestKNNSearcher extends AbstractSearcher implements KNNSearcher<O> {
+    /**
+     * Result heap.
+     */
+    private KNNHeap knns;
+
+    /**
+     * Constructor.
+     *
+     * @param kind Distance kind
+     * @param df Query distance
+     */
+    public RPForestKNNSearcher(int kind, PrimitiveDistance<? super O> df) {
+      super(kind, df);
+    }
+
+    @Override
+    public KNNList getKNN(O obj, int k) {
+      if(knns == null || knns.getK() != k) {
+        knns = DBIDUtil.newHeap(k);
+      }
+      knns.clear();
+      start(obj);
+      final long budget = (long) candidates * k;
+      double kdist = Double.POSITIVE_INFINITY, bound = Double.POSITIVE_INFINITY;
+      int examined = 0;
+      for(int node = nextLeaf(bound); node >= 0 && examined < budget; node = nextLeaf(bound)) {
+        for(int i = nodeStart[node], end = nodeEnd[node]; i < end; i++) {
+          final int p = order[i];
+          if(seen[p] == stamp) {
+            continue;
+          }
+          seen[p] = stamp;
+          ++examined;
+          final double r = squaredDistance(p);
+          if(r <= bound) {
+            final double dist = exactDistance(p, r);
+            if(dist <= kdist) {
+              final double newk = knns.insert(dist, iter.seek(p));
+              if(newk < kdist) {
+                bound = squaredBound(kdist = newk);
+              }
+            }
+          }
+        }
+      }
+      countDistanceComputations(examined);
+      this.query = null;
+      return knns.toKNNList();
+    }
+  }
+
+  /**
+   * Range query for the random projection forest. Because the hyperplane
+   * bounds are exact, it is sufficient to search a single tree (for the
+   * absolute cosine, for both the query and its mirror).
+   *
+   * @author Erich Schubert
+   */
+  public class RPForestRangeSearcher extends AbstractSearcher implements RangeSearcher<O> {
+    /**
+     * Constructor.
+     *
+     * @param kind Distance kind
+     * @param df Query distance
+     */
+    public RPForestRangeSearcher(int kind, PrimitiveDistance<? super O> df) {
+      super(kind, df);
+    }
+
+    @Override
+    public ModifiableDoubleDBIDList getRange(O obj, double range, ModifiableDoubleDBIDList result) {
+      if(roots.length == 0) {
+        return result;
+      }
+      start(obj);
+      heap.clear(); // Use the first tree only.
+      addRoot(roots[0]);
+      final double bound = squaredBound(range);
+      int examined = 0;
+      for(int node = nextLeaf(bound); node >= 0; node = nextLeaf(bound)) {
+        for(int i = nodeStart[node], end = nodeEnd[node]; i < end; i++) {
+          final int p = order[i];
+          if(seen[p] == stamp) {
+            continue; // Leaf was already visited for the mirrored query
+          }
+          seen[p] = stamp;
+          ++examined;
+          final double r = squaredDistance(p);
+          if(r <= bound) {
+            final double dist = exactDistance(p, r);
+            if(dist <= range) {
+              result.add(dist, iter.seek(p));
+            }
+          }
+        }
+      }
+      countDistanceComputations(examined);
+      this.query = null;
+      return result;
+    }
+  }
+
+  /**
+   * Factory class
+   *
+   * @author Erich Schubert
+   *
+   * @stereotype factory
+   * @has - - - RandomProjectionForest
+   *
+   * @param <O> Vector type
+   */
+  @Alias({ "rpforest", "annoy" })
+  public static class Factory<O extends NumberVector> implements IndexFactory<O> {
+    /**
+     * Distance function.
+     */
+    Distance<? super O> distance;
+
+    /**
+     * Number of trees.
+     */
+    int numtrees;
+
+    /**
+     * Maximum size of leaf nodes.
+     */
+    int leafsize;
+
+    /**
+     * Number of candidates per requested neighbor.
+     */
+    int candidates;
+
+    /**
+     * Random generator.
+     */
+    RandomFactory rnd;
+
+    /**
+     * Constructor.
+     *
+     * @param distance Distance function
+     * @param numtrees Number of trees
+     * @param leafsize Maximum size of leaf nodes
+     * @param candidates Number of candidates per requested neighbor
+     * @param rnd Random generator
+     */
+    public Factory(Distance<? super O> distance, int numtrees, int leafsize, int candidates, RandomFactory rnd) {
+      super();
+      this.distance = distance;
+      this.numtrees = numtrees;
+      this.leafsize = leafsize;
+      this.candidates = candidates;
+      this.rnd = rnd;
+    }
+
+    @Override
+    public RandomProjectionForest<O> instantiate(Relation<O> relation) {
+      return new RandomProjectionForest<>(relation, distance, numtrees, leafsize, candidates, rnd);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     */
+    public static class Par<O extends NumberVector> implements Parameterizer {
+      /**
+       * Distance function determining the geometry of the trees.
+       */
+      public static final OptionID DISTANCE_FUNCTION_ID = new OptionID("rpforest.distancefunction", "Distance function, Euclidean or cosine.");
+
+      /**
+       * Number of trees.
+       */
+      public static final OptionID TREES_ID = new OptionID("rpforest.trees", "Number of random projection trees.");
+
+      /**
+       * Maximum leaf size.
+       */
+      public static final OptionID LEAFSIZE_ID = new OptionID("rpforest.leafsize", "Maximum number of points in a leaf.");
+
+      /**
+       * Number of candidates per requested neighbor.
+       */
+      public static final OptionID CANDIDATES_ID = new OptionID("rpforest.candidates", "Maximum number of candidates to examine, per requested neighbor.");
+
+      /**
+       * Random seed.
+       */
+      public static final OptionID SEED_ID = new OptionID("rpforest.seed", "Random seed for choosing the splits.");
+
+      /**
+       * Distance function.
+       */
+      Distance<? super O> distance;
+
+      /**
+       * Number of trees.
+       */
+      int numtrees;
+
+      /**
+       * Maximum size of leaf nodes.
+       */
+      int leafsize;
+
+      /**
+       * Number of candidates per requested neighbor.
+       */
+      int candidates;
+
+      /**
+       * Random generator.
+       */
+      RandomFactory rnd;
+
+      @Override
+      public void configure(Parameterization config) {
+        ObjectParameter<Distance<? super O>> distP = new ObjectParameter<>(DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class);
+        if(distP.grab(config, x -> distance = x) && distanceKind(distance) < 0) {
+          config.reportError(new WrongParameterValueException(distP, distP.getValueAsString(), "Random projection forests only support Euclidean and cosine distances."));
+        }
+        new IntParameter(TREES_ID, 10) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> numtrees = x);
+        new IntParameter(LEAFSIZE_ID, 32) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> leafsize = x);
+        new IntParameter(CANDIDATES_ID, 20) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .grab(config, x -> candidates = x);
+        new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+      }
+
+      @Override
+      public Factory<O> make() {
+        return new Factory<>(distance, numtrees, leafsize, candidates, rnd);
+      }
+    }
+  }
+}
@@ -23,6 +23,7 @@ package elki.index.vafile;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 import elki.data.NumberVector;
 import elki.data.type.TypeInformation;
@@ -35,16 +36,21 @@ import elki.database.relation.Relation;
 import elki.database.relation.RelationUtil;
 import elki.distance.Distance;
 import elki.distance.minkowski.LPNormDistance;
+import elki.distance.minkowski.WeightedLPNormDistance;
 import elki.index.AbstractRefiningIndex;
 import elki.index.IndexFactory;
 import elki.index.KNNIndex;
 import elki.index.RangeIndex;
 import elki.logging.Logging;
 import elki.logging.statistics.LongStatistic;
+import elki.parallel.ParallelExecutor;
 import elki.persistent.AbstractPageFileFactory;
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import elki.utilities.datastructures.heap.DoubleHeap;
 import elki.utilities.datastructures.heap.DoubleMaxHeap;
 import elki.utilities.documentation.Reference;
 import elki.utilities.documentation.Title;
+import elki.utilities.exceptions.AbortException;
 import elki.utilities.optionhandling.Parameterizer;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -56,13 +62,17 @@ import net.jafama.FastMath;
 /**
  * Vector-approximation file (VAFile)
  * <p>
+ * The approximations are stored bit-packed in a single {@code long[]} array,
+ * with a fixed number of words per object, and cells never span two words.
+ * Queries precompute the lower and upper bound contribution of every cell of
+ * every dimension, so the filter step only needs table lookups, and is run in
+ * parallel blocks. The remaining candidates are then refined in one batch.
+ * <p>
  * Reference:
  * <p>
  * R. Weber, S. Blott<br>
  * An approximation based data structure for similarity search<br>
  * Report TR1997b, ETH Zentrum, Zurich, Switzerland
- * <p>
- * TODO: this needs to be optimized &amp; more low-level.
  * 
  * @author Thomas Bernecker
  * @author Erich Schubert
@@ -70,10 +80,8 @@ import net.jafama.FastMath;
  * 
  * @opt nodefillcolor LemonChiffon
  * 
- * @composed - - - VectorApproximation
  * @has - - - VAFileRangeQuery
  * @has - - - VAFileKNNQuery
- * @assoc - - - VALPNormDistance
  * 
  * @param <V> Vector type
  */
@@ -90,15 +98,40 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
   private static final Logging LOG = Logging.getLogger(VAFile.class);
 
   /**
-   * Approximation index.
+   * Minimum number of approximations to scan per thread.
+   */
+  private static final int MIN_BLOCK = 1 << 14;
+
+  /**
+   * Object ids, defining the offsets of the approximations.
    */
-  private List<VectorApproximation> vectorApprox;
+  private ArrayDBIDs ids;
+
+  /**
+   * Bit-packed approximations, {@link #words} per object.
+   */
+  private long[] approx;
 
   /**
    * Number of partitions.
    */
   private int partitions;
 
+  /**
+   * Bits per cell number.
+   */
+  private int bits;
+
+  /**
+   * Number of cells stored in each word.
+   */
+  private int cellsPerWord;
+
+  /**
+   * Number of words per object.
+   */
+  private int words;
+
   /**
    * Quantile grid we use.
    */
@@ -110,9 +143,9 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
   int pageSize;
 
   /**
-   * Number of scans we performed.
+   * Number of scans we performed, updated by concurrent queries.
    */
-  int scans;
+  final LongAdder scans = new LongAdder();
 
   /**
    * Constructor.
@@ -125,16 +158,33 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
     super(relation);
     this.partitions = partitions;
     this.pageSize = pageSize;
-    this.scans = 0;
-    this.vectorApprox = new ArrayList<>();
   }
 
   @Override
   public void initialize() {
     setPartitions(relation);
-    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
-      vectorApprox.add(calculateApproximation(iter, relation.get(iter)));
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size(), dim = splitPositions.length;
+    bits = Integer.numberOfTrailingZeros(partitions);
+    cellsPerWord = Long.SIZE / bits;
+    words = (dim + cellsPerWord - 1) / cellsPerWord;
+    if((long) size * words > Integer.MAX_VALUE - 8) {
+      throw new AbortException("Too many objects for the VA file.");
     }
+    approx = new long[size * words];
+    ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+      DBIDArrayIter it = ids.iter();
+      for(int i = start; i < end; i++) {
+        V vec = relation.get(it.seek(i));
+        for(int d = 0, b = i * words; d < dim; d += cellsPerWord, b++) {
+          long word = 0;
+          for(int e = Math.min(d + cellsPerWord, dim) - 1; e >= d; e--) {
+            word = (word << bits) | cell(e, vec.doubleValue(e));
+          }
+          approx[b] = word;
+        }
+      }
+    });
   }
 
   /**
@@ -144,7 +194,7 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
    * @throws IllegalArgumentException
    */
   public void setPartitions(Relation<V> relation) throws IllegalArgumentException {
-    if((FastMath.log(partitions) / FastMath.log(2)) != (int) (FastMath.log(partitions) / FastMath.log(2))) {
+    if(partitions < 2 || Integer.bitCount(partitions) != 1) {
       throw new IllegalArgumentException("Number of partitions must be a power of 2!");
     }
 
@@ -170,6 +220,26 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
     }
   }
 
+  /**
+   * Find the grid cell of a value.
+   * 
+   * @param d Dimension
+   * @param val Value
+   * @return Cell number
+   */
+  private int cell(int d, double val) {
+    final double[] split = splitPositions[d];
+    // Values outside of the grid are put into the outermost cells.
+    if(val < split[0]) {
+      return 0;
+    }
+    if(val > split[partitions]) {
+      return partitions - 1;
+    }
+    int pos = Arrays.binarySearch(split, val);
+    return (pos >= 0) ? Math.min(pos, partitions - 1) : ((-pos) - 2);
+  }
+
   /**
    * Calculate the VA file position given the existing borders.
    * 
@@ -181,26 +251,10 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
     int[] approximation = new int[dv.getDimensionality()];
     for(int d = 0; d < splitPositions.length; d++) {
       final double val = dv.doubleValue(d);
-      final int lastBorderIndex = splitPositions[d].length - 1;
-
-      // Value is below data grid
-      if(val < splitPositions[d][0]) {
-        approximation[d] = 0;
-        if(id != null) {
-          LOG.warning("Vector outside of VAFile grid!");
-        }
-      } // Value is above data grid
-      else if(val > splitPositions[d][lastBorderIndex]) {
-        approximation[d] = lastBorderIndex - 1;
-        if(id != null) {
-          LOG.warning("Vector outside of VAFile grid!");
-        }
-      } // normal case
-      else {
-        // Search grid position
-        int pos = Arrays.binarySearch(splitPositions[d], val);
-        approximation[d] = (pos >= 0) ? pos : ((-pos) - 2);
+      if(id != null && (val < splitPositions[d][0] || val > splitPositions[d][partitions])) {
+        LOG.warning("Vector outside of VAFile grid!");
       }
+      approximation[d] = cell(d, val);
     }
     return new VectorApproximation(id, approximation);
   }
@@ -212,8 +266,8 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
    */
   public long getScannedPages() {
     int vacapacity = pageSize / VectorApproximation.byteOnDisk(splitPositions.length, partitions);
-    long vasize = (long) Math.ceil((vectorApprox.size()) / (1.0 * vacapacity));
-    return vasize * scans;
+    long vasize = (long) Math.ceil((ids.size()) / (1.0 * vacapacity));
+    return vasize * scans.sum();
   }
 
   @Override
@@ -230,13 +284,225 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
   @Override
   public KNNSearcher<V> kNNByObject(DistanceQuery<V> distanceQuery, int maxk, int flags) {
     Distance<? super V> df = distanceQuery.getDistance();
-    return df instanceof LPNormDistance ? new VAFileKNNQuery(distanceQuery, ((LPNormDistance) df).getP()) : null;
+    return df instanceof LPNormDistance && !(df instanceof WeightedLPNormDistance) ? new VAFileKNNQuery(distanceQuery, ((LPNormDistance) df).getP()) : null;
   }
 
   @Override
   public RangeSearcher<V> rangeByObject(DistanceQuery<V> distanceQuery, double maxradius, int flags) {
     Distance<? super V> df = distanceQuery.getDistance();
-    return df instanceof LPNormDistance ? new VAFileRangeQuery(distanceQuery, ((LPNormDistance) df).getP()) : null;
+    return df instanceof LPNormDistance && !(df instanceof WeightedLPNormDistance) ? new VAFileRangeQuery(distanceQuery, ((LPNormDistance) df).getP()) : null;
+  }
+
+  /**
+   * Per-query lookup tables of the lower and upper bound contributions of each
+   * cell, raised to the power of p (except for the maximum norm, where
+   * contributions are combined with the maximum instead of the sum).
+   * 
+   * @author Erich Schubert
+   */
+  private class LookupTable {
+    /**
+     * LP Norm p parameter.
+     */
+    final double p;
+
+    /**
+     * Flag for the maximum norm.
+     */
+    final boolean max;
+
+    /**
+     * Lower and upper bound contributions, indexed by dimension and cell.
+     */
+    final double[] lower, upper;
+
+    /**
+     * Constructor.
+     * 
+     * @param p LP norm p
+     * @param query Query vector
+     */
+    LookupTable(double p, V query) {
+      this.p = p;
+      this.max = p == Double.POSITIVE_INFINITY;
+      final int dim = splitPositions.length;
+      lower = new double[dim << bits];
+      upper = new double[dim << bits];
+      for(int d = 0, t = 0; d < dim; d++) {
+        final double[] split = splitPositions[d];
+        final double q = query.doubleValue(d);
+        for(int c = 0; c < partitions; c++, t++) {
+          final double lo = q - split[c], hi = split[c + 1] - q;
+          lower[t] = lo < 0 ? pow(-lo) : hi < 0 ? pow(-hi) : 0.;
+          upper[t] = pow(Math.max(Math.abs(lo), Math.abs(hi)));
+        }
+      }
+    }
+
+    /**
+     * Raise to the power of p, unless using the maximum norm.
+     * 
+     * @param x Value
+     * @return Transformed value
+     */
+    double pow(double x) {
+      return max ? x : p == 1. ? x : p == 2. ? x * x : FastMath.pow(x, p);
+    }
+
+    /**
+     * Filter a block of approximations by their lower bounds.
+     * 
+     * @param start Block start
+     * @param end Block end
+     * @param threshold Initial threshold on the transformed lower bound
+     * @param k Number of upper bounds to use for pruning, 0 to disable
+     * @param cands Output candidates
+     */
+    void filter(int start, int end, double threshold, int k, Candidates cands) {
+      final int dim = splitPositions.length, mask = partitions - 1;
+      final long[] approx = VAFile.this.approx;
+      final double[] lower = this.lower, upper = this.upper;
+      for(int i = start, b = start * words; i < end; i++) {
+        double lb = 0, ub = 0;
+        for(int d = 0, t = 0; d < dim; b++) {
+          long word = approx[b];
+          for(int e = Math.min(d + cellsPerWord, dim); d < e; d++, t += partitions, word >>>= bits) {
+            final int c = t + (int) (word & mask);
+            if(max) {
+              lb = lower[c] > lb ? lower[c] : lb;
+              ub = upper[c] > ub ? upper[c] : ub;
+            }
+            else {
+              lb += lower[c];
+              ub += upper[c];
+            }
+          }
+        }
+        if(lb > threshold) {
+          continue;
+        }
+        cands.add(lb, i);
+        if(k > 0) {
+          cands.upperBounds.add(ub, k);
+          if(cands.upperBounds.size() >= k) {
+            threshold = Math.min(threshold, cands.upperBounds.peek());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Candidates of the filter step.
+   * 
+   * @author Erich Schubert
+   */
+  private static class Candidates {
+    /**
+     * Transformed lower bounds.
+     */
+    double[] lbs = new double[16];
+
+    /**
+     * Object offsets.
+     */
+    int[] offsets = new int[16];
+
+    /**
+     * Number of candidates.
+     */
+    int size = 0;
+
+    /**
+     * Smallest upper bounds seen, for kNN queries.
+     */
+    DoubleMaxHeap upperBounds;
+
+    /**
+     * Constructor.
+     * 
+     * @param k Number of upper bounds to keep
+     */
+    Candidates(int k) {
+      upperBounds = new DoubleMaxHeap(k + 1);
+    }
+
+    /**
+     * Add a candidate.
+     * 
+     * @param lb Transformed lower bound
+     * @param offset Object offset
+     */
+    void add(double lb, int offset) {
+      if(size == lbs.length) {
+        final int newsize = size + (size >>> 1);
+        lbs = Arrays.copyOf(lbs, newsize);
+        offsets = Arrays.copyOf(offsets, newsize);
+      }
+      lbs[size] = lb;
+      offsets[size++] = offset;
+    }
+
+    /**
+     * Merge the candidates of another block.
+     * 
+     * @param other Other candidates
+     * @param threshold Threshold on the lower bound
+     * @param k Number of upper bounds to keep
+     */
+    void addAll(Candidates other, double threshold, int k) {
+      for(int i = 0; i < other.size; i++) {
+        if(other.lbs[i] <= threshold) {
+          add(other.lbs[i], other.offsets[i]);
+        }
+      }
+      for(DoubleHeap.UnsortedIter it = other.upperBounds.unsortedIter(); it.valid(); it.advance()) {
+        upperBounds.add(it.get(), k);
+      }
+    }
+  }
+
+  /**
+   * Run the filter step in parallel blocks.
+   * 
+   * @param table Lookup table
+   * @param threshold Threshold on the transformed lower bound
+   * @param k Number of upper bounds to use for pruning, 0 to disable
+   * @return Candidates, in no particular order
+   */
+  private Candidates filter(LookupTable table, double threshold, int k) {
+    // Count a VA file scan
+    scans.increment();
+    final int size = ids.size();
+    if(size < MIN_BLOCK << 1) {
+      Candidates cands = new Candidates(k);
+      table.filter(0, size, threshold, k, cands);
+      return cands;
+    }
+    final List<Candidates> blocks = new ArrayList<>();
+    ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+      Candidates cands = new Candidates(k);
+      table.filter(start, end, threshold, k, cands);
+      synchronized(blocks) {
+        blocks.add(cands);
+      }
+    });
+    // Merge the blocks, and prune with the global upper bound
+    Candidates all = new Candidates(k);
+    double t = threshold;
+    if(k > 0) {
+      for(Candidates b : blocks) {
+        for(DoubleHeap.UnsortedIter it = b.upperBounds.unsortedIter(); it.valid(); it.advance()) {
+          all.upperBounds.add(it.get(), k);
+        }
+      }
+      t = all.upperBounds.size() >= k ? Math.min(t, all.upperBounds.peek()) : t;
+      all.upperBounds.clear();
+    }
+    for(Candidates b : blocks) {
+      all.addAll(b, t, k);
+    }
+    return all;
   }
 
   /**
@@ -264,31 +530,23 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
 
     @Override
     public ModifiableDoubleDBIDList getRange(V query, double eps, ModifiableDoubleDBIDList result) {
-      // generate query approximation and lookup table
-      VectorApproximation queryApprox = calculateApproximation(null, query);
-
-      // Approximative distance function
-      VALPNormDistance vadist = new VALPNormDistance(p, splitPositions, query, queryApprox);
-
-      // Count a VA file scan
-      scans += 1;
-
-      // Approximation step
-      for(int i = 0; i < vectorApprox.size(); i++) {
-        VectorApproximation va = vectorApprox.get(i);
-        if(vadist.getMinDist(va) > eps) {
-          continue;
-        }
-
-        // TODO: we don't need to refine always (maxDist < eps), if we are
-        // interested in the DBID only! But this needs an API change.
-
-        // refine the next element
-        final double dist = refine(va, query);
+      LookupTable table = new LookupTable(p, query);
+      Candidates cands = filter(table, table.pow(eps), 0);
+
+      // TODO: we don't need to refine always (maxDist < eps), if we are
+      // interested in the DBID only! But this needs an API change.
+
+      // Refine in storage order
+      final int[] offsets = cands.offsets;
+      Arrays.sort(offsets, 0, cands.size);
+      DBIDArrayIter it = ids.iter();
+      for(int i = 0; i < cands.size; i++) {
+        final double dist = distanceQuery.distance(query, it.seek(offsets[i]));
         if(dist <= eps) {
-          result.add(dist, va);
+          result.add(dist, it);
         }
       }
+      incRefinements(cands.size);
       return result;
     }
   }
@@ -317,58 +575,31 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
 
     @Override
     public KNNList getKNN(V query, int k) {
-      // generate query approximation and lookup table
-      VectorApproximation queryApprox = calculateApproximation(null, query);
-
-      // Approximative distance function
-      VALPNormDistance vadist = new VALPNormDistance(p, splitPositions, query, queryApprox);
-
-      // Heap for the kth smallest maximum distance (yes, we need a max heap!)
-      DoubleMaxHeap minMaxHeap = new DoubleMaxHeap(k + 1);
-      double minMaxDist = Double.POSITIVE_INFINITY;
+      LookupTable table = new LookupTable(p, query);
       // Candidates with minDist <= kth maxDist
-      ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList(vectorApprox.size());
-
-      // Count a VA file scan
-      scans += 1;
-
-      // Approximation step
-      for(int i = 0; i < vectorApprox.size(); i++) {
-        VectorApproximation va = vectorApprox.get(i);
-        double minDist = vadist.getMinDist(va);
-        // Skip excess candidate generation:
-        if(minDist > minMaxDist) {
-          continue;
-        }
-        candidates.add(minDist, va);
-
-        // Update candidate pruning heap
-        minMaxHeap.add(vadist.getMaxDist(va), k);
-        minMaxDist = minMaxHeap.size() >= k ? minMaxHeap.peek() : Double.POSITIVE_INFINITY;
-      }
+      Candidates cands = filter(table, Double.POSITIVE_INFINITY, k);
       // sort candidates by lower bound (minDist)
-      candidates.sort();
+      DoubleIntegerArrayQuickSort.sort(cands.lbs, cands.offsets, cands.size);
 
       // refinement step
       KNNHeap result = DBIDUtil.newHeap(k);
-
-      // retrieve accurate distances
-      for(DoubleDBIDListIter iter = candidates.iter(); iter.valid(); iter.advance()) {
+      DBIDArrayIter it = ids.iter();
+      double kDist = Double.POSITIVE_INFINITY;
+      int refined = 0;
+      for(; refined < cands.size; refined++) {
         // Stop when we are sure to have all elements
+        if(cands.lbs[refined] > kDist) {
+          break;
+        }
+        result.insert(distanceQuery.distance(query, it.seek(cands.offsets[refined])), it);
         if(result.size() >= k) {
-          double kDist = result.getKNNDistance();
-          if(iter.doubleValue() > kDist) {
-            break;
-          }
+          kDist = table.pow(result.getKNNDistance());
         }
-
-        // refine the next element
-        final double dist = refine(iter, query);
-        result.insert(dist, iter);
       }
+      incRefinements(refined);
       if(LOG.isDebuggingFinest()) {
         LOG.finest("query = (" + query + ")");
-        LOG.finest("database: " + vectorApprox.size() + ", candidates: " + candidates.size() + ", results: " + result.size());
+        LOG.finest("database: " + ids.size() + ", candidates: " + cands.size + ", results: " + result.size());
       }
 
       return result.toKNNList();
@@ -0,0 +1,105 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.invertedlist;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.SparseDoubleVector;
+import elki.data.type.VectorTypeInformation;
+import elki.database.datastore.WritableDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.MaterializedRelation;
+import elki.distance.ArcCosineDistance;
+import elki.distance.CosineDistance;
+import elki.distance.Distance;
+import elki.index.AbstractIndexStructureTest;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the {@link BlockMaxInvertedIndex} index.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class BlockMaxInvertedIndexTest extends AbstractIndexStructureTest {
+  @Test
+  public void testBlockMaxIndex() {
+    BlockMaxInvertedIndex.Factory<?> factory = new ELKIBuilder<>(BlockMaxInvertedIndex.Factory.class).build();
+    assertExactCosine(factory, BlockMaxInvertedIndex.BlockMaxKNNSearcher.class, BlockMaxInvertedIndex.BlockMaxRangeSearcher.class);
+  }
+
+  @Test
+  public void testSparse() {
+    final int size = 1000, dim = 300;
+    Random r = new Random(0L);
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(size);
+    MaterializedRelation<SparseDoubleVector> relation = new MaterializedRelation<>(new VectorTypeInformation<>(SparseDoubleVector.FACTORY, SparseDoubleVector.VARIABLE_SERIALIZER, 1, dim), ids);
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      // Skewed dimensions, few non-zero values, some negative values:
+      double[] v = new double[dim];
+      for(int j = r.nextInt(20); j >= 0; j--) {
+        v[(int) (dim * Math.pow(r.nextDouble(), 3))] = r.nextInt(5) + (r.nextDouble() < .1 ? -3 : 1);
+      }
+      relation.insert(it, new SparseDoubleVector(v));
+    }
+    BlockMaxInvertedIndex<SparseDoubleVector> index = new BlockMaxInvertedIndex<>(relation);
+    index.initialize();
+    assertSparse(relation, index, CosineDistance.STATIC);
+    assertSparse(relation, index, ArcCosineDistance.STATIC);
+  }
+
+  /**
+   * Compare the index to a linear scan.
+   *
+   * @param relation Data relation
+   * @param index Index
+   * @param df Distance function
+   */
+  private void assertSparse(MaterializedRelation<SparseDoubleVector> relation, BlockMaxInvertedIndex<SparseDoubleVector> index, Distance<? super SparseDoubleVector> df) {
+    QueryBuilder<SparseDoubleVector> qb = new QueryBuilder<>(relation, df);
+    DistanceQuery<SparseDoubleVector> dq = qb.distanceQuery();
+    KNNSearcher<SparseDoubleVector> linknn = qb.linearOnly().kNNByObject(10);
+    RangeSearcher<SparseDoubleVector> linrange = qb.linearOnly().rangeByObject(1);
+    KNNSearcher<SparseDoubleVector> knn = index.kNNByObject(dq, 10, 0);
+    RangeSearcher<SparseDoubleVector> range = index.rangeByObject(dq, 1, 0);
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      SparseDoubleVector q = relation.get(it);
+      for(int k : new int[] { 1, 10 }) {
+        KNNList exp = linknn.getKNN(q, k), res = knn.getKNN(q, k);
+        assertEquals("kNN size", exp.size(), res.size());
+        assertEquals("kNN distance", exp.getKNNDistance(), res.getKNNDistance(), 0.);
+      }
+      assertEquals("Range size", linrange.getRange(q, .2).size(), range.getRange(q, .2).size());
+    }
+    WritableDataStore<KNNList> batch = index.kNNBatch(dq, relation.getDBIDs(), 10);
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      assertEquals("Batch kNN distance", linknn.getKNN(relation.get(it), 10).getKNNDistance(), batch.get(it).getKNNDistance(), 0.);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.quantization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDs;
+import elki.database.ids.KNNList;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.Relation;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.distance.minkowski.ManhattanDistance;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Regression test for the product quantization index.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ProductQuantizationIndexTest {
+  // the following values depend on the data set used!
+  static String dataset = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  // number of kNN to query
+  int k = 10;
+
+  // size of the data set
+  int shoulds = 600;
+
+  @Test
+  public void testADC() {
+    assertEquals("Recall does not match.", 0.6146666666666667, recall(1, 0, 0), 1e-15);
+  }
+
+  @Test
+  public void testIVFRerank() {
+    assertEquals("Recall does not match.", 0.99, recall(4, 2, 5), 1e-15);
+  }
+
+  /**
+   * Compute the recall of the kNN queries.
+   *
+   * @param lists Number of inverted lists
+   * @param probe Number of lists to scan (only used with multiple lists)
+   * @param rerank Re-ranking factor
+   * @return Recall
+   */
+  private double recall(int lists, int probe, int rerank) {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = new QueryBuilder<>(relation, EuclideanDistance.STATIC).distanceQuery();
+    ELKIBuilder<ProductQuantizationIndex<DoubleVector>> builder = new ELKIBuilder<ProductQuantizationIndex<DoubleVector>>(ProductQuantizationIndex.class) //
+        .with(ProductQuantizationIndex.Par.SUBSPACES_ID, 3) //
+        .with(ProductQuantizationIndex.Par.CENTROIDS_ID, 8) //
+        .with(ProductQuantizationIndex.Par.LISTS_ID, lists) //
+        .with(ProductQuantizationIndex.Par.RERANK_ID, rerank) //
+        .with(ProductQuantizationIndex.Par.SEED_ID, 0);
+    if(lists > 1) { // Only used with multiple lists
+      builder.with(ProductQuantizationIndex.Par.PROBE_ID, probe);
+    }
+    ProductQuantizationIndex<DoubleVector>.Instance index = builder.build().instantiate(relation);
+    index.initialize();
+    assertNull("Exact query should not use the index.", index.kNNByDBID(distanceQuery, k, QueryBuilder.FLAG_EXACT_ONLY));
+    assertNull("Incompatible distance.", index.kNNByDBID(new QueryBuilder<>(relation, ManhattanDistance.STATIC).distanceQuery(), k, 0));
+    KNNSearcher<DBIDRef> exact = new QueryBuilder<>(relation, EuclideanDistance.STATIC).linearOnly().kNNByDBID(k);
+    KNNSearcher<DBIDRef> approx = index.kNNByDBID(distanceQuery, k, 0);
+    int found = 0;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList truth = exact.getKNN(iter, k);
+      DBIDs result = DBIDUtil.ensureSet(approx.getKNN(iter, k));
+      for(DBIDIter it = truth.iter(); it.valid(); it.advance()) {
+        found += result.contains(it) ? 1 : 0;
+      }
+    }
+    return found / (double) (relation.size() * k);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.sharded;
+
+import org.junit.Test;
+
+import elki.database.query.knn.WrappedKNNDBIDByLookup;
+import elki.database.query.range.WrappedRangeDBIDByLookup;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.index.AbstractIndexStructureTest;
+import elki.index.tree.metrical.covertree.CoverTree;
+import elki.index.tree.spatial.kd.SmallMemoryKDTree;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the {@link ShardedIndex} index.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ShardedIndexTest extends AbstractIndexStructureTest {
+  @Test
+  public void testRandom() {
+    ShardedIndex.Factory<?> factory = new ELKIBuilder<>(ShardedIndex.Factory.class) //
+        .with(ShardedIndex.Factory.Par.INDEX_ID, SmallMemoryKDTree.Factory.class) //
+        .with(ShardedIndex.Factory.Par.SHARDS_ID, 4) //
+        .with(ShardedIndex.Factory.Par.SEED_ID, 0L).build();
+    assertExactEuclidean(factory, ShardedIndex.ShardedKNNSearcher.class, ShardedIndex.ShardedRangeSearcher.class);
+    assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
+  }
+
+  @Test
+  public void testSpaceFilling() {
+    ShardedIndex.Factory<?> factory = new ELKIBuilder<>(ShardedIndex.Factory.class) //
+        .with(ShardedIndex.Factory.Par.INDEX_ID, CoverTree.Factory.class) //
+        .with(CoverTree.Factory.Par.DISTANCE_FUNCTION_ID, EuclideanDistance.class) //
+        .with(ShardedIndex.Factory.Par.SHARDS_ID, 7) //
+        .with(ShardedIndex.Factory.Par.PARTITIONING_ID, ShardedIndex.Partitioning.SPACEFILLING).build();
+    assertExactEuclidean(factory, ShardedIndex.ShardedKNNSearcher.class, ShardedIndex.ShardedRangeSearcher.class);
+  }
+
+  @Test
+  public void testKMeans() {
+    ShardedIndex.Factory<?> factory = new ELKIBuilder<>(ShardedIndex.Factory.class) //
+        .with(ShardedIndex.Factory.Par.INDEX_ID, SmallMemoryKDTree.Factory.class) //
+        .with(ShardedIndex.Factory.Par.SHARDS_ID, 5) //
+        .with(ShardedIndex.Factory.Par.PARTITIONING_ID, ShardedIndex.Partitioning.KMEANS) //
+        .with(ShardedIndex.Factory.Par.SEED_ID, 0L).build();
+    assertExactEuclidean(factory, ShardedIndex.ShardedKNNSearcher.class, ShardedIndex.ShardedRangeSearcher.class);
+  }
+}
@@ -20,8 +20,20 @@
  */
 package elki.index.tree.metrical.covertree;
 
+import static org.junit.Assert.assertEquals;
+
 import org.junit.Test;
 
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.datastore.DataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
 import elki.distance.minkowski.EuclideanDistance;
 import elki.index.AbstractIndexStructureTest;
 import elki.utilities.ELKIBuilder;
@@ -41,4 +53,28 @@ public class CoverTreeTest extends AbstractIndexStructureTest {
     assertPrioritySearchEuclidean(factory, CoverTree.CoverTreePrioritySearcher.class);
     assertSinglePoint(factory, CoverTree.CoverTreePrioritySearcher.class, CoverTree.CoverTreeRangeSearcher.class);
   }
+
+  @Test
+  public void testBatch() {
+    final int k = 10;
+    final double eps = 0.1;
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/hierarchical-3d2d1d.csv", 600);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    CoverTree<DoubleVector> tree = new ELKIBuilder<CoverTree.Factory<DoubleVector>>(CoverTree.Factory.class) //
+        .with(CoverTree.Factory.Par.DISTANCE_FUNCTION_ID, EuclideanDistance.class).build().instantiate(relation);
+    tree.initialize();
+    QueryBuilder<DoubleVector> qb = new QueryBuilder<>(relation, EuclideanDistance.STATIC).linearOnly();
+    KNNSearcher<DBIDRef> knnq = qb.kNNByDBID(k);
+    RangeSearcher<DBIDRef> rangeq = qb.rangeByDBID(eps);
+    DataStore<KNNList> knns = tree.kNNBatch(relation.getDBIDs(), k);
+    DataStore<DoubleDBIDList> ranges = tree.rangeBatch(relation.getDBIDs(), eps);
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList truth = knnq.getKNN(iter, k), res = knns.get(iter);
+      assertEquals("Wrong kNN size", truth.size(), res.size());
+      for(DoubleDBIDListIter a = truth.iter(), b = res.iter(); a.valid(); a.advance(), b.advance()) {
+        assertEquals("Wrong kNN distance", a.doubleValue(), b.doubleValue(), 1e-15);
+      }
+      assertEquals("Wrong range size", rangeq.getRange(iter, eps).size(), ranges.get(iter).size());
+    }
+  }
 }
@@ -20,8 +20,22 @@
  */
 package elki.index.tree.metrical.covertree;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import org.junit.Test;
 
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.datastore.DataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.Relation;
 import elki.distance.minkowski.EuclideanDistance;
 import elki.index.AbstractIndexStructureTest;
 import elki.utilities.ELKIBuilder;
@@ -41,4 +55,34 @@ public class SimplifiedCoverTreeTest extends AbstractIndexStructureTest {
     assertPrioritySearchEuclidean(factory, SimplifiedCoverTree.CoverTreePrioritySearcher.class);
     assertSinglePoint(factory, SimplifiedCoverTree.CoverTreeKNNSearcher.class, SimplifiedCoverTree.CoverTreeRangeSearcher.class);
   }
+
+  @Test
+  public void testBatch() {
+    final int k = 10;
+    final double eps = 0.1;
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/hierarchical-3d2d1d.csv", 600);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    SimplifiedCoverTree<DoubleVector> tree = new ELKIBuilder<SimplifiedCoverTree.Factory<DoubleVector>>(SimplifiedCoverTree.Factory.class) //
+        .with(SimplifiedCoverTree.Factory.Par.DISTANCE_FUNCTION_ID, EuclideanDistance.class).build().instantiate(relation);
+    tree.initialize();
+    DistanceQuery<DoubleVector> dq = new QueryBuilder<>(relation, EuclideanDistance.STATIC).distanceQuery();
+    KNNSearcher<DBIDRef> knnq = tree.kNNByDBID(dq, k, 0);
+    RangeSearcher<DBIDRef> rangeq = tree.rangeByDBID(dq, eps, 0);
+    DataStore<KNNList> knns = tree.kNNBatch(relation.getDBIDs(), k);
+    DataStore<DoubleDBIDList> ranges = tree.rangeBatch(relation.getDBIDs(), eps);
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList single = knnq.getKNN(iter, k), res = knns.get(iter);
+      assertEquals("Wrong kNN size", single.size(), res.size());
+      for(DoubleDBIDListIter a = single.iter(), b = res.iter(); a.valid(); a.advance(), b.advance()) {
+        assertEquals("Wrong kNN distance", a.doubleValue(), b.doubleValue(), 0.);
+        assertTrue("Wrong kNN neighbor", DBIDUtil.equal(a, b));
+      }
+      DoubleDBIDList srange = rangeq.getRange(iter, eps), brange = ranges.get(iter);
+      assertEquals("Wrong range size", srange.size(), brange.size());
+      for(DoubleDBIDListIter a = srange.iter(), b = brange.iter(); a.valid(); a.advance(), b.advance()) {
+        assertEquals("Wrong range distance", a.doubleValue(), b.doubleValue(), 0.);
+        assertTrue("Wrong range neighbor", DBIDUtil.equal(a, b));
+      }
+    }
+  }
 }
@@ -0,0 +1,111 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.tree.spatial.balltree;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DoubleDBIDList;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.ids.KNNList;
+import elki.database.query.PrioritySearcher;
+import elki.database.query.QueryBuilder;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.knn.WrappedKNNDBIDByLookup;
+import elki.database.query.range.RangeSearcher;
+import elki.database.query.range.WrappedRangeDBIDByLookup;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.ArcCosineDistance;
+import elki.distance.CosineDistance;
+import elki.distance.PrimitiveDistance;
+import elki.index.AbstractIndexStructureTest;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the {@link BallTree} index.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class BallTreeTest extends AbstractIndexStructureTest {
+  @Test
+  public void testBallTree() {
+    BallTree.Factory<?> factory = new ELKIBuilder<>(BallTree.Factory.class) //
+        .with(BallTree.Factory.Par.LEAFSIZE_ID, 5).build();
+    assertExactEuclidean(factory, BallTree.BallTreeKNNSearcher.class, BallTree.BallTreeRangeSearcher.class);
+    assertPrioritySearchEuclidean(factory, BallTree.BallTreePrioritySearcher.class);
+    assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
+  }
+
+  @Test
+  public void testBallTreeCosine() {
+    BallTree.Factory<?> factory = new ELKIBuilder<>(BallTree.Factory.class) //
+        .with(BallTree.Factory.Par.DISTANCE_FUNCTION_ID, CosineDistance.class).build();
+    assertExactCosine(factory, BallTree.BallTreeKNNSearcher.class, BallTree.BallTreeRangeSearcher.class);
+  }
+
+  @Test
+  public void testBallTreeCosineCentered() {
+    // Zero-centered data, where many neighbors are on the opposite side.
+    Random rnd = new Random(0L);
+    double[][] data = new double[2000][25];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = rnd.nextGaussian();
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data));
+    db.initialize();
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    for(PrimitiveDistance<? super DoubleVector> dist : new PrimitiveDistance[] { CosineDistance.STATIC, ArcCosineDistance.STATIC }) {
+      BallTree<DoubleVector> index = new ELKIBuilder<BallTree.Factory<DoubleVector>>(BallTree.Factory.class) //
+          .with(BallTree.Factory.Par.DISTANCE_FUNCTION_ID, dist) //
+          .with(BallTree.Factory.Par.LEAFSIZE_ID, 10).build().instantiate(relation);
+      index.initialize();
+      QueryBuilder<DoubleVector> qb = new QueryBuilder<>(relation, dist);
+      KNNSearcher<DBIDRef> exact = qb.linearOnly().kNNByDBID(10);
+      RangeSearcher<DBIDRef> exactr = qb.linearOnly().rangeByDBID();
+      KNNSearcher<DBIDRef> knnq = index.kNNByDBID(qb.distanceQuery(), 10, 0);
+      RangeSearcher<DBIDRef> rangeq = index.rangeByDBID(qb.distanceQuery(), Double.POSITIVE_INFINITY, 0);
+      PrioritySearcher<DBIDRef> prioq = index.priorityByDBID(qb.distanceQuery(), Double.POSITIVE_INFINITY, 0);
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        KNNList truth = exact.getKNN(iter, 10), knn = knnq.getKNN(iter, 10), pknn = prioq.getKNN(iter, 10);
+        for(DoubleDBIDListIter a = truth.iter(), b = knn.iter(), c = pknn.iter(); a.valid(); a.advance(), b.advance(), c.advance()) {
+          assertEquals("kNN distances do not agree.", a.doubleValue(), b.doubleValue(), 1e-15);
+          assertEquals("Priority search distances do not agree.", a.doubleValue(), c.doubleValue(), 1e-15);
+        }
+        final double r = truth.getKNNDistance();
+        DoubleDBIDList range = rangeq.getRange(iter, r);
+        assertEquals("Range query sizes do not agree.", exactr.getRange(iter, r).size(), range.size());
+      }
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.index.tree.spatial.rpforest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import elki.algorithm.AbstractSimpleAlgorithmTest;
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DBIDs;
+import elki.database.ids.DoubleDBIDList;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.ids.KNNList;
+import elki.database.query.QueryBuilder;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.query.knn.WrappedKNNDBIDByLookup;
+import elki.database.query.range.RangeSearcher;
+import elki.database.query.range.WrappedRangeDBIDByLookup;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.ArcCosineDistance;
+import elki.distance.CosineDistance;
+import elki.distance.PrimitiveDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.index.AbstractIndexStructureTest;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the {@link RandomProjectionForest} index.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class RandomProjectionForestTest extends AbstractIndexStructureTest {
+  @Test
+  public void testExhaustive() {
+    // With enough candidates, the search terminates by the bounds, and is
+    // exact.
+    RandomProjectionForest.Factory<?> factory = new ELKIBuilder<>(RandomProjectionForest.Factory.class) //
+        .with(RandomProjectionForest.Factory.Par.LEAFSIZE_ID, 5) //
+        .with(RandomProjectionForest.Factory.Par.CANDIDATES_ID, 1000) //
+        .with(RandomProjectionForest.Factory.Par.SEED_ID, 0).build();
+    assertExactEuclidean(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
+    assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
+  }
+
+  @Test
+  public void testExhaustiveCosine() {
+    RandomProjectionForest.Factory<?> factory = new ELKIBuilder<>(RandomProjectionForest.Factory.class) //
+        .with(RandomProjectionForest.Factory.Par.DISTANCE_FUNCTION_ID, CosineDistance.class) //
+        .with(RandomProjectionForest.Factory.Par.CANDIDATES_ID, 1000) //
+        .with(RandomProjectionForest.Factory.Par.SEED_ID, 0).build();
+    assertExactCosine(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
+  }
+
+  @Test
+  public void testRecall() {
+    final int k = 10;
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/hierarchical-3d2d1d.csv", 600);
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    RandomProjectionForest<DoubleVector> index = new ELKIBuilder<RandomProjectionForest.Factory<DoubleVector>>(RandomProjectionForest.Factory.class) //
+        .with(RandomProjectionForest.Factory.Par.TREES_ID, 4) //
+        .with(RandomProjectionForest.Factory.Par.LEAFSIZE_ID, 10) //
+        .with(RandomProjectionForest.Factory.Par.CANDIDATES_ID, 2) //
+        .with(RandomProjectionForest.Factory.Par.SEED_ID, 0) //
+        .build().instantiate(relation);
+    index.initialize();
+    QueryBuilder<DoubleVector> qb = new QueryBuilder<>(relation, EuclideanDistance.STATIC);
+    KNNSearcher<DBIDRef> exact = qb.linearOnly().kNNByDBID(k);
+    KNNSearcher<DBIDRef> approx = index.kNNByDBID(qb.distanceQuery(), k, 0);
+    int found = 0;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList truth = exact.getKNN(iter, k);
+      DBIDs result = DBIDUtil.ensureSet(approx.getKNN(iter, k));
+      for(DBIDIter it = truth.iter(); it.valid(); it.advance()) {
+        found += result.contains(it) ? 1 : 0;
+      }
+    }
+    assertEquals("Recall does not match.", 0.885, found / (double) (relation.size() * k), 1e-15);
+  }
+
+  @Test
+  public void testExhaustiveCosineCentered() {
+    // Zero-centered data, where many neighbors are on the opposite side.
+    Random rnd = new Random(0L);
+    double[][] data = new double[2000][25];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = rnd.nextGaussian();
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data));
+    db.initialize();
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    for(PrimitiveDistance<? super DoubleVector> dist : new PrimitiveDistance[] { CosineDistance.STATIC, ArcCosineDistance.STATIC }) {
+      RandomProjectionForest<DoubleVector> index = new ELKIBuilder<RandomProjectionForest.Factory<DoubleVector>>(RandomProjectionForest.Factory.class) //
+          .with(RandomProjectionForest.Factory.Par.DISTANCE_FUNCTION_ID, dist) //
+          .with(RandomProjectionForest.Factory.Par.LEAFSIZE_ID, 10) //
+          .with(RandomProjectionForest.Factory.Par.CANDIDATES_ID, 1000) //
+          .with(RandomProjectionForest.Factory.Par.SEED_ID, 0) //
+          .build().instantiate(relation);
+      index.initialize();
+      QueryBuilder<DoubleVector> qb = new QueryBuilder<>(relation, dist);
+      KNNSearcher<DBIDRef> exact = qb.linearOnly().kNNByDBID(10);
+      RangeSearcher<DBIDRef> exactr = qb.linearOnly().rangeByDBID();
+      KNNSearcher<DBIDRef> knnq = index.kNNByDBID(qb.distanceQuery(), 10, 0);
+      RangeSearcher<DBIDRef> rangeq = index.rangeByDBID(qb.distanceQuery(), Double.POSITIVE_INFINITY, 0);
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        KNNList truth = exact.getKNN(iter, 10), knn = knnq.getKNN(iter, 10);
+        for(DoubleDBIDListIter a = truth.iter(), b = knn.iter(); a.valid(); a.advance(), b.advance()) {
+          assertEquals("kNN distances do not agree.", a.doubleValue(), b.doubleValue(), 1e-15);
+        }
+        final double r = truth.getKNNDistance();
+        DoubleDBIDList range = rangeq.getRange(iter, r);
+        assertEquals("Range query sizes do not agree.", exactr.getRange(iter, r).size(), range.size());
+      }
+    }
+  }
+}
@@ -20,10 +20,30 @@
  */
 package elki.index.vafile;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
 import org.junit.Test;
 
+import elki.data.DoubleVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.ids.KNNList;
+import elki.database.query.QueryBuilder;
+import elki.database.query.knn.KNNSearcher;
 import elki.database.query.knn.WrappedKNNDBIDByLookup;
+import elki.database.query.range.RangeSearcher;
 import elki.database.query.range.WrappedRangeDBIDByLookup;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.PrimitiveDistance;
+import elki.distance.minkowski.ManhattanDistance;
+import elki.distance.minkowski.MaximumDistance;
 import elki.index.AbstractIndexStructureTest;
 import elki.utilities.ELKIBuilder;
 
@@ -44,4 +64,45 @@ public class VAFileTest extends AbstractIndexStructureTest {
     assertExactEuclidean(factory, VAFile.VAFileKNNQuery.class, VAFile.VAFileRangeQuery.class);
     assertSinglePoint(factory, WrappedKNNDBIDByLookup.class, WrappedRangeDBIDByLookup.class);
   }
+
+  /**
+   * Test {@link VAFile} on enough data to use the parallel filter step, with
+   * the Manhattan and maximum norms.
+   */
+  @Test
+  public void testVAFileParallel() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[40000][3];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = rnd.nextDouble();
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data));
+    db.initialize();
+    Relation<DoubleVector> relation = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    VAFile<DoubleVector> index = new ELKIBuilder<VAFile.Factory<DoubleVector>>(VAFile.Factory.class) //
+        .with(VAFile.Factory.Par.PARTITIONS_ID, 16).build().instantiate(relation);
+    index.initialize();
+    for(PrimitiveDistance<? super DoubleVector> dist : new PrimitiveDistance[] { ManhattanDistance.STATIC, MaximumDistance.STATIC }) {
+      QueryBuilder<DoubleVector> qb = new QueryBuilder<>(relation, dist);
+      KNNSearcher<DBIDRef> exact = qb.linearOnly().kNNByDBID(10);
+      RangeSearcher<DBIDRef> exactr = qb.linearOnly().rangeByDBID();
+      KNNSearcher<DBIDRef> knnq = index.kNNByDBID(qb.distanceQuery(), 10, 0);
+      RangeSearcher<DBIDRef> rangeq = index.rangeByDBID(qb.distanceQuery(), Double.POSITIVE_INFINITY, 0);
+      int i = 0;
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance(), i++) {
+        if(i % 400 != 0) {
+          continue; // Only query a sample.
+        }
+        KNNList truth = exact.getKNN(iter, 10), knn = knnq.getKNN(iter, 10);
+        assertEquals("kNN sizes do not agree.", truth.size(), knn.size());
+        for(DoubleDBIDListIter a = truth.iter(), b = knn.iter(); a.valid(); a.advance(), b.advance()) {
+          assertEquals("kNN distances do not agree.", a.doubleValue(), b.doubleValue(), 1e-15);
+        }
+        final double r = truth.getKNNDistance();
+        assertEquals("Range query sizes do not agree.", exactr.getRange(iter, r).size(), rangeq.getRange(iter, r).size());
+      }
+    }
+  }
 }
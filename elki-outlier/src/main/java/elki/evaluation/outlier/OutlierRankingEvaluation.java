@@ -20,25 +20,25 @@
  */
 package elki.evaluation.outlier;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import elki.database.Database;
 import elki.database.DatabaseUtil;
+import elki.database.ids.DBIDIter;
 import elki.database.ids.DBIDUtil;
 import elki.database.ids.DBIDs;
 import elki.database.ids.SetDBIDs;
 import elki.evaluation.Evaluator;
 import elki.evaluation.scores.*;
-import elki.evaluation.scores.adapter.OutlierScoreAdapter;
-import elki.evaluation.scores.adapter.SimpleAdapter;
 import elki.logging.Logging;
 import elki.logging.statistics.DoubleStatistic;
 import elki.result.EvaluationResult;
 import elki.result.EvaluationResult.MeasurementGroup;
 import elki.result.OrderingResult;
 import elki.result.ResultUtil;
+import elki.result.outlier.InvertedOutlierScoreMeta;
 import elki.result.outlier.OutlierResult;
 import elki.utilities.optionhandling.OptionID;
 import elki.utilities.optionhandling.Parameterizer;
@@ -86,17 +86,15 @@ public class OutlierRankingEvaluation implements Evaluator {
    * Produce various evaluation statistics
    *
    * @param res Result to output to
-   * @param size Total size
-   * @param pos Number of positive hits
-   * @param test Test predicate
-   * @param adapter Adapter
+   * @param hist Rank histogram
    */
-  private void evaluate(EvaluationResult res, int size, int pos, Supplier<ScoreEvaluation.Adapter> adapter) {
+  private void evaluate(EvaluationResult res, RankHistogram hist) {
+    final int size = hist.size(), pos = hist.numPositive();
     final double rate = pos / (double) size;
     MeasurementGroup g = res.findOrCreateGroup("Evaluation measures");
     MeasurementGroup ag = res.findOrCreateGroup("Adjusted for chance");
     // Area under Receiver Operating Curve
-    double auroc = ROCEvaluation.STATIC.evaluate(adapter.get());
+    double auroc = hist.computeAUROC();
     LOG.statistics(new DoubleStatistic(key + ".auroc", auroc));
     if(!g.hasMeasure("AUROC")) { // Avoid duplicate
       g.addMeasure("AUROC", auroc, 0., 1., .5, false);
@@ -105,7 +103,7 @@ public class OutlierRankingEvaluation implements Evaluator {
     ag.addMeasure("Adjusted AUROC", adjauroc, 0., 1., 0., false);
     LOG.statistics(new DoubleStatistic(key + ".auroc.adjusted", adjauroc));
     // Area under Precision-Recall-Curve
-    double auprc = AUPRCEvaluation.STATIC.evaluate(adapter.get());
+    double auprc = hist.computeAUPRC();
     LOG.statistics(new DoubleStatistic(key + ".auprc", auprc));
     if(!g.hasMeasure("AUPRC")) { // Avoid duplicate
       g.addMeasure("AUPRC", auprc, 0., 1., rate, false);
@@ -114,21 +112,21 @@ public class OutlierRankingEvaluation implements Evaluator {
     LOG.statistics(new DoubleStatistic(key + ".auprc.adjusted", adjauprc));
     ag.addMeasure("Adjusted AUPRC", adjauprc, 0., 1., 0., false);
     // Average precision
-    double avep = AveragePrecisionEvaluation.STATIC.evaluate(adapter.get());
+    double avep = hist.computeAveragePrecision();
     LOG.statistics(new DoubleStatistic(key + ".average-precision.", avep));
     g.addMeasure("Average Precision", avep, 0., 1., rate, false);
     double adjavep = (avep - rate) / (1 - rate);
     LOG.statistics(new DoubleStatistic(key + ".average-precision.adjusted", adjavep));
     ag.addMeasure("Adjusted AveP", adjavep, 0., 1., 0., false);
     // R-precision
-    double rprec = PrecisionAtKEvaluation.RPRECISION.evaluate(adapter.get());
+    double rprec = hist.computePrecisionAtK(0);
     LOG.statistics(new DoubleStatistic(key + ".r-precision", rprec));
     g.addMeasure("R-Precision", rprec, 0., 1., rate, false);
     double adjrprec = (rprec - rate) / (1 - rate);
     LOG.statistics(new DoubleStatistic(key + ".r-precision.adjusted", adjrprec));
     ag.addMeasure("Adjusted R-Prec", adjrprec, 0., 1., 0., false);
     // Maximum F1 measure
-    double maxf1 = MaximumF1Evaluation.STATIC.evaluate(adapter.get());
+    double maxf1 = hist.computeMaximumF1();
     LOG.statistics(new DoubleStatistic(key + ".maximum-f1", maxf1));
     g.addMeasure("Maximum F1", maxf1, 0., 1., rate, false);
     double adjmaxf1 = (maxf1 - rate) / (1 - rate);
@@ -136,10 +134,10 @@ public class OutlierRankingEvaluation implements Evaluator {
     ag.addMeasure("Adjusted Max F1", adjmaxf1, 0., 1., 0., false);
     // Maximum DCG, Normalized DCG
     double maxdcg = DCGEvaluation.maximum(pos);
-    double dcg = DCGEvaluation.STATIC.evaluate(adapter.get());
+    double dcg = hist.computeDCG();
     LOG.statistics(new DoubleStatistic(key + ".dcg", dcg));
     g.addMeasure("DCG", dcg, 0., maxdcg, DCGEvaluation.STATIC.expected(pos, size), false);
-    double ndcg = NDCGEvaluation.STATIC.evaluate(adapter.get());
+    double ndcg = hist.computeNDCG();
     LOG.statistics(new DoubleStatistic(key + ".dcg.normalized", ndcg));
     g.addMeasure("NDCG", ndcg, 0., 1., NDCGEvaluation.STATIC.expected(pos, size), false);
     double endcg = NDCGEvaluation.STATIC.expected(pos, size);
@@ -148,6 +146,32 @@ public class OutlierRankingEvaluation implements Evaluator {
     ag.addMeasure("Adjusted DCG", adjndcg, 0., 1., 0., false);
   }
 
+  /**
+   * Build a rank histogram for an ordering, without ties.
+   *
+   * @param positiveids Positive objects
+   * @param sorted Sorted objects
+   * @return Rank histogram
+   */
+  private static RankHistogram rankHistogram(SetDBIDs positiveids, DBIDs sorted) {
+    // Use the negative position as score.
+    double[] pos = new double[positiveids.size()];
+    int i = 0, p = 0;
+    for(DBIDIter it = sorted.iter(); it.valid(); it.advance(), i++) {
+      if(positiveids.contains(it)) {
+        pos[p++] = -i;
+      }
+    }
+    RankHistogram hist = new RankHistogram(p < pos.length ? Arrays.copyOf(pos, p) : pos, false);
+    i = 0;
+    for(DBIDIter it = sorted.iter(); it.valid(); it.advance(), i++) {
+      if(!positiveids.contains(it)) {
+        hist.addNegative(-i);
+      }
+    }
+    return hist;
+  }
+
   @Override
   public void processNewResult(Object result) {
     Database db = ResultUtil.findDatabase(result);
@@ -164,7 +188,7 @@ public class OutlierRankingEvaluation implements Evaluator {
     // Outlier results are the main use case.
     for(OutlierResult o : oresults) {
       evaluate(EvaluationResult.findOrCreate(o, EvaluationResult.RANKING), //
-          o.getScores().size(), positiveids.size(), () -> new OutlierScoreAdapter(positiveids, o));
+          RankHistogram.build(o.getScores(), positiveids, o.getOutlierMeta() instanceof InvertedOutlierScoreMeta));
       // Process them only once.
       orderings.remove(o.getOrdering());
       nonefound = false;
@@ -178,8 +202,7 @@ public class OutlierRankingEvaluation implements Evaluator {
       if(sorted.size() != size) {
         throw new IllegalStateException("Iterable result doesn't match database size - incomplete ordering?");
       }
-      evaluate(EvaluationResult.findOrCreate(or, EvaluationResult.RANKING), //
-          size, positiveids.size(), () -> new SimpleAdapter(positiveids, sorted.iter()));
+      evaluate(EvaluationResult.findOrCreate(or, EvaluationResult.RANKING), rankHistogram(positiveids, sorted));
       nonefound = false;
     }
 
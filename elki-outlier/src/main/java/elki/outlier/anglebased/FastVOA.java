@@ -0,0 +1,333 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.anglebased;
+
+import java.util.Random;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.math.DoubleMinMax;
+import elki.outlier.OutlierAlgorithm;
+import elki.parallel.ParallelExecutor;
+import elki.result.outlier.InvertedOutlierScoreMeta;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.utilities.datastructures.QuickSelect;
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * FastVOA: approximate angle-based outlier detection using random projections.
+ * <p>
+ * The variance of the angles between all pairs of other points (VOA) is
+ * estimated without computing any angles: the probability that a random
+ * hyperplane through a point separates two other points is proportional to
+ * their angle, so the first moment is estimated by counting the points on
+ * either side in random projections, and the second moment using AMS sketches
+ * of these counts. The run time is O(t n (d + log n + s)) for t projections
+ * and s sketches, i.e., near-linear in the data size. The second moment
+ * estimate has a high variance, so a fairly large number of sketches is
+ * needed for a good ranking; the memory requirement is O(n s).
+ * <p>
+ * The projections are processed one after another; the projection of the data
+ * and the sketch updates are run in parallel.
+ * <p>
+ * Low scores indicate outliers, as with {@link ABOD}.
+ * <p>
+ * Reference:
+ * <p>
+ * N. Pham, R. Pagh<br>
+ * A near-linear time approximation algorithm for angle-based outlier detection
+ * in high-dimensional data<br>
+ * Proc. 18th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining (KDD'12)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+@Title("FastVOA: Approximate Angle-Based Outlier Detection")
+@Reference(authors = "N. Pham, R. Pagh", //
+    title = "A near-linear time approximation algorithm for angle-based outlier detection in high-dimensional data", //
+    booktitle = "Proc. 18th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining (KDD'12)", //
+    url = "https://doi.org/10.1145/2339530.2339669", //
+    bibkey = "DBLP:conf/kdd/PhamP12")
+public class FastVOA implements OutlierAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(FastVOA.class);
+
+  /**
+   * Minimum number of objects per thread.
+   */
+  private static final int MIN_BLOCK = 1024;
+
+  /**
+   * Maximum length of a Java array.
+   */
+  private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  /**
+   * Number of random projections.
+   */
+  protected int projections;
+
+  /**
+   * Number of sketches to average.
+   */
+  protected int s1;
+
+  /**
+   * Number of averages to take the median of.
+   */
+  protected int s2;
+
+  /**
+   * Random generator.
+   */
+  protected RandomFactory rnd;
+
+  /**
+   * Constructor.
+   *
+   * @param projections Number of random projections
+   * @param s1 Number of sketches to average
+   * @param s2 Number of averages to take the median of
+   * @param rnd Random generator
+   */
+  public FastVOA(int projections, int s1, int s2, RandomFactory rnd) {
+    super();
+    this.projections = projections;
+    this.s1 = s1;
+    this.s2 = s2;
+    this.rnd = rnd;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  /**
+   * Run the algorithm.
+   *
+   * @param relation Data relation
+   * @return Outlier result
+   */
+  public OutlierResult run(Relation<? extends NumberVector> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int n = ids.size(), dim = RelationUtil.dimensionality(relation);
+    if((long) s1 * s2 * n > MAX_ARRAY_SIZE) {
+      throw new AbortException("FastVOA does not scale to " + s1 + "*" + s2 + " sketches of " + n + " objects. Use fewer sketches.");
+    }
+    final int s = s1 * s2, t = projections;
+    final Random random = rnd.getSingleThreadedRandom();
+    final long seed = random.nextLong();
+    // Sum of L*R over all projections, and the AMS sketches (as floats, to
+    // reduce memory, as the estimates are much less precise anyway).
+    final double[] f1 = new double[n];
+    final float[] sketches = new float[s * n];
+    final double[] keys = new double[n], r = new double[dim];
+    final int[] order = new int[n];
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Random projections", t, LOG) : null;
+    for(int i = 0; i < t; i++) {
+      for(int d = 0; d < dim; d++) {
+        r[d] = random.nextGaussian();
+      }
+      ParallelExecutor.run(0, n, MIN_BLOCK, (start, end) -> {
+        for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+          final NumberVector v = relation.get(it);
+          double dot = 0.;
+          for(int d = 0; d < dim; d++) {
+            dot += v.doubleValue(d) * r[d];
+          }
+          final int j = it.getOffset();
+          keys[j] = dot;
+          order[j] = j;
+        }
+      });
+      DoubleIntegerArrayQuickSort.sort(keys, order, n);
+      // One task per sketch, and one for the first moment.
+      ParallelExecutor.run(0, s + 1, 1, (start, end) -> {
+        for(int q = start; q < end; q++) {
+          if(q == s) {
+            for(int pos = 0; pos < n; pos++) {
+              f1[order[pos]] += pos * (double) (n - 1 - pos);
+            }
+            continue;
+          }
+          final int off = q * n;
+          long total = 0;
+          for(int j = 0; j < n; j++) {
+            total += sign(seed, off + j);
+          }
+          long left = 0;
+          for(int pos = 0; pos < n; pos++) {
+            final int p = order[pos], sp = sign(seed, off + p);
+            sketches[off + p] += left * (double) (total - left - sp);
+            left += sp;
+          }
+        }
+      });
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+    // Estimate the variance of angles
+    final double pairs = .5 * (n - 1.) * (n - 2.);
+    final double[] voa = new double[n];
+    ParallelExecutor.run(0, n, MIN_BLOCK, (start, end) -> {
+      final double[] means = new double[s2];
+      for(int p = start; p < end; p++) {
+        if(!(pairs > 0)) {
+          continue;
+        }
+        // Estimated sum of angles / pi
+        final double sum1 = f1[p] / t;
+        // Estimated sum of the squared separation counts
+        for(int g = 0; g < s2; g++) {
+          double sum = 0.;
+          for(int q = g * s1, e = q + s1; q < e; q++) {
+            final double y = sketches[q * n + p];
+            sum += y * y;
+          }
+          means[g] = sum / s1;
+        }
+        final double f2 = QuickSelect.median(means);
+        // E[count^2] = t p + t (t-1) p^2 for a pair separated with prob. p
+        final double sum2 = t > 1 ? Math.max(0., (f2 - t * sum1) / (t * (t - 1.))) : sum1;
+        final double moa1 = Math.PI * sum1 / pairs;
+        final double moa2 = Math.PI * Math.PI * sum2 / pairs;
+        voa[p] = Math.max(0., moa2 - moa1 * moa1);
+      }
+    });
+    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT);
+    DoubleMinMax minmax = new DoubleMinMax();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final double v = voa[it.getOffset()];
+      scores.putDouble(it, v);
+      minmax.put(v);
+    }
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Variance of Angles", ids, scores);
+    OutlierScoreMeta scoreMeta = new InvertedOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0.0, Double.POSITIVE_INFINITY);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Random sign for the AMS sketches, by hashing.
+   *
+   * @param seed Random seed
+   * @param i Index
+   * @return +1 or -1
+   */
+  private static int sign(long seed, long i) {
+    long z = seed + i * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return ((z ^ (z >>> 31)) & 1L) == 0 ? 1 : -1;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par implements Parameterizer {
+    /**
+     * Number of random projections.
+     */
+    public static final OptionID PROJECTIONS_ID = new OptionID("fastvoa.projections", "Number of random projections.");
+
+    /**
+     * Number of sketches to average.
+     */
+    public static final OptionID S1_ID = new OptionID("fastvoa.s1", "Number of AMS sketches to average.");
+
+    /**
+     * Number of averages to take the median of.
+     */
+    public static final OptionID S2_ID = new OptionID("fastvoa.s2", "Number of sketch averages to take the median of.");
+
+    /**
+     * Random seed.
+     */
+    public static final OptionID SEED_ID = new OptionID("fastvoa.seed", "Random seed.");
+
+    /**
+     * Number of random projections.
+     */
+    protected int projections;
+
+    /**
+     * Number of sketches to average.
+     */
+    protected int s1;
+
+    /**
+     * Number of averages to take the median of.
+     */
+    protected int s2;
+
+    /**
+     * Random generator.
+     */
+    protected RandomFactory rnd;
+
+    @Override
+    public void configure(Parameterization config) {
+      new IntParameter(PROJECTIONS_ID, 100) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> projections = x);
+      new IntParameter(S1_ID, 128) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> s1 = x);
+      new IntParameter(S2_ID, 1) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> s2 = x);
+      new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+    }
+
+    @Override
+    public FastVOA make() {
+      return new FastVOA(projections, s1, s2, rnd);
+    }
+  }
+}
@@ -0,0 +1,342 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.anglebased.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import elki.data.NumberVector;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.similarity.SimilarityQuery;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.logging.Logging;
+import elki.logging.statistics.LongStatistic;
+import elki.math.DoubleMinMax;
+import elki.math.MeanVariance;
+import elki.outlier.anglebased.FastABOD;
+import elki.parallel.ParallelExecutor;
+import elki.result.outlier.InvertedOutlierScoreMeta;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.similarity.Similarity;
+import elki.utilities.datastructures.heap.DoubleMaxHeap;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel, blocked version of {@link FastABOD}.
+ * <p>
+ * Instead of materializing the full kernel matrix, each thread computes the
+ * kernel values of a block of query points to all points, stored as floats.
+ * The float values are only used to find the candidates for the k nearest
+ * neighbors (in kernel space) with a safety margin for rounding; the distances
+ * to the candidates, and the kernel values used for the angle variance, are
+ * computed exactly. Therefore, the scores are the same as with
+ * {@link FastABOD}, but the memory is linear in the data size, and the run time
+ * is O(n² + n k²) kernel evaluations instead of requiring the full kernel
+ * matrix.
+ * <p>
+ * Reference:
+ * <p>
+ * Hans-Peter Kriegel, Matthias Schubert, Arthur Zimek<br>
+ * Angle-Based Outlier Detection in High-dimensional Data<br>
+ * Proc. 14th ACM SIGKDD Int. Conf. Knowledge Discovery and Data Mining (KDD'08)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <V> Vector type
+ */
+public class ParallelFastABOD<V extends NumberVector> extends FastABOD<V> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelFastABOD.class);
+
+  /**
+   * Maximum number of rows in a kernel block.
+   */
+  private static final int BLOCK_ROWS = 64;
+
+  /**
+   * Maximum number of entries in a kernel block (per thread).
+   */
+  private static final int BLOCK_ENTRIES = 1 << 22;
+
+  /**
+   * Relative error bound for the squared distances from float kernel values
+   * (the float rounding error is at most 2^-24, with generous margin).
+   */
+  private static final double FLOAT_ERROR = 0x1p-20;
+
+  /**
+   * Constructor.
+   *
+   * @param kernelFunction kernel function to use
+   * @param k Number of nearest neighbors
+   */
+  public ParallelFastABOD(Similarity<? super V> kernelFunction, int k) {
+    super(kernelFunction, k);
+  }
+
+  @Override
+  public OutlierResult run(Relation<V> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int n = ids.size();
+    final SimilarityQuery<V> sq = new QueryBuilder<>(relation, kernelFunction).similarityQuery();
+    // Self-similarities, for the kernel-induced distances.
+    final double[] diag = new double[n];
+    ParallelExecutor.run(0, n, 1024, (start, end) -> {
+      for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        diag[it.getOffset()] = sq.similarity(it, it);
+      }
+    });
+    final int rows = Math.max(1, Math.min(BLOCK_ROWS, BLOCK_ENTRIES / Math.max(1, n)));
+    final double[] abof = new double[n];
+    final long[] candidates = new long[1];
+    ParallelExecutor.run(0, n, rows, (start, end) -> {
+      final Worker w = new Worker(relation, sq, ids, diag, rows);
+      for(int bstart = start; bstart < end; bstart += rows) {
+        w.processBlock(bstart, Math.min(bstart + rows, end), abof);
+      }
+      synchronized(candidates) {
+        candidates[0] += w.candidates;
+      }
+    });
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(ParallelFastABOD.class.getName() + ".exact-candidates", candidates[0]));
+    }
+    WritableDoubleDataStore abodvalues = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    DoubleMinMax minmaxabod = new DoubleMinMax();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final double v = abof[it.getOffset()];
+      abodvalues.putDouble(it, v);
+      minmaxabod.put(v);
+    }
+    // Build result representation.
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Angle-Based Outlier Degree", ids, abodvalues);
+    OutlierScoreMeta scoreMeta = new InvertedOutlierScoreMeta(minmaxabod.getMin(), minmaxabod.getMax(), 0.0, Double.POSITIVE_INFINITY);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Per-thread worker, with a kernel block and accumulators.
+   *
+   * @author Erich Schubert
+   */
+  private class Worker {
+    /**
+     * Data relation.
+     */
+    private final Relation<V> relation;
+
+    /**
+     * Kernel similarity query.
+     */
+    private final SimilarityQuery<V> sq;
+
+    /**
+     * Object ids.
+     */
+    private final ArrayDBIDs ids;
+
+    /**
+     * Self-similarities.
+     */
+    private final double[] diag;
+
+    /**
+     * Kernel values of the current block, row-wise.
+     */
+    private final float[] block;
+
+    /**
+     * Objects of the current block.
+     */
+    private final List<V> rowobjs;
+
+    /**
+     * Upper bounds of the k nearest distances.
+     */
+    private final DoubleMaxHeap bounds;
+
+    /**
+     * Nearest neighbor heap.
+     */
+    private final KNNHeap heap;
+
+    /**
+     * Kernel values of the query and the neighbors.
+     */
+    private double[] simA = new double[16];
+
+    /**
+     * Angle variance accumulator.
+     */
+    private final MeanVariance s = new MeanVariance();
+
+    /**
+     * Iterators.
+     */
+    private final DBIDArrayIter iA, iB, iC;
+
+    /**
+     * Number of exact candidate checks.
+     */
+    long candidates;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param sq Kernel similarity query
+     * @param ids Object ids
+     * @param diag Self-similarities
+     * @param rows Maximum number of rows
+     */
+    Worker(Relation<V> relation, SimilarityQuery<V> sq, ArrayDBIDs ids, double[] diag, int rows) {
+      this.relation = relation;
+      this.sq = sq;
+      this.ids = ids;
+      this.diag = diag;
+      this.block = new float[rows * ids.size()];
+      this.rowobjs = new ArrayList<>(rows);
+      this.bounds = new DoubleMaxHeap(k + 1);
+      this.heap = DBIDUtil.newHeap(k);
+      this.iA = ids.iter();
+      this.iB = ids.iter();
+      this.iC = ids.iter();
+    }
+
+    /**
+     * Process a block of query points.
+     *
+     * @param bstart First query offset
+     * @param bend Last query offset (exclusive)
+     * @param abof Output scores
+     */
+    void processBlock(int bstart, int bend, double[] abof) {
+      final int n = ids.size(), nr = bend - bstart;
+      rowobjs.clear();
+      for(iA.seek(bstart); iA.getOffset() < bend; iA.advance()) {
+        rowobjs.add(relation.get(iA));
+      }
+      // Compute the kernel block, column by column to fetch each object once.
+      for(iB.seek(0); iB.valid(); iB.advance()) {
+        final V vb = relation.get(iB);
+        final int j = iB.getOffset();
+        for(int r = 0; r < nr; r++) {
+          block[r * n + j] = (float) sq.similarity(rowobjs.get(r), vb);
+        }
+      }
+      for(int r = 0; r < nr; r++) {
+        abof[bstart + r] = angleVariance(bstart + r, r * n);
+      }
+    }
+
+    /**
+     * Compute the angle variance of a single object.
+     *
+     * @param a Object offset
+     * @param off Offset of the kernel row in the block
+     * @return Angle variance
+     */
+    private double angleVariance(int a, int off) {
+      final int n = ids.size();
+      final double simAA = diag[a];
+      // Upper bound of the k nearest (positive) distances:
+      bounds.clear();
+      for(int j = 0; j < n; j++) {
+        if(j == a) {
+          continue;
+        }
+        final double kab = block[off + j];
+        final double err = FLOAT_ERROR * Math.abs(kab);
+        final double sqd = simAA + diag[j] - kab - kab;
+        if(sqd - err > 0.) {
+          bounds.add(sqd + err, k);
+        }
+      }
+      final double threshold = bounds.size() < k ? Double.POSITIVE_INFINITY : bounds.peek();
+      // Exact distances of the candidates
+      heap.clear();
+      iA.seek(a);
+      for(int j = 0; j < n; j++) {
+        if(j == a) {
+          continue;
+        }
+        final double kab = block[off + j];
+        final double err = FLOAT_ERROR * Math.abs(kab);
+        final double sqd = simAA + diag[j] - kab - kab;
+        if(sqd - err > threshold || !(sqd + err > 0.)) {
+          continue;
+        }
+        ++candidates;
+        final double simAB = sq.similarity(iA, iB.seek(j));
+        final double sqdAB = simAA + diag[j] - simAB - simAB;
+        if(sqdAB > 0.) {
+          heap.insert(sqdAB, iB);
+        }
+      }
+      KNNList nl = heap.toKNNList();
+      if(simA.length < nl.size()) {
+        simA = new double[nl.size()];
+      }
+      int i = 0;
+      for(DoubleDBIDListIter it = nl.iter(); it.valid(); it.advance()) {
+        simA[i++] = sq.similarity(iA, it);
+      }
+      s.reset();
+      DoubleDBIDListIter nB = nl.iter(), nC = nl.iter();
+      for(; nB.valid(); nB.advance()) {
+        final double sqdAB = nB.doubleValue(), simAB = simA[nB.getOffset()];
+        for(nC.seek(nB.getOffset() + 1); nC.valid(); nC.advance()) {
+          final double sqdAC = nC.doubleValue(), simAC = simA[nC.getOffset()];
+          // Exploit bilinearity of scalar product:
+          // <B-A, C-A> = <B,C> - <B,A> - <A,C> + <A,A>
+          final double simBC = sq.similarity(nB, nC);
+          final double numerator = simBC - simAB - simAC + simAA;
+          final double div = 1. / (sqdAB * sqdAC);
+          s.put(numerator * div, FastMath.sqrt(div));
+        }
+      }
+      return s.getPopulationVariance();
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<V extends NumberVector> extends FastABOD.Par<V> {
+    @Override
+    public ParallelFastABOD<V> make() {
+      return new ParallelFastABOD<>(kernelFunction, k);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.density;
+
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Extended Isolation Forest, which uses random hyperplanes instead of
+ * axis-parallel splits. This avoids the artifacts of the axis-parallel splits
+ * of {@link IsolationForest} in the score distribution.
+ * <p>
+ * The extension level controls the number of non-zero coordinates of the
+ * normal vectors: level 0 is equivalent to the axis-parallel splits of the
+ * original Isolation Forest, the maximum level d-1 uses arbitrary directions.
+ * <p>
+ * Reference:
+ * <p>
+ * S. Hariri, M. Carrasco Kind, R. J. Brunner<br>
+ * Extended Isolation Forest<br>
+ * IEEE Trans. Knowledge and Data Engineering 33(4)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+@Reference(authors = "S. Hariri, M. Carrasco Kind, R. J. Brunner", //
+    title = "Extended Isolation Forest", //
+    booktitle = "IEEE Trans. Knowledge and Data Engineering 33(4)", //
+    url = "https://doi.org/10.1109/TKDE.2019.2947676", //
+    bibkey = "DBLP:journals/tkde/HaririKB21")
+public class ExtendedIsolationForest extends IsolationForest {
+  /**
+   * Constructor.
+   *
+   * @param numtrees Number of trees
+   * @param subsampleSize Subsample size
+   * @param extension Extension level, negative for the maximum
+   * @param rnd Random generator
+   */
+  public ExtendedIsolationForest(int numtrees, int subsampleSize, int extension, RandomFactory rnd) {
+    super(numtrees, subsampleSize, extension, rnd);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par extends IsolationForest.Par {
+    /**
+     * Extension level.
+     */
+    public static final OptionID EXTENSION_ID = new OptionID("eiforest.extension", "Extension level, i.e., the number of non-zero coordinates of the split normals minus one. Use -1 for the maximum.");
+
+    /**
+     * Extension level.
+     */
+    protected int extension = -1;
+
+    @Override
+    public void configure(Parameterization config) {
+      super.configure(config);
+      new IntParameter(EXTENSION_ID, -1) //
+          .grab(config, x -> extension = x);
+    }
+
+    @Override
+    public ExtendedIsolationForest make() {
+      return new ExtendedIsolationForest(numtrees, subsampleSize, extension, rnd);
+    }
+  }
+}
@@ -0,0 +1,646 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.density;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.logging.Logging;
+import elki.logging.statistics.LongStatistic;
+import elki.math.DoubleMinMax;
+import elki.math.MathUtil;
+import elki.math.statistics.distribution.GammaDistribution;
+import elki.outlier.OutlierAlgorithm;
+import elki.parallel.ParallelExecutor;
+import elki.result.outlier.BasicOutlierScoreMeta;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+import net.jafama.FastMath;
+
+/**
+ * Isolation Forest: outlier detection by the average path length needed to
+ * isolate an object with random axis-parallel splits.
+ * <p>
+ * Each tree is trained on a small random subsample, and its height is limited
+ * to the expected height of a balanced tree. Training and scoring are linear in
+ * the data size, and no distances are computed. The trees are trained in
+ * parallel, and stored in a {@link Forest} of flat arrays. The trained forest
+ * can also be used to score new objects, see {@link #train(Relation)}.
+ * <p>
+ * Scores are in [0;1], where values close to 1 indicate outliers, and values
+ * around 0.5 or less are considered normal.
+ * <p>
+ * Reference:
+ * <p>
+ * F. T. Liu, K. M. Ting, Z.-H. Zhou<br>
+ * Isolation Forest<br>
+ * Proc. 8th IEEE Int. Conf. on Data Mining (ICDM 2008)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @composed - - - Forest
+ */
+@Reference(authors = "F. T. Liu, K. M. Ting, Z.-H. Zhou", //
+    title = "Isolation Forest", //
+    booktitle = "Proc. 8th IEEE Int. Conf. on Data Mining (ICDM 2008)", //
+    url = "https://doi.org/10.1109/ICDM.2008.17", //
+    bibkey = "DBLP:conf/icdm/LiuTZ08")
+public class IsolationForest implements OutlierAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(IsolationForest.class);
+
+  /**
+   * Minimum number of objects scored per thread.
+   */
+  private static final int MIN_BLOCK = 1024;
+
+  /**
+   * Number of trees.
+   */
+  protected int numtrees;
+
+  /**
+   * Subsample size.
+   */
+  protected int subsampleSize;
+
+  /**
+   * Extension level: 0 for axis-parallel splits, negative for the maximum.
+   */
+  protected int extension;
+
+  /**
+   * Random generator.
+   */
+  protected RandomFactory rnd;
+
+  /**
+   * Constructor.
+   *
+   * @param numtrees Number of trees
+   * @param subsampleSize Subsample size
+   * @param rnd Random generator
+   */
+  public IsolationForest(int numtrees, int subsampleSize, RandomFactory rnd) {
+    this(numtrees, subsampleSize, 0, rnd);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param numtrees Number of trees
+   * @param subsampleSize Subsample size
+   * @param extension Extension level, 0 for axis-parallel splits, negative for
+   *        the maximum
+   * @param rnd Random generator
+   */
+  protected IsolationForest(int numtrees, int subsampleSize, int extension, RandomFactory rnd) {
+    super();
+    this.numtrees = numtrees;
+    this.subsampleSize = subsampleSize;
+    this.extension = extension;
+    this.rnd = rnd;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  /**
+   * Run the algorithm.
+   *
+   * @param relation Data relation
+   * @return Outlier result
+   */
+  public OutlierResult run(Relation<? extends NumberVector> relation) {
+    final Forest forest = train(relation);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final double[] scores = new double[ids.size()];
+    ParallelExecutor.run(0, ids.size(), MIN_BLOCK, (start, end) -> {
+      for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        scores[it.getOffset()] = forest.score(relation.get(it));
+      }
+    });
+    WritableDoubleDataStore oscores = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT);
+    DoubleMinMax mm = new DoubleMinMax();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      final double s = scores[it.getOffset()];
+      oscores.putDouble(it, s);
+      mm.put(s);
+    }
+    OutlierScoreMeta meta = new BasicOutlierScoreMeta(mm.getMin(), mm.getMax(), 0., 1., .5);
+    DoubleRelation res = new MaterializedDoubleRelation("Isolation Forest", ids, oscores);
+    return new OutlierResult(meta, res);
+  }
+
+  /**
+   * Train the forest, which can then be used to score new objects.
+   *
+   * @param relation Data relation
+   * @return Trained forest
+   */
+  public Forest train(Relation<? extends NumberVector> relation) {
+    final int dim = RelationUtil.dimensionality(relation);
+    final int psi = Math.min(subsampleSize, relation.size());
+    final int ext = extension < 0 || extension >= dim ? dim - 1 : extension;
+    final int maxdepth = Math.max(1, (int) Math.ceil(FastMath.log(psi) * MathUtil.ONE_BY_LOG2));
+    final Random r = rnd.getSingleThreadedRandom();
+    // Draw samples and seeds sequentially, for reproducibility.
+    final DBIDs[] samples = new DBIDs[numtrees];
+    final long[] seeds = new long[numtrees];
+    for(int t = 0; t < numtrees; t++) {
+      samples[t] = DBIDUtil.randomSample(relation.getDBIDs(), psi, r);
+      seeds[t] = r.nextLong();
+    }
+    final TreeBuilder[] builders = new TreeBuilder[numtrees];
+    ParallelExecutor.run(0, numtrees, 1, (start, end) -> {
+      for(int t = start; t < end; t++) {
+        final double[] data = new double[psi * dim];
+        int off = 0;
+        for(DBIDIter it = samples[t].iter(); it.valid(); it.advance()) {
+          final NumberVector v = relation.get(it);
+          for(int d = 0; d < dim; d++) {
+            data[off++] = v.doubleValue(d);
+          }
+        }
+        samples[t] = null; // Allow garbage collection
+        (builders[t] = new TreeBuilder(data, dim, ext, maxdepth, new Random(seeds[t]))).build();
+      }
+    });
+    Forest forest = new Forest(builders, dim, ext == 0, psi);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", forest.split.length));
+    }
+    return forest;
+  }
+
+  /**
+   * Average path length of an unsuccessful search in a binary search tree.
+   *
+   * @param n Number of objects
+   * @return Average path length
+   */
+  protected static double c(int n) {
+    return n > 2 ? 2. * (FastMath.log(n - 1.) + GammaDistribution.EULERS_CONST) - 2. * (n - 1.) / n : n == 2 ? 1. : 0.;
+  }
+
+  /**
+   * Isolation forest stored in flat arrays. Nodes of each tree are stored in
+   * pre-order, so the left child of an inner node is the next node.
+   *
+   * @author Erich Schubert
+   */
+  public static class Forest {
+    /**
+     * Dimensionality.
+     */
+    final int dim;
+
+    /**
+     * Root node of each tree.
+     */
+    final int[] roots;
+
+    /**
+     * Split dimension or offset of the normal vector; -1 for leaves.
+     */
+    final int[] split;
+
+    /**
+     * Split threshold, or the path length adjustment for leaves.
+     */
+    final double[] value;
+
+    /**
+     * Right child node.
+     */
+    final int[] right;
+
+    /**
+     * Normal vectors of the split hyperplanes, null for axis-parallel splits.
+     */
+    final double[] normals;
+
+    /**
+     * Normalization, the average path length for the subsample size.
+     */
+    final double norm;
+
+    /**
+     * Assemble the forest from the trees.
+     *
+     * @param trees Tree builders
+     * @param dim Dimensionality
+     * @param axis Axis-parallel splits
+     * @param psi Subsample size
+     */
+    Forest(TreeBuilder[] trees, int dim, boolean axis, int psi) {
+      int nodes = 0, nlen = 0;
+      for(TreeBuilder t : trees) {
+        nodes += t.size;
+        nlen += t.nsize;
+      }
+      this.dim = dim;
+      this.roots = new int[trees.length];
+      this.split = new int[nodes];
+      this.value = new double[nodes];
+      this.right = new int[nodes];
+      this.normals = axis ? null : new double[nlen];
+      int off = 0, noff = 0;
+      for(int i = 0; i < trees.length; i++) {
+        final TreeBuilder t = trees[i];
+        roots[i] = off;
+        System.arraycopy(t.value, 0, value, off, t.size);
+        for(int j = 0; j < t.size; j++) {
+          final int s = t.split[j];
+          split[off + j] = s < 0 || axis ? s : s + noff;
+          right[off + j] = t.right[j] + off;
+        }
+        if(!axis) {
+          System.arraycopy(t.normals, 0, normals, noff, t.nsize);
+        }
+        off += t.size;
+        noff += t.nsize;
+        trees[i] = null; // Allow garbage collection
+      }
+      this.norm = c(psi) * roots.length;
+    }
+
+    /**
+     * Compute the outlier score of an object.
+     *
+     * @param v Object
+     * @return Outlier score in [0;1]
+     */
+    public double score(NumberVector v) {
+      double sum = 0.;
+      for(int node : roots) {
+        int depth = 0;
+        while(split[node] >= 0) {
+          node = goLeft(node, v) ? node + 1 : right[node];
+          ++depth;
+        }
+        sum += depth + value[node];
+      }
+      return norm > 0 ? FastMath.pow(2., -sum / norm) : .5;
+    }
+
+    /**
+     * Test whether an object belongs into the left child.
+     *
+     * @param node Inner node
+     * @param v Object
+     * @return {@code true} for the left child
+     */
+    private boolean goLeft(int node, NumberVector v) {
+      final int s = split[node];
+      if(normals == null) {
+        return v.doubleValue(s) < value[node];
+      }
+      double dot = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double n = normals[s + d];
+        dot += n != 0 ? n * v.doubleValue(d) : 0.;
+      }
+      return dot < value[node];
+    }
+  }
+
+  /**
+   * Build a single isolation tree.
+   *
+   * @author Erich Schubert
+   */
+  static class TreeBuilder {
+    /**
+     * Sample data, row-wise.
+     */
+    final double[] data;
+
+    /**
+     * Dimensionality.
+     */
+    final int dim;
+
+    /**
+     * Extension level, 0 for axis-parallel splits.
+     */
+    final int extension;
+
+    /**
+     * Maximum depth.
+     */
+    final int maxdepth;
+
+    /**
+     * Random generator.
+     */
+    final Random random;
+
+    /**
+     * Node arrays, see {@link Forest}.
+     */
+    int[] split, right;
+
+    /**
+     * Node values, see {@link Forest}.
+     */
+    double[] value;
+
+    /**
+     * Number of nodes.
+     */
+    int size;
+
+    /**
+     * Normal vectors.
+     */
+    double[] normals;
+
+    /**
+     * Used length of the normals array.
+     */
+    int nsize;
+
+    /**
+     * Scratch space.
+     */
+    final double[] min, max, normal;
+
+    /**
+     * Constructor.
+     *
+     * @param data Sample data, row-wise
+     * @param dim Dimensionality
+     * @param extension Extension level, 0 for axis-parallel splits
+     * @param maxdepth Maximum depth
+     * @param random Random generator
+     */
+    TreeBuilder(double[] data, int dim, int extension, int maxdepth, Random random) {
+      this.data = data;
+      this.dim = dim;
+      this.extension = extension;
+      this.maxdepth = maxdepth;
+      this.random = random;
+      final int cap = Math.max(1, (data.length / dim) << 1);
+      this.split = new int[cap];
+      this.right = new int[cap];
+      this.value = new double[cap];
+      this.normals = extension > 0 ? new double[cap * dim] : null;
+      this.min = new double[dim];
+      this.max = new double[dim];
+      this.normal = new double[dim];
+    }
+
+    /**
+     * Build the tree.
+     */
+    void build() {
+      final int n = data.length / dim;
+      int[] idx = new int[n];
+      for(int i = 0; i < n; i++) {
+        idx[i] = i * dim;
+      }
+      build(idx, 0, n, 0);
+    }
+
+    /**
+     * Build a subtree.
+     *
+     * @param idx Object offsets
+     * @param start Start of the subset
+     * @param end End of the subset
+     * @param depth Depth
+     */
+    private void build(int[] idx, int start, int end, int depth) {
+      final int node = size++;
+      if(node == split.length) {
+        final int cap = node << 1;
+        split = Arrays.copyOf(split, cap);
+        right = Arrays.copyOf(right, cap);
+        value = Arrays.copyOf(value, cap);
+      }
+      int mid = depth < maxdepth && end - start > 1 ? (extension == 0 ? splitAxis(node, idx, start, end) : splitHyperplane(node, idx, start, end)) : -1;
+      if(mid < 0) {
+        split[node] = -1;
+        value[node] = c(end - start);
+        return;
+      }
+      build(idx, start, mid, depth + 1);
+      right[node] = size;
+      build(idx, mid, end, depth + 1);
+    }
+
+    /**
+     * Compute the bounding box of a subset.
+     *
+     * @param idx Object offsets
+     * @param start Start of the subset
+     * @param end End of the subset
+     * @return Number of non-constant dimensions
+     */
+    private int boundingBox(int[] idx, int start, int end) {
+      Arrays.fill(min, Double.POSITIVE_INFINITY);
+      Arrays.fill(max, Double.NEGATIVE_INFINITY);
+      for(int i = start; i < end; i++) {
+        for(int d = 0, o = idx[i]; d < dim; d++, o++) {
+          final double v = data[o];
+          min[d] = v < min[d] ? v : min[d];
+          max[d] = v > max[d] ? v : max[d];
+        }
+      }
+      int nonconst = 0;
+      for(int d = 0; d < dim; d++) {
+        nonconst += max[d] > min[d] ? 1 : 0;
+      }
+      return nonconst;
+    }
+
+    /**
+     * Choose an axis-parallel split.
+     *
+     * @param node Node
+     * @param idx Object offsets
+     * @param start Start of the subset
+     * @param end End of the subset
+     * @return Split position, or -1 if the objects cannot be split
+     */
+    private int splitAxis(int node, int[] idx, int start, int end) {
+      int nonconst = boundingBox(idx, start, end);
+      if(nonconst == 0) {
+        return -1;
+      }
+      // Choose a random non-constant dimension
+      int d = -1;
+      for(int r = random.nextInt(nonconst); r >= 0; r--) {
+        while(!(max[++d] > min[d])) {
+          // Skip constant dimensions
+        }
+      }
+      final double t = min[d] + random.nextDouble() * (max[d] - min[d]);
+      split[node] = d;
+      value[node] = t;
+      int l = start, r = end - 1;
+      while(l <= r) {
+        if(data[idx[l] + d] < t) {
+          ++l;
+        }
+        else {
+          final int tmp = idx[l];
+          idx[l] = idx[r];
+          idx[r--] = tmp;
+        }
+      }
+      return l;
+    }
+
+    /**
+     * Choose a random hyperplane split.
+     *
+     * @param node Node
+     * @param idx Object offsets
+     * @param start Start of the subset
+     * @param end End of the subset
+     * @return Split position, or -1 if the objects cannot be split
+     */
+    private int splitHyperplane(int node, int[] idx, int start, int end) {
+      if(boundingBox(idx, start, end) == 0) {
+        return -1;
+      }
+      for(int d = 0; d < dim; d++) {
+        normal[d] = random.nextGaussian();
+      }
+      // Reduce the extension level by zeroing random coordinates.
+      for(int i = dim - 1 - extension; i > 0; i--) {
+        int d = random.nextInt(dim);
+        while(normal[d] == 0) {
+          d = d + 1 < dim ? d + 1 : 0;
+        }
+        normal[d] = 0;
+      }
+      // Random intercept point within the bounding box
+      double t = 0.;
+      for(int d = 0; d < dim; d++) {
+        t += normal[d] != 0 ? normal[d] * (min[d] + random.nextDouble() * (max[d] - min[d])) : 0.;
+      }
+      if(nsize + dim > normals.length) {
+        normals = Arrays.copyOf(normals, normals.length << 1);
+      }
+      System.arraycopy(normal, 0, normals, nsize, dim);
+      split[node] = nsize;
+      value[node] = t;
+      nsize += dim;
+      int l = start, r = end - 1;
+      while(l <= r) {
+        double dot = 0.;
+        for(int d = 0, o = idx[l]; d < dim; d++, o++) {
+          dot += normal[d] != 0 ? normal[d] * data[o] : 0.;
+        }
+        if(dot < t) {
+          ++l;
+        }
+        else {
+          final int tmp = idx[l];
+          idx[l] = idx[r];
+          idx[r--] = tmp;
+        }
+      }
+      return l;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par implements Parameterizer {
+    /**
+     * Number of trees.
+     */
+    public static final OptionID NUM_TREES_ID = new OptionID("iforest.numtrees", "Number of trees to use.");
+
+    /**
+     * Subsample size.
+     */
+    public static final OptionID SUBSAMPLE_SIZE_ID = new OptionID("iforest.subsample", "Subsampling size.");
+
+    /**
+     * Random seed.
+     */
+    public static final OptionID SEED_ID = new OptionID("iforest.seed", "Random seed.");
+
+    /**
+     * Number of trees.
+     */
+    protected int numtrees;
+
+    /**
+     * Subsample size.
+     */
+    protected int subsampleSize;
+
+    /**
+     * Random generator.
+     */
+    protected RandomFactory rnd;
+
+    @Override
+    public void configure(Parameterization config) {
+      new IntParameter(NUM_TREES_ID, 100) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> numtrees = x);
+      new IntParameter(SUBSAMPLE_SIZE_ID, 256) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+          .grab(config, x -> subsampleSize = x);
+      new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+    }
+
+    @Override
+    public IsolationForest make() {
+      return new IsolationForest(numtrees, subsampleSize, rnd);
+    }
+  }
+}
@@ -0,0 +1,365 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.distance;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import elki.Algorithm;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.query.QueryBuilder;
+import elki.database.query.distance.DistanceQuery;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.math.DoubleMinMax;
+import elki.outlier.OutlierAlgorithm;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.result.outlier.BasicOutlierScoreMeta;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import elki.utilities.datastructures.heap.DoubleMaxHeap;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.Flag;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+/**
+ * Top-n distance-based outlier detection with the ORCA pruning rule.
+ * <p>
+ * Only the n objects with the largest kNN distance (as in {@link KNNOutlier})
+ * or the largest sum of kNN distances (as in {@link KNNWeightOutlier}) are
+ * computed exactly. The smallest score of the current top n is used as cutoff:
+ * the distances of every candidate are computed one by one, and the candidate
+ * is discarded as soon as the score of the k nearest neighbors found so far
+ * (an upper bound of its score) falls below the cutoff.
+ * <p>
+ * Instead of a random order, the objects are processed as in iORCA: the
+ * candidates are processed by decreasing distance to a random reference point,
+ * such that likely outliers raise the cutoff early; the neighbors of each
+ * candidate are scanned by increasing difference of their reference distances,
+ * such that close neighbors are found early. For metric distances, the scan
+ * stops once this difference exceeds the current kNN distance, by the triangle
+ * inequality. The candidates are processed in parallel, with a shared cutoff.
+ * <p>
+ * Objects that are not in the top n receive the upper bound of their score at
+ * the time they were pruned, which is below the scores of the top n. When
+ * running in parallel, these bounds depend on the timing of the threads, but
+ * the top n are always exact.
+ * <p>
+ * The query point is not counted as neighbor, so the results are consistent
+ * with {@link KNNOutlier} and {@link KNNWeightOutlier} with the same k.
+ * <p>
+ * Reference:
+ * <p>
+ * S. D. Bay, M. Schwabacher<br>
+ * Mining distance-based outliers in near linear time with randomization and a
+ * simple pruning rule<br>
+ * Proc. 9th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining
+ * <p>
+ * K. Bhaduri, B. L. Matthews, C. R. Giannella<br>
+ * Algorithms for speeding up distance-based outlier detection<br>
+ * Proc. 17th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - DistanceQuery
+ *
+ * @param <O> the type of objects handled by this algorithm
+ */
+@Title("ORCA: Top-n distance-based outliers with pruning")
+@Reference(authors = "S. D. Bay, M. Schwabacher", //
+    title = "Mining distance-based outliers in near linear time with randomization and a simple pruning rule", //
+    booktitle = "Proc. 9th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining", //
+    url = "https://doi.org/10.1145/956750.956758", //
+    bibkey = "DBLP:conf/kdd/BayS03")
+@Reference(authors = "K. Bhaduri, B. L. Matthews, C. R. Giannella", //
+    title = "Algorithms for speeding up distance-based outlier detection", //
+    booktitle = "Proc. 17th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining", //
+    url = "https://doi.org/10.1145/2020408.2020554", //
+    bibkey = "DBLP:conf/kdd/BhaduriMG11")
+public class ORCA<O> implements OutlierAlgorithm {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ORCA.class);
+
+  /**
+   * Number of candidates taken by a thread at once.
+   */
+  private static final int CHUNK = 16;
+
+  /**
+   * Distance function used.
+   */
+  protected Distance<? super O> distance;
+
+  /**
+   * Number of neighbors (excluding the query point).
+   */
+  protected int k;
+
+  /**
+   * Number of outliers to find.
+   */
+  protected int n;
+
+  /**
+   * Use the sum of the kNN distances instead of the kNN distance.
+   */
+  protected boolean weight;
+
+  /**
+   * Random generator for choosing the reference point.
+   */
+  protected RandomFactory rnd;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param k Number of neighbors (excluding the query point)
+   * @param n Number of outliers to find
+   * @param weight Use the sum of the kNN distances
+   * @param rnd Random generator
+   */
+  public ORCA(Distance<? super O> distance, int k, int n, boolean weight, RandomFactory rnd) {
+    super();
+    this.distance = distance;
+    this.k = k;
+    this.n = n;
+    this.weight = weight;
+    this.rnd = rnd;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Run the algorithm.
+   *
+   * @param relation Data relation
+   * @return Outlier result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    final DistanceQuery<O> dq = new QueryBuilder<>(relation, distance).distanceQuery();
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    // Sort all objects by their distance to a random reference point.
+    final Random random = rnd.getSingleThreadedRandom();
+    final DBIDArrayIter ref = ids.iter().seek(random.nextInt(Math.max(size, 1)));
+    final double[] refdist = new double[size];
+    final int[] order = new int[size];
+    ParallelExecutor.run(0, size, 1024, (start, end) -> {
+      for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        refdist[it.getOffset()] = dq.distance(ref, it);
+        order[it.getOffset()] = it.getOffset();
+      }
+    });
+    DoubleIntegerArrayQuickSort.sort(refdist, order, size);
+
+    // Process candidates by descending reference distance.
+    final double[] scores = new double[size];
+    final DoubleIntegerMinHeap top = new DoubleIntegerMinHeap(n);
+    final AtomicLong cutoff = new AtomicLong(Double.doubleToLongBits(0.));
+    final AtomicInteger next = new AtomicInteger();
+    final long[] stats = new long[2];
+    final boolean metric = distance.isMetric();
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("ORCA candidates", size, LOG) : null;
+    final int workers = Math.max(1, Math.min(ParallelCore.getCore().getParallelism(), size / CHUNK));
+    ParallelExecutor.run(0, workers, 1, (wstart, wend) -> {
+      DBIDArrayIter cand = ids.iter(), other = ids.iter();
+      DoubleMaxHeap heap = new DoubleMaxHeap(k);
+      long dists = 0, pruned = 0;
+      for(int w = wstart; w < wend; w++) {
+        for(int cstart = next.getAndAdd(CHUNK); cstart < size; cstart = next.getAndAdd(CHUNK)) {
+          for(int c = cstart, cend = Math.min(cstart + CHUNK, size); c < cend; c++) {
+            final int p = size - 1 - c, off = order[p];
+            final double rc = refdist[p];
+            cand.seek(off);
+            heap.clear();
+            double sum = 0., score = 0.;
+            boolean prune = false;
+            for(int lo = p - 1, hi = p + 1; lo >= 0 || hi < size;) {
+              // Next neighbor candidate, by reference distance difference:
+              final double glo = lo >= 0 ? rc - refdist[lo] : Double.POSITIVE_INFINITY;
+              final double ghi = hi < size ? refdist[hi] - rc : Double.POSITIVE_INFINITY;
+              final boolean useLo = glo <= ghi;
+              if(metric && heap.size() == k && (useLo ? glo : ghi) > heap.peek()) {
+                break; // All remaining objects are farther away.
+              }
+              final double d = dq.distance(cand, other.seek(order[useLo ? lo-- : hi++]));
+              ++dists;
+              if(heap.size() < k) {
+                heap.add(d);
+                sum += d;
+              }
+              else if(d < heap.peek()) {
+                sum += d - heap.replaceTopElement(d);
+              }
+              else {
+                continue;
+              }
+              if(heap.size() == k) {
+                score = weight ? sum : heap.peek();
+                if(score < Double.longBitsToDouble(cutoff.get())) {
+                  prune = true;
+                  break;
+                }
+              }
+            }
+            if(heap.size() < k) {
+              score = weight ? sum : heap.isEmpty() ? 0. : heap.peek();
+            }
+            scores[off] = score;
+            if(prune) {
+              ++pruned;
+            }
+            else {
+              synchronized(top) {
+                top.add(score, off, n);
+                if(top.size() >= n) {
+                  cutoff.set(Double.doubleToLongBits(top.peekKey()));
+                }
+              }
+            }
+            LOG.incrementProcessed(prog);
+          }
+        }
+      }
+      synchronized(stats) {
+        stats[0] += dists;
+        stats[1] += pruned;
+      }
+    });
+    LOG.ensureCompleted(prog);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(ORCA.class.getName() + ".distance-computations", stats[0]));
+      LOG.statistics(new LongStatistic(ORCA.class.getName() + ".pruned", stats[1]));
+    }
+    DoubleMinMax minmax = new DoubleMinMax();
+    WritableDoubleDataStore score = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      score.putDouble(it, scores[it.getOffset()]);
+      minmax.put(scores[it.getOffset()]);
+    }
+    DoubleRelation scoreres = new MaterializedDoubleRelation(weight ? "Top-n kNN weight Outlier Score" : "Top-n kNN Outlier Score", ids, score);
+    OutlierScoreMeta meta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0., Double.POSITIVE_INFINITY, 0.);
+    return new OutlierResult(meta, scoreres);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * Parameter for the number of neighbors.
+     */
+    public static final OptionID K_ID = new OptionID("orca.k", "The number of nearest neighbors, excluding the query point.");
+
+    /**
+     * Parameter for the number of outliers to find.
+     */
+    public static final OptionID N_ID = new OptionID("orca.n", "The number of top outliers to compute exactly.");
+
+    /**
+     * Flag to use the sum of the kNN distances.
+     */
+    public static final OptionID WEIGHT_ID = new OptionID("orca.weight", "Use the sum of the kNN distances (kNN weight) instead of the kNN distance.");
+
+    /**
+     * Random seed for the reference point.
+     */
+    public static final OptionID SEED_ID = new OptionID("orca.seed", "Random seed for choosing the reference point.");
+
+    /**
+     * The distance function to use.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * Number of neighbors.
+     */
+    protected int k;
+
+    /**
+     * Number of outliers.
+     */
+    protected int n;
+
+    /**
+     * Use the kNN weight.
+     */
+    protected boolean weight;
+
+    /**
+     * Random generator.
+     */
+    protected RandomFactory rnd;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(K_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> k = x);
+      new IntParameter(N_ID, 100) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> n = x);
+      new Flag(WEIGHT_ID).grab(config, x -> weight = x);
+      new RandomParameter(SEED_ID).grab(config, x -> rnd = x);
+    }
+
+    @Override
+    public ORCA<O> make() {
+      return new ORCA<>(distance, k, n, weight, rnd);
+    }
+  }
+}
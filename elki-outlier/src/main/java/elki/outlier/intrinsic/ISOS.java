@@ -178,7 +178,17 @@ public class ISOS<O> implements OutlierAlgorithm {
     return new OutlierResult(meta, scoreres);
   }
 
-  protected static void adjustDistances(DBIDRef ignore, DoubleDBIDListIter ki, double max, double id, ModifiableDoubleDBIDList dists) {
+  /**
+   * Adjust the distances using the estimated intrinsic dimensionality, and
+   * scale them to the maximum distance.
+   *
+   * @param ignore Object to ignore
+   * @param ki Neighbor iterator
+   * @param max Maximum distance
+   * @param id Intrinsic dimensionality
+   * @param dists Output list of adjusted distances
+   */
+  public static void adjustDistances(DBIDRef ignore, DoubleDBIDListIter ki, double max, double id, ModifiableDoubleDBIDList dists) {
     dists.clear();
     double scaleexp = id * .5; // Generate squared distances.
     double scalelin = 1. / max; // Linear scaling
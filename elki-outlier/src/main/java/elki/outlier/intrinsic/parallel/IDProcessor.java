@@ -0,0 +1,219 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.intrinsic.parallel;
+
+import java.util.function.Supplier;
+
+import elki.database.ids.DBIDRef;
+import elki.database.ids.DBIDUtil;
+import elki.database.ids.DoubleDBIDListIter;
+import elki.database.ids.KNNList;
+import elki.database.query.knn.KNNSearcher;
+import elki.math.statistics.intrinsicdimensionality.IntrinsicDimensionalityEstimator;
+import elki.parallel.Executor;
+import elki.parallel.processor.AbstractDoubleProcessor;
+import elki.parallel.processor.KNNProcessor;
+import elki.parallel.variables.SharedDouble;
+import elki.parallel.variables.SharedObject;
+
+/**
+ * Estimate the intrinsic dimensionality of each object from its k nearest
+ * neighbors.
+ * <p>
+ * Needs the nearest neighbors as input, for example from {@link KNNProcessor};
+ * the list may be longer than k, so several processors with different k can
+ * share the same input. The distances are copied into a buffer reused by each
+ * thread. The query point and zero distances are skipped, as in
+ * {@link IntrinsicDimensionalityEstimator#estimate(KNNSearcher, DBIDRef, int)};
+ * if the estimation fails, 0 is used.
+ * <p>
+ * Estimators that can only be used with neighbor queries (such as ALID) fall
+ * back to the kNN searcher.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - IntrinsicDimensionalityEstimator
+ */
+public class IDProcessor extends AbstractDoubleProcessor {
+  /**
+   * Estimator to use.
+   */
+  IntrinsicDimensionalityEstimator estimator;
+
+  /**
+   * Neighborhood size (including the query point).
+   */
+  int k;
+
+  /**
+   * kNN query, for estimators that need neighbor queries.
+   */
+  Supplier<KNNSearcher<DBIDRef>> knnq;
+
+  /**
+   * kNN input channel.
+   */
+  SharedObject<? extends KNNList> input;
+
+  /**
+   * Constructor.
+   *
+   * @param estimator Estimator to use
+   * @param k Neighborhood size (including the query point)
+   * @param knnq kNN query, for estimators that need neighbor queries
+   */
+  public IDProcessor(IntrinsicDimensionalityEstimator estimator, int k, Supplier<KNNSearcher<DBIDRef>> knnq) {
+    super();
+    this.estimator = estimator;
+    this.k = k;
+    this.knnq = knnq;
+  }
+
+  /**
+   * Connect the input channel.
+   *
+   * @param input Input channel
+   */
+  public void connectKNNInput(SharedObject<? extends KNNList> input) {
+    this.input = input;
+  }
+
+  @Override
+  public Instance instantiate(Executor executor) {
+    return new Instance(estimator, k, knnq, executor.getInstance(input), executor.getInstance(output));
+  }
+
+  /**
+   * Copy the distances of the nearest neighbors into a buffer, skipping the
+   * query point and zero distances, and stopping after k neighbors (or ties
+   * with the k nearest neighbor).
+   *
+   * @param id Query point
+   * @param list Neighbor list
+   * @param k Neighborhood size (including the query point)
+   * @param buf Output buffer, of size at least k
+   * @return Number of distances
+   */
+  public static int copyDistances(DBIDRef id, KNNList list, int k, double[] buf) {
+    final double kdist = list.size() >= k ? list.doubleValue(k - 1) : Double.POSITIVE_INFINITY;
+    int p = 0;
+    for(DoubleDBIDListIter it = list.iter(); it.valid() && p < k; it.advance()) {
+      final double d = it.doubleValue();
+      if(d > kdist) {
+        break;
+      }
+      if(d == 0. || DBIDUtil.equal(id, it)) {
+        continue;
+      }
+      buf[p++] = d;
+    }
+    return p;
+  }
+
+  /**
+   * Instance for a single thread.
+   *
+   * @author Erich Schubert
+   */
+  private static class Instance extends AbstractDoubleProcessor.Instance {
+    /**
+     * Estimator to use.
+     */
+    IntrinsicDimensionalityEstimator estimator;
+
+    /**
+     * Neighborhood size (including the query point).
+     */
+    int k;
+
+    /**
+     * kNN query supplier, and query once needed.
+     */
+    Supplier<KNNSearcher<DBIDRef>> knnqs;
+
+    /**
+     * kNN query, if the estimator needs it.
+     */
+    KNNSearcher<DBIDRef> knnq;
+
+    /**
+     * kNN input.
+     */
+    SharedObject.Instance<? extends KNNList> input;
+
+    /**
+     * Distance buffer.
+     */
+    double[] buf;
+
+    /**
+     * Constructor.
+     *
+     * @param estimator Estimator to use
+     * @param k Neighborhood size (including the query point)
+     * @param knnqs kNN query supplier
+     * @param input kNN list input
+     * @param output Output variable
+     */
+    protected Instance(IntrinsicDimensionalityEstimator estimator, int k, Supplier<KNNSearcher<DBIDRef>> knnqs, SharedObject.Instance<? extends KNNList> input, SharedDouble.Instance output) {
+      super(output);
+      this.estimator = estimator;
+      this.k = k;
+      this.knnqs = knnqs;
+      this.input = input;
+      this.buf = new double[k];
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      double id_q = 0.;
+      try {
+        id_q = knnq != null ? estimator.estimate(knnq, id, k) : estimate(id);
+      }
+      catch(ArithmeticException e) {
+        // pass, use 0.
+      }
+      output.set(id_q);
+    }
+
+    /**
+     * Estimate from the input neighbors.
+     *
+     * @param id Query point
+     * @return Estimate
+     */
+    private double estimate(DBIDRef id) {
+      final int p = copyDistances(id, input.get(), k, buf);
+      if(p < 1) {
+        throw new ArithmeticException("ID estimation requires non-zero distances.");
+      }
+      try {
+        return estimator.estimate(buf, p);
+      }
+      catch(UnsupportedOperationException e) {
+        // Estimator needs neighbor queries, use these from now on.
+        knnq = knnqs.get();
+        return estimator.estimate(knnq, id, k);
+      }
+    }
+  }
+}
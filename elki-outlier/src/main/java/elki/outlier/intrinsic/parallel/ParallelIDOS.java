@@ -0,0 +1,314 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.intrinsic.parallel;
+
+import java.util.Arrays;
+import java.util.List;
+
+import elki.Algorithm;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.DoubleDataStore;
+import elki.database.datastore.WritableDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.logging.Logging;
+import elki.logging.progress.StepProgress;
+import elki.math.DoubleMinMax;
+import elki.math.statistics.intrinsicdimensionality.ALIDEstimator;
+import elki.math.statistics.intrinsicdimensionality.IntrinsicDimensionalityEstimator;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.intrinsic.IDOS;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.KNNProcessor;
+import elki.parallel.processor.Processor;
+import elki.parallel.processor.WriteDataStoreProcessor;
+import elki.parallel.processor.WriteDoubleDataStoreProcessor;
+import elki.parallel.variables.SharedDouble;
+import elki.parallel.variables.SharedObject;
+import elki.result.Metadata;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.QuotientOutlierScoreMeta;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.constraints.GreaterEqualConstraint;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectListParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel version of the Intrinsic Dimensional Outlier Score {@link IDOS},
+ * with support for multiple estimators in a single pass.
+ * <p>
+ * The nearest neighbors are computed once in parallel and kept in memory; the
+ * intrinsic dimensionalities of all estimators, and then the scores, are
+ * computed in parallel from these neighbors. The first estimator is used for
+ * the outlier score, the scores of any further estimators are added as
+ * additional relations.
+ * <p>
+ * Reference:
+ * <p>
+ * Jonathan von Brünken, Michael E. Houle, Arthur Zimek<br>
+ * Intrinsic Dimensional Outlier Detection in High-Dimensional Data<br>
+ * NII Technical Report (NII-2015-003E)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @composed - - - IDProcessor
+ *
+ * @param <O> Object type
+ */
+@Title("IDOS: Intrinsic Dimensional Outlier Score (parallel)")
+@Reference(authors = "Jonathan von Brünken, Michael E. Houle, Arthur Zimek", //
+    title = "Intrinsic Dimensional Outlier Detection in High-Dimensional Data", //
+    booktitle = "NII Technical Report (NII-2015-003E)", //
+    url = "http://www.nii.ac.jp/TechReports/15-003E.html", //
+    bibkey = "tr/nii/BrunkenHZ15")
+public class ParallelIDOS<O> implements OutlierAlgorithm {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelIDOS.class);
+
+  /**
+   * Minimum number of objects per thread.
+   */
+  private static final int MIN_BLOCK = 256;
+
+  /**
+   * Distance function used.
+   */
+  protected Distance<? super O> distance;
+
+  /**
+   * kNN for the context set (ID computation).
+   */
+  protected int k_c;
+
+  /**
+   * kNN for the reference set.
+   */
+  protected int k_r;
+
+  /**
+   * Estimators for intrinsic dimensionality.
+   */
+  protected List<? extends IntrinsicDimensionalityEstimator> estimators;
+
+  /**
+   * Constructor.
+   *
+   * @param distance the distance function to use
+   * @param estimators Estimators for intrinsic dimensionality
+   * @param kc the context set size for the ID computation
+   * @param kr the neighborhood size to use in score computation
+   */
+  public ParallelIDOS(Distance<? super O> distance, List<? extends IntrinsicDimensionalityEstimator> estimators, int kc, int kr) {
+    super();
+    this.distance = distance;
+    this.estimators = estimators;
+    this.k_c = kc;
+    this.k_r = kr;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param relation Data relation
+   * @return Outlier result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    StepProgress stepprog = LOG.isVerbose() ? new StepProgress("IDOS", 3) : null;
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int m = estimators.size(), kmax = Math.max(k_c, k_r) + 1, kc1 = k_c + 1;
+    LOG.beginStep(stepprog, 1, "Precomputing neighborhoods");
+    final QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    WritableDataStore<KNNList> knns = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, KNNList.class);
+    {
+      KNNProcessor knnm = new KNNProcessor(kmax, () -> qb.kNNByDBID(kmax));
+      SharedObject<KNNList> knnv = new SharedObject<>();
+      knnm.connectKNNOutput(knnv);
+      WriteDataStoreProcessor<KNNList> storem = new WriteDataStoreProcessor<>(knns);
+      storem.connectInput(knnv);
+      ParallelExecutor.run(ids, knnm, storem);
+    }
+    // Neighbors of the neighbors, from memory:
+    final KNNSearcher<DBIDRef> stored = (q, k) -> knns.get(q).subList(k);
+
+    LOG.beginStep(stepprog, 2, "Computing intrinsic dimensionalities");
+    WritableDoubleDataStore[] intDims = new WritableDoubleDataStore[m];
+    {
+      KNNProcessor knnm = new KNNProcessor(kc1, () -> stored);
+      SharedObject<KNNList> knnv = new SharedObject<>();
+      knnm.connectKNNOutput(knnv);
+      Processor[] procs = new Processor[1 + 2 * m];
+      procs[0] = knnm;
+      for(int i = 0; i < m; i++) {
+        IDProcessor idm = new IDProcessor(estimators.get(i), kc1, () -> stored);
+        SharedDouble idv = new SharedDouble();
+        idm.connectKNNInput(knnv);
+        idm.connectOutput(idv);
+        intDims[i] = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+        WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(intDims[i]);
+        storem.connectInput(idv);
+        procs[1 + 2 * i] = idm;
+        procs[2 + 2 * i] = storem;
+      }
+      ParallelExecutor.run(ids, procs);
+    }
+
+    LOG.beginStep(stepprog, 3, "Computing IDOS scores");
+    final double[][] scores = new double[m][ids.size()];
+    ParallelExecutor.run(0, ids.size(), MIN_BLOCK, (start, end) -> {
+      double[] sum = new double[m];
+      for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        computeIDOS(it, knns.get(it), intDims, sum);
+        for(int i = 0; i < m; i++) {
+          scores[i][it.getOffset()] = sum[i];
+        }
+      }
+    });
+    LOG.setCompleted(stepprog);
+
+    OutlierResult result = null;
+    for(int i = 0; i < m; i++) {
+      WritableDoubleDataStore ldms = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+      DoubleMinMax idosminmax = new DoubleMinMax();
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final double idos = scores[i][it.getOffset()];
+        ldms.putDouble(it, idos);
+        idosminmax.put(idos);
+      }
+      scores[i] = null; // Allow garbage collection
+      if(i == 0) {
+        DoubleRelation scoreResult = new MaterializedDoubleRelation("Intrinsic Dimensionality Outlier Score", ids, ldms);
+        OutlierScoreMeta scoreMeta = new QuotientOutlierScoreMeta(idosminmax.getMin(), idosminmax.getMax(), 0.0, Double.POSITIVE_INFINITY, 1.0);
+        result = new OutlierResult(scoreMeta, scoreResult);
+      }
+      else {
+        Metadata.hierarchyOf(result).addChild(new MaterializedDoubleRelation("Intrinsic Dimensionality Outlier Score (" + estimators.get(i).getClass().getSimpleName() + ")", ids, ldms));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Compute the IDOS scores of a single object, for all estimators.
+   *
+   * @param iter Object
+   * @param neighbors Nearest neighbors
+   * @param intDims Intrinsic dimensionalities
+   * @param out Output scores
+   */
+  private void computeIDOS(DBIDRef iter, KNNList neighbors, DoubleDataStore[] intDims, double[] out) {
+    Arrays.fill(out, 0.);
+    final double kdist = neighbors.size() >= k_r ? neighbors.doubleValue(k_r - 1) : Double.POSITIVE_INFINITY;
+    int cnt = 0;
+    for(DoubleDBIDListIter neighbor = neighbors.iter(); neighbor.valid() && neighbor.doubleValue() <= kdist; neighbor.advance()) {
+      if(DBIDUtil.equal(iter, neighbor)) {
+        continue;
+      }
+      for(int i = 0; i < out.length; i++) {
+        final double id = intDims[i].doubleValue(neighbor);
+        out[i] += id > 0 ? 1.0 / id : 0.;
+      }
+      if(++cnt == k_r) { // Always stop after at most k_r elements.
+        break;
+      }
+    }
+    for(int i = 0; i < out.length; i++) {
+      final double id_q = intDims[i].doubleValue(iter);
+      out[i] = id_q > 0 ? id_q * out[i] / cnt : 0.;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * The classes used for estimating the intrinsic dimensionality.
+     */
+    public static final OptionID ESTIMATORS_ID = new OptionID("idos.estimators", "Estimators of intrinsic dimensionality. The first is used as outlier score, further scores are added as additional results.");
+
+    /**
+     * The distance function to use.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * Estimators for intrinsic dimensionality.
+     */
+    protected List<? extends IntrinsicDimensionalityEstimator> estimators;
+
+    /**
+     * kNN for the context set (ID computation).
+     */
+    protected int k_c = 20;
+
+    /**
+     * kNN for the reference set.
+     */
+    protected int k_r = 20;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new ObjectListParameter<IntrinsicDimensionalityEstimator>(ESTIMATORS_ID, IntrinsicDimensionalityEstimator.class) //
+          .setDefaultValue(Arrays.asList(ALIDEstimator.class)) //
+          .grab(config, x -> estimators = x);
+      new IntParameter(IDOS.Par.KC_ID) //
+          .addConstraint(new GreaterEqualConstraint(5)) //
+          .grab(config, x -> k_c = x);
+      new IntParameter(IDOS.Par.KR_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT) //
+          .grab(config, x -> k_r = x);
+    }
+
+    @Override
+    public ParallelIDOS<O> make() {
+      return new ParallelIDOS<>(distance, estimators, k_c, k_r);
+    }
+  }
+}
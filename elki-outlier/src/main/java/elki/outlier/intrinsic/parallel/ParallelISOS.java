@@ -0,0 +1,429 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.intrinsic.parallel;
+
+import java.util.Arrays;
+import java.util.List;
+
+import elki.Algorithm;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.IntegerDataStore;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.knn.KNNSearcher;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.math.DoubleMinMax;
+import elki.math.statistics.intrinsicdimensionality.AggregatedHillEstimator;
+import elki.math.statistics.intrinsicdimensionality.IntrinsicDimensionalityEstimator;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.distance.SOS;
+import elki.outlier.intrinsic.ISOS;
+import elki.parallel.ParallelExecutor;
+import elki.result.Metadata;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.ProbabilisticOutlierScore;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.GreaterEqualConstraint;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectListParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of Intrinsic Stochastic Outlier Selection {@link ISOS},
+ * with support for multiple estimators in a single pass.
+ * <p>
+ * The nearest neighbors of each object are computed only once, and shared by
+ * all estimators. Because each object votes for its neighbors, the votes are
+ * collected in a buffer by each thread, and added to the shared scores in
+ * batches. The first estimator is used for the outlier score, the scores of any
+ * further estimators are added as additional relations.
+ * <p>
+ * Reference:
+ * <p>
+ * Erich Schubert, Michael Gertz<br>
+ * Intrinsic t-Stochastic Neighbor Embedding for Visualization and Outlier
+ * Detection: A Remedy Against the Curse of Dimensionality?<br>
+ * Proc. Int. Conf. Similarity Search and Applications, SISAP'2017
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type.
+ */
+@Title("ISOS: Intrinsic Stochastic Outlier Selection (parallel)")
+@Reference(authors = "Erich Schubert, Michael Gertz", //
+    title = "Intrinsic t-Stochastic Neighbor Embedding for Visualization and Outlier Detection: A Remedy Against the Curse of Dimensionality?", //
+    booktitle = "Proc. Int. Conf. Similarity Search and Applications, SISAP'2017", //
+    url = "https://doi.org/10.1007/978-3-319-68474-1_13", //
+    bibkey = "DBLP:conf/sisap/SchubertG17")
+public class ParallelISOS<O> implements OutlierAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelISOS.class);
+
+  /**
+   * Minimum number of objects per thread.
+   */
+  private static final int MIN_BLOCK = 64;
+
+  /**
+   * Number of objects whose votes are buffered before adding them.
+   */
+  private static final int BUFFER_OBJECTS = 256;
+
+  /**
+   * Distance function used.
+   */
+  protected Distance<? super O> distance;
+
+  /**
+   * Number of neighbors (not including query point).
+   */
+  protected int k;
+
+  /**
+   * Estimators of intrinsic dimensionality.
+   */
+  protected List<? extends IntrinsicDimensionalityEstimator> estimators;
+
+  /**
+   * Expected outlier rate.
+   */
+  protected double phi = 0.01;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param k Number of neighbors to consider
+   * @param estimators Estimators of intrinsic dimensionality.
+   */
+  public ParallelISOS(Distance<? super O> distance, int k, List<? extends IntrinsicDimensionalityEstimator> estimators) {
+    super();
+    this.distance = distance;
+    this.k = k;
+    this.estimators = estimators;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Run the algorithm.
+   *
+   * @param relation data relation.
+   * @return outlier detection result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    final int k1 = k + 1; // Query size
+    final double perplexity = k / 3.;
+    final double logPerp = perplexity > 1. ? FastMath.log(perplexity) : .1;
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size(), m = estimators.size();
+    WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+    final double[][] scores = new double[m][size];
+    for(double[] s : scores) {
+      Arrays.fill(s, 1.);
+    }
+    final QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("ISOS scores", size, LOG) : null;
+    ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+      KNNSearcher<DBIDRef> knnq = qb.kNNByDBID(k1);
+      Worker w = new Worker(offsets, scores, k1 + 10, perplexity, logPerp);
+      for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        w.process(it, knnq.getKNN(it, k1));
+        LOG.incrementProcessed(prog);
+      }
+      w.flush();
+    });
+    LOG.ensureCompleted(prog);
+    OutlierResult result = null;
+    for(int i = 0; i < m; i++) {
+      WritableDoubleDataStore store = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        store.putDouble(it, scores[i][it.getOffset()]);
+      }
+      scores[i] = null; // Allow garbage collection
+      DoubleMinMax minmax = ISOS.transformScores(store, ids, logPerp, phi);
+      if(i == 0) {
+        DoubleRelation scoreres = new MaterializedDoubleRelation("Intrinsic Stochastic Outlier Selection", ids, store);
+        OutlierScoreMeta meta = new ProbabilisticOutlierScore(minmax.getMin(), minmax.getMax(), 0.);
+        result = new OutlierResult(meta, scoreres);
+      }
+      else {
+        Metadata.hierarchyOf(result).addChild(new MaterializedDoubleRelation("Intrinsic Stochastic Outlier Selection (" + estimators.get(i).getClass().getSimpleName() + ")", ids, store));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Per-thread state.
+   *
+   * @author Erich Schubert
+   */
+  private class Worker {
+    /**
+     * Object offsets.
+     */
+    private final IntegerDataStore offsets;
+
+    /**
+     * Shared scores, for each estimator.
+     */
+    private final double[][] scores;
+
+    /**
+     * Perplexity and its logarithm.
+     */
+    private final double perplexity, logPerp;
+
+    /**
+     * Scratch buffers.
+     */
+    private double[] p, buf;
+
+    /**
+     * Adjusted distances.
+     */
+    private final ModifiableDoubleDBIDList dists;
+
+    /**
+     * Buffered votes: targets.
+     */
+    private int[][] votet;
+
+    /**
+     * Buffered votes: values.
+     */
+    private double[][] votev;
+
+    /**
+     * Number of buffered votes.
+     */
+    private final int[] votes;
+
+    /**
+     * Constructor.
+     *
+     * @param offsets Object offsets
+     * @param scores Shared scores
+     * @param cap Initial buffer capacity
+     * @param perplexity Perplexity
+     * @param logPerp Logarithm of perplexity
+     */
+    Worker(IntegerDataStore offsets, double[][] scores, int cap, double perplexity, double logPerp) {
+      this.offsets = offsets;
+      this.scores = scores;
+      this.perplexity = perplexity;
+      this.logPerp = logPerp;
+      this.p = new double[cap];
+      this.buf = new double[cap];
+      this.dists = DBIDUtil.newDistanceDBIDList(cap);
+      final int m = scores.length;
+      this.votet = new int[m][cap * BUFFER_OBJECTS];
+      this.votev = new double[m][cap * BUFFER_OBJECTS];
+      this.votes = new int[m];
+    }
+
+    /**
+     * Process a single object, for all estimators.
+     *
+     * @param it Object
+     * @param knns Nearest neighbors
+     */
+    void process(DBIDIter it, KNNList knns) {
+      if(p.length < knns.size() + 1) {
+        p = new double[knns.size() + 10];
+        buf = new double[knns.size() + 10];
+      }
+      final DoubleDBIDListIter ki = knns.iter(), di = dists.iter();
+      for(int i = 0; i < scores.length; i++) {
+        if(votet[i].length - votes[i] < knns.size()) {
+          flush(i, knns.size());
+        }
+        try {
+          double id = estimateID(estimators.get(i), it, ki);
+          ISOS.adjustDistances(it, ki, knns.getKNNDistance(), id, dists);
+          // We now continue with the modified distances below.
+          nominate(i, it, di);
+        }
+        catch(ArithmeticException e) {
+          // ID estimation failed, fall back to KNNSOS, as in ISOS.
+          nominate(i, it, ki);
+        }
+      }
+    }
+
+    /**
+     * Estimate the local intrinsic dimensionality.
+     *
+     * @param estimator Estimator
+     * @param ignore Object to ignore
+     * @param it Neighbor iterator
+     * @return ID estimate
+     */
+    private double estimateID(IntrinsicDimensionalityEstimator estimator, DBIDRef ignore, DoubleDBIDListIter it) {
+      int j = 0;
+      for(it.seek(0); it.valid(); it.advance()) {
+        if(it.doubleValue() == 0. || DBIDUtil.equal(ignore, it)) {
+          continue;
+        }
+        buf[j++] = it.doubleValue();
+      }
+      if(j < 2) {
+        throw new ArithmeticException("Too little data to estimate ID.");
+      }
+      return estimator.estimate(buf, j);
+    }
+
+    /**
+     * Compute the affinities, and vote for the neighbors not being outliers.
+     *
+     * @param i Estimator number
+     * @param it Object
+     * @param di Neighbors, with (adjusted) distances
+     */
+    private void nominate(int i, DBIDIter it, DoubleDBIDListIter di) {
+      SOS.computePi(it, di, p, perplexity, logPerp);
+      // Normalization factor:
+      final double s = SOS.sumOfProbabilities(it, di, p);
+      if(!(s > 0.)) {
+        return;
+      }
+      final double norm = 1. / s;
+      final int[] t = votet[i];
+      final double[] v = votev[i];
+      int c = votes[i];
+      for(di.seek(0); di.valid(); di.advance()) {
+        if(DBIDUtil.equal(it, di)) {
+          continue;
+        }
+        final double pv = p[di.getOffset()] * norm; // Normalize
+        if(!(pv > 0)) {
+          break;
+        }
+        t[c] = offsets.intValue(di);
+        v[c++] = FastMath.log1p(-pv);
+      }
+      votes[i] = c;
+    }
+
+    /**
+     * Add the buffered votes of an estimator to the shared scores.
+     *
+     * @param i Estimator number
+     * @param need Free capacity needed afterwards
+     */
+    private void flush(int i, int need) {
+      final double[] s = scores[i];
+      final int[] t = votet[i];
+      final double[] v = votev[i];
+      synchronized(s) {
+        for(int j = 0, c = votes[i]; j < c; j++) {
+          s[t[j]] += v[j];
+        }
+      }
+      votes[i] = 0;
+      if(t.length < need) {
+        votet[i] = new int[need * BUFFER_OBJECTS];
+        votev[i] = new double[need * BUFFER_OBJECTS];
+      }
+    }
+
+    /**
+     * Add all buffered votes to the shared scores.
+     */
+    void flush() {
+      for(int i = 0; i < scores.length; i++) {
+        flush(i, 0);
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * Parameter for ID estimation.
+     */
+    public static final OptionID ESTIMATORS_ID = new OptionID("isos.estimators", "Estimators of intrinsic dimensionality. The first is used as outlier score, further scores are added as additional results.");
+
+    /**
+     * The distance function to use.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * Number of neighbors
+     */
+    protected int k = 15;
+
+    /**
+     * Estimators of intrinsic dimensionality.
+     */
+    protected List<? extends IntrinsicDimensionalityEstimator> estimators;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(ISOS.Par.KNN_ID, 100) //
+          .addConstraint(new GreaterEqualConstraint(5)) //
+          .grab(config, x -> k = x);
+      new ObjectListParameter<IntrinsicDimensionalityEstimator>(ESTIMATORS_ID, IntrinsicDimensionalityEstimator.class) //
+          .setDefaultValue(Arrays.asList(AggregatedHillEstimator.class)) //
+          .grab(config, x -> estimators = x);
+    }
+
+    @Override
+    public ParallelISOS<O> make() {
+      return new ParallelISOS<>(distance, k, estimators);
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.intrinsic.parallel;
+
+import java.util.Arrays;
+import java.util.List;
+
+import elki.Algorithm;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.DBIDs;
+import elki.database.ids.KNNList;
+import elki.database.query.QueryBuilder;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.math.DoubleMinMax;
+import elki.math.statistics.intrinsicdimensionality.IntrinsicDimensionalityEstimator;
+import elki.math.statistics.intrinsicdimensionality.MOMEstimator;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.intrinsic.LID;
+import elki.parallel.ParallelExecutor;
+import elki.parallel.processor.DoubleMinMaxProcessor;
+import elki.parallel.processor.KNNProcessor;
+import elki.parallel.processor.Processor;
+import elki.parallel.processor.WriteDoubleDataStoreProcessor;
+import elki.parallel.variables.SharedDouble;
+import elki.parallel.variables.SharedObject;
+import elki.result.Metadata;
+import elki.result.outlier.BasicOutlierScoreMeta;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectListParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel version of {@link LID}, using intrinsic dimensionality for outlier
+ * detection, with support for multiple estimators in a single pass.
+ * <p>
+ * The nearest neighbors of each object are computed only once, and shared by
+ * all estimators. The first estimator is used for the outlier score, the
+ * estimates of any further estimators are added as additional relations.
+ * <p>
+ * Reference:
+ * <p>
+ * Michael E. Houle, Erich Schubert, Arthur Zimek<br>
+ * On the Correlation Between Local Intrinsic Dimensionality and Outlierness<br>
+ * Proc. 11th Int. Conf. Similarity Search and Applications (SISAP'2018)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @composed - - - IDProcessor
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Michael E. Houle, Erich Schubert, Arthur Zimek", //
+    title = "On the Correlation Between Local Intrinsic Dimensionality and Outlierness", //
+    booktitle = "Proc. 11th Int. Conf. Similarity Search and Applications (SISAP'2018)", //
+    url = "https://doi.org/10.1007/978-3-030-02224-2_14", //
+    bibkey = "DBLP:conf/sisap/HouleSZ18")
+public class ParallelLID<O> implements OutlierAlgorithm {
+  /**
+   * Distance function used.
+   */
+  protected Distance<? super O> distance;
+
+  /**
+   * Number of neighbors to use + query point.
+   */
+  protected int kplus;
+
+  /**
+   * Estimators for intrinsic dimensionality.
+   */
+  protected List<? extends IntrinsicDimensionalityEstimator> estimators;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param k Neighborhood size
+   * @param estimators Estimators for intrinsic dimensionality
+   */
+  public ParallelLID(Distance<? super O> distance, int k, List<? extends IntrinsicDimensionalityEstimator> estimators) {
+    super();
+    this.distance = distance;
+    this.kplus = k + 1; // + query point
+    this.estimators = estimators;
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param k Neighborhood size
+   * @param estimator Estimator for intrinsic dimensionality
+   */
+  public ParallelLID(Distance<? super O> distance, int k, IntrinsicDimensionalityEstimator estimator) {
+    this(distance, k, Arrays.asList(estimator));
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param relation Data relation
+   * @return Outlier result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    final DBIDs ids = relation.getDBIDs();
+    final QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    final int m = estimators.size();
+    // Compute the kNN once
+    KNNProcessor knnm = new KNNProcessor(kplus, () -> qb.kNNByDBID(kplus));
+    SharedObject<KNNList> knnv = new SharedObject<>();
+    knnm.connectKNNOutput(knnv);
+    Processor[] procs = new Processor[1 + 3 * m];
+    procs[0] = knnm;
+    WritableDoubleDataStore[] stores = new WritableDoubleDataStore[m];
+    DoubleMinMaxProcessor[] mmms = new DoubleMinMaxProcessor[m];
+    for(int i = 0; i < m; i++) {
+      // Estimate the intrinsic dimensionality
+      IDProcessor idm = new IDProcessor(estimators.get(i), kplus, () -> qb.kNNByDBID(kplus));
+      SharedDouble idv = new SharedDouble();
+      idm.connectKNNInput(knnv);
+      idm.connectOutput(idv);
+      // Store in output result
+      stores[i] = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+      WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(stores[i]);
+      storem.connectInput(idv);
+      // And gather statistics for metadata
+      mmms[i] = new DoubleMinMaxProcessor();
+      mmms[i].connectInput(idv);
+      procs[1 + 3 * i] = idm;
+      procs[2 + 3 * i] = storem;
+      procs[3 + 3 * i] = mmms[i];
+    }
+    ParallelExecutor.run(ids, procs);
+
+    DoubleMinMax minmax = mmms[0].getMinMax();
+    DoubleRelation scoreres = new MaterializedDoubleRelation("Intrinsic dimensionality", ids, stores[0]);
+    OutlierScoreMeta meta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0.0, Double.POSITIVE_INFINITY, 0.0);
+    OutlierResult result = new OutlierResult(meta, scoreres);
+    for(int i = 1; i < m; i++) {
+      Metadata.hierarchyOf(result).addChild(new MaterializedDoubleRelation("Intrinsic dimensionality (" + estimators.get(i).getClass().getSimpleName() + ")", ids, stores[i]));
+    }
+    return result;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * Classes to use for estimating the ID.
+     */
+    public static final OptionID ESTIMATORS_ID = new OptionID("id.estimators", "Classes to estimate ID from distance distribution. The first is used as outlier score, further estimates are added as additional results.");
+
+    /**
+     * The distance function to use.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * Number of neighbors to use for ID estimation.
+     */
+    protected int k;
+
+    /**
+     * Estimators for intrinsic dimensionality.
+     */
+    protected List<? extends IntrinsicDimensionalityEstimator> estimators;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(LID.Par.K_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> k = x);
+      new ObjectListParameter<IntrinsicDimensionalityEstimator>(ESTIMATORS_ID, IntrinsicDimensionalityEstimator.class) //
+          .setDefaultValue(Arrays.asList(MOMEstimator.class)) //
+          .grab(config, x -> estimators = x);
+    }
+
+    @Override
+    public ParallelLID<O> make() {
+      return new ParallelLID<>(distance, k, estimators);
+    }
+  }
+}
@@ -0,0 +1,663 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.*;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.Algorithm;
+import elki.distance.PrimitiveDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.logging.Logging;
+import elki.logging.statistics.LongStatistic;
+import elki.math.DoubleMinMax;
+import elki.parallel.ParallelExecutor;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.QuotientOutlierScoreMeta;
+import elki.utilities.documentation.Reference;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.WrongParameterValueException;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+/**
+ * Sliding window version of {@link LOF} for streaming data, which processes
+ * insertions and expirations in micro-batches.
+ * <p>
+ * The window keeps the most recent objects, up to a maximum size. For each
+ * batch, the k nearest neighbors are updated: new objects are compared to the
+ * window, existing objects only to the new objects, and neighborhoods are
+ * recomputed completely only when too many of their neighbors expired. Then
+ * the local reachability densities and LOF scores are recomputed only for the
+ * objects affected by the changes, i.e., objects whose neighborhood changed,
+ * or whose neighbors have a changed k-distance or density. The affected
+ * objects are found by a scan of the neighbor lists, so no reverse nearest
+ * neighbor sets are stored. All steps are run in parallel.
+ * <p>
+ * The scores are identical to running {@link LOF} on the current window
+ * contents, but the cost of an update depends on the batch size rather than on
+ * rerunning LOF on the whole window.
+ * <p>
+ * Reference:
+ * <p>
+ * D. Pokrajac, A. Lazarevic, L. J. Latecki<br>
+ * Incremental Local Outlier Detection for Data Streams<br>
+ * Proc. IEEE Symp. Computational Intelligence and Data Mining (CIDM 2007)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "D. Pokrajac, A. Lazarevic, L. J. Latecki", //
+    title = "Incremental Local Outlier Detection for Data Streams", //
+    booktitle = "Proc. IEEE Symp. Computational Intelligence and Data Mining (CIDM 2007)", //
+    url = "https://doi.org/10.1109/CIDM.2007.368917", //
+    bibkey = "DBLP:conf/cidm/PokrajacLL07")
+public class SlidingWindowLOF<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(SlidingWindowLOF.class);
+
+  /**
+   * Minimum number of objects per thread.
+   */
+  private static final int MIN_BLOCK = 64;
+
+  /**
+   * Distance function.
+   */
+  private final PrimitiveDistance<? super O> distance;
+
+  /**
+   * Number of neighbors.
+   */
+  private final int k;
+
+  /**
+   * Maximum window size.
+   */
+  private final int window;
+
+  /**
+   * Objects, by slot.
+   */
+  private final Object[] data;
+
+  /**
+   * Object ids, by slot.
+   */
+  private final DBID[] dbids;
+
+  /**
+   * Map from object ids to slots.
+   */
+  private final Int2IntOpenHashMap slots = new Int2IntOpenHashMap();
+
+  /**
+   * Slots in insertion order (ring buffer).
+   */
+  private final int[] fifo;
+
+  /**
+   * Start and size of the ring buffer.
+   */
+  private int head = 0, size = 0;
+
+  /**
+   * Free slots (stack).
+   */
+  private final int[] free;
+
+  /**
+   * Number of free slots.
+   */
+  private int numfree;
+
+  /**
+   * Neighbor slots, sorted by distance, including ties.
+   */
+  private final int[][] nbrs;
+
+  /**
+   * Neighbor distances.
+   */
+  private final double[][] nbrdists;
+
+  /**
+   * Number of neighbors.
+   */
+  private final int[] numnbrs;
+
+  /**
+   * k-distance, local reachability density, and LOF score by slot.
+   */
+  private final double[] kdist, lrd, lof;
+
+  /**
+   * Flags for the current update.
+   */
+  private final boolean[] dead, fresh, knnChanged, kdistChanged, lrdChanged;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param k Number of neighbors
+   * @param window Maximum window size
+   */
+  public SlidingWindowLOF(PrimitiveDistance<? super O> distance, int k, int window) {
+    super();
+    if(k < 1) {
+      throw new IllegalArgumentException("k must be positive.");
+    }
+    if(window <= k) {
+      // With at most k objects, no object has k neighbors.
+      throw new IllegalArgumentException("The window size must be larger than k.");
+    }
+    this.distance = distance;
+    this.k = k;
+    this.window = window;
+    // Expired objects are kept until the end of an update, so we need up to
+    // twice the window size in slots.
+    final int cap = window << 1;
+    this.data = new Object[cap];
+    this.dbids = new DBID[cap];
+    this.fifo = new int[window];
+    this.free = new int[cap];
+    for(int i = 0; i < cap; i++) {
+      free[i] = cap - 1 - i;
+    }
+    this.numfree = cap;
+    this.nbrs = new int[cap][];
+    this.nbrdists = new double[cap][];
+    this.numnbrs = new int[cap];
+    this.kdist = new double[cap];
+    this.lrd = new double[cap];
+    this.lof = new double[cap];
+    this.dead = new boolean[cap];
+    this.fresh = new boolean[cap];
+    this.knnChanged = new boolean[cap];
+    this.kdistChanged = new boolean[cap];
+    this.lrdChanged = new boolean[cap];
+    slots.defaultReturnValue(-1);
+  }
+
+  /**
+   * Insert a batch of objects. If the window would exceed its maximum size,
+   * the oldest objects expire in the same update.
+   *
+   * @param batch Objects to insert
+   * @return Object ids assigned
+   */
+  public DBIDRange insert(List<? extends O> batch) {
+    final int n = batch.size();
+    if(n > window) {
+      throw new IllegalArgumentException("Batch is larger than the window.");
+    }
+    int[] removed = dequeue(Math.max(0, size + n - window));
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(n);
+    int[] added = new int[n];
+    DBIDArrayIter it = ids.iter();
+    for(int i = 0; i < n; i++, it.advance()) {
+      final int s = added[i] = free[--numfree];
+      data[s] = batch.get(i);
+      dbids[s] = DBIDUtil.deref(it);
+      slots.put(DBIDUtil.asInteger(it), s);
+      fifo[(head + size++) % window] = s;
+    }
+    update(removed, added);
+    return ids;
+  }
+
+  /**
+   * Expire the oldest objects.
+   *
+   * @param n Number of objects to expire
+   * @throws IllegalArgumentException if n is negative
+   */
+  public void expire(int n) {
+    if(n < 0) {
+      throw new IllegalArgumentException("The number of objects to expire must not be negative.");
+    }
+    update(dequeue(Math.min(n, size)), new int[0]);
+  }
+
+  /**
+   * Remove the oldest objects from the queue.
+   *
+   * @param n Number of objects
+   * @return Slots removed
+   */
+  private int[] dequeue(int n) {
+    int[] removed = new int[n];
+    for(int i = 0; i < n; i++) {
+      final int s = removed[i] = fifo[head];
+      head = (head + 1) % window;
+      --size;
+      slots.remove(DBIDUtil.asInteger(dbids[s]));
+    }
+    return removed;
+  }
+
+  /**
+   * Current number of objects in the window.
+   *
+   * @return Window size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the ids of the objects in the window, oldest first.
+   *
+   * @return Object ids
+   */
+  public ArrayDBIDs getDBIDs() {
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(size);
+    for(int i = 0; i < size; i++) {
+      ids.add(dbids[fifo[(head + i) % window]]);
+    }
+    return ids;
+  }
+
+  /**
+   * Get the current LOF score of an object in the window.
+   *
+   * @param id Object id
+   * @return LOF score, or NaN if the object is not in the window
+   */
+  public double score(DBIDRef id) {
+    final int s = slots.get(DBIDUtil.asInteger(id));
+    return s >= 0 ? lof[s] : Double.NaN;
+  }
+
+  /**
+   * Score a new object against the current window, without inserting it.
+   * The neighbors' densities are not updated.
+   *
+   * @param obj Query object
+   * @return LOF score
+   */
+  public double scoreObject(O obj) {
+    if(size == 0) {
+      return 1.;
+    }
+    int[] nbr = new int[k + 1];
+    double[] nd = new double[k + 1];
+    int n = 0;
+    double kd = Double.POSITIVE_INFINITY;
+    for(int i = 0; i < size; i++) {
+      final int o = fifo[(head + i) % window];
+      final double d = distance.distance(obj, get(o));
+      if(n < k || d <= kd) {
+        if(n == nbr.length) {
+          nbr = Arrays.copyOf(nbr, n << 1);
+          nd = Arrays.copyOf(nd, n << 1);
+        }
+        n = insertSorted(nbr, nd, n, o, d);
+        if(n >= k) {
+          kd = nd[k - 1];
+          n = truncate(nd, n, kd);
+        }
+      }
+    }
+    double sum = 0.;
+    for(int i = 0; i < n; i++) {
+      sum += Math.max(nd[i], kdist[nbr[i]]);
+    }
+    final double lrdp = sum > 0 ? n / sum : Double.POSITIVE_INFINITY;
+    if(Double.isInfinite(lrdp)) {
+      return 1.;
+    }
+    double lsum = 0.;
+    for(int i = 0; i < n; i++) {
+      lsum += lrd[nbr[i]];
+    }
+    return lsum / (lrdp * n);
+  }
+
+  /**
+   * Get the current scores of all objects in the window.
+   *
+   * @return Outlier result
+   */
+  public OutlierResult getResult() {
+    ArrayDBIDs ids = getDBIDs();
+    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+    DoubleMinMax minmax = new DoubleMinMax();
+    for(int i = 0; i < size; i++) {
+      final int s = fifo[(head + i) % window];
+      scores.putDouble(dbids[s], lof[s]);
+      minmax.put(lof[s]);
+    }
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("Local Outlier Factor", ids, scores);
+    OutlierScoreMeta scoreMeta = new QuotientOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0.0, Double.POSITIVE_INFINITY, 1.0);
+    return new OutlierResult(scoreMeta, scoreResult);
+  }
+
+  /**
+   * Get the object in a slot.
+   *
+   * @param s Slot
+   * @return Object
+   */
+  @SuppressWarnings("unchecked")
+  private O get(int s) {
+    return (O) data[s];
+  }
+
+  /**
+   * Process an update.
+   *
+   * @param removed Slots of expired objects
+   * @param added Slots of new objects
+   */
+  private void update(int[] removed, int[] added) {
+    for(int s : removed) {
+      dead[s] = true;
+    }
+    for(int s : added) {
+      fresh[s] = true;
+    }
+    final int[] live = new int[size];
+    for(int i = 0; i < size; i++) {
+      live[i] = fifo[(head + i) % window];
+    }
+    final LongAdder scans = new LongAdder(), lrds = new LongAdder(), lofs = new LongAdder();
+    // Update the nearest neighbors:
+    ParallelExecutor.run(0, live.length, MIN_BLOCK, (start, end) -> {
+      for(int i = start; i < end; i++) {
+        if(updateKNN(live[i], live, added)) {
+          scans.increment();
+        }
+      }
+    });
+    // Update the local reachability densities:
+    ParallelExecutor.run(0, live.length, MIN_BLOCK, (start, end) -> {
+      for(int i = start; i < end; i++) {
+        final int p = live[i];
+        if(knnChanged[p] || anyNeighbor(p, kdistChanged)) {
+          final double old = lrd[p];
+          lrd[p] = computeLRD(p);
+          lrdChanged[p] = Double.compare(old, lrd[p]) != 0;
+          lrds.increment();
+        }
+      }
+    });
+    // Update the LOF scores:
+    ParallelExecutor.run(0, live.length, MIN_BLOCK, (start, end) -> {
+      for(int i = start; i < end; i++) {
+        final int p = live[i];
+        if(knnChanged[p] || lrdChanged[p] || anyNeighbor(p, lrdChanged)) {
+          lof[p] = computeLOF(p);
+          lofs.increment();
+        }
+      }
+    });
+    // Reset the flags, release expired slots.
+    for(int p : live) {
+      fresh[p] = knnChanged[p] = kdistChanged[p] = lrdChanged[p] = false;
+    }
+    for(int s : removed) {
+      dead[s] = false;
+      data[s] = null;
+      dbids[s] = null;
+      nbrs[s] = null;
+      nbrdists[s] = null;
+      free[numfree++] = s;
+    }
+    if(LOG.isStatistics()) {
+      final String key = SlidingWindowLOF.class.getName();
+      LOG.statistics(new LongStatistic(key + ".knn-scans", scans.sum()));
+      LOG.statistics(new LongStatistic(key + ".lrd-updates", lrds.sum()));
+      LOG.statistics(new LongStatistic(key + ".lof-updates", lofs.sum()));
+    }
+  }
+
+  /**
+   * Update the nearest neighbors of a single object.
+   *
+   * @param p Object slot
+   * @param live Slots of all objects in the window
+   * @param added Slots of new objects
+   * @return {@code true} if a full scan was necessary
+   */
+  private boolean updateKNN(int p, int[] live, int[] added) {
+    final double oldkd = kdist[p];
+    int n = 0;
+    boolean changed = false, rescan = fresh[p];
+    if(!rescan) {
+      // Remove expired neighbors:
+      final int[] nbr = nbrs[p];
+      final double[] nd = nbrdists[p];
+      for(int i = 0, e = numnbrs[p]; i < e; i++) {
+        if(!dead[nbr[i]]) {
+          nbr[n] = nbr[i];
+          nd[n++] = nd[i];
+        }
+      }
+      changed = n < numnbrs[p];
+      // All objects within the old k-distance were in the list, so a rescan is
+      // only necessary when fewer than k of them remain.
+      rescan = n < k && oldkd < Double.POSITIVE_INFINITY;
+    }
+    final O obj = get(p);
+    final int[] candidates = rescan ? live : added;
+    if(rescan) {
+      n = 0;
+      changed = true;
+      if(nbrs[p] == null) {
+        nbrs[p] = new int[k + 1];
+        nbrdists[p] = new double[k + 1];
+      }
+    }
+    int[] nbr = nbrs[p];
+    double[] nd = nbrdists[p];
+    double kd = Double.POSITIVE_INFINITY;
+    if(n >= k) {
+      kd = nd[k - 1];
+      n = truncate(nd, n, kd);
+    }
+    for(int o : candidates) {
+      if(o == p) {
+        continue;
+      }
+      final double d = distance.distance(obj, get(o));
+      if(n >= k && d > kd) {
+        continue;
+      }
+      if(n == nbr.length) {
+        nbrs[p] = nbr = Arrays.copyOf(nbr, n << 1);
+        nbrdists[p] = nd = Arrays.copyOf(nd, n << 1);
+      }
+      n = insertSorted(nbr, nd, n, o, d);
+      if(n >= k) {
+        kd = nd[k - 1];
+        n = truncate(nd, n, kd);
+      }
+      changed = true;
+    }
+    numnbrs[p] = n;
+    kdist[p] = kd;
+    knnChanged[p] = changed;
+    kdistChanged[p] = Double.compare(oldkd, kd) != 0 || fresh[p];
+    return rescan;
+  }
+
+  /**
+   * Insert into a sorted neighbor list.
+   *
+   * @param nbr Neighbor slots
+   * @param nd Neighbor distances
+   * @param n Current size, must be less than the array length
+   * @param o New neighbor
+   * @param d New distance
+   * @return New size
+   */
+  private static int insertSorted(int[] nbr, double[] nd, int n, int o, double d) {
+    int pos = n;
+    while(pos > 0 && nd[pos - 1] > d) {
+      nbr[pos] = nbr[pos - 1];
+      nd[pos] = nd[pos - 1];
+      --pos;
+    }
+    nbr[pos] = o;
+    nd[pos] = d;
+    return n + 1;
+  }
+
+  /**
+   * Truncate a sorted neighbor list, keeping ties.
+   *
+   * @param nd Neighbor distances
+   * @param n Current size
+   * @param kd k-distance
+   * @return New size
+   */
+  private static int truncate(double[] nd, int n, double kd) {
+    while(n > 0 && nd[n - 1] > kd) {
+      --n;
+    }
+    return n;
+  }
+
+  /**
+   * Test whether any neighbor has a flag set.
+   *
+   * @param p Object slot
+   * @param flags Flags
+   * @return {@code true} if any neighbor is flagged
+   */
+  private boolean anyNeighbor(int p, boolean[] flags) {
+    final int[] nbr = nbrs[p];
+    for(int i = 0, e = numnbrs[p]; i < e; i++) {
+      if(flags[nbr[i]]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Compute the local reachability density of an object.
+   *
+   * @param p Object slot
+   * @return Local reachability density
+   */
+  private double computeLRD(int p) {
+    final int[] nbr = nbrs[p];
+    final double[] nd = nbrdists[p];
+    final int n = numnbrs[p];
+    double sum = 0.;
+    for(int i = 0; i < n; i++) {
+      sum += Math.max(nd[i], kdist[nbr[i]]);
+    }
+    return (sum > 0) ? (n / sum) : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Compute the LOF score of an object.
+   *
+   * @param p Object slot
+   * @return LOF score
+   */
+  private double computeLOF(int p) {
+    final double lrdp = lrd[p];
+    if(Double.isInfinite(lrdp)) {
+      return 1.0;
+    }
+    final int[] nbr = nbrs[p];
+    final int n = numnbrs[p];
+    double sum = 0.;
+    for(int i = 0; i < n; i++) {
+      sum += lrd[nbr[i]];
+    }
+    return sum / (lrdp * n);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @hidden
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * Parameter for the maximum window size.
+     */
+    public static final OptionID WINDOW_ID = new OptionID("swlof.window", "Maximum number of objects in the sliding window. Must be larger than k.");
+
+    /**
+     * The distance function to use.
+     */
+    protected PrimitiveDistance<? super O> distance;
+
+    /**
+     * Number of neighbors.
+     */
+    protected int k;
+
+    /**
+     * Maximum window size.
+     */
+    protected int window;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<PrimitiveDistance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, PrimitiveDistance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      IntParameter kP = new IntParameter(LOF.Par.K_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      kP.grab(config, x -> k = x);
+      IntParameter windowP = new IntParameter(WINDOW_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      windowP.grab(config, x -> window = x);
+      // Non-formalized parameter constraint: k < window
+      if(window > 0 && window <= k) {
+        config.reportError(new WrongParameterValueException(windowP, "must be larger than", kP, ""));
+      }
+    }
+
+    @Override
+    public SlidingWindowLOF<O> make() {
+      return new SlidingWindowLOF<>(distance, k, window);
+    }
+  }
+}
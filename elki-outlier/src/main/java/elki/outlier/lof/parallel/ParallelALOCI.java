@@ -0,0 +1,874 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import elki.Algorithm;
+import elki.data.NumberVector;
+import elki.data.type.CombinedTypeInformation;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.ids.ArrayDBIDs;
+import elki.database.ids.DBIDArrayIter;
+import elki.database.ids.DBIDUtil;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.database.relation.RelationUtil;
+import elki.distance.NumberVectorDistance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.logging.statistics.LongStatistic;
+import elki.math.DoubleMinMax;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.lof.ALOCI;
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+import elki.result.Metadata;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.QuotientOutlierScoreMeta;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+import elki.utilities.exceptions.AbortException;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+import elki.utilities.optionhandling.parameters.RandomParameter;
+import elki.utilities.random.RandomFactory;
+
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of the approximate Local Correlation Integral (aLOCI),
+ * using compact, array-backed quadtrees.
+ * <p>
+ * Each of the g randomly shifted quadtrees only stores the counts of its
+ * cells, in flat arrays in breadth-first order (such that the children of a
+ * cell are contiguous, and sorted by their position code). The sums of squared
+ * and cubed counts needed for the MDEF computation are precomputed for every
+ * cell and all relative depths up to alpha, so each score only needs a
+ * constant number of lookups per level. The grid of every tree is twice the
+ * extent of the data, such that the shifted trees do not need to wrap around.
+ * <p>
+ * The trees are built in parallel, one level at a time (if there are at least
+ * as many trees as threads, one tree per thread instead), and the objects are
+ * scored in parallel. The maximum normalized MDEF is reported as score; the
+ * side length of the counting cell where the maximum was attained is added as
+ * an additional relation, to indicate the granularity of the outlier.
+ * <p>
+ * Unlike {@link ALOCI}, the cells at level l have a side length of 1/2^l of
+ * the grid; cells with fewer than nmin points, or with only duplicate points,
+ * are not split further.
+ * <p>
+ * Reference:
+ * <p>
+ * S. Papadimitriou, H. Kitagawa, P. B. Gibbons and C. Faloutsos:<br>
+ * LOCI: Fast Outlier Detection Using the Local Correlation Integral.<br>
+ * In: Proc. 19th IEEE Int. Conf. on Data Engineering (ICDE '03)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @composed - - - CompactQuadTree
+ *
+ * @param <V> Vector type
+ */
+@Title("Approximate LOCI: Fast Outlier Detection Using the Local Correlation Integral (parallel)")
+@Reference(authors = "S. Papadimitriou, H. Kitagawa, P. B. Gibbons, C. Faloutsos", //
+    title = "LOCI: Fast Outlier Detection Using the Local Correlation Integral", //
+    booktitle = "Proc. 19th IEEE Int. Conf. on Data Engineering (ICDE '03)", //
+    url = "https://doi.org/10.1109/ICDE.2003.1260802", //
+    bibkey = "DBLP:conf/icde/PapadimitriouKGF03")
+public class ParallelALOCI<V extends NumberVector> implements OutlierAlgorithm {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelALOCI.class);
+
+  /**
+   * Maximum tree depth (the cell coordinates must fit into a long).
+   */
+  private static final int MAX_LEVEL = 52;
+
+  /**
+   * Minimum number of objects to score per thread.
+   */
+  private static final int MIN_BLOCK = 256;
+
+  /**
+   * Largest double smaller than 1.
+   */
+  private static final double ALMOST_ONE = 0x1.fffffffffffffp-1;
+
+  /**
+   * Distance function used.
+   */
+  private NumberVectorDistance<? super V> distance;
+
+  /**
+   * Minimum size of a cell to be split.
+   */
+  private int nmin;
+
+  /**
+   * Alpha (level difference of sampling and counting neighborhoods)
+   */
+  private int alpha;
+
+  /**
+   * Number of trees to generate (forest size)
+   */
+  private int g;
+
+  /**
+   * Random generator
+   */
+  private RandomFactory rnd;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param nmin Minimum neighborhood size
+   * @param alpha Alpha value
+   * @param g Number of grids to use
+   * @param rnd Random generator.
+   */
+  public ParallelALOCI(NumberVectorDistance<? super V> distance, int nmin, int alpha, int g, RandomFactory rnd) {
+    super();
+    this.distance = distance;
+    this.nmin = nmin;
+    this.alpha = alpha;
+    this.g = g;
+    this.rnd = rnd;
+  }
+
+  /**
+   * Run the algorithm.
+   *
+   * @param relation Relation to process
+   * @return Outlier detection result
+   */
+  public OutlierResult run(Relation<V> relation) {
+    final int dim = RelationUtil.dimensionality(relation);
+    if(dim > 32) {
+      throw new AbortException("Quadtrees are only supported for up to 32 dimensions");
+    }
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    // Compute extend of dataset, as a cube.
+    double[][] hbbs = RelationUtil.computeMinMax(relation);
+    final double[] min = hbbs[0], max = hbbs[1];
+    double maxd = 0;
+    for(int d = 0; d < dim; d++) {
+      maxd = Math.max(maxd, max[d] - min[d]);
+    }
+    maxd = maxd > 0 ? maxd : 1;
+    // Twice the extend, so that shifts of up to maxd do not wrap around.
+    final double side = 2 * maxd;
+    // The first tree is not shifted, the others randomly.
+    final Random random = rnd.getSingleThreadedRandom();
+    final double[][] origins = new double[g][dim];
+    for(int t = 0; t < g; t++) {
+      for(int d = 0; d < dim; d++) {
+        origins[t][d] = min[d] - (t > 0 ? random.nextDouble() * maxd : 0.);
+      }
+    }
+    FiniteProgress progressPreproc = LOG.isVerbose() ? new FiniteProgress("Build aLOCI quadtrees", g, LOG) : null;
+    final CompactQuadTree[] trees = new CompactQuadTree[g];
+    if(g >= ParallelCore.getCore().getParallelism()) {
+      // One tree per thread; the levels are then split in the same thread.
+      ParallelExecutor.run(0, g, 1, (start, end) -> {
+        for(int t = start; t < end; t++) {
+          trees[t] = new CompactQuadTree(relation, ids, origins[t], side, nmin, alpha);
+          LOG.incrementProcessed(progressPreproc);
+        }
+      });
+    }
+    else {
+      // Too few trees to use all threads: split the levels in parallel.
+      for(int t = 0; t < g; t++) {
+        trees[t] = new CompactQuadTree(relation, ids, origins[t], side, nmin, alpha);
+        LOG.incrementProcessed(progressPreproc);
+      }
+    }
+    LOG.ensureCompleted(progressPreproc);
+    if(LOG.isStatistics()) {
+      long nodes = 0;
+      for(CompactQuadTree tree : trees) {
+        nodes += tree.size;
+      }
+      LOG.statistics(new LongStatistic(ParallelALOCI.class.getName() + ".nodes", nodes));
+    }
+
+    // aLOCI main loop: evaluate
+    FiniteProgress progressLOCI = LOG.isVerbose() ? new FiniteProgress("Compute aLOCI scores", size, LOG) : null;
+    final double[] scores = new double[size], radii = new double[size];
+    ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+      Scorer scorer = new Scorer(trees, dim);
+      for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        scorer.score(relation.get(it));
+        scores[it.getOffset()] = scorer.maxmdefnorm;
+        radii[it.getOffset()] = scorer.maxlevel > 0 ? FastMath.scalb(side, -scorer.maxlevel) : 0.;
+        LOG.incrementProcessed(progressLOCI);
+      }
+    });
+    LOG.ensureCompleted(progressLOCI);
+    WritableDoubleDataStore mdef_norm = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore mdef_radius = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    DoubleMinMax minmax = new DoubleMinMax();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      mdef_norm.putDouble(it, scores[it.getOffset()]);
+      mdef_radius.putDouble(it, radii[it.getOffset()]);
+      minmax.put(scores[it.getOffset()]);
+    }
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("aLOCI normalized MDEF", ids, mdef_norm);
+    OutlierScoreMeta scoreMeta = new QuotientOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0.0, Double.POSITIVE_INFINITY);
+    OutlierResult result = new OutlierResult(scoreMeta, scoreResult);
+    Metadata.hierarchyOf(result).addChild(new MaterializedDoubleRelation("aLOCI MDEF Radius", ids, mdef_radius));
+    return result;
+  }
+
+  /**
+   * Compute the normalized MDEF.
+   *
+   * @param sq Sum of squared counts in the sampling neighborhood
+   * @param cb Sum of cubed counts in the sampling neighborhood
+   * @param sncount Size of the sampling neighborhood
+   * @param cgcount Size of the counting neighborhood
+   * @return MDEF norm
+   */
+  private static double calculateMDEFNorm(long sq, long cb, int sncount, int cgcount) {
+    // All counting neighborhoods contain at most one object: no outlier.
+    if(sq == sncount) {
+      return 0.0;
+    }
+    // Use floating point, as the products can exceed the range of long.
+    double n_hat = (double) sq / sncount;
+    double sig_n_hat = FastMath.sqrt(cb * (double) sncount - sq * (double) sq) / sncount;
+    if(sig_n_hat < Double.MIN_NORMAL) {
+      return 0.0;
+    }
+    return (n_hat - cgcount) / sig_n_hat;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(new CombinedTypeInformation(TypeUtil.NUMBER_VECTOR_FIELD, distance.getInputTypeRestriction()));
+  }
+
+  /**
+   * Per-thread scoring state.
+   *
+   * @author Erich Schubert
+   */
+  private class Scorer {
+    /**
+     * Trees to use.
+     */
+    private final CompactQuadTree[] trees;
+
+    /**
+     * Views of the counting and sampling cells.
+     */
+    private final CellView ci, cj, cand;
+
+    /**
+     * Maximum normalized MDEF of the last object scored.
+     */
+    double maxmdefnorm;
+
+    /**
+     * Level at which the maximum was attained (0 if none).
+     */
+    int maxlevel;
+
+    /**
+     * Constructor.
+     *
+     * @param trees Trees
+     * @param dim Dimensionality
+     */
+    Scorer(CompactQuadTree[] trees, int dim) {
+      this.trees = trees;
+      this.ci = new CellView(dim);
+      this.cj = new CellView(dim);
+      this.cand = new CellView(dim);
+    }
+
+    /**
+     * Score a single object.
+     *
+     * @param obj Object
+     */
+    void score(V obj) {
+      maxmdefnorm = 0;
+      maxlevel = 0;
+      // Level 0 is the root cell containing everything
+      for(int l = 1;; l++) {
+        // Find the closest counting cell C_i on level l
+        ci.tree = null;
+        double cidist = Double.POSITIVE_INFINITY;
+        for(CompactQuadTree tree : trees) {
+          final int node = tree.findClosestNode(obj, l);
+          if(tree.level[node] != l) {
+            continue;
+          }
+          final double d = distance.distance(cand.set(tree, node), obj);
+          if(ci.tree == null || d < cidist) {
+            ci.set(tree, node);
+            cidist = d;
+          }
+        }
+        if(ci.tree == null) {
+          break; // no tree has this level.
+        }
+        // Find the closest sampling cell C_j, alpha levels above
+        final int target = Math.max(0, l - alpha);
+        cj.tree = null;
+        double cjdist = Double.POSITIVE_INFINITY;
+        for(CompactQuadTree tree : trees) {
+          final int node = tree.findClosestNode(ci, target);
+          final int level = tree.level[node];
+          if(cj.tree != null && level < cj.level()) {
+            continue;
+          }
+          final double d = distance.distance(cand.set(tree, node), ci);
+          if(cj.tree == null || level > cj.level() || d < cjdist) {
+            cj.set(tree, node);
+            cjdist = d;
+          }
+        }
+        // The ancestor of C_i always has the target level.
+        final int k = l - cj.level();
+        final double mdefnorm = calculateMDEFNorm(cj.tree.squareSum(cj.node, k), cj.tree.cubicSum(cj.node, k), cj.count(), ci.count());
+        if(mdefnorm > maxmdefnorm) {
+          maxmdefnorm = mdefnorm;
+          maxlevel = l;
+        }
+      }
+    }
+  }
+
+  /**
+   * Compact quadtree storing only the cell counts, in breadth-first order.
+   *
+   * @author Erich Schubert
+   */
+  static class CompactQuadTree {
+    /**
+     * Grid origin (minimum corner).
+     */
+    final double[] origin;
+
+    /**
+     * Side length of the grid.
+     */
+    final double side;
+
+    /**
+     * Number of nodes.
+     */
+    int size;
+
+    /**
+     * Number of objects in each cell.
+     */
+    int[] count;
+
+    /**
+     * Level of each cell (0 is the root).
+     */
+    int[] level;
+
+    /**
+     * Position code of each cell within its parent.
+     */
+    int[] code;
+
+    /**
+     * First child of each cell, and end of the children.
+     */
+    int[] childStart, childEnd;
+
+    /**
+     * Cell centers (size times dimensionality).
+     */
+    double[] center;
+
+    /**
+     * Maximum relative depth of the precomputed sums.
+     */
+    final int maxdepth;
+
+    /**
+     * Sum of squared and cubed counts of the descendants at each relative
+     * depth, indexed by depth * size + node.
+     */
+    long[] sqsum, cbsum;
+
+    /**
+     * Constructor, build the tree.
+     *
+     * @param relation Data relation
+     * @param ids Object ids
+     * @param origin Grid origin
+     * @param side Side length of the grid
+     * @param nmin Minimum size of a cell to be split
+     * @param maxdepth Maximum relative depth of the precomputed sums
+     */
+    CompactQuadTree(Relation<? extends NumberVector> relation, ArrayDBIDs ids, double[] origin, double side, int nmin, int maxdepth) {
+      this.origin = origin;
+      this.side = side;
+      this.maxdepth = maxdepth;
+      final int dim = origin.length, n = ids.size();
+      allocate(Math.max(16, (n / Math.max(1, nmin)) << 1), dim);
+      // Order of the objects, the cells refer to contiguous ranges.
+      final int[] perm = new int[n];
+      for(int i = 0; i < n; i++) {
+        perm[i] = i;
+      }
+      final long[] keys = new long[n];
+      int[] rstart = new int[] { 0, n };
+      // Root cell
+      size = 1;
+      count[0] = n;
+      for(int d = 0; d < dim; d++) {
+        center[d] = origin[d] + side * .5;
+      }
+      for(int l = 0, begin = 0, end = 1; begin < end; l++) {
+        final int lvl = l + 1, first = begin, num = end - begin;
+        final int[] cur = rstart;
+        // Split all cells of the current level in parallel.
+        final int[][] groups = new int[num][];
+        if(lvl <= MAX_LEVEL) {
+          ParallelExecutor.run(0, num, 1, (s, e) -> {
+            DBIDArrayIter it = ids.iter();
+            for(int j = s; j < e; j++) {
+              if(count[first + j] >= nmin) {
+                groups[j] = split(relation, it, perm, keys, cur[j], cur[j + 1], lvl);
+              }
+            }
+          });
+        }
+        // Append the children of the next level, in order.
+        int total = 0;
+        for(int j = 0; j < num; j++) {
+          total += groups[j] != null ? (groups[j].length >> 1) : 0;
+        }
+        ensureCapacity(size + total, dim);
+        rstart = new int[total + 1];
+        final double offset = FastMath.scalb(side, -lvl - 1);
+        for(int j = 0, c = 0; j < num; j++) {
+          final int parent = first + j;
+          childStart[parent] = childEnd[parent] = size;
+          final int[] grp = groups[j];
+          if(grp == null) {
+            continue;
+          }
+          for(int i = 0; i < grp.length; i += 2, c++) {
+            final int node = size++, ccode = grp[i];
+            code[node] = ccode;
+            level[node] = lvl;
+            rstart[c] = grp[i + 1];
+            count[node] = (i + 2 < grp.length ? grp[i + 3] : cur[j + 1]) - grp[i + 1];
+            for(int d = 0, p = parent * dim, o = node * dim; d < dim; d++) {
+              center[o + d] = center[p + d] + (((ccode >>> d) & 1) != 0 ? offset : -offset);
+            }
+          }
+          childEnd[parent] = size;
+          rstart[c] = cur[j + 1];
+        }
+        begin = end;
+        end = size;
+      }
+      count = Arrays.copyOf(count, size);
+      level = Arrays.copyOf(level, size);
+      code = Arrays.copyOf(code, size);
+      childStart = Arrays.copyOf(childStart, size);
+      childEnd = Arrays.copyOf(childEnd, size);
+      center = Arrays.copyOf(center, size * dim);
+      computeSums();
+    }
+
+    /**
+     * Allocate the node arrays.
+     *
+     * @param cap Capacity
+     * @param dim Dimensionality
+     */
+    private void allocate(int cap, int dim) {
+      count = new int[cap];
+      level = new int[cap];
+      code = new int[cap];
+      childStart = new int[cap];
+      childEnd = new int[cap];
+      center = new double[cap * dim];
+    }
+
+    /**
+     * Ensure the node arrays have the given capacity.
+     *
+     * @param cap Required capacity
+     * @param dim Dimensionality
+     */
+    private void ensureCapacity(int cap, int dim) {
+      if(cap <= count.length) {
+        return;
+      }
+      cap = Math.max(cap, count.length + (count.length >>> 1));
+      count = Arrays.copyOf(count, cap);
+      level = Arrays.copyOf(level, cap);
+      code = Arrays.copyOf(code, cap);
+      childStart = Arrays.copyOf(childStart, cap);
+      childEnd = Arrays.copyOf(childEnd, cap);
+      center = Arrays.copyOf(center, cap * dim);
+    }
+
+    /**
+     * Split a range of objects into the cells of the next level.
+     *
+     * @param relation Data relation
+     * @param it Iterator for the object ids
+     * @param perm Object permutation (will be reordered)
+     * @param keys Scratch array for sorting
+     * @param start Range start
+     * @param end Range end
+     * @param lvl Level of the new cells
+     * @return Pairs of (code, range start), or {@code null} if not split
+     */
+    private int[] split(Relation<? extends NumberVector> relation, DBIDArrayIter it, int[] perm, long[] keys, int start, int end, int lvl) {
+      for(int i = start; i < end; i++) {
+        keys[i] = (((long) cellCode(relation.get(it.seek(perm[i])), lvl)) << 32) | perm[i];
+      }
+      Arrays.sort(keys, start, end);
+      int groups = 1;
+      for(int i = start; i < end; i++) {
+        perm[i] = (int) keys[i];
+        groups += i > start && (keys[i] >>> 32) != (keys[i - 1] >>> 32) ? 1 : 0;
+      }
+      // Do not split cells containing only duplicates.
+      if(groups == 1 && isDegenerate(relation, it, perm, start, end)) {
+        return null;
+      }
+      int[] grp = new int[groups << 1];
+      for(int i = start, j = 0; i < end; i++) {
+        if(i == start || (keys[i] >>> 32) != (keys[i - 1] >>> 32)) {
+          grp[j++] = (int) (keys[i] >>> 32);
+          grp[j++] = i;
+        }
+      }
+      return grp;
+    }
+
+    /**
+     * Test whether all objects in a range are duplicates.
+     *
+     * @param relation Data relation
+     * @param it Iterator for the object ids
+     * @param perm Object permutation
+     * @param start Range start
+     * @param end Range end
+     * @return {@code true} if all objects are the same
+     */
+    private static boolean isDegenerate(Relation<? extends NumberVector> relation, DBIDArrayIter it, int[] perm, int start, int end) {
+      final double[] first = relation.get(it.seek(perm[start])).toArray();
+      for(int i = start + 1; i < end; i++) {
+        NumberVector other = relation.get(it.seek(perm[i]));
+        for(int d = 0; d < first.length; d++) {
+          if(Math.abs(first[d] - other.doubleValue(d)) > 1E-15) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Precompute the sums of squares and cubes for all relative depths.
+     */
+    private void computeSums() {
+      sqsum = new long[(maxdepth + 1) * size];
+      cbsum = new long[(maxdepth + 1) * size];
+      // Children have larger indexes than their parents.
+      for(int node = size - 1; node >= 0; node--) {
+        final long c = count[node];
+        sqsum[node] = c * c;
+        cbsum[node] = c * c * c;
+        for(int k = 1, o = size; k <= maxdepth; k++, o += size) {
+          if(childStart[node] == childEnd[node]) {
+            sqsum[o + node] = sqsum[node];
+            cbsum[o + node] = cbsum[node];
+            continue;
+          }
+          long sq = 0, cb = 0;
+          for(int child = childStart[node]; child < childEnd[node]; child++) {
+            sq += sqsum[o - size + child];
+            cb += cbsum[o - size + child];
+          }
+          sqsum[o + node] = sq;
+          cbsum[o + node] = cb;
+        }
+      }
+    }
+
+    /**
+     * Get the sum of squared counts of the descendants at a relative depth.
+     *
+     * @param node Node
+     * @param depth Relative depth
+     * @return Sum of squares
+     */
+    long squareSum(int node, int depth) {
+      return sqsum[depth * size + node];
+    }
+
+    /**
+     * Get the sum of cubed counts of the descendants at a relative depth.
+     *
+     * @param node Node
+     * @param depth Relative depth
+     * @return Sum of cubes
+     */
+    long cubicSum(int node, int depth) {
+      return cbsum[depth * size + node];
+    }
+
+    /**
+     * Position code of a vector within its cell of the given level.
+     *
+     * @param vec Vector
+     * @param lvl Level
+     * @return Position code
+     */
+    private int cellCode(NumberVector vec, int lvl) {
+      int c = 0;
+      for(int d = 0; d < origin.length; d++) {
+        // Clamp to the grid, in case of rounding errors.
+        final double p = Math.max(0, Math.min((vec.doubleValue(d) - origin[d]) / side, ALMOST_ONE));
+        if((((long) FastMath.scalb(p, lvl)) & 1L) != 0) {
+          c |= 1 << d;
+        }
+      }
+      return c;
+    }
+
+    /**
+     * Test whether a vector is inside the grid.
+     *
+     * @param vec Vector
+     * @return {@code true} if contained
+     */
+    private boolean contains(NumberVector vec) {
+      for(int d = 0; d < origin.length; d++) {
+        final double p = (vec.doubleValue(d) - origin[d]) / side;
+        if(!(p >= 0 && p < 1)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Find the closest node (of depth {@code tlevel} or above, if there is no
+     * node at this depth) for the given vector.
+     *
+     * @param vec Query vector
+     * @param tlevel Target level
+     * @return Node
+     */
+    int findClosestNode(NumberVector vec, int tlevel) {
+      int cur = 0;
+      if(!contains(vec)) {
+        return cur;
+      }
+      for(int lvl = 1; lvl <= tlevel && childStart[cur] < childEnd[cur]; lvl++) {
+        final int c = cellCode(vec, lvl);
+        // Binary search, children are sorted by code.
+        int a = childStart[cur], b = childEnd[cur] - 1;
+        while(a <= b) {
+          final int mid = (a + b) >>> 1;
+          if(code[mid] < c) {
+            a = mid + 1;
+          }
+          else {
+            b = mid - 1;
+          }
+        }
+        if(a >= childEnd[cur] || code[a] != c) {
+          break; // Do not descend
+        }
+        cur = a;
+      }
+      return cur;
+    }
+  }
+
+  /**
+   * Reusable vector view of a cell center.
+   *
+   * @author Erich Schubert
+   */
+  private static class CellView implements NumberVector {
+    /**
+     * Tree
+     */
+    CompactQuadTree tree;
+
+    /**
+     * Node
+     */
+    int node;
+
+    /**
+     * Offset into the center array.
+     */
+    private int offset;
+
+    /**
+     * Dimensionality
+     */
+    private final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param dim Dimensionality
+     */
+    CellView(int dim) {
+      this.dim = dim;
+    }
+
+    /**
+     * Point the view to a different cell.
+     *
+     * @param tree Tree
+     * @param node Node
+     * @return this
+     */
+    CellView set(CompactQuadTree tree, int node) {
+      this.tree = tree;
+      this.node = node;
+      this.offset = node * dim;
+      return this;
+    }
+
+    /**
+     * Get the level of the cell.
+     *
+     * @return Level
+     */
+    int level() {
+      return tree.level[node];
+    }
+
+    /**
+     * Get the number of objects in the cell.
+     *
+     * @return Count
+     */
+    int count() {
+      return tree.count[node];
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return tree.center[offset + dimension];
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) tree.center[offset + dimension];
+    }
+
+    @Override
+    public double[] toArray() {
+      return Arrays.copyOfRange(tree.center, offset, offset + dim);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   */
+  public static class Par<O extends NumberVector> implements Parameterizer {
+    /**
+     * Neighborhood minimum size
+     */
+    protected int nmin = 0;
+
+    /**
+     * Alpha: number of levels difference to use in comparison
+     */
+    protected int alpha = 4;
+
+    /**
+     * G: number of shifted trees to create.
+     */
+    protected int g = 1;
+
+    /**
+     * Random generator
+     */
+    protected RandomFactory rnd;
+
+    /**
+     * The distance function to use.
+     */
+    protected NumberVectorDistance<? super O> distance;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<NumberVectorDistance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, NumberVectorDistance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new IntParameter(ALOCI.Par.NMIN_ID, 20) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> this.nmin = x);
+      new IntParameter(ALOCI.Par.GRIDS_ID, 1) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> this.g = x);
+      new IntParameter(ALOCI.Par.ALPHA_ID, 4) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> this.alpha = x);
+      new RandomParameter(ALOCI.Par.SEED_ID).grab(config, x -> this.rnd = x);
+    }
+
+    @Override
+    public ParallelALOCI<O> make() {
+      return new ParallelALOCI<>(distance, nmin, alpha, g, rnd);
+    }
+  }
+}
@@ -0,0 +1,349 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import elki.Algorithm;
+import elki.data.type.TypeInformation;
+import elki.data.type.TypeUtil;
+import elki.database.datastore.DataStoreFactory;
+import elki.database.datastore.DataStoreUtil;
+import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
+import elki.database.ids.*;
+import elki.database.query.QueryBuilder;
+import elki.database.query.range.RangeSearcher;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
+import elki.distance.Distance;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.logging.Logging;
+import elki.logging.progress.FiniteProgress;
+import elki.math.DoubleMinMax;
+import elki.math.MeanVariance;
+import elki.outlier.OutlierAlgorithm;
+import elki.outlier.lof.LOCI;
+import elki.parallel.ParallelExecutor;
+import elki.result.Metadata;
+import elki.result.outlier.OutlierResult;
+import elki.result.outlier.OutlierScoreMeta;
+import elki.result.outlier.QuotientOutlierScoreMeta;
+import elki.utilities.documentation.Reference;
+import elki.utilities.documentation.Title;
+import elki.utilities.optionhandling.OptionID;
+import elki.utilities.optionhandling.Parameterizer;
+import elki.utilities.optionhandling.constraints.CommonConstraints;
+import elki.utilities.optionhandling.parameterization.Parameterization;
+import elki.utilities.optionhandling.parameters.DoubleParameter;
+import elki.utilities.optionhandling.parameters.IntParameter;
+import elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Exact LOCI, evaluated only at a fixed number of sampled radii.
+ * <p>
+ * {@link LOCI} evaluates the MDEF at all critical distances of every object,
+ * and stores the critical distances of all objects, which makes the memory
+ * usage quadratic for large radii. This variant evaluates the exact MDEF only
+ * at the radii rmax·i/m for i=1..m, so it only needs to store m neighbor counts
+ * per object. The number of radii is reduced if this table does not fit into
+ * the given memory budget. The range queries of both passes are processed in
+ * parallel, and are not stored.
+ * <p>
+ * Reference:
+ * <p>
+ * S. Papadimitriou, H. Kitagawa, P. B. Gibbons, C. Faloutsos:<br>
+ * LOCI: Fast Outlier Detection Using the Local Correlation Integral.<br>
+ * In: Proc. 19th IEEE Int. Conf. on Data Engineering (ICDE '03)
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ *
+ * @has - - - RangeSearcher
+ *
+ * @param <O> Object type
+ */
+@Title("LOCI: Fast Outlier Detection Using the Local Correlation Integral (sampled radii)")
+@Reference(authors = "S. Papadimitriou, H. Kitagawa, P. B. Gibbons, C. Faloutsos", //
+    title = "LOCI: Fast Outlier Detection Using the Local Correlation Integral", //
+    booktitle = "Proc. 19th IEEE Int. Conf. on Data Engineering (ICDE '03)", //
+    url = "https://doi.org/10.1109/ICDE.2003.1260802", //
+    bibkey = "DBLP:conf/icde/PapadimitriouKGF03")
+public class SampledLOCI<O> implements OutlierAlgorithm {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(SampledLOCI.class);
+
+  /**
+   * Minimum number of range queries per thread.
+   */
+  private static final int MIN_BLOCK = 16;
+
+  /**
+   * Distance function used.
+   */
+  private Distance<? super O> distance;
+
+  /**
+   * Maximum radius.
+   */
+  private double rmax;
+
+  /**
+   * Minimum neighborhood size.
+   */
+  private int nmin;
+
+  /**
+   * Scaling of averaging neighborhood.
+   */
+  private double alpha;
+
+  /**
+   * Number of radii to evaluate.
+   */
+  private int radii;
+
+  /**
+   * Memory budget for the neighbor counts, in bytes.
+   */
+  private long memory;
+
+  /**
+   * Constructor.
+   *
+   * @param distance Distance function
+   * @param rmax Maximum radius
+   * @param nmin Minimum neighborhood size
+   * @param alpha Alpha value
+   * @param radii Number of radii to evaluate
+   * @param memory Memory budget for the neighbor counts, in bytes
+   */
+  public SampledLOCI(Distance<? super O> distance, double rmax, int nmin, double alpha, int radii, long memory) {
+    super();
+    this.distance = distance;
+    this.rmax = rmax;
+    this.nmin = nmin;
+    this.alpha = alpha;
+    this.radii = radii;
+    this.memory = memory;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(distance.getInputTypeRestriction());
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param relation Relation to process
+   * @return Outlier result
+   */
+  public OutlierResult run(Relation<O> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final int m = getNumberOfRadii(size);
+    final double[] rs = new double[m];
+    for(int i = 0; i < m; i++) {
+      rs[i] = rmax * (i + 1) / m;
+    }
+    WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+    QueryBuilder<O> qb = new QueryBuilder<>(relation, distance);
+    // Pass 1: count the neighbors within alpha * r for all radii.
+    final int[] counts = new int[size * m];
+    final double maxalphar = alpha * rmax;
+    FiniteProgress progressPreproc = LOG.isVerbose() ? new FiniteProgress("LOCI preprocessing", size, LOG) : null;
+    ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+      RangeSearcher<DBIDRef> rq = qb.rangeByDBID(maxalphar);
+      ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList();
+      for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        rq.getRange(it, maxalphar, neighbors.clear()).sort();
+        DoubleDBIDListIter ni = neighbors.iter();
+        for(int i = 0, c = 0, o = it.getOffset() * m; i < m; i++) {
+          final double alphar = alpha * rs[i];
+          for(; ni.valid() && ni.doubleValue() <= alphar; ni.advance()) {
+            c++;
+          }
+          counts[o + i] = c;
+        }
+        LOG.incrementProcessed(progressPreproc);
+      }
+    });
+    LOG.ensureCompleted(progressPreproc);
+    // Pass 2: compute the MDEF at each radius.
+    final double[] scores = new double[size], radius = new double[size];
+    FiniteProgress progressLOCI = LOG.isVerbose() ? new FiniteProgress("LOCI scores", size, LOG) : null;
+    ParallelExecutor.run(0, size, MIN_BLOCK, (start, end) -> {
+      RangeSearcher<DBIDRef> rq = qb.rangeByDBID(rmax);
+      ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList();
+      MeanVariance mv_n_r_alpha = new MeanVariance();
+      int[] noff = new int[16];
+      for(DBIDArrayIter it = ids.iter().seek(start); it.getOffset() < end; it.advance()) {
+        rq.getRange(it, rmax, neighbors.clear()).sort();
+        final int nn = neighbors.size(), self = it.getOffset();
+        if(nn < nmin) {
+          // Same as in LOCI, when nmin was not fulfilled.
+          scores[self] = Double.POSITIVE_INFINITY;
+          radius[self] = nn > 0 ? neighbors.doubleValue(nn - 1) : 0.;
+          LOG.incrementProcessed(progressLOCI);
+          continue;
+        }
+        noff = noff.length >= nn ? noff : new int[nn];
+        DoubleDBIDListIter ni = neighbors.iter();
+        for(int j = 0; j < nn; j++, ni.advance()) {
+          noff[j] = offsets.intValue(ni);
+        }
+        double maxmdefnorm = 0., maxnormr = 0.;
+        ni.seek(0);
+        for(int i = 0, nr = 0; i < m; i++) {
+          final double r = rs[i];
+          for(; ni.valid() && ni.doubleValue() <= r; ni.advance()) {
+            nr++;
+          }
+          // Only start when minimum size is fulfilled
+          if(nr < nmin) {
+            continue;
+          }
+          mv_n_r_alpha.reset();
+          for(int j = 0; j < nr; j++) {
+            mv_n_r_alpha.put(counts[noff[j] * m + i]);
+          }
+          final double mdef = mv_n_r_alpha.getMean() - counts[self * m + i];
+          final double mdefnorm = mdef / mv_n_r_alpha.getPopulationStddev();
+          if(mdefnorm > maxmdefnorm) {
+            maxmdefnorm = mdefnorm;
+            maxnormr = r;
+          }
+        }
+        scores[self] = maxmdefnorm;
+        radius[self] = maxnormr;
+        LOG.incrementProcessed(progressLOCI);
+      }
+    });
+    LOG.ensureCompleted(progressLOCI);
+    WritableDoubleDataStore mdef_norm = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    WritableDoubleDataStore mdef_radius = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
+    DoubleMinMax minmax = new DoubleMinMax();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      mdef_norm.putDouble(it, scores[it.getOffset()]);
+      mdef_radius.putDouble(it, radius[it.getOffset()]);
+      minmax.put(scores[it.getOffset()]);
+    }
+    DoubleRelation scoreResult = new MaterializedDoubleRelation("LOCI normalized MDEF", ids, mdef_norm);
+    OutlierScoreMeta scoreMeta = new QuotientOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0.0, Double.POSITIVE_INFINITY, 0.0);
+    OutlierResult result = new OutlierResult(scoreMeta, scoreResult);
+    Metadata.hierarchyOf(result).addChild(new MaterializedDoubleRelation("LOCI MDEF Radius", ids, mdef_radius));
+    return result;
+  }
+
+  /**
+   * Number of radii to use, within the memory budget.
+   *
+   * @param size Data set size
+   * @return Number of radii
+   */
+  protected int getNumberOfRadii(int size) {
+    final long maxradii = Math.min(memory / (Integer.BYTES * (long) Math.max(size, 1)), Integer.MAX_VALUE / Math.max(size, 1));
+    if(maxradii < radii) {
+      LOG.warning("Memory budget only allows for " + Math.max(maxradii, 1) + " radii.");
+      return (int) Math.max(maxradii, 1);
+    }
+    return radii;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  public static class Par<O> implements Parameterizer {
+    /**
+     * Number of radii to evaluate.
+     */
+    public static final OptionID RADII_ID = new OptionID("loci.radii", "Number of radii up to rmax to evaluate.");
+
+    /**
+     * Memory budget for the neighbor counts, in megabytes.
+     */
+    public static final OptionID MEMORY_ID = new OptionID("loci.memory", "Memory budget for the neighbor counts, in megabytes.");
+
+    /**
+     * The distance function to use.
+     */
+    protected Distance<? super O> distance;
+
+    /**
+     * Maximum radius.
+     */
+    protected double rmax;
+
+    /**
+     * Minimum neighborhood size.
+     */
+    protected int nmin = 0;
+
+    /**
+     * Scaling of averaging neighborhood.
+     */
+    protected double alpha = 0.5;
+
+    /**
+     * Number of radii to evaluate.
+     */
+    protected int radii;
+
+    /**
+     * Memory budget, in bytes.
+     */
+    protected long memory;
+
+    @Override
+    public void configure(Parameterization config) {
+      new ObjectParameter<Distance<? super O>>(Algorithm.Utils.DISTANCE_FUNCTION_ID, Distance.class, EuclideanDistance.class) //
+          .grab(config, x -> distance = x);
+      new DoubleParameter(LOCI.Par.RMAX_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .grab(config, x -> rmax = x);
+      new IntParameter(LOCI.Par.NMIN_ID, 20) //
+          .grab(config, x -> nmin = x);
+      new DoubleParameter(LOCI.Par.ALPHA_ID, 0.5) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+          .grab(config, x -> alpha = x);
+      new IntParameter(RADII_ID, 20) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> radii = x);
+      new IntParameter(MEMORY_ID, 256) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .grab(config, x -> memory = ((long) x) << 20);
+    }
+
+    @Override
+    public SampledLOCI<O> make() {
+      return new SampledLOCI<>(distance, rmax, nmin, alpha, radii, memory);
+    }
+  }
+}
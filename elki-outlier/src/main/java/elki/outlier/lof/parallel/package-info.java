@@ -10,6 +10,8 @@
  * Local Outlier Detection Reconsidered: a Generalized View on Locality with
  * Applications to Spatial, Video, and Network Outlier Detection<br>
  * Data Mining and Knowledge Discovery 28(1)
+ * <p>
+ * This package also contains parallel, memory-bounded variants of LOCI.
  *
  * @opt include .*elki.outlier.OutlierAlgorithm
  */
@@ -0,0 +1,94 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.meta;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import elki.parallel.ParallelCore;
+import elki.parallel.ParallelExecutor;
+
+/**
+ * Execute the members of an ensemble concurrently.
+ * <p>
+ * Members are taken from a shared queue by a limited number of workers, so
+ * members of different cost are balanced. The number of workers is limited by
+ * the available parallelism and by an estimate of the memory needed per
+ * member, so large data sets fall back to fewer concurrent members instead of
+ * running out of memory. Nested use (e.g., within another parallel block) runs
+ * sequentially. Members run on the worker threads of the {@link ParallelCore},
+ * so members that are parallel algorithms themselves process their parallel
+ * sections in the calling worker thread, instead of waiting for the pool.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public final class EnsembleExecutor {
+  /**
+   * Fraction of the available memory to use for concurrent members.
+   */
+  private static final double MEMORY_FRACTION = 0.5;
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private EnsembleExecutor() {
+    // Do not use.
+  }
+
+  /**
+   * Estimate the number of members that can run concurrently.
+   *
+   * @param memoryPerMember Estimated memory of one member, in bytes
+   * @return Number of concurrent members, at least 1
+   */
+  public static int concurrency(long memoryPerMember) {
+    final Runtime rt = Runtime.getRuntime();
+    final long available = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+    final long bymem = (long) (available * MEMORY_FRACTION) / Math.max(1L, memoryPerMember);
+    return (int) Math.max(1L, Math.min(ParallelCore.getCore().getParallelism(), bymem));
+  }
+
+  /**
+   * Run all members of an ensemble.
+   *
+   * @param num Number of members
+   * @param concurrency Maximum number of concurrent members
+   * @param member Member task, receiving the member number
+   */
+  public static void run(int num, int concurrency, IntConsumer member) {
+    final int workers = Math.min(num, concurrency);
+    if(workers <= 1) {
+      for(int i = 0; i < num; i++) {
+        member.accept(i);
+      }
+      return;
+    }
+    final AtomicInteger next = new AtomicInteger();
+    ParallelExecutor.run(0, workers, 1, (start, end) -> {
+      for(int w = start; w < end; w++) {
+        for(int i = next.getAndIncrement(); i < num; i = next.getAndIncrement()) {
+          member.accept(i);
+        }
+      }
+    });
+  }
+}
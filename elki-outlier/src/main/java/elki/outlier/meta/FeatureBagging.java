@@ -20,7 +20,6 @@
  */
 package elki.outlier.meta;
 
-import java.util.ArrayList;
 import java.util.Random;
 
 import elki.data.NumberVector;
@@ -29,7 +28,9 @@ import elki.data.type.TypeUtil;
 import elki.database.datastore.DataStoreFactory;
 import elki.database.datastore.DataStoreUtil;
 import elki.database.datastore.WritableDoubleDataStore;
+import elki.database.datastore.WritableIntegerDataStore;
 import elki.database.ids.DBIDIter;
+import elki.database.ids.DBIDs;
 import elki.database.relation.DoubleRelation;
 import elki.database.relation.MaterializedDoubleRelation;
 import elki.database.relation.Relation;
@@ -53,7 +54,6 @@ import elki.utilities.optionhandling.parameterization.Parameterization;
 import elki.utilities.optionhandling.parameters.Flag;
 import elki.utilities.optionhandling.parameters.IntParameter;
 import elki.utilities.optionhandling.parameters.RandomParameter;
-import elki.utilities.pairs.Pair;
 import elki.utilities.random.RandomFactory;
 
 /**
@@ -63,6 +63,9 @@ import elki.utilities.random.RandomFactory;
  * the same algorithm (due to incompatible score ranges), we do not allow using
  * arbitrary algorithms.
  * <p>
+ * The LOF instances are run concurrently (see {@link EnsembleExecutor}), and
+ * their scores are merged as they finish, so only the combined scores are kept.
+ * <p>
  * Reference:<br>
  * A. Lazarevic, V. Kumar<br>
  * Feature Bagging for Outlier Detection<br>
@@ -136,79 +139,67 @@ public class FeatureBagging implements OutlierAlgorithm {
     final int mindim = dbdim >> 1;
     final int maxdim = dbdim - 1;
     final Random rand = rnd.getSingleThreadedRandom();
-
-    ArrayList<OutlierResult> results = new ArrayList<>(num);
-    {
-      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("LOF iterations", num, LOG) : null;
-      for(int i = 0; i < num; i++) {
-        long[] dimset = randomSubspace(dbdim, mindim, maxdim, rand);
-        SubspaceEuclideanDistance df = new SubspaceEuclideanDistance(dimset);
-        // run LOF and collect the result
-        results.add(new LOF<>(k, df).run(relation));
-        LOG.incrementProcessed(prog);
-      }
-      LOG.ensureCompleted(prog);
+    // Choose all subspaces first, for reproducibility.
+    final long[][] dimsets = new long[num][];
+    for(int i = 0; i < num; i++) {
+      dimsets[i] = randomSubspace(dbdim, mindim, maxdim, rand);
     }
-
-    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
-    DoubleMinMax minmax = new DoubleMinMax();
-    if(breadth) {
-      FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Combining results", relation.size(), LOG) : null;
-      @SuppressWarnings("unchecked")
-      Pair<DBIDIter, DoubleRelation>[] IDVectorOntoScoreVector = (Pair<DBIDIter, DoubleRelation>[]) new Pair[results.size()];
-
-      // Mapping score-sorted DBID-Iterators onto their corresponding scores.
-      // We need to initialize them now be able to iterate them "in parallel".
-      {
-        int i = 0;
-        for(OutlierResult r : results) {
-          IDVectorOntoScoreVector[i] = new Pair<DBIDIter, DoubleRelation>(r.getOrdering().order(relation.getDBIDs()).iter(), r.getScores());
-          i++;
-        }
-      }
-
-      // Iterating over the *lines* of the AS_t(i)-matrix.
-      for(int i = 0; i < relation.size(); i++) {
-        // Iterating over the elements of a line (breadth-first).
-        for(Pair<DBIDIter, DoubleRelation> pair : IDVectorOntoScoreVector) {
-          DBIDIter iter = pair.first;
-          // Always true if every algorithm returns a complete result (one score
-          // for every DBID).
-          if(iter.valid()) {
-            double score = pair.second.doubleValue(iter);
-            if(Double.isNaN(scores.doubleValue(iter))) {
-              scores.putDouble(iter, score);
-              minmax.put(score);
+    final DBIDs ids = relation.getDBIDs();
+    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC, breadth ? Double.NaN : 0.);
+    // For breadth-first combination, the object is assigned the score of the
+    // first (by rank, then by member) result it appears in.
+    WritableIntegerDataStore bestrank = breadth ? DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP, Integer.MAX_VALUE) : null;
+    WritableIntegerDataStore bestmember = breadth ? DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP, Integer.MAX_VALUE) : null;
+    // Memory estimate for LOF: kNN lists and three score stores.
+    final int concurrency = EnsembleExecutor.concurrency(ids.size() * (16L * (k + 1) + 64L));
+    final DoubleRelation[] results = breadth ? null : new DoubleRelation[num];
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("LOF iterations", num, LOG) : null;
+    EnsembleExecutor.run(num, concurrency, i -> {
+      OutlierResult r = new LOF<>(k, new SubspaceEuclideanDistance(dimsets[i])).run(relation);
+      final DoubleRelation rscores = r.getScores();
+      if(breadth) {
+        DBIDs order = r.getOrdering().order(ids);
+        synchronized(scores) {
+          int rank = 0;
+          for(DBIDIter iter = order.iter(); iter.valid(); iter.advance(), rank++) {
+            final int br = bestrank.intValue(iter);
+            if(rank < br || (rank == br && i < bestmember.intValue(iter))) {
+              bestrank.putInt(iter, rank);
+              bestmember.putInt(iter, i);
+              scores.putDouble(iter, rscores.doubleValue(iter));
             }
-            iter.advance();
-          }
-          else {
-            LOG.warning("Incomplete result: Iterator does not contain |DB| DBIDs");
           }
         }
-        // Progress does not take the initial mapping into account.
-        LOG.incrementProcessed(cprog);
       }
-      LOG.ensureCompleted(cprog);
-    }
-    else {
-      FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Combining results", relation.size(), LOG) : null;
-      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
-        double sum = 0.0;
-        for(OutlierResult r : results) {
-          final double s = r.getScores().doubleValue(iter);
+      else {
+        results[i] = rscores;
+      }
+      LOG.incrementProcessed(prog);
+    });
+    LOG.ensureCompleted(prog);
+    if(!breadth) {
+      // Sum in member order, so the result does not depend on scheduling.
+      for(DoubleRelation rscores : results) {
+        for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+          final double s = rscores.doubleValue(iter);
           if(!Double.isNaN(s)) {
-            sum += s;
+            scores.increment(iter, s);
           }
         }
-        scores.putDouble(iter, sum);
-        minmax.put(sum);
-        LOG.incrementProcessed(cprog);
       }
-      LOG.ensureCompleted(cprog);
+    }
+    DoubleMinMax minmax = new DoubleMinMax();
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      final double s = scores.doubleValue(iter);
+      if(!Double.isNaN(s)) {
+        minmax.put(s);
+      }
+      else if(breadth) {
+        LOG.warning("Incomplete result: object " + iter + " was not scored.");
+      }
     }
     OutlierScoreMeta meta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax());
-    DoubleRelation scoreres = new MaterializedDoubleRelation("Feature bagging", relation.getDBIDs(), scores);
+    DoubleRelation scoreres = new MaterializedDoubleRelation("Feature bagging", ids, scores);
     return new OutlierResult(meta, scoreres);
   }
 
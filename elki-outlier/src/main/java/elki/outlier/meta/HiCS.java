@@ -98,6 +98,11 @@ public class HiCS implements OutlierAlgorithm {
    */
   private static final int MAX_RETRIES = 100;
 
+  /**
+   * Memory estimate per object for running the outlier detector in a subspace.
+   */
+  private static final long MEMORY_PER_OBJECT = 1024L;
+
   /**
    * Monte-Carlo iterations.
    */
@@ -169,13 +174,16 @@ public class HiCS implements OutlierAlgorithm {
     if(LOG.isVerbose()) {
       LOG.verbose("Number of high-contrast subspaces: " + subspaces.size());
     }
-    List<DoubleRelation> results = new ArrayList<>();
+    final HiCSSubspace[] dimsets = subspaces.toArray(new HiCSSubspace[subspaces.size()]);
+    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC, 0.);
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Calculating Outlier scores for high Contrast subspaces", subspaces.size(), LOG) : null;
 
-    // run outlier detection and collect the result
+    final DoubleRelation[] results = new DoubleRelation[dimsets.length];
+    // run outlier detection concurrently, and sum up the scores
     // TODO extend so that any outlierAlgorithm can be used (use materialized
     // relation instead of SubspaceEuclideanDistance?)
-    for(HiCSSubspace dimset : subspaces) {
+    EnsembleExecutor.run(dimsets.length, EnsembleExecutor.concurrency(ids.size() * MEMORY_PER_OBJECT), i -> {
+      HiCSSubspace dimset = dimsets[i];
       if(LOG.isVerbose()) {
         LOG.verbose("Performing outlier detection in subspace " + dimset);
       }
@@ -183,26 +191,23 @@ public class HiCS implements OutlierAlgorithm {
       ProxyDatabase pdb = new ProxyDatabase(ids);
       pdb.addRelation(new ProjectedView<>(relation, new NumericalFeatureSelection<>(dimset.bits)));
 
-      // run LOF and collect the result
-      OutlierResult result = outlierAlgorithm.autorun(pdb);
-      results.add(result.getScores());
+      results[i] = outlierAlgorithm.autorun(pdb).getScores();
       LOG.incrementProcessed(prog);
-    }
+    });
     LOG.ensureCompleted(prog);
-
-    WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
-    DoubleMinMax minmax = new DoubleMinMax();
-
-    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      double sum = 0.0;
-      for(DoubleRelation r : results) {
-        final double s = r.doubleValue(iditer);
+    // Sum in subspace order, so the result does not depend on scheduling.
+    for(DoubleRelation result : results) {
+      for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+        final double s = result.doubleValue(iditer);
         if(!Double.isNaN(s)) {
-          sum += s;
+          scores.increment(iditer, s);
         }
       }
-      scores.putDouble(iditer, sum);
-      minmax.put(sum);
+    }
+
+    DoubleMinMax minmax = new DoubleMinMax();
+    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+      minmax.put(scores.doubleValue(iditer));
     }
     OutlierScoreMeta meta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax());
     DoubleRelation scoreres = new MaterializedDoubleRelation("HiCS", relation.getDBIDs(), scores);
@@ -20,7 +20,6 @@
  */
 package elki.outlier.meta;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -37,6 +36,7 @@ import elki.database.ids.DBIDUtil;
 import elki.database.ids.ModifiableDBIDs;
 import elki.database.relation.DoubleRelation;
 import elki.database.relation.MaterializedDoubleRelation;
+import elki.database.relation.Relation;
 import elki.logging.Logging;
 import elki.logging.progress.FiniteProgress;
 import elki.math.DoubleMinMax;
@@ -53,6 +53,9 @@ import elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
  * Simple outlier ensemble method.
+ * <p>
+ * The member algorithms are run concurrently (see {@link EnsembleExecutor}),
+ * and only their score relations are kept for voting.
  * 
  * @author Erich Schubert
  * @since 0.5.5
@@ -67,6 +70,11 @@ public class SimpleOutlierEnsemble implements OutlierAlgorithm {
    */
   private static final Logging LOG = Logging.getLogger(SimpleOutlierEnsemble.class);
 
+  /**
+   * Memory estimate per object for running one member.
+   */
+  private static final long MEMORY_PER_OBJECT = 1024L;
+
   /**
    * The algorithms to run.
    */
@@ -100,20 +108,25 @@ public class SimpleOutlierEnsemble implements OutlierAlgorithm {
 
   @Override
   public OutlierResult autorun(Database database) throws IllegalStateException {
-    int num = algorithms.size();
-    // Run inner outlier algorithms
-    ModifiableDBIDs ids = DBIDUtil.newHashSet();
-    ArrayList<OutlierResult> results = new ArrayList<>(num);
+    final int num = algorithms.size();
+    // Run inner outlier algorithms concurrently, keeping only the scores.
+    final DoubleRelation[] results = new DoubleRelation[num];
     {
+      int size = 0;
+      for(Relation<?> rel : database.getRelations()) {
+        size = Math.max(size, rel.size());
+      }
       FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Inner outlier algorithms", num, LOG) : null;
-      for(OutlierAlgorithm alg : algorithms) {
-        OutlierResult or = alg.autorun(database);
-        results.add(or);
-        ids.addDBIDs(or.getScores().getDBIDs());
+      EnsembleExecutor.run(num, EnsembleExecutor.concurrency(size * MEMORY_PER_OBJECT), i -> {
+        results[i] = algorithms.get(i).autorun(database).getScores();
         LOG.incrementProcessed(prog);
-      }
+      });
       LOG.ensureCompleted(prog);
     }
+    ModifiableDBIDs ids = DBIDUtil.newHashSet();
+    for(DoubleRelation r : results) {
+      ids.addDBIDs(r.getDBIDs());
+    }
     // Combine
     WritableDoubleDataStore sumscore = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_STATIC);
     DoubleMinMax minmax = new DoubleMinMax();
@@ -122,8 +135,8 @@ public class SimpleOutlierEnsemble implements OutlierAlgorithm {
       for(DBIDIter id = ids.iter(); id.valid(); id.advance()) {
         double[] scores = new double[num];
         int i = 0;
-        for(OutlierResult r : results) {
-          double score = r.getScores().doubleValue(id);
+        for(DoubleRelation r : results) {
+          double score = r.doubleValue(id);
           if(!Double.isNaN(score)) {
             scores[i] = score;
             i++;
@@ -0,0 +1,60 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.anglebased.parallel;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.database.Database;
+import elki.outlier.AbstractOutlierAlgorithmTest;
+import elki.outlier.anglebased.FastABOD;
+import elki.result.outlier.OutlierResult;
+import elki.similarity.kernel.LinearKernel;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Tests the parallel FastABOD algorithm, which must yield the same results as
+ * the sequential version.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelFastABODTest extends AbstractOutlierAlgorithmTest {
+  @Test
+  public void testParallelFastABODLinear() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    OutlierResult result = new ELKIBuilder<ParallelFastABOD<DoubleVector>>(ParallelFastABOD.class) //
+        .with(FastABOD.Par.K_ID, 5)//
+        .with(FastABOD.Par.KERNEL_FUNCTION_ID, LinearKernel.STATIC) //
+        .build().autorun(db);
+    assertAUC(db, "Noise", result, 0.993814148);
+    assertSingleScore(result, 945, 0.498653289);
+  }
+
+  @Test
+  public void testParallelFastABODPoly() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    OutlierResult result = new ELKIBuilder<ParallelFastABOD<DoubleVector>>(ParallelFastABOD.class) //
+        .with(FastABOD.Par.K_ID, 5).build().autorun(db);
+    assertAUC(db, "Noise", result, 0.94626962962);
+    assertSingleScore(result, 945, 3.28913914467E-4);
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.density;
+
+import org.junit.Test;
+
+import elki.database.Database;
+import elki.outlier.AbstractOutlierAlgorithmTest;
+import elki.result.outlier.OutlierResult;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Tests the ExtendedIsolationForest algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ExtendedIsolationForestTest extends AbstractOutlierAlgorithmTest {
+  @Test
+  public void testExtendedIsolationForest() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-fire.ascii", 1025);
+    OutlierResult result = new ELKIBuilder<>(ExtendedIsolationForest.class) //
+        .with(IsolationForest.Par.SEED_ID, 0).build().autorun(db);
+    assertSingleScore(result, 1025, 0.4272454897946356);
+    assertAUC(db, "Noise", result, 0.9947076923076923);
+  }
+}
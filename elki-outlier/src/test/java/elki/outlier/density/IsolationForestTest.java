@@ -0,0 +1,66 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.density;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.ids.DBIDIter;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.Relation;
+import elki.outlier.AbstractOutlierAlgorithmTest;
+import elki.result.outlier.OutlierResult;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Tests the IsolationForest algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class IsolationForestTest extends AbstractOutlierAlgorithmTest {
+  @Test
+  public void testIsolationForest() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-fire.ascii", 1025);
+    OutlierResult result = new ELKIBuilder<>(IsolationForest.class) //
+        .with(IsolationForest.Par.SEED_ID, 0).build().autorun(db);
+    assertSingleScore(result, 1025, 0.4398113740169629);
+    assertAUC(db, "Noise", result, 0.9946666666666667);
+  }
+
+  @Test
+  public void testStreamingScores() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-fire.ascii", 1025);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    IsolationForest iforest = new ELKIBuilder<>(IsolationForest.class) //
+        .with(IsolationForest.Par.SEED_ID, 0).build();
+    DoubleRelation scores = iforest.run(rel).getScores();
+    IsolationForest.Forest forest = new ELKIBuilder<>(IsolationForest.class) //
+        .with(IsolationForest.Par.SEED_ID, 0).build().train(rel);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      assertEquals("Streaming score differs", scores.doubleValue(it), forest.score(rel.get(it)), 0.);
+    }
+  }
+}
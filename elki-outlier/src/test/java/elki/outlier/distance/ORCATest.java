@@ -0,0 +1,97 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.distance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.database.Database;
+import elki.database.ids.DBIDIter;
+import elki.database.relation.DoubleRelation;
+import elki.outlier.AbstractOutlierAlgorithmTest;
+import elki.result.outlier.OutlierResult;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Tests the ORCA top-n outlier detection algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ORCATest extends AbstractOutlierAlgorithmTest {
+  // Only the top n scores are deterministic, the others depend on the timing.
+  @Test
+  public void testORCA() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    OutlierResult result = new ELKIBuilder<ORCA<DoubleVector>>(ORCA.class) //
+        .with(ORCA.Par.K_ID, 1) //
+        .with(ORCA.Par.N_ID, 100) //
+        .with(ORCA.Par.SEED_ID, 0) //
+        .build().autorun(db);
+    assertSingleScore(result, 945, 0.4793554700168577);
+  }
+
+  @Test
+  public void testORCAWeight() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    OutlierResult result = new ELKIBuilder<ORCA<DoubleVector>>(ORCA.class) //
+        .with(ORCA.Par.K_ID, 4) //
+        .with(ORCA.Par.N_ID, 150) //
+        .with(ORCA.Par.WEIGHT_ID) //
+        .with(ORCA.Par.SEED_ID, 0) //
+        .build().autorun(db);
+    assertSingleScore(result, 945, 2.384117261027324);
+  }
+
+  @Test
+  public void testTopN() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    DoubleRelation exact = new ELKIBuilder<KNNOutlier<DoubleVector>>(KNNOutlier.class) //
+        .with(KNNOutlier.Par.K_ID, 5).build().autorun(db).getScores();
+    DoubleRelation orca = new ELKIBuilder<ORCA<DoubleVector>>(ORCA.class) //
+        .with(ORCA.Par.K_ID, 5) //
+        .with(ORCA.Par.N_ID, 20) //
+        .with(ORCA.Par.SEED_ID, 0) //
+        .build().autorun(db).getScores();
+    // Find the score of the 20th outlier:
+    double[] all = new double[exact.size()];
+    int i = 0;
+    for(DBIDIter it = exact.iterDBIDs(); it.valid(); it.advance()) {
+      all[i++] = exact.doubleValue(it);
+    }
+    Arrays.sort(all);
+    final double cutoff = all[all.length - 20];
+    for(DBIDIter it = exact.iterDBIDs(); it.valid(); it.advance()) {
+      final double e = exact.doubleValue(it), o = orca.doubleValue(it);
+      if(e >= cutoff) {
+        assertEquals("Top outliers must be exact.", e, o, 1e-15);
+      }
+      else {
+        assertTrue("Pruned scores must be upper bounds below the cutoff.", o >= e - 1e-15 && o < cutoff);
+      }
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.intrinsic.parallel;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.database.Database;
+import elki.math.statistics.intrinsicdimensionality.*;
+import elki.outlier.AbstractOutlierAlgorithmTest;
+import elki.outlier.intrinsic.LID;
+import elki.result.outlier.OutlierResult;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Tests the parallel LID outlier detection algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelLIDTest extends AbstractOutlierAlgorithmTest {
+  @Test
+  public void testToyExample() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    OutlierResult result = new ELKIBuilder<ParallelLID<DoubleVector>>(ParallelLID.class) //
+        .with(LID.Par.K_ID, 100).build().autorun(db);
+    assertAUC(db, "Noise", result, 0.9167222);
+    assertSingleScore(result, 945, 2.5368047);
+  }
+
+  @Test
+  public void testMultipleEstimators() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    OutlierResult result = new ELKIBuilder<ParallelLID<DoubleVector>>(ParallelLID.class) //
+        .with(LID.Par.K_ID, 100) //
+        .with(ParallelLID.Par.ESTIMATORS_ID, Arrays.asList(HillEstimator.class, MOMEstimator.class)) //
+        .build().autorun(db);
+    assertAUC(db, "Noise", result, 0.924037037037037);
+    assertSingleScore(result, 945, 2.6718513);
+  }
+}
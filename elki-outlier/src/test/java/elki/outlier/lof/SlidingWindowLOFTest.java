@@ -0,0 +1,113 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import elki.data.NumberVector;
+import elki.data.type.TypeUtil;
+import elki.database.Database;
+import elki.database.StaticArrayDatabase;
+import elki.database.ids.DBIDIter;
+import elki.database.relation.DoubleRelation;
+import elki.database.relation.Relation;
+import elki.datasource.ArrayAdapterDatabaseConnection;
+import elki.distance.minkowski.EuclideanDistance;
+import elki.outlier.AbstractOutlierAlgorithmTest;
+import elki.utilities.ELKIBuilder;
+import elki.utilities.exceptions.AbortException;
+
+/**
+ * Tests the sliding window LOF against the static LOF on the window contents.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class SlidingWindowLOFTest extends AbstractOutlierAlgorithmTest {
+  @Test
+  public void testSlidingWindow() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    List<NumberVector> all = new ArrayList<>(rel.size());
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      all.add(rel.get(it));
+    }
+    final int k = 10;
+    SlidingWindowLOF<NumberVector> swlof = new SlidingWindowLOF<>(EuclideanDistance.STATIC, k, 300);
+    for(int start = 0; start < all.size(); start += 100) {
+      final int end = Math.min(start + 100, all.size());
+      swlof.insert(all.subList(start, end));
+      assertSameAsLOF(swlof, all.subList(Math.max(0, end - 300), end), k);
+    }
+    swlof.expire(120);
+    assertSameAsLOF(swlof, all.subList(all.size() - 180, all.size()), k);
+  }
+
+  @Test
+  public void testParameters() {
+    SlidingWindowLOF<NumberVector> swlof = new ELKIBuilder<SlidingWindowLOF<NumberVector>>(SlidingWindowLOF.class) //
+        .with(LOF.Par.K_ID, 10) //
+        .with(SlidingWindowLOF.Par.WINDOW_ID, 11).build();
+    assertEquals("Window size", 0, swlof.size());
+  }
+
+  @Test(expected = AbortException.class)
+  public void testWindowTooSmall() {
+    new ELKIBuilder<SlidingWindowLOF<NumberVector>>(SlidingWindowLOF.class) //
+        .with(LOF.Par.K_ID, 10) //
+        .with(SlidingWindowLOF.Par.WINDOW_ID, 10).build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeExpire() {
+    new SlidingWindowLOF<NumberVector>(EuclideanDistance.STATIC, 10, 300).expire(-1);
+  }
+
+  /**
+   * Compare the sliding window scores to running LOF on the window.
+   *
+   * @param swlof Sliding window LOF
+   * @param window Expected window contents
+   * @param k Number of neighbors
+   */
+  private static void assertSameAsLOF(SlidingWindowLOF<NumberVector> swlof, List<NumberVector> window, int k) {
+    assertEquals("Window size", window.size(), swlof.size());
+    double[][] data = new double[window.size()][];
+    for(int i = 0; i < data.length; i++) {
+      data[i] = window.get(i).toArray();
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data));
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DoubleRelation expected = new LOF<NumberVector>(k, EuclideanDistance.STATIC).run(rel).getScores();
+    DoubleRelation actual = swlof.getResult().getScores();
+    DBIDIter it = rel.iterDBIDs();
+    for(DBIDIter it2 = swlof.getDBIDs().iter(); it2.valid(); it2.advance(), it.advance()) {
+      assertEquals("LOF score differs", expected.doubleValue(it), actual.doubleValue(it2), 1e-10);
+      assertEquals("LOF score differs", expected.doubleValue(it), swlof.score(it2), 1e-10);
+    }
+  }
+}
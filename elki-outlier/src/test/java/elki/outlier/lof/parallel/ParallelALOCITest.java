@@ -0,0 +1,60 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.database.Database;
+import elki.outlier.AbstractOutlierAlgorithmTest;
+import elki.outlier.lof.ALOCI;
+import elki.result.outlier.OutlierResult;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Tests the parallel ALOCI algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class ParallelALOCITest extends AbstractOutlierAlgorithmTest {
+  @Test
+  public void testParallelALOCI() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    OutlierResult result = new ELKIBuilder<ParallelALOCI<DoubleVector>>(ParallelALOCI.class) //
+        .with(ALOCI.Par.SEED_ID, 2) //
+        .with(ALOCI.Par.GRIDS_ID, 3) //
+        .build().autorun(db);
+    assertAUC(db, "Noise", result, 0.9185555555555556);
+    assertSingleScore(result, 146, 1.6284532);
+  }
+
+  @Test
+  public void testSingleGrid() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    OutlierResult result = new ELKIBuilder<ParallelALOCI<DoubleVector>>(ParallelALOCI.class) //
+        .with(ALOCI.Par.NMIN_ID, 10) //
+        .with(ALOCI.Par.ALPHA_ID, 3) //
+        .build().autorun(db);
+    assertAUC(db, "Noise", result, 0.9026666666666666);
+    assertSingleScore(result, 146, 2.0399468);
+  }
+}
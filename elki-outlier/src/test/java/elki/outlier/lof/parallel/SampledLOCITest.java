@@ -0,0 +1,47 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2019
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package elki.outlier.lof.parallel;
+
+import org.junit.Test;
+
+import elki.data.DoubleVector;
+import elki.database.Database;
+import elki.outlier.AbstractOutlierAlgorithmTest;
+import elki.outlier.lof.LOCI;
+import elki.result.outlier.OutlierResult;
+import elki.utilities.ELKIBuilder;
+
+/**
+ * Tests the LOCI algorithm with sampled radii.
+ *
+ * @author Erich Schubert
+ * @since 0.8.0
+ */
+public class SampledLOCITest extends AbstractOutlierAlgorithmTest {
+  @Test
+  public void testSampledLOCI() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    OutlierResult result = new ELKIBuilder<SampledLOCI<DoubleVector>>(SampledLOCI.class) //
+        .with(LOCI.Par.RMAX_ID, 0.5).build().autorun(db);
+    assertAUC(db, "Noise", result, 0.987);
+    assertSingleScore(result, 146, 3.6525247);
+  }
+}
@@ -24,9 +24,14 @@ import org.junit.Test;
 
 import elki.outlier.AbstractOutlierAlgorithmTest;
 import elki.outlier.distance.KNNOutlier;
+import elki.outlier.distance.KNNWeightOutlier;
+import elki.outlier.distance.parallel.ParallelKNNOutlier;
+import elki.outlier.distance.parallel.ParallelKNNWeightOutlier;
 import elki.outlier.lof.LOF;
+import elki.outlier.lof.parallel.ParallelLOF;
 import elki.Algorithm;
 import elki.database.Database;
+import elki.parallel.ParallelCore;
 import elki.result.outlier.OutlierResult;
 import elki.utilities.ELKIBuilder;
 import elki.utilities.ensemble.*;
@@ -97,4 +102,26 @@ public class SimpleEnsembleTest extends AbstractOutlierAlgorithmTest {
         .with(KNNOutlier.Par.K_ID, 1).with(LOF.Par.K_ID, 10).build().autorun(db);
     assertAUC(db, "Noise", result, 0.1182);
   }
+
+  /**
+   * Members that run in parallel themselves must not deadlock the shared
+   * thread pool.
+   */
+  @Test(timeout = 60000)
+  public void testEnsembleParallelMembers() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-3d-3clusters.ascii", 960);
+    ParallelCore core = ParallelCore.getCore();
+    final int parallelism = core.getParallelism();
+    core.setParallelism(3);
+    try {
+      OutlierResult result = new ELKIBuilder<>(SimpleOutlierEnsemble.class) //
+          .with(Algorithm.Utils.ALGORITHM_ID, ParallelLOF.class.getName() + "," + ParallelKNNOutlier.class.getName() + "," + ParallelKNNWeightOutlier.class.getName()) //
+          .with(SimpleOutlierEnsemble.Par.VOTING_ID, EnsembleVotingMean.class) //
+          .with(LOF.Par.K_ID, 10).with(KNNOutlier.Par.K_ID, 1).with(KNNWeightOutlier.Par.K_ID, 5).build().autorun(db);
+      assertAUC(db, "Noise", result, 0.99107);
+    }
+    finally {
+      core.setParallelism(parallelism);
+    }
+  }
 }